@@ -0,0 +1,158 @@
+package com.graphics;
+
+/**
+ * ====================================================================
+ * AnimationClip.java - 动画片段
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 一段动画是时间t（秒，从0到duration）到机器人姿态的函数：
+ * sample(t, pose)把t时刻各个通道的值写进pose数组（下标见Robot.HEAD_ROT_Y等）。
+ * 片段本身没有状态，同一个片段可以同时在任意多个机器人上播放，
+ * 也可以在任意时刻取样（离线逐帧渲染时按帧号换算时间直接取样）。
+ *
+ * 【通道】
+ * channels是片段驱动的通道的位掩码（第i位对应通道i）。
+ * 同一个机器人上新开始的片段会替换驱动相同通道的旧片段（见AnimationClock.play）。
+ * 没有任何片段驱动的通道保持静止姿态（0）。
+ *
+ * 【内置片段】
+ * 与原来各个动画线程的动作和时长相同，只是改写成时间的连续函数：
+ * - HEAD_SHAKE: 左右摇头（约2秒）
+ * - ARM_SWING / LEG_SWING: 手臂、腿部反向摆动（3秒）
+ * - WALK: 行走，四肢协调摆动并以WALK_SPEED向-Z方向前进（4.5秒）
+ * - WAVE: 举起右臂、挥手、放下（约3.5秒）
+ *
+ * 片段创建后不再修改。
+ *
+ * @author Computer Graphics Course
+ */
+public final class AnimationClip {
+
+    /**
+     * 姿态取样函数
+     */
+    public interface Sampler {
+        /**
+         * 把t时刻的姿态写进pose（只写自己驱动的通道）
+         *
+         * @param t    时间（秒，0 ≤ t ≤ duration）
+         * @param pose 各通道的值（长度Robot.CHANNELS）
+         */
+        void sample(double t, double[] pose);
+    }
+
+    /** 片段名称（显示用） */
+    public final String name;
+
+    /** 时长（秒） */
+    public final double duration;
+
+    /** 驱动的通道（位掩码） */
+    public final int channels;
+
+    private final Sampler sampler;
+
+    private AnimationClip(String name, double duration, int channels, Sampler sampler) {
+        this.name = name;
+        this.duration = duration;
+        this.channels = channels;
+        this.sampler = sampler;
+    }
+
+    /**
+     * 创建片段
+     *
+     * @param name     名称
+     * @param duration 时长（秒）
+     * @param channels 驱动的通道（位掩码，见mask()）
+     * @param sampler  取样函数
+     */
+    public static AnimationClip of(String name, double duration, int channels, Sampler sampler) {
+        return new AnimationClip(name, duration, channels, sampler);
+    }
+
+    /**
+     * 若干通道的位掩码
+     */
+    public static int mask(int... channels) {
+        int mask = 0;
+        for (int channel : channels) {
+            mask |= 1 << channel;
+        }
+        return mask;
+    }
+
+    /**
+     * 取样（t限制在[0, duration]内）
+     */
+    public void sample(double t, double[] pose) {
+        sampler.sample(Math.max(0, Math.min(duration, t)), pose);
+    }
+
+    /**
+     * 是否驱动了other驱动的任何一个通道
+     */
+    public boolean overlaps(AnimationClip other) {
+        return (channels & other.channels) != 0;
+    }
+
+    // ==================== 内置片段 ====================
+
+    /** 行走时前进的速度（单位/秒） */
+    public static final double WALK_SPEED = 0.8;
+
+    /** 左右摇头：振幅30度，周期约1秒 */
+    public static final AnimationClip HEAD_SHAKE = of("摇头", 1.98, mask(Robot.HEAD_ROT_Y),
+            (t, pose) -> pose[Robot.HEAD_ROT_Y] = 30 * Math.sin(2 * Math.PI * t / 0.99));
+
+    /** 手臂反向摆动：振幅45度，周期1.5秒 */
+    public static final AnimationClip ARM_SWING = of("手臂摆动", 3, mask(Robot.LEFT_ARM_ROT_X, Robot.RIGHT_ARM_ROT_X),
+            (t, pose) -> {
+                double s = Math.sin(2 * Math.PI * t / 1.5);
+                pose[Robot.LEFT_ARM_ROT_X] = 45 * s;
+                pose[Robot.RIGHT_ARM_ROT_X] = -45 * s; // 右臂反向
+            });
+
+    /** 腿部反向摆动：振幅30度，周期1.5秒 */
+    public static final AnimationClip LEG_SWING = of("腿部摆动", 3, mask(Robot.LEFT_LEG_ROT_X, Robot.RIGHT_LEG_ROT_X),
+            (t, pose) -> {
+                double s = Math.sin(2 * Math.PI * t / 1.5);
+                pose[Robot.LEFT_LEG_ROT_X] = 30 * s;
+                pose[Robot.RIGHT_LEG_ROT_X] = -30 * s;
+            });
+
+    /** 行走：步态周期1秒，腿部±35度、手臂反向±25度，同时向前移动 */
+    public static final AnimationClip WALK = of("行走", 4.5,
+            mask(Robot.LEFT_LEG_ROT_X, Robot.RIGHT_LEG_ROT_X, Robot.LEFT_ARM_ROT_X, Robot.RIGHT_ARM_ROT_X,
+                    Robot.MOVE_Z),
+            (t, pose) -> {
+                double s = Math.sin(2 * Math.PI * t);
+                // 腿部摆动
+                pose[Robot.LEFT_LEG_ROT_X] = 35 * s;
+                pose[Robot.RIGHT_LEG_ROT_X] = -35 * s;
+                // 手臂反向摆动（自然行走姿态）
+                pose[Robot.LEFT_ARM_ROT_X] = -25 * s;
+                pose[Robot.RIGHT_ARM_ROT_X] = 25 * s;
+                // 向前移动
+                pose[Robot.MOVE_Z] = -WALK_SPEED * t;
+            });
+
+    /** 挥手：0.6秒举起右臂，挥动2.25秒，0.62秒放下 */
+    public static final AnimationClip WAVE = of("挥手", 3.47, mask(Robot.RIGHT_ARM_ROT_X, Robot.RIGHT_ARM_ROT_Z),
+            (t, pose) -> {
+                if (t < 0.6) {
+                    // 阶段1：举起右臂
+                    pose[Robot.RIGHT_ARM_ROT_Z] = -120 * t / 0.6;
+                    pose[Robot.RIGHT_ARM_ROT_X] = 0;
+                } else if (t < 2.85) {
+                    // 阶段2：挥手（周期0.5秒）
+                    pose[Robot.RIGHT_ARM_ROT_Z] = -120;
+                    pose[Robot.RIGHT_ARM_ROT_X] = 20 * Math.sin(2 * Math.PI * (t - 0.6) / 0.5);
+                } else {
+                    // 阶段3：放下手臂
+                    pose[Robot.RIGHT_ARM_ROT_Z] = -120 * (1 - (t - 2.85) / 0.62);
+                    pose[Robot.RIGHT_ARM_ROT_X] = 0;
+                }
+            });
+}
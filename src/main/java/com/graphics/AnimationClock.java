@@ -0,0 +1,439 @@
+package com.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ====================================================================
+ * AnimationClock.java - 固定步长的动画时钟
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 所有机器人的动画片段（AnimationClip）由一个时钟统一推进，
+ * 不再每个动画启动一个sleep循环的线程：500个机器人同时挥手也只有一个时钟线程。
+ * 行走的机器人群（RobotCrowd）也挂在同一个时钟上，每步前进STEP_SECONDS。
+ *
+ * 【固定步长】
+ * 模拟按STEP_SECONDS（25毫秒）一步前进，第n步的姿态只取决于n和
+ * 片段开始的步数，与机器速度、线程调度无关，所以播放可以逐帧重现。
+ * 时钟线程每TICK_MS醒来一次，按真实时间补上到期的步数
+ * （落后太多时丢弃积压的时间，而不是一次补算很多步）。
+ *
+ * 【渲染插值】
+ * 每一步把每个机器人上一步和这一步的通道值交给机器人（复制进它预先分配的数组，
+ * 与位置在同一把锁内修改，见Robot【线程】）。每个轨道有两块数组轮流作为
+ * "这一步"和"下一步"，推进时不创建对象。
+ * 渲染线程按 alpha = (现在 - 这一步的时刻) / 步长 在两步之间线性插值，
+ * 画面比模拟晚一步，但帧率高于40Hz时动作仍然平滑。
+ * 播放期间每次醒来都通知机器人变化，渲染线程据此重画插值后的姿态。
+ *
+ * 【交叉淡入】
+ * play(robot, clip, fadeSeconds)在fadeSeconds内从原来的动作过渡到新片段：
+ * 替换前的全部片段作为淡出的一层继续播放，每一步两层各自取样后按权重混合。
+ * 淡入期间再次播放会再叠一层，层数不超过淡入时间内播放的次数。
+ * 取样和混合使用每层预先分配的数组，不为每次取样创建对象。
+ * 根运动（MOVE_Z）不混合：被替换的行走立即把走过的距离并入位置。
+ *
+ * 【手动模式】
+ * new AnimationClock()创建的时钟没有线程，由调用者step()推进，
+ * 插值系数固定为1（显示最新一步），用于离线渲染和重现问题。
+ * 机器人自己的动画方法（walkAnimation等）使用共享的实时时钟shared()。
+ *
+ * 【线程】
+ * play/stop可以在任何线程调用；内部状态由this的锁保护，
+ * 通知机器人变化（会调用渲染请求等监听器）在锁外进行。
+ *
+ * @author Computer Graphics Course
+ */
+public class AnimationClock {
+
+    /** 模拟步长（秒） */
+    public static final double STEP_SECONDS = 0.025;
+
+    private static final long STEP_NANOS = 25_000_000L;
+
+    /** 播放期间时钟线程醒来的间隔（毫秒，与渲染的最小帧间隔相同） */
+    private static final long TICK_MS = 16;
+
+    /** 一次醒来最多补算的步数，超过时丢弃积压的时间 */
+    private static final int MAX_CATCH_UP_STEPS = 8;
+
+    /** 机器人动画方法使用的实时时钟 */
+    private static final AnimationClock SHARED = new AnimationClock(true);
+
+    /** 是否按真实时间推进（有自己的线程） */
+    private final boolean realtime;
+
+    /** 正在播放的机器人（按开始播放的顺序，每步的计算顺序固定） */
+    private final Map<Robot, Track> tracks = new LinkedHashMap<>();
+
+    /** 正在行走的机器人群（按开始的顺序） */
+    private final List<RobotCrowd> crowds = new ArrayList<>();
+
+    /** 已经走过的步数 */
+    private long step;
+
+    /** 下一步到期的时刻（System.nanoTime，实时模式） */
+    private long nextStepNanos;
+
+    /** 最近一步的时刻（渲染线程读取，计算插值系数） */
+    private volatile long stepNanos;
+
+    /** 时钟线程（实时模式，第一次播放时启动） */
+    private Thread thread;
+
+    /**
+     * 一个机器人上正在播放的片段，以及最近一步的姿态
+     */
+    private static final class Track {
+        final Robot robot;
+        final List<Playback> playbacks = new ArrayList<>();
+
+        /** 最近一步的姿态，和下一步取样用的数组（每步交换） */
+        double[] current = new double[Robot.CHANNELS], next = new double[Robot.CHANNELS];
+
+        /** 正在淡出的一层（null表示没有过渡） */
+        Blend blend;
+
+        Track(Robot robot) {
+            this.robot = robot;
+            robot.copyCurrentPose(current);
+        }
+    }
+
+    /**
+     * 一个片段的播放：从第startStep步开始（这一步取样t = 0）
+     */
+    private static final class Playback {
+        final AnimationClip clip;
+        final long startStep;
+
+        Playback(AnimationClip clip, long startStep) {
+            this.clip = clip;
+            this.startStep = startStep;
+        }
+    }
+
+    /**
+     * 交叉淡入时淡出的一层：替换前的片段，以及它自己还没结束的过渡
+     */
+    private static final class Blend {
+        final List<Playback> playbacks;
+        Blend from;
+
+        /** 过渡从第startStep步开始，共steps步 */
+        final long startStep;
+        final int steps;
+
+        /** 这一层的取样结果（每步复用） */
+        final double[] pose = new double[Robot.CHANNELS];
+
+        Blend(List<Playback> playbacks, Blend from, long startStep, int steps) {
+            this.playbacks = playbacks;
+            this.from = from;
+            this.startStep = startStep;
+            this.steps = steps;
+        }
+    }
+
+    /**
+     * 创建手动推进的时钟（调用step()前进一步）
+     */
+    public AnimationClock() {
+        this(false);
+    }
+
+    private AnimationClock(boolean realtime) {
+        this.realtime = realtime;
+    }
+
+    /**
+     * 共享的实时时钟
+     */
+    public static AnimationClock shared() {
+        return SHARED;
+    }
+
+    // ==================== 播放控制 ====================
+
+    /**
+     * 在机器人上播放片段（从下一步开始，不过渡）
+     * 替换这个机器人上驱动相同通道的片段，其余片段继续播放
+     */
+    public void play(Robot robot, AnimationClip clip) {
+        play(robot, clip, 0);
+    }
+
+    /**
+     * 在机器人上播放片段，在fadeSeconds内从原来的动作交叉淡入
+     *
+     * @param fadeSeconds 过渡时间（秒，0表示直接切换）
+     */
+    public synchronized void play(Robot robot, AnimationClip clip, double fadeSeconds) {
+        resumeIfIdle();
+        Track track = tracks.computeIfAbsent(robot, Track::new);
+        int fadeSteps = (int) Math.round(fadeSeconds / STEP_SECONDS);
+        if (fadeSteps > 0) {
+            track.blend = new Blend(new ArrayList<>(track.playbacks), track.blend, step + 1, fadeSteps);
+        }
+        double committedZ = 0;
+        Iterator<Playback> it = track.playbacks.iterator();
+        while (it.hasNext()) {
+            Playback p = it.next();
+            if (p.clip.overlaps(clip)) {
+                it.remove();
+                if ((p.clip.channels & AnimationClip.mask(Robot.MOVE_Z)) != 0) {
+                    committedZ = track.current[Robot.MOVE_Z]; // 被替换的行走已经走过的距离
+                }
+            }
+        }
+        if (committedZ != 0) {
+            track.current[Robot.MOVE_Z] = 0;
+            robot.publishPose(track.current, track.current, committedZ, this);
+        }
+        track.playbacks.add(new Playback(clip, step + 1));
+        wake();
+    }
+
+    /**
+     * 让机器人群从下一步开始行走（已经在走时不变）
+     */
+    public synchronized void play(RobotCrowd crowd) {
+        if (crowds.contains(crowd)) {
+            return;
+        }
+        resumeIfIdle();
+        crowds.add(crowd);
+        wake();
+    }
+
+    /**
+     * 停止机器人群的行走（实例停在当前位置）
+     */
+    public synchronized void stop(RobotCrowd crowd) {
+        crowds.remove(crowd);
+    }
+
+    /**
+     * 机器人群是否在行走
+     */
+    public synchronized boolean isPlaying(RobotCrowd crowd) {
+        return crowds.contains(crowd);
+    }
+
+    /**
+     * 从空闲恢复：时间轴从现在开始（调用者持有锁）
+     */
+    private void resumeIfIdle() {
+        if (realtime && idle()) {
+            nextStepNanos = System.nanoTime();
+            stepNanos = nextStepNanos - STEP_NANOS;
+        }
+    }
+
+    /**
+     * 启动或唤醒时钟线程（调用者持有锁）
+     */
+    private void wake() {
+        if (realtime) {
+            if (thread == null) {
+                thread = new Thread(this::run, "Animation-Clock");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            notifyAll();
+        }
+    }
+
+    private boolean idle() {
+        return tracks.isEmpty() && crowds.isEmpty();
+    }
+
+    /**
+     * 停止机器人上的全部片段，回到静止姿态（已经走过的距离保留）
+     */
+    public void stop(Robot robot) {
+        synchronized (this) {
+            Track track = tracks.remove(robot);
+            if (track == null) {
+                return;
+            }
+            robot.restPose(track.current[Robot.MOVE_Z]);
+        }
+        robot.markChanged();
+    }
+
+    /**
+     * 机器人上是否有片段在播放
+     */
+    public synchronized boolean isPlaying(Robot robot) {
+        Track track = tracks.get(robot);
+        return track != null && !track.playbacks.isEmpty();
+    }
+
+    /**
+     * 已经走过的步数
+     */
+    public synchronized long getStep() {
+        return step;
+    }
+
+    // ==================== 推进 ====================
+
+    /**
+     * 前进一步（手动模式）
+     */
+    public void step() {
+        List<Robot> changed;
+        List<RobotCrowd> walked;
+        synchronized (this) {
+            changed = robots();
+            walked = new ArrayList<>(crowds);
+            advance();
+        }
+        for (Robot robot : changed) {
+            robot.markChanged();
+        }
+        for (RobotCrowd crowd : walked) {
+            crowd.markChanged();
+        }
+    }
+
+    /**
+     * 渲染插值系数：0表示上一步的姿态，1表示最新一步（渲染线程调用）
+     */
+    double interpolation() {
+        if (!realtime) {
+            return 1;
+        }
+        double alpha = (double) (System.nanoTime() - stepNanos) / STEP_NANOS;
+        return alpha < 0 ? 0 : alpha > 1 ? 1 : alpha;
+    }
+
+    /**
+     * 所有机器人和机器人群前进一步，发布新的姿态（调用者持有锁）
+     */
+    private void advance() {
+        step++;
+        Iterator<Track> it = tracks.values().iterator();
+        while (it.hasNext()) {
+            Track track = it.next();
+            double[] previous = track.current;
+            double[] pose = track.next;
+            Arrays.fill(pose, 0);
+            track.blend = evaluate(track.playbacks, track.blend, pose);
+            double committedZ = 0;
+            List<Playback> playbacks = track.playbacks;
+            for (int i = playbacks.size() - 1; i >= 0; i--) { // 按下标遍历，不创建迭代器
+                Playback p = playbacks.get(i);
+                if ((step - p.startStep) * STEP_SECONDS >= p.clip.duration) {
+                    // 播放完毕：走过的距离并入机器人的位置
+                    playbacks.remove(i);
+                    if ((p.clip.channels & AnimationClip.mask(Robot.MOVE_Z)) != 0) {
+                        committedZ += pose[Robot.MOVE_Z];
+                        pose[Robot.MOVE_Z] = 0;
+                    }
+                }
+            }
+            if (committedZ != 0) {
+                previous[Robot.MOVE_Z] -= committedZ; // 位移并入位置后插值仍然连续
+            }
+            track.current = pose;
+            track.next = previous; // 机器人复制完之后，下一步复用
+            if (track.playbacks.isEmpty() && track.blend == null && Arrays.equals(previous, pose)) {
+                // 已经静止：不再需要插值
+                track.robot.restPose(committedZ);
+                it.remove();
+            } else {
+                track.robot.publishPose(previous, pose, committedZ, this);
+            }
+        }
+        for (int i = 0; i < crowds.size(); i++) {
+            crowds.get(i).advance(STEP_SECONDS);
+        }
+    }
+
+    /**
+     * 对一层片段取样，并与它淡出的一层混合（调用者持有锁）
+     *
+     * @param out 结果（调用者清零）
+     * @return 过渡结束后为null，否则为blend
+     */
+    private Blend evaluate(List<Playback> playbacks, Blend blend, double[] out) {
+        for (int i = 0; i < playbacks.size(); i++) {
+            Playback p = playbacks.get(i);
+            p.clip.sample((step - p.startStep) * STEP_SECONDS, out);
+        }
+        if (blend == null) {
+            return null;
+        }
+        long k = step - blend.startStep + 1;
+        if (k >= blend.steps) {
+            return null;
+        }
+        double[] from = blend.pose;
+        Arrays.fill(from, 0);
+        blend.from = evaluate(blend.playbacks, blend.from, from);
+        double w = (double) k / blend.steps;
+        for (int c = 0; c < Robot.CHANNELS; c++) {
+            if (c != Robot.MOVE_Z) {
+                out[c] = from[c] + (out[c] - from[c]) * w;
+            }
+        }
+        return blend;
+    }
+
+    /**
+     * 正在播放的机器人（调用者持有锁）
+     */
+    private List<Robot> robots() {
+        return new ArrayList<>(tracks.keySet());
+    }
+
+    /**
+     * 时钟线程：播放期间每TICK_MS补上到期的步数并通知机器人，空闲时等待play()
+     */
+    private void run() {
+        try {
+            while (true) {
+                List<Robot> changed;
+                List<RobotCrowd> walked = Collections.emptyList();
+                synchronized (this) {
+                    while (idle()) {
+                        wait();
+                    }
+                    changed = robots();
+                    long now = System.nanoTime();
+                    int steps = 0;
+                    while (now - nextStepNanos >= 0) {
+                        if (++steps > MAX_CATCH_UP_STEPS) {
+                            nextStepNanos = now + STEP_NANOS; // 丢弃积压的时间
+                            break;
+                        }
+                        advance();
+                        stepNanos = nextStepNanos;
+                        nextStepNanos += STEP_NANOS;
+                    }
+                    if (steps > 0 && !crowds.isEmpty()) {
+                        walked = new ArrayList<>(crowds);
+                    }
+                }
+                // 两步之间也通知，渲染线程画出插值后的姿态（机器人群不插值，只在走了一步后通知）
+                for (Robot robot : changed) {
+                    robot.markChanged();
+                }
+                for (RobotCrowd crowd : walked) {
+                    crowd.markChanged();
+                }
+                Thread.sleep(TICK_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.graphics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ====================================================================
+ * AntiAliasing.java - 后处理抗锯齿
+ * ====================================================================
+ *
+ * 【为什么是后处理】
+ * 光栅化器按像素中心采样，三角形边缘是锯齿。
+ * Java2D的KEY_ANTIALIASING要在绘制每个多边形时计算覆盖率，非常慢；
+ * 这里光栅化照常不做抗锯齿，画完整帧后再对int[]帧缓冲处理一遍，
+ * 开销只和像素数有关，与三角形数量无关。
+ *
+ * 【FXAA（Fast Approximate Anti-Aliasing）】
+ * 只看最终颜色，不需要几何信息：
+ * 1. 计算每个像素的亮度（luma）
+ * 2. 与上下左右的亮度差（对比度）很小的像素不是边缘，原样复制
+ * 3. 比较水平、垂直方向的亮度变化，判断边缘走向，以及边缘在像素的哪一侧
+ * 4. 沿边缘向两端搜索，直到亮度不再像边缘，得到像素在这段边缘上的位置
+ * 5. 越靠近边缘端点，越向边缘另一侧的像素混合（还原被锯齿截断的斜线）；
+ *    单个像素大小的细节另外按与周围平均亮度的差做一次混合
+ * 代价是很小的模糊，纹理细节也可能被当成边缘。
+ *
+ * 【超采样（SSAA）】
+ * 按屏幕分辨率的factor × factor倍渲染，再把每个factor × factor的方块
+ * 平均成一个像素（盒式滤波）。质量最好，但顶点之后的所有开销都乘以factor²。
+ *
+ * 【并行】
+ * 两种处理都是逐像素独立的，按行分段交给ForkJoinPool（与TileRenderer共用），
+ * 每段ROWS_PER_TASK行。
+ *
+ * @author Computer Graphics Course
+ */
+public class AntiAliasing {
+
+    /** 每个任务处理的行数 */
+    private static final int ROWS_PER_TASK = 16;
+
+    /** 对比度低于这个绝对值的像素不处理（暗处的噪声） */
+    private static final float EDGE_THRESHOLD_MIN = 0.0312f;
+
+    /** 对比度低于 最大亮度 × 这个比例 的像素不处理 */
+    private static final float EDGE_THRESHOLD = 0.125f;
+
+    /** 单像素细节的混合强度 */
+    private static final float SUBPIXEL_QUALITY = 0.75f;
+
+    /** 沿边缘搜索端点的步长（越远步子越大） */
+    private static final int[] SEARCH_STEPS = { 1, 1, 1, 1, 1, 2, 2, 2, 2, 4, 8 };
+
+    /** 执行任务的线程池 */
+    private final ForkJoinPool pool;
+
+    /** 亮度（每帧复用） */
+    private float[] luma = new float[0];
+
+    public AntiAliasing() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public AntiAliasing(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // ==================== FXAA ====================
+
+    /**
+     * FXAA：读src，结果写入dst（两者不能是同一个数组）
+     *
+     * @param src    光栅化的结果（0xRRGGBB）
+     * @param dst    输出
+     * @param width  宽度
+     * @param height 高度
+     */
+    public void fxaa(int[] src, int[] dst, int width, int height) {
+        int n = width * height;
+        if (luma.length < n) {
+            luma = new float[n];
+        }
+        pool.invoke(new RowTask(y -> computeLuma(src, width, y), 0, height));
+        pool.invoke(new RowTask(y -> fxaaRow(src, dst, width, height, y), 0, height));
+    }
+
+    private void computeLuma(int[] src, int width, int y) {
+        float[] l = luma;
+        for (int i = y * width, end = i + width; i < end; i++) {
+            int c = src[i];
+            l[i] = (((c >> 16) & 0xFF) * 0.299f + ((c >> 8) & 0xFF) * 0.587f + (c & 0xFF) * 0.114f) / 255f;
+        }
+    }
+
+    private void fxaaRow(int[] src, int[] dst, int width, int height, int y) {
+        float[] l = luma;
+        int row = y * width;
+        int up = Math.max(0, y - 1) * width, down = Math.min(height - 1, y + 1) * width;
+        for (int x = 0; x < width; x++) {
+            int left = Math.max(0, x - 1), right = Math.min(width - 1, x + 1);
+
+            // ========== 1-2. 局部对比度 ==========
+            float lc = l[row + x];
+            float ln = l[up + x], ls = l[down + x], lw = l[row + left], le = l[row + right];
+            float lumaMin = Math.min(lc, Math.min(Math.min(ln, ls), Math.min(lw, le)));
+            float lumaMax = Math.max(lc, Math.max(Math.max(ln, ls), Math.max(lw, le)));
+            float range = lumaMax - lumaMin;
+            if (range < Math.max(EDGE_THRESHOLD_MIN, lumaMax * EDGE_THRESHOLD)) {
+                dst[row + x] = src[row + x];
+                continue;
+            }
+
+            // ========== 3. 边缘走向 ==========
+            float lnw = l[up + left], lne = l[up + right], lsw = l[down + left], lse = l[down + right];
+            float edgeHorizontal = Math.abs(lnw + lsw - 2 * lw) + 2 * Math.abs(ln + ls - 2 * lc)
+                    + Math.abs(lne + lse - 2 * le);
+            float edgeVertical = Math.abs(lnw + lne - 2 * ln) + 2 * Math.abs(lw + le - 2 * lc)
+                    + Math.abs(lsw + lse - 2 * ls);
+            boolean horizontal = edgeHorizontal >= edgeVertical;
+
+            // 边缘在变化较大的一侧：跨过边缘的方向(px, py)，沿着边缘的方向(ax, ay)
+            float luma1 = horizontal ? ln : lw, luma2 = horizontal ? ls : le;
+            float gradient1 = luma1 - lc, gradient2 = luma2 - lc;
+            boolean steepest1 = Math.abs(gradient1) >= Math.abs(gradient2);
+            float gradientScaled = 0.25f * Math.max(Math.abs(gradient1), Math.abs(gradient2));
+            int side = steepest1 ? -1 : 1;
+            float localAverage = 0.5f * ((steepest1 ? luma1 : luma2) + lc);
+            int px = horizontal ? 0 : side, py = horizontal ? side : 0;
+            int ax = horizontal ? 1 : 0, ay = horizontal ? 0 : 1;
+            int ox = clamp(x + px, width), oy = clamp(y + py, height);
+
+            // ========== 4. 沿边缘向两端搜索 ==========
+            // 边缘上一点的亮度 = 边缘两侧两个像素的平均
+            int d1 = 0, d2 = 0;
+            float end1 = 0, end2 = 0;
+            boolean reached1 = false, reached2 = false;
+            for (int step : SEARCH_STEPS) {
+                if (!reached1) {
+                    d1 += step;
+                    end1 = edgeLuma(x - ax * d1, y - ay * d1, ox - ax * d1, oy - ay * d1, width, height)
+                            - localAverage;
+                    reached1 = Math.abs(end1) >= gradientScaled;
+                }
+                if (!reached2) {
+                    d2 += step;
+                    end2 = edgeLuma(x + ax * d2, y + ay * d2, ox + ax * d2, oy + ay * d2, width, height)
+                            - localAverage;
+                    reached2 = Math.abs(end2) >= gradientScaled;
+                }
+                if (reached1 && reached2) {
+                    break;
+                }
+            }
+
+            // ========== 5. 混合比例 ==========
+            // 离较近的端点越近，越向另一侧混合；端点处的亮度变化方向不对时不混合
+            boolean toward1 = d1 < d2;
+            float distance = Math.min(d1, d2);
+            float offset = 0.5f - distance / (d1 + d2);
+            boolean centerSmaller = lc < localAverage;
+            if (((toward1 ? end1 : end2) < 0) == centerSmaller) {
+                offset = 0;
+            }
+
+            // 单像素细节：中心与周围加权平均的差
+            float average = (2 * (ln + ls + lw + le) + lnw + lne + lsw + lse) / 12;
+            float sub = Math.min(1, Math.abs(average - lc) / range);
+            sub = (-2 * sub + 3) * sub * sub;
+            offset = Math.max(offset, sub * sub * SUBPIXEL_QUALITY);
+
+            dst[row + x] = lerp(src[row + x], src[oy * width + ox], offset);
+        }
+    }
+
+    /**
+     * 边缘上一点的亮度（(x0, y0)和(x1, y1)是边缘两侧的像素，超出画面时取边界）
+     */
+    private float edgeLuma(int x0, int y0, int x1, int y1, int width, int height) {
+        return 0.5f * (luma[clamp(y0, height) * width + clamp(x0, width)]
+                + luma[clamp(y1, height) * width + clamp(x1, width)]);
+    }
+
+    private static int clamp(int v, int size) {
+        return v < 0 ? 0 : v >= size ? size - 1 : v;
+    }
+
+    private static int lerp(int a, int b, float t) {
+        int r = (a >> 16) & 0xFF, g = (a >> 8) & 0xFF, bl = a & 0xFF;
+        r += Math.round((((b >> 16) & 0xFF) - r) * t);
+        g += Math.round((((b >> 8) & 0xFF) - g) * t);
+        bl += Math.round(((b & 0xFF) - bl) * t);
+        return (r << 16) | (g << 8) | bl;
+    }
+
+    // ==================== 超采样 ====================
+
+    /**
+     * 盒式滤波缩小：src的每个factor × factor方块平均成dst的一个像素
+     *
+     * @param src    高分辨率图像（宽width × factor，高height × factor）
+     * @param dst    输出（宽width，高height）
+     * @param width  输出宽度
+     * @param height 输出高度
+     * @param factor 每个方向的倍数
+     */
+    public void downsample(int[] src, int[] dst, int width, int height, int factor) {
+        pool.invoke(new RowTask(y -> downsampleRow(src, dst, width, factor, y), 0, height));
+    }
+
+    private static void downsampleRow(int[] src, int[] dst, int width, int factor, int y) {
+        int srcWidth = width * factor;
+        int samples = factor * factor;
+        int half = samples / 2; // 四舍五入
+        for (int x = 0; x < width; x++) {
+            int r = 0, g = 0, b = 0;
+            for (int j = 0; j < factor; j++) {
+                int i = (y * factor + j) * srcWidth + x * factor;
+                for (int k = 0; k < factor; k++) {
+                    int c = src[i + k];
+                    r += (c >> 16) & 0xFF;
+                    g += (c >> 8) & 0xFF;
+                    b += c & 0xFF;
+                }
+            }
+            dst[y * width + x] = ((r + half) / samples << 16) | ((g + half) / samples << 8) | (b + half) / samples;
+        }
+    }
+
+    // ==================== 按行并行 ====================
+
+    /**
+     * 处理一行
+     */
+    private interface RowAction {
+        void run(int y);
+    }
+
+    /**
+     * 分治任务：行区间[from, to)过大时一分为二
+     */
+    private static class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RowAction action;
+        private final int from, to;
+
+        RowTask(RowAction action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                for (int y = from; y < to; y++) {
+                    action.run(y);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RowTask(action, from, mid), new RowTask(action, mid, to));
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package com.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ====================================================================
+ * BSPTree.java - 静态几何的二叉空间分割树
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 对不会移动的几何体（地板等）只建一次树，之后每帧从相机位置
+ * 遍历一遍就得到严格正确的从远到近顺序：不用每帧排序，也不用深度缓冲。
+ *
+ * 【建树】
+ * 1. 从多边形中选一个作为分割平面（抽样若干候选，
+ *    代价 = 被切开的多边形数×8 + 前后两侧数量之差，取最小）
+ * 2. 与平面共面的多边形留在节点上
+ * 3. 其余多边形按在平面前方/后方分到两侧，跨越平面的切成两半
+ *    （切出的新顶点插值位置和法向量）
+ * 4. 两侧递归
+ * 结果是一个新的网格：每个节点的三角形在网格中连续存放。
+ *
+ * 【遍历（从远到近）】
+ * 相机在节点平面前方：先画后方子树，再画节点上的多边形，最后画前方子树；
+ * 相机在后方则反过来。离相机远的一侧总是先画，画家算法的顺序自然成立。
+ *
+ * 【动态物体】
+ * 空间被树划分成若干区域（节点某一侧没有子树的地方就是一个区域）。
+ * 运动的物体用包围盒沿树下降：完全在某侧就继续往那一侧走，
+ * 到达空区域为止；跨越某个节点平面就停在该节点上(ON)。
+ * 遍历到这个区域时再画落在里面的物体，物体与静态几何之间的先后就正确了。
+ * 比如机器人全部在地板平面上方，相机在上方时一定先画地板再画机器人。
+ *
+ * @author Computer Graphics Course
+ */
+public class BSPTree {
+
+    /** 区域编号：节点编号×3 + 一侧 */
+    public static final int REGION_BACK = 0, REGION_ON = 1, REGION_FRONT = 2;
+
+    /** 空树只有一个区域 */
+    public static final int EMPTY_REGION = -1;
+
+    /** 判断点在平面上的容差 */
+    private static final double EPSILON = 1e-5;
+
+    /** 选分割平面时最多评估的候选多边形数 */
+    private static final int MAX_CANDIDATES = 8;
+
+    /** 切开一个多边形的代价（相对于左右不平衡） */
+    private static final int SPLIT_COST = 8;
+
+    /**
+     * 遍历回调
+     */
+    public interface Visitor {
+
+        /**
+         * 按从远到近的顺序给出节点上的三角形
+         *
+         * @param first 网格中第一个三角形
+         * @param count 三角形个数
+         */
+        void visitTriangles(int first, int count);
+
+        /**
+         * 遍历到一个区域（动态物体在这里插入）
+         *
+         * @param region 区域编号（见locate()）
+         */
+        void visitRegion(int region);
+    }
+
+    // ==================== 树 ====================
+
+    /** 切分后的网格（世界坐标） */
+    public final Mesh mesh;
+
+    /** 节点平面 (nx, ny, nz, d)，平面方程 n·p + d = 0，n·p + d > 0 为前方 */
+    private final double[] planes;
+
+    /** 子节点（-1表示没有） */
+    private final int[] front, back;
+
+    /** 节点上的三角形在网格中的范围 */
+    private final int[] first, count;
+
+    /** 根节点（-1表示空树） */
+    private final int root;
+
+    private BSPTree(Builder b, int root, Mesh source) {
+        this.root = root;
+        int n = b.nodeCount;
+        this.planes = Arrays.copyOf(b.planes, n * 4);
+        this.front = Arrays.copyOf(b.front, n);
+        this.back = Arrays.copyOf(b.back, n);
+        this.first = Arrays.copyOf(b.first, n);
+        this.count = Arrays.copyOf(b.count, n);
+        this.mesh = new Mesh(
+                toFloats(b.px, b.positionCount), toFloats(b.py, b.positionCount), toFloats(b.pz, b.positionCount),
+                toFloats(b.nx, b.normalCount), toFloats(b.ny, b.normalCount), toFloats(b.nz, b.normalCount),
+                Arrays.copyOf(b.indices, b.triangleCount * 3),
+                Arrays.copyOf(b.normalIndices, b.triangleCount * 3),
+                Arrays.copyOf(b.materials, b.triangleCount),
+                source.palette, source.doubleSided);
+    }
+
+    /**
+     * 为一个静态网格建树（网格顶点已经是世界坐标）
+     */
+    public static BSPTree build(Mesh source) {
+        Builder b = new Builder(source);
+        List<Polygon> polygons = new ArrayList<>(source.triangleCount);
+        for (int t = 0; t < source.triangleCount; t++) {
+            Polygon p = new Polygon(
+                    new int[] { source.indices[t * 3], source.indices[t * 3 + 1], source.indices[t * 3 + 2] },
+                    new int[] { source.normalIndices[t * 3], source.normalIndices[t * 3 + 1],
+                            source.normalIndices[t * 3 + 2] },
+                    3, source.materials[t]);
+            if (b.computePlane(p)) {
+                polygons.add(p);
+            }
+        }
+        int root = b.build(polygons);
+        return new BSPTree(b, root, source);
+    }
+
+    /**
+     * @return 节点数
+     */
+    public int nodeCount() {
+        return front.length;
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 从相机位置按从远到近的顺序遍历
+     *
+     * @param ex      相机位置
+     * @param visitor 回调
+     */
+    public void traverse(double ex, double ey, double ez, Visitor visitor) {
+        if (root < 0) {
+            visitor.visitRegion(EMPTY_REGION);
+        } else {
+            traverse(root, ex, ey, ez, visitor);
+        }
+    }
+
+    private void traverse(int node, double ex, double ey, double ez, Visitor visitor) {
+        int p = node * 4;
+        boolean inFront = planes[p] * ex + planes[p + 1] * ey + planes[p + 2] * ez + planes[p + 3] >= 0;
+        int near = inFront ? REGION_FRONT : REGION_BACK;
+        int far = inFront ? REGION_BACK : REGION_FRONT;
+        traverseSide(node, far, ex, ey, ez, visitor);
+        if (count[node] > 0) {
+            visitor.visitTriangles(first[node], count[node]);
+        }
+        visitor.visitRegion(node * 3 + REGION_ON);
+        traverseSide(node, near, ex, ey, ez, visitor);
+    }
+
+    private void traverseSide(int node, int side, double ex, double ey, double ez, Visitor visitor) {
+        int child = side == REGION_FRONT ? front[node] : back[node];
+        if (child >= 0) {
+            traverse(child, ex, ey, ez, visitor);
+        } else {
+            visitor.visitRegion(node * 3 + side);
+        }
+    }
+
+    /**
+     * 找出包围盒所在的区域
+     *
+     * @return 区域编号：节点×3 + REGION_BACK/REGION_ON/REGION_FRONT；空树返回EMPTY_REGION
+     */
+    public int locate(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        double cx = (minX + maxX) / 2, cy = (minY + maxY) / 2, cz = (minZ + maxZ) / 2;
+        double hx = (maxX - minX) / 2, hy = (maxY - minY) / 2, hz = (maxZ - minZ) / 2;
+        int node = root;
+        while (node >= 0) {
+            int p = node * 4;
+            double nx = planes[p], ny = planes[p + 1], nz = planes[p + 2];
+            double d = nx * cx + ny * cy + nz * cz + planes[p + 3];
+            double extent = Math.abs(nx) * hx + Math.abs(ny) * hy + Math.abs(nz) * hz;
+            if (d > extent) {
+                if (front[node] < 0) {
+                    return node * 3 + REGION_FRONT;
+                }
+                node = front[node];
+            } else if (d < -extent) {
+                if (back[node] < 0) {
+                    return node * 3 + REGION_BACK;
+                }
+                node = back[node];
+            } else {
+                return node * 3 + REGION_ON;
+            }
+        }
+        return EMPTY_REGION;
+    }
+
+    // ==================== 建树 ====================
+
+    /**
+     * 建树中的凸多边形（顶点是位置和法向量的编号）
+     */
+    private static final class Polygon {
+        final int[] positions, normals;
+        final int size, material;
+
+        /** 所在平面（切开后的碎片沿用原多边形的平面） */
+        double nx, ny, nz, d;
+
+        Polygon(int[] positions, int[] normals, int size, int material) {
+            this.positions = positions;
+            this.normals = normals;
+            this.size = size;
+            this.material = material;
+        }
+
+        Polygon fragment(int[] positions, int[] normals, int size) {
+            Polygon p = new Polygon(positions, normals, size, material);
+            p.nx = nx;
+            p.ny = ny;
+            p.nz = nz;
+            p.d = d;
+            return p;
+        }
+    }
+
+    /**
+     * 建树时的可增长数组
+     */
+    private static final class Builder {
+        double[] px, py, pz;
+        int positionCount;
+        double[] nx, ny, nz;
+        int normalCount;
+
+        double[] planes = new double[64];
+        int[] front = new int[16], back = new int[16], first = new int[16], count = new int[16];
+        int nodeCount;
+
+        int[] indices = new int[192], normalIndices = new int[192], materials = new int[64];
+        int triangleCount;
+
+        /** 对一个多边形所有顶点的有向距离（临时） */
+        double[] distances = new double[16];
+
+        Builder(Mesh source) {
+            positionCount = source.vertexCount;
+            px = toDoubles(source.x, positionCount);
+            py = toDoubles(source.y, positionCount);
+            pz = toDoubles(source.z, positionCount);
+            normalCount = source.normalCount;
+            nx = toDoubles(source.nx, normalCount);
+            ny = toDoubles(source.ny, normalCount);
+            nz = toDoubles(source.nz, normalCount);
+        }
+
+        /**
+         * 计算多边形平面
+         *
+         * @return false表示退化（面积为0）
+         */
+        boolean computePlane(Polygon p) {
+            int a = p.positions[0], b = p.positions[1], c = p.positions[2];
+            double ux = px[b] - px[a], uy = py[b] - py[a], uz = pz[b] - pz[a];
+            double vx = px[c] - px[a], vy = py[c] - py[a], vz = pz[c] - pz[a];
+            double x = uy * vz - uz * vy, y = uz * vx - ux * vz, z = ux * vy - uy * vx;
+            double len = Math.sqrt(x * x + y * y + z * z);
+            if (len == 0) {
+                return false;
+            }
+            p.nx = x / len;
+            p.ny = y / len;
+            p.nz = z / len;
+            p.d = -(p.nx * px[a] + p.ny * py[a] + p.nz * pz[a]);
+            return true;
+        }
+
+        /**
+         * 递归建树
+         *
+         * @return 节点编号，没有多边形时返回-1
+         */
+        int build(List<Polygon> polygons) {
+            if (polygons.isEmpty()) {
+                return -1;
+            }
+            Polygon splitter = chooseSplitter(polygons);
+            double sx = splitter.nx, sy = splitter.ny, sz = splitter.nz, sd = splitter.d;
+
+            List<Polygon> frontList = new ArrayList<>(), backList = new ArrayList<>();
+            List<Polygon> onList = new ArrayList<>();
+            for (Polygon p : polygons) {
+                switch (classify(p, sx, sy, sz, sd)) {
+                    case REGION_FRONT:
+                        frontList.add(p);
+                        break;
+                    case REGION_BACK:
+                        backList.add(p);
+                        break;
+                    case REGION_ON:
+                        onList.add(p);
+                        break;
+                    default:
+                        split(p, frontList, backList);
+                        break;
+                }
+            }
+
+            // 先分配节点并写入它的三角形，保证每个节点的三角形连续
+            int node = newNode(sx, sy, sz, sd);
+            first[node] = triangleCount;
+            for (Polygon p : onList) {
+                emit(p);
+            }
+            count[node] = triangleCount - first[node];
+
+            int b = build(backList);
+            int f = build(frontList);
+            back[node] = b;
+            front[node] = f;
+            return node;
+        }
+
+        /**
+         * 抽样选择代价最小的分割平面
+         */
+        private Polygon chooseSplitter(List<Polygon> polygons) {
+            int n = polygons.size();
+            int step = Math.max(1, n / MAX_CANDIDATES);
+            Polygon best = polygons.get(0);
+            long bestCost = Long.MAX_VALUE;
+            for (int i = 0; i < n; i += step) {
+                Polygon c = polygons.get(i);
+                int frontCount = 0, backCount = 0, splits = 0;
+                for (Polygon p : polygons) {
+                    int side = classify(p, c.nx, c.ny, c.nz, c.d);
+                    if (side == REGION_FRONT) {
+                        frontCount++;
+                    } else if (side == REGION_BACK) {
+                        backCount++;
+                    } else if (side < 0) {
+                        splits++;
+                    }
+                }
+                long cost = (long) splits * SPLIT_COST + Math.abs(frontCount - backCount);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * 多边形相对平面的位置
+         *
+         * @return REGION_FRONT / REGION_BACK / REGION_ON（共面），跨越平面返回-1
+         *         （各顶点的有向距离留在distances中）
+         */
+        private int classify(Polygon p, double sx, double sy, double sz, double sd) {
+            if (distances.length < p.size) {
+                distances = new double[p.size * 2];
+            }
+            boolean anyFront = false, anyBack = false;
+            for (int i = 0; i < p.size; i++) {
+                int v = p.positions[i];
+                double dist = sx * px[v] + sy * py[v] + sz * pz[v] + sd;
+                distances[i] = dist;
+                anyFront |= dist > EPSILON;
+                anyBack |= dist < -EPSILON;
+            }
+            if (anyFront && anyBack) {
+                return -1;
+            }
+            return anyFront ? REGION_FRONT : anyBack ? REGION_BACK : REGION_ON;
+        }
+
+        /**
+         * 把跨越平面的多边形切成前后两部分（distances是classify的结果）
+         */
+        private void split(Polygon p, List<Polygon> frontList, List<Polygon> backList) {
+            int n = p.size;
+            int[] fp = new int[n + 1], fn = new int[n + 1], bp = new int[n + 1], bn = new int[n + 1];
+            int fc = 0, bc = 0;
+            double[] dist = Arrays.copyOf(distances, n);
+            for (int i = 0; i < n; i++) {
+                int j = (i + 1) % n;
+                double di = dist[i], dj = dist[j];
+                if (di >= -EPSILON) {
+                    fp[fc] = p.positions[i];
+                    fn[fc++] = p.normals[i];
+                }
+                if (di <= EPSILON) {
+                    bp[bc] = p.positions[i];
+                    bn[bc++] = p.normals[i];
+                }
+                if ((di > EPSILON && dj < -EPSILON) || (di < -EPSILON && dj > EPSILON)) {
+                    // 边穿过平面：插入交点（两部分共用）
+                    double t = di / (di - dj);
+                    int pos = addPosition(p.positions[i], p.positions[j], t);
+                    int nrm = addNormal(p.normals[i], p.normals[j], t);
+                    fp[fc] = bp[bc] = pos;
+                    fn[fc++] = bn[bc++] = nrm;
+                }
+            }
+            if (fc >= 3) {
+                frontList.add(p.fragment(fp, fn, fc));
+            }
+            if (bc >= 3) {
+                backList.add(p.fragment(bp, bn, bc));
+            }
+        }
+
+        private int addPosition(int a, int b, double t) {
+            if (positionCount == px.length) {
+                int cap = positionCount * 2 + 16;
+                px = Arrays.copyOf(px, cap);
+                py = Arrays.copyOf(py, cap);
+                pz = Arrays.copyOf(pz, cap);
+            }
+            px[positionCount] = px[a] + (px[b] - px[a]) * t;
+            py[positionCount] = py[a] + (py[b] - py[a]) * t;
+            pz[positionCount] = pz[a] + (pz[b] - pz[a]) * t;
+            return positionCount++;
+        }
+
+        private int addNormal(int a, int b, double t) {
+            if (a == b) {
+                return a; // 平面上的法向量相同，不必新增
+            }
+            if (normalCount == nx.length) {
+                int cap = normalCount * 2 + 16;
+                nx = Arrays.copyOf(nx, cap);
+                ny = Arrays.copyOf(ny, cap);
+                nz = Arrays.copyOf(nz, cap);
+            }
+            double x = nx[a] + (nx[b] - nx[a]) * t;
+            double y = ny[a] + (ny[b] - ny[a]) * t;
+            double z = nz[a] + (nz[b] - nz[a]) * t;
+            double len = Math.sqrt(x * x + y * y + z * z);
+            if (len > 0) {
+                x /= len;
+                y /= len;
+                z /= len;
+            }
+            nx[normalCount] = x;
+            ny[normalCount] = y;
+            nz[normalCount] = z;
+            return normalCount++;
+        }
+
+        private int newNode(double sx, double sy, double sz, double sd) {
+            if (nodeCount == front.length) {
+                int cap = nodeCount * 2;
+                front = Arrays.copyOf(front, cap);
+                back = Arrays.copyOf(back, cap);
+                first = Arrays.copyOf(first, cap);
+                count = Arrays.copyOf(count, cap);
+                planes = Arrays.copyOf(planes, cap * 4);
+            }
+            int node = nodeCount++;
+            planes[node * 4] = sx;
+            planes[node * 4 + 1] = sy;
+            planes[node * 4 + 2] = sz;
+            planes[node * 4 + 3] = sd;
+            return node;
+        }
+
+        /**
+         * 把多边形按扇形拆成三角形写入输出
+         */
+        private void emit(Polygon p) {
+            for (int k = 1; k + 1 < p.size; k++) {
+                if (triangleCount == materials.length) {
+                    int cap = triangleCount * 2;
+                    materials = Arrays.copyOf(materials, cap);
+                    indices = Arrays.copyOf(indices, cap * 3);
+                    normalIndices = Arrays.copyOf(normalIndices, cap * 3);
+                }
+                int o = triangleCount * 3;
+                indices[o] = p.positions[0];
+                indices[o + 1] = p.positions[k];
+                indices[o + 2] = p.positions[k + 1];
+                normalIndices[o] = p.normals[0];
+                normalIndices[o + 1] = p.normals[k];
+                normalIndices[o + 2] = p.normals[k + 1];
+                materials[triangleCount++] = p.material;
+            }
+        }
+    }
+
+    private static double[] toDoubles(float[] src, int n) {
+        double[] out = new double[Math.max(16, n)];
+        for (int i = 0; i < n; i++) {
+            out[i] = src[i];
+        }
+        return out;
+    }
+
+    private static float[] toFloats(double[] src, int n) {
+        float[] out = new float[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = (float) src[i];
+        }
+        return out;
+    }
+}
@@ -0,0 +1,478 @@
+package com.graphics;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * ====================================================================
+ * BVH.java - 层次包围盒（Bounding Volume Hierarchy）
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 把场景中的物体（每个物体一个轴对齐包围盒AABB）组织成一棵二叉树：
+ * 每个节点的包围盒包含它下面所有物体。查询时从根往下走，
+ * 某个节点的包围盒不满足条件，整棵子树就都不用看了。
+ * 视锥剔除、射线拾取、遮挡查询的代价因此只与
+ * "可能相关的物体"成正比，近似 O(log n)，而不是扫描全部物体。
+ *
+ * 【构建：分桶SAH】
+ * 表面积启发式（Surface Area Heuristic）：
+ * 射线/视锥碰到一个子节点的概率近似正比于它的表面积，所以划分的代价为
+ * cost = A(左) × N(左) + A(右) × N(右)
+ * 对每个轴，把物体中心按位置分到BIN_COUNT个桶里，只在桶边界处尝试划分，
+ * 取代价最小的那个。比逐个物体尝试快得多，质量几乎相同。
+ *
+ * 【更新：重新拟合（Refit）】
+ * 物体移动后不重建树，只更新它所在叶子及所有祖先的包围盒（自底向上），
+ * 祖先包围盒不再变化时就提前停止。树的拓扑保持不变；
+ * 物体增删或移动距离很大时，调用方应重新build()。
+ *
+ * 【存储】
+ * 节点存在平铺的数组里：包围盒6个double一组，子节点用下标引用，
+ * 叶子节点记录它在order数组中的物体区间。
+ *
+ * @author Computer Graphics Course
+ */
+public class BVH {
+
+    /** 叶子节点最多容纳的物体数 */
+    private static final int MAX_LEAF_SIZE = 4;
+
+    /** SAH分桶数 */
+    private static final int BIN_COUNT = 12;
+
+    // ==================== 查询接口 ====================
+
+    /**
+     * 包围盒过滤器：返回false表示这个包围盒（及其内部所有物体）可以跳过
+     */
+    public interface BoxFilter {
+        boolean test(double minX, double minY, double minZ, double maxX, double maxY, double maxZ);
+    }
+
+    /**
+     * 射线与单个物体的精确求交
+     */
+    public interface RayTest {
+        /**
+         * @param item 物体编号
+         * @param maxT 当前最近命中距离，更远的命中可以忽略
+         * @return 命中距离t（射线参数），不命中返回Double.POSITIVE_INFINITY
+         */
+        double intersect(int item, double ox, double oy, double oz,
+                double dx, double dy, double dz, double maxT);
+    }
+
+    // ==================== 物体 ====================
+
+    /** 物体数 */
+    private int itemCount;
+
+    /** 物体包围盒：每个物体6个double (minX, minY, minZ, maxX, maxY, maxZ) */
+    private double[] itemBounds = new double[0];
+
+    /** 物体所在的叶子节点 */
+    private int[] itemLeaf = new int[0];
+
+    /** 叶子中的物体顺序（叶子引用其中的连续区间） */
+    private int[] order = new int[0];
+
+    // ==================== 节点 ====================
+
+    private int nodeCount;
+    private double[] nodeBounds = new double[0];
+    private int[] nodeLeft = new int[0]; // 左子节点，叶子为-1
+    private int[] nodeRight = new int[0]; // 右子节点
+    private int[] nodeParent = new int[0]; // 父节点，根为-1
+    private int[] nodeFirst = new int[0]; // 叶子：order中的起始位置
+    private int[] nodeCountItems = new int[0]; // 叶子：物体数
+
+    /** 遍历用的栈 */
+    private int[] stack = new int[64];
+    private double[] stackT = new double[64];
+
+    // ==================== 构建 ====================
+
+    /**
+     * 用一组包围盒构建（或重建）整棵树
+     *
+     * @param bounds 每个物体6个double (minX, minY, minZ, maxX, maxY, maxZ)
+     * @param count  物体数
+     */
+    public void build(double[] bounds, int count) {
+        itemCount = count;
+        if (itemBounds.length < count * 6) {
+            itemBounds = new double[count * 6];
+            itemLeaf = new int[count];
+            order = new int[count];
+        }
+        System.arraycopy(bounds, 0, itemBounds, 0, count * 6);
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+
+        int maxNodes = Math.max(1, 2 * count - 1);
+        if (nodeLeft.length < maxNodes) {
+            nodeBounds = new double[maxNodes * 6];
+            nodeLeft = new int[maxNodes];
+            nodeRight = new int[maxNodes];
+            nodeParent = new int[maxNodes];
+            nodeFirst = new int[maxNodes];
+            nodeCountItems = new int[maxNodes];
+        }
+
+        nodeCount = 0;
+        if (count > 0) {
+            buildNode(0, count, -1);
+        }
+    }
+
+    /**
+     * 递归构建 order[first, first+count) 上的子树
+     *
+     * @return 节点下标
+     */
+    private int buildNode(int first, int count, int parent) {
+        int node = nodeCount++;
+        nodeParent[node] = parent;
+        nodeLeft[node] = -1;
+        nodeRight[node] = -1;
+        nodeFirst[node] = first;
+        nodeCountItems[node] = count;
+        computeLeafBounds(node);
+
+        if (count <= MAX_LEAF_SIZE) {
+            markLeaf(node);
+            return node;
+        }
+
+        // ========== 物体中心的包围盒 ==========
+        double cMinX = Double.POSITIVE_INFINITY, cMinY = cMinX, cMinZ = cMinX;
+        double cMaxX = Double.NEGATIVE_INFINITY, cMaxY = cMaxX, cMaxZ = cMaxX;
+        for (int i = first; i < first + count; i++) {
+            int o = order[i] * 6;
+            double cx = (itemBounds[o] + itemBounds[o + 3]) * 0.5;
+            double cy = (itemBounds[o + 1] + itemBounds[o + 4]) * 0.5;
+            double cz = (itemBounds[o + 2] + itemBounds[o + 5]) * 0.5;
+            cMinX = Math.min(cMinX, cx);
+            cMinY = Math.min(cMinY, cy);
+            cMinZ = Math.min(cMinZ, cz);
+            cMaxX = Math.max(cMaxX, cx);
+            cMaxY = Math.max(cMaxY, cy);
+            cMaxZ = Math.max(cMaxZ, cz);
+        }
+        double[] cMin = { cMinX, cMinY, cMinZ };
+        double[] cExt = { cMaxX - cMinX, cMaxY - cMinY, cMaxZ - cMinZ };
+
+        // ========== 分桶SAH：每个轴试BIN_COUNT-1个划分位置 ==========
+        int bestAxis = -1, bestSplit = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        int[] binCounts = new int[BIN_COUNT];
+        double[] binBounds = new double[BIN_COUNT * 6];
+        double[] rightArea = new double[BIN_COUNT];
+        int[] rightCount = new int[BIN_COUNT];
+
+        for (int axis = 0; axis < 3; axis++) {
+            if (cExt[axis] <= 0) {
+                continue; // 所有中心在这个轴上重合，无法划分
+            }
+            Arrays.fill(binCounts, 0);
+            for (int b = 0; b < BIN_COUNT; b++) {
+                setEmpty(binBounds, b * 6);
+            }
+            double scale = BIN_COUNT / cExt[axis];
+            for (int i = first; i < first + count; i++) {
+                int o = order[i] * 6;
+                int b = binOf(o, axis, cMin[axis], scale);
+                binCounts[b]++;
+                grow(binBounds, b * 6, itemBounds, o);
+            }
+
+            // 从右往左累积：右侧各划分位置的面积和数量
+            double[] acc = new double[6];
+            setEmpty(acc, 0);
+            int accCount = 0;
+            for (int b = BIN_COUNT - 1; b > 0; b--) {
+                grow(acc, 0, binBounds, b * 6);
+                accCount += binCounts[b];
+                rightArea[b] = area(acc, 0);
+                rightCount[b] = accCount;
+            }
+
+            // 从左往右扫描：划分在桶b之前（左边是[0, b)）
+            setEmpty(acc, 0);
+            accCount = 0;
+            for (int b = 1; b < BIN_COUNT; b++) {
+                grow(acc, 0, binBounds, (b - 1) * 6);
+                accCount += binCounts[b - 1];
+                if (accCount == 0 || rightCount[b] == 0) {
+                    continue;
+                }
+                double cost = area(acc, 0) * accCount + rightArea[b] * rightCount[b];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestSplit = b;
+                }
+            }
+        }
+
+        // ========== 划分 ==========
+        int mid;
+        if (bestAxis < 0) {
+            // 中心完全重合：对半分
+            mid = first + count / 2;
+        } else {
+            double scale = BIN_COUNT / cExt[bestAxis];
+            int i = first, j = first + count - 1;
+            while (i <= j) {
+                if (binOf(order[i] * 6, bestAxis, cMin[bestAxis], scale) < bestSplit) {
+                    i++;
+                } else {
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                    j--;
+                }
+            }
+            mid = i;
+            if (mid == first || mid == first + count) {
+                mid = first + count / 2;
+            }
+        }
+
+        int left = buildNode(first, mid - first, node);
+        int right = buildNode(mid, first + count - mid, node);
+        nodeLeft[node] = left;
+        nodeRight[node] = right;
+        nodeCountItems[node] = 0;
+        return node;
+    }
+
+    private int binOf(int itemOffset, int axis, double min, double scale) {
+        double c = (itemBounds[itemOffset + axis] + itemBounds[itemOffset + 3 + axis]) * 0.5;
+        int b = (int) ((c - min) * scale);
+        return Math.min(BIN_COUNT - 1, Math.max(0, b));
+    }
+
+    private void markLeaf(int node) {
+        for (int i = nodeFirst[node]; i < nodeFirst[node] + nodeCountItems[node]; i++) {
+            itemLeaf[order[i]] = node;
+        }
+    }
+
+    // ==================== 重新拟合 ====================
+
+    /**
+     * 更新一个物体的包围盒，并自底向上修正祖先节点的包围盒
+     * 某个祖先的包围盒没有变化时停止
+     *
+     * @param item 物体编号
+     */
+    public void updateItem(int item, double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ) {
+        int o = item * 6;
+        itemBounds[o] = minX;
+        itemBounds[o + 1] = minY;
+        itemBounds[o + 2] = minZ;
+        itemBounds[o + 3] = maxX;
+        itemBounds[o + 4] = maxY;
+        itemBounds[o + 5] = maxZ;
+
+        int node = itemLeaf[item];
+        computeLeafBounds(node);
+        for (int p = nodeParent[node]; p >= 0; p = nodeParent[p]) {
+            if (!refitInner(p)) {
+                break;
+            }
+        }
+    }
+
+    private void computeLeafBounds(int node) {
+        int o = node * 6;
+        setEmpty(nodeBounds, o);
+        for (int i = nodeFirst[node]; i < nodeFirst[node] + nodeCountItems[node]; i++) {
+            grow(nodeBounds, o, itemBounds, order[i] * 6);
+        }
+    }
+
+    /**
+     * 用两个子节点重算内部节点的包围盒
+     *
+     * @return 包围盒是否有变化
+     */
+    private boolean refitInner(int node) {
+        int o = node * 6;
+        int l = nodeLeft[node] * 6, r = nodeRight[node] * 6;
+        boolean changed = false;
+        for (int k = 0; k < 3; k++) {
+            double min = Math.min(nodeBounds[l + k], nodeBounds[r + k]);
+            double max = Math.max(nodeBounds[l + 3 + k], nodeBounds[r + 3 + k]);
+            if (min != nodeBounds[o + k] || max != nodeBounds[o + 3 + k]) {
+                nodeBounds[o + k] = min;
+                nodeBounds[o + 3 + k] = max;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // ==================== 查询 ====================
+
+    public int size() {
+        return itemCount;
+    }
+
+    /**
+     * 遍历所有通过过滤器的物体
+     * 过滤器依次作用于节点包围盒和物体包围盒，返回false的子树整体跳过
+     *
+     * @param filter  包围盒过滤器
+     * @param visitor 接收通过的物体编号
+     */
+    public void query(BoxFilter filter, IntConsumer visitor) {
+        if (itemCount == 0) {
+            return;
+        }
+        int sp = 0;
+        stack[sp++] = 0;
+        while (sp > 0) {
+            int node = stack[--sp];
+            int o = node * 6;
+            if (!filter.test(nodeBounds[o], nodeBounds[o + 1], nodeBounds[o + 2],
+                    nodeBounds[o + 3], nodeBounds[o + 4], nodeBounds[o + 5])) {
+                continue;
+            }
+            if (nodeLeft[node] < 0) {
+                for (int i = nodeFirst[node]; i < nodeFirst[node] + nodeCountItems[node]; i++) {
+                    int item = order[i], io = item * 6;
+                    if (filter.test(itemBounds[io], itemBounds[io + 1], itemBounds[io + 2],
+                            itemBounds[io + 3], itemBounds[io + 4], itemBounds[io + 5])) {
+                        visitor.accept(item);
+                    }
+                }
+            } else {
+                sp = push(sp, nodeLeft[node], 0);
+                sp = push(sp, nodeRight[node], 0);
+            }
+        }
+    }
+
+    /**
+     * 视锥剔除：遍历包围盒与视锥体相交的物体
+     */
+    public void queryFrustum(Frustum frustum, IntConsumer visitor) {
+        query(frustum::intersectsBox, visitor);
+    }
+
+    /**
+     * 射线拾取：返回最近的命中物体
+     * 节点按射线进入距离由近到远访问，比当前最近命中更远的节点直接跳过
+     *
+     * @param ox   射线起点
+     * @param dx   射线方向（不必归一化，t按这个方向的长度计）
+     * @param maxT 最远距离
+     * @param test 物体的精确求交
+     * @param tOut 命中时写入tOut[0]
+     * @return 物体编号，没有命中返回-1
+     */
+    public int raycast(double ox, double oy, double oz, double dx, double dy, double dz,
+            double maxT, RayTest test, double[] tOut) {
+        if (itemCount == 0) {
+            return -1;
+        }
+        double invX = 1.0 / dx, invY = 1.0 / dy, invZ = 1.0 / dz;
+        int hit = -1;
+        double best = maxT;
+
+        int sp = 0;
+        double t0 = slab(0, ox, oy, oz, invX, invY, invZ, best);
+        if (t0 == Double.POSITIVE_INFINITY) {
+            return -1;
+        }
+        sp = push(sp, 0, t0);
+        while (sp > 0) {
+            sp--;
+            int node = stack[sp];
+            if (stackT[sp] > best) {
+                continue; // 已经有更近的命中
+            }
+            if (nodeLeft[node] < 0) {
+                for (int i = nodeFirst[node]; i < nodeFirst[node] + nodeCountItems[node]; i++) {
+                    int item = order[i];
+                    double t = test.intersect(item, ox, oy, oz, dx, dy, dz, best);
+                    if (t < best) {
+                        best = t;
+                        hit = item;
+                    }
+                }
+            } else {
+                int l = nodeLeft[node], r = nodeRight[node];
+                double tl = slab(l, ox, oy, oz, invX, invY, invZ, best);
+                double tr = slab(r, ox, oy, oz, invX, invY, invZ, best);
+                // 先压远的，后压近的：近的先出栈
+                if (tl <= tr) {
+                    if (tr != Double.POSITIVE_INFINITY) sp = push(sp, r, tr);
+                    if (tl != Double.POSITIVE_INFINITY) sp = push(sp, l, tl);
+                } else {
+                    if (tl != Double.POSITIVE_INFINITY) sp = push(sp, l, tl);
+                    if (tr != Double.POSITIVE_INFINITY) sp = push(sp, r, tr);
+                }
+            }
+        }
+        if (hit >= 0 && tOut != null) {
+            tOut[0] = best;
+        }
+        return hit;
+    }
+
+    /**
+     * 射线与节点包围盒的slab求交
+     *
+     * @return 进入距离，不相交返回Double.POSITIVE_INFINITY
+     */
+    private double slab(int node, double ox, double oy, double oz,
+            double invX, double invY, double invZ, double maxT) {
+        int o = node * 6;
+        double tx1 = (nodeBounds[o] - ox) * invX, tx2 = (nodeBounds[o + 3] - ox) * invX;
+        double ty1 = (nodeBounds[o + 1] - oy) * invY, ty2 = (nodeBounds[o + 4] - oy) * invY;
+        double tz1 = (nodeBounds[o + 2] - oz) * invZ, tz2 = (nodeBounds[o + 5] - oz) * invZ;
+        double tmin = Math.max(Math.max(Math.min(tx1, tx2), Math.min(ty1, ty2)), Math.max(Math.min(tz1, tz2), 0));
+        double tmax = Math.min(Math.min(Math.max(tx1, tx2), Math.max(ty1, ty2)), Math.min(Math.max(tz1, tz2), maxT));
+        return tmin <= tmax ? tmin : Double.POSITIVE_INFINITY;
+    }
+
+    private int push(int sp, int node, double t) {
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, sp * 2);
+            stackT = Arrays.copyOf(stackT, sp * 2);
+        }
+        stack[sp] = node;
+        stackT[sp] = t;
+        return sp + 1;
+    }
+
+    // ==================== 包围盒工具 ====================
+
+    private static void setEmpty(double[] b, int o) {
+        b[o] = b[o + 1] = b[o + 2] = Double.POSITIVE_INFINITY;
+        b[o + 3] = b[o + 4] = b[o + 5] = Double.NEGATIVE_INFINITY;
+    }
+
+    private static void grow(double[] b, int o, double[] src, int so) {
+        b[o] = Math.min(b[o], src[so]);
+        b[o + 1] = Math.min(b[o + 1], src[so + 1]);
+        b[o + 2] = Math.min(b[o + 2], src[so + 2]);
+        b[o + 3] = Math.max(b[o + 3], src[so + 3]);
+        b[o + 4] = Math.max(b[o + 4], src[so + 4]);
+        b[o + 5] = Math.max(b[o + 5], src[so + 5]);
+    }
+
+    private static double area(double[] b, int o) {
+        double ex = b[o + 3] - b[o], ey = b[o + 4] - b[o + 1], ez = b[o + 5] - b[o + 2];
+        if (ex < 0) {
+            return 0; // 空包围盒
+        }
+        return 2 * (ex * ey + ey * ez + ez * ex);
+    }
+}
@@ -0,0 +1,352 @@
+package com.graphics;
+
+import com.graphics.Scene3DPanel.AntiAliasMode;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ====================================================================
+ * BatchExporter.java - 批量导出动画帧（命令行）
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 不打开窗口，用SceneRenderer离屏渲染N帧，保存为编号的PNG文件：
+ * - ORBIT: 相机绕机器人转一整圈（环绕拍摄）
+ * - WALK: 机器人的行走动画（AnimationClip.WALK）
+ * - WAVE: 机器人的挥手动画（AnimationClip.WAVE）
+ * - CLIP: 从文件加载的关键帧动画（--clip 动画.rkf，见KeyframeClip）
+ * 动画按帧率换算出每一帧的时间，直接对片段取样，结果与渲染顺序无关。
+ * 场景是一个标准机器人，或designs目录下的一个设计（见ShapeDesignerDialog.loadDesign）。
+ *
+ * 【用法】
+ *   java -Djava.awt.headless=true -cp target/classes com.graphics.BatchExporter \
+ *        --motion orbit --frames 120 --size 1280x720 --design designs/设计1.json --out frames
+ * 输出 frames/frame_0000.png, frame_0001.png, ...
+ *
+ * 【并行】
+ * 帧与帧之间互不依赖：
+ * 1. 渲染线程（默认每个核一个）各有一个SceneRenderer和一份场景，
+ *    从共享的计数器领取帧号，渲染好的图像放进有界队列；
+ *    每个渲染器的分块光栅化用自己的小线程池（核数 / 渲染线程数），
+ *    不都挤在公共池上，总线程数不超过核数
+ * 2. 编码线程从队列取出图像写PNG（压缩比渲染慢时不会拖住渲染线程）
+ * 队列满时渲染线程等待，内存中的图像数量有上限。
+ * 任何一帧出错后其余线程不再领取新帧，export()抛出第一个错误。
+ *
+ * @author Computer Graphics Course
+ */
+public class BatchExporter {
+
+    /**
+     * 导出的运动
+     * - ORBIT: 相机环绕
+     * - WALK: 行走动画
+     * - WAVE: 挥手动画
+     * - CLIP: 自定义片段（clip）
+     */
+    public enum Motion {
+        ORBIT, WALK, WAVE, CLIP
+    }
+
+    /** 每个编码线程在队列中最多排队的帧数 */
+    private static final int QUEUE_FRAMES_PER_ENCODER = 2;
+
+    /** 环绕相机看向的点（机器人身体中部） */
+    private static final double ORBIT_TARGET_Y = 0;
+
+    // ==================== 参数 ====================
+
+    /** 运动方式 */
+    public Motion motion = Motion.ORBIT;
+
+    /** 自定义片段（motion为CLIP时播放） */
+    public AnimationClip clip;
+
+    /** 帧数（0表示按运动方式取默认值：环绕120帧，动画播放完整个片段） */
+    public int frames;
+
+    /** 动画的帧率（每秒帧数） */
+    public double fps = 30;
+
+    /** 帧宽度和高度（像素） */
+    public int width = 640, height = 480;
+
+    /** 设计文件（null表示标准机器人） */
+    public File design;
+
+    /** 输出目录 */
+    public File outputDir = new File("frames");
+
+    /** 渲染线程数和编码线程数 */
+    public int renderThreads = Runtime.getRuntime().availableProcessors();
+    public int encoderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    /** 抗锯齿模式 */
+    public AntiAliasMode antiAliasMode = AntiAliasMode.FXAA;
+
+    /** 环绕相机的水平半径和高度 */
+    public double orbitRadius = 12, orbitHeight = 3;
+
+    // ==================== 导出 ====================
+
+    /** 渲染好、等待编码的一帧（index < 0表示结束） */
+    private static final class Frame {
+        final int index;
+        final BufferedImage image;
+
+        Frame(int index, BufferedImage image) {
+            this.index = index;
+            this.image = image;
+        }
+    }
+
+    /**
+     * 实际导出的帧数
+     */
+    public int frameCount() {
+        if (frames > 0) {
+            return frames;
+        }
+        AnimationClip clip = clip();
+        // 最后一帧正好是片段结束时的静止姿态
+        return clip != null ? (int) Math.round(clip.duration * fps) + 1 : 120;
+    }
+
+    /**
+     * 动画片段（环绕时为null）
+     */
+    private AnimationClip clip() {
+        switch (motion) {
+            case WALK:
+                return AnimationClip.WALK;
+            case WAVE:
+                return AnimationClip.WAVE;
+            case CLIP:
+                return clip;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 渲染全部帧并写入outputDir（阻塞到全部写完）
+     *
+     * @return 写出的帧数
+     * @throws IllegalArgumentException 参数无效（尺寸、帧率、线程数不为正，帧数为负，或CLIP没有片段）
+     * @throws IOException 读取设计、渲染或写文件失败
+     */
+    public int export() throws IOException, InterruptedException {
+        validate();
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("无法创建输出目录: " + outputDir);
+        }
+        int count = frameCount();
+        String pattern = "frame_%0" + Math.max(4, String.valueOf(count - 1).length()) + "d.png";
+
+        AtomicInteger nextFrame = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(encoderThreads * QUEUE_FRAMES_PER_ENCODER);
+
+        // 编码线程：出错（包括Error）后继续取走队列里的帧（丢弃），保证渲染线程不会一直等待
+        List<Thread> encoders = new ArrayList<>();
+        for (int i = 0; i < encoderThreads; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    for (Frame f = queue.take(); f.index >= 0; f = queue.take()) {
+                        if (error.get() != null) {
+                            continue;
+                        }
+                        try {
+                            ImageIO.write(f.image, "png", new File(outputDir, String.format(pattern, f.index)));
+                            written.incrementAndGet();
+                        } catch (Exception | Error e) {
+                            fail(error, nextFrame, count, e);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "BatchExport-Encode-" + i);
+            encoders.add(t);
+            t.start();
+        }
+
+        // 渲染线程：各自的渲染器和场景，领取帧号直到领完
+        List<Thread> renderers = new ArrayList<>();
+        int poolSize = Math.max(1, Runtime.getRuntime().availableProcessors() / renderThreads);
+        for (int i = 0; i < renderThreads; i++) {
+            Thread t = new Thread(() -> {
+                ForkJoinPool pool = new ForkJoinPool(poolSize);
+                try {
+                    SceneRenderer renderer = new SceneRenderer(pool);
+                    Robot robot = design != null ? ShapeDesignerDialog.loadDesign(design) : new Robot();
+                    renderer.addRobot(robot);
+                    for (int f = nextFrame.getAndIncrement(); f < count; f = nextFrame.getAndIncrement()) {
+                        queue.put(new Frame(f, renderer.render(prepareFrame(robot, f, count))));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception | Error e) {
+                    fail(error, nextFrame, count, e);
+                } finally {
+                    pool.shutdown();
+                }
+            }, "BatchExport-Render-" + i);
+            renderers.add(t);
+            t.start();
+        }
+
+        for (Thread t : renderers) {
+            t.join();
+        }
+        for (int i = 0; i < encoderThreads; i++) {
+            queue.put(new Frame(-1, null));
+        }
+        for (Thread t : encoders) {
+            t.join();
+        }
+
+        Throwable e = error.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e != null) {
+            throw new IOException(e.toString(), e);
+        }
+        return written.get();
+    }
+
+    /**
+     * 检查参数（命令行和直接调用export()共用）
+     */
+    private void validate() {
+        if (width <= 0 || height <= 0 || frames < 0 || !(fps > 0) || renderThreads <= 0 || encoderThreads <= 0) {
+            throw new IllegalArgumentException("尺寸、帧数、帧率和线程数必须为正");
+        }
+        if (motion == Motion.CLIP && clip == null) {
+            throw new IllegalArgumentException("--motion clip 需要 --clip 指定动画文件");
+        }
+    }
+
+    /**
+     * 记录第一个错误，并让渲染线程不再领取新帧
+     */
+    private static void fail(AtomicReference<Throwable> error, AtomicInteger nextFrame, int count, Throwable e) {
+        error.compareAndSet(null, e);
+        nextFrame.set(count);
+    }
+
+    /**
+     * 摆好第frame帧的机器人和相机（渲染线程）
+     *
+     * @return 这一帧的状态快照
+     */
+    private RenderState prepareFrame(Robot robot, int frame, int count) {
+        RenderState s = RenderState.defaults(width, height);
+        s.antiAliasMode = antiAliasMode;
+        AnimationClip clip = clip();
+        if (clip == null) {
+            double angle = 2 * Math.PI * frame / count;
+            s.lookAt(orbitRadius * Math.sin(angle), orbitHeight, orbitRadius * Math.cos(angle),
+                    0, ORBIT_TARGET_Y, 0);
+            s.updateLighting(Collections.emptyList());
+        } else {
+            // 片段取样（行走的位移在MOVE_Z通道里，机器人本身留在原点）
+            double[] pose = new double[Robot.CHANNELS];
+            clip.sample(frame / fps, pose);
+            robot.setPose(pose);
+        }
+        return s;
+    }
+
+    // ==================== 命令行 ====================
+
+    private static final String USAGE = "用法: BatchExporter [--motion orbit|walk|wave] [--clip 动画.rkf] [--frames N] [--fps N]\n"
+            + "                     [--size WxH] [--design 设计文件.json] [--out 目录] [--threads N] [--encoders N]\n"
+            + "                     [--aa off|fxaa|ssaa_2x|ssaa_4x]";
+
+    public static void main(String[] args) {
+        BatchExporter exporter = new BatchExporter();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("缺少参数值: " + option);
+                }
+                String value = args[++i];
+                switch (option) {
+                    case "--motion":
+                        exporter.motion = Motion.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--clip":
+                        exporter.clip = KeyframeClip.load(new File(value)).toClip();
+                        exporter.motion = Motion.CLIP;
+                        break;
+                    case "--frames":
+                        exporter.frames = Integer.parseInt(value);
+                        break;
+                    case "--fps":
+                        exporter.fps = Double.parseDouble(value);
+                        break;
+                    case "--size":
+                        String[] size = value.toLowerCase(Locale.ROOT).split("x");
+                        exporter.width = Integer.parseInt(size[0]);
+                        exporter.height = Integer.parseInt(size[1]);
+                        break;
+                    case "--design":
+                        exporter.design = new File(value);
+                        break;
+                    case "--out":
+                        exporter.outputDir = new File(value);
+                        break;
+                    case "--threads":
+                        exporter.renderThreads = Integer.parseInt(value);
+                        break;
+                    case "--encoders":
+                        exporter.encoderThreads = Integer.parseInt(value);
+                        break;
+                    case "--aa":
+                        exporter.antiAliasMode = AntiAliasMode.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("未知选项: " + option);
+                }
+            }
+            exporter.validate();
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        } catch (IOException e) {
+            System.err.println("读取动画失败: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            int written = exporter.export();
+            System.out.printf("已导出 %d 帧到 %s（%.1f 秒）%n", written, exporter.outputDir,
+                    (System.nanoTime() - start) / 1e9);
+        } catch (IOException e) {
+            System.err.println("导出失败: " + e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+}
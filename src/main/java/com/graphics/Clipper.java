@@ -0,0 +1,184 @@
+package com.graphics;
+
+/**
+ * ====================================================================
+ * Clipper.java - 齐次裁剪空间的多边形裁剪
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 在透视除法之前，把多边形裁剪到规范视见体内：
+ * -w ≤ x ≤ w,  -w ≤ y ≤ w,  -w ≤ z ≤ w
+ * 在齐次空间裁剪有两个好处：
+ * 1. 相机后方的点(w < 0)会被近平面去掉，透视除法不会把它们翻到屏幕前面
+ * 2. 平面方程都是线性的，交点可以直接线性插值（包括颜色等属性）
+ *
+ * 【区域编码（Outcode）】
+ * 与2D的Cohen-Sutherland相同，每个平面对应一位：
+ * - 三个顶点编码的AND不为0：都在同一平面外侧，整体丢弃（平凡拒绝）
+ * - 三个顶点编码的OR为0：都在视见体内，不用裁剪（平凡接受）
+ * - 其余情况才真正裁剪，而且只对OR中出现的平面裁剪
+ *
+ * 【Sutherland-Hodgman算法】
+ * 依次用每个平面裁剪多边形，对每条边(S→E)：
+ * - S内E内：输出E
+ * - S内E外：输出交点
+ * - S外E内：输出交点和E
+ * - S外E外：不输出
+ * 三角形被六个平面裁剪后最多有9个顶点。
+ *
+ * 【顶点格式】
+ * 每个顶点stride个double：前4个是裁剪坐标(x, y, z, w)，
+ * 后面是任意需要插值的属性（颜色、法向量等），裁剪时一起线性插值。
+ *
+ * @author Computer Graphics Course
+ */
+public class Clipper {
+
+    // ==================== 区域编码 ====================
+
+    public static final int LEFT = 1; // x < -w
+    public static final int RIGHT = 2; // x > w
+    public static final int BOTTOM = 4; // y < -w
+    public static final int TOP = 8; // y > w
+    public static final int NEAR = 16; // z < -w
+    public static final int FAR = 32; // z > w
+
+    /** 三角形被六个平面裁剪后的最大顶点数 */
+    public static final int MAX_VERTICES = 9;
+
+    /** 每个顶点的double个数（至少4） */
+    public final int stride;
+
+    /** 两个交替使用的顶点缓冲区 */
+    private double[] bufferA, bufferB;
+
+    /** 最近一次裁剪结果所在的缓冲区 */
+    private double[] output;
+
+    /**
+     * @param stride 每个顶点的double个数，前4个是(x, y, z, w)
+     */
+    public Clipper(int stride) {
+        if (stride < 4) {
+            throw new IllegalArgumentException("stride must be at least 4: " + stride);
+        }
+        this.stride = stride;
+        this.bufferA = new double[MAX_VERTICES * stride];
+        this.bufferB = new double[MAX_VERTICES * stride];
+        this.output = bufferA;
+    }
+
+    /**
+     * 计算裁剪坐标的区域编码
+     */
+    public static int outcode(double x, double y, double z, double w) {
+        int code = 0;
+        if (x < -w) code |= LEFT;
+        else if (x > w) code |= RIGHT;
+        if (y < -w) code |= BOTTOM;
+        else if (y > w) code |= TOP;
+        if (z < -w) code |= NEAR;
+        else if (z > w) code |= FAR;
+        return code;
+    }
+
+    /**
+     * 裁剪输入缓冲区（getInput()）中的多边形
+     *
+     * @param count  输入顶点数（最多3个，保证结果不超过MAX_VERTICES）
+     * @param planes 需要裁剪的平面（通常是各顶点编码的OR）
+     * @return 裁剪后的顶点数，小于3表示完全被裁掉；结果在getOutput()中
+     */
+    public int clip(int count, int planes) {
+        double[] in = bufferA, out = bufferB;
+        for (int plane = LEFT; plane <= FAR && count >= 3; plane <<= 1) {
+            if ((planes & plane) == 0) {
+                continue;
+            }
+            count = clipAgainst(plane, in, count, out);
+            double[] t = in;
+            in = out;
+            out = t;
+        }
+        output = in;
+        return count;
+    }
+
+    /**
+     * 输入缓冲区：调用clip()之前把顶点写到这里（每个顶点stride个double）
+     */
+    public double[] getInput() {
+        return bufferA;
+    }
+
+    /**
+     * 最近一次clip()的结果
+     */
+    public double[] getOutput() {
+        return output;
+    }
+
+    /**
+     * 用一个平面裁剪多边形
+     *
+     * @return 输出顶点数
+     */
+    private int clipAgainst(int plane, double[] in, int count, double[] out) {
+        int n = 0;
+        int s = (count - 1) * stride; // 从最后一个顶点开始，构成闭合多边形
+        double ds = distance(plane, in, s);
+
+        for (int i = 0; i < count; i++) {
+            int e = i * stride;
+            double de = distance(plane, in, e);
+
+            if (de >= 0) {
+                if (ds < 0) {
+                    // S外E内：输出交点
+                    lerp(in, s, e, ds / (ds - de), out, n++);
+                }
+                // E内：输出E
+                System.arraycopy(in, e, out, n++ * stride, stride);
+            } else if (ds >= 0) {
+                // S内E外：输出交点
+                lerp(in, s, e, ds / (ds - de), out, n++);
+            }
+
+            s = e;
+            ds = de;
+        }
+        return n;
+    }
+
+    /**
+     * 顶点到平面的有向距离（≥0在内侧）
+     * 平面 x = -w 对应 w + x ≥ 0，平面 x = w 对应 w - x ≥ 0，其余同理
+     */
+    private static double distance(int plane, double[] v, int o) {
+        double w = v[o + 3];
+        switch (plane) {
+            case LEFT:
+                return w + v[o];
+            case RIGHT:
+                return w - v[o];
+            case BOTTOM:
+                return w + v[o + 1];
+            case TOP:
+                return w - v[o + 1];
+            case NEAR:
+                return w + v[o + 2];
+            default:
+                return w - v[o + 2];
+        }
+    }
+
+    /**
+     * 在顶点a和b之间按t线性插值（所有分量），写入out的第index个顶点
+     */
+    private void lerp(double[] v, int a, int b, double t, double[] out, int index) {
+        int o = index * stride;
+        for (int k = 0; k < stride; k++) {
+            out[o + k] = v[a + k] + (v[b + k] - v[a + k]) * t;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.graphics;
+
+import java.util.Arrays;
+
+/**
+ * ====================================================================
+ * DepthPyramid.java - 层次深度缓冲（Hi-Z）遮挡测试
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 从深度缓冲建立一个逐级缩小的"最远深度"金字塔：
+ * - 第0层每个元素对应8×8像素，存这些像素中最远（最大）的深度
+ * - 之后每层把上一层的2×2取最大值，直到只剩1个元素
+ * 一个物体投影到屏幕后，如果它最近的深度都比覆盖区域里最远的深度还远，
+ * 它就被完全挡住了，可以不变换、不光栅化它的任何顶点。
+ *
+ * 【测试】
+ * 1. 把物体的包围盒8个角投影到屏幕，得到屏幕矩形和最近深度zMin
+ * 2. 选一层，使矩形在这一层最多覆盖4×4个元素
+ * 3. 所有覆盖元素的最远深度都 < zMin 时判定为被遮挡
+ * 只要有一个角在相机平面后方，就保守地判定为可见；
+ * 矩形超出屏幕的部分本来就看不见，裁掉后只测试屏幕内的部分。
+ *
+ * 【保守性】
+ * 金字塔里存的是最大值，测试只会把"可能看得见"的物体判为可见，
+ * 永远不会错误地剔除一个可见的物体（前提是深度缓冲里的都是真实的遮挡物）。
+ *
+ * @author Computer Graphics Course
+ */
+public class DepthPyramid {
+
+    /** 第0层每个元素覆盖的像素边长（2^3 = 8） */
+    private static final int BLOCK_SHIFT = 3;
+
+    /** 测试时在一层中最多检查的元素跨度 */
+    private static final int MAX_TEXEL_SPAN = 3;
+
+    /** 角点w小于这个值视为在相机平面上或后方 */
+    private static final double MIN_W = 1e-6;
+
+    /** 各层数据及尺寸 */
+    private float[][] levels = new float[0][];
+    private int[] levelWidth = new int[0], levelHeight = new int[0];
+    private int levelCount;
+
+    /** 屏幕尺寸 */
+    private int width, height;
+
+    /** 建立金字塔时的视图投影矩阵（测试时投影包围盒） */
+    private final double[] viewProj = new double[16];
+
+    /** 是否已经建立 */
+    private boolean valid;
+
+    /**
+     * 从深度缓冲建立金字塔
+     *
+     * @param depth    深度缓冲（NDC深度，未覆盖处为+∞）
+     * @param width    宽度
+     * @param height   高度
+     * @param viewProj 画这帧时使用的视图投影矩阵（复制保存）
+     */
+    public void build(float[] depth, int width, int height, double[] viewProj) {
+        this.width = width;
+        this.height = height;
+        System.arraycopy(viewProj, 0, this.viewProj, 0, 16);
+
+        // 计算层数并分配（尺寸不变时复用）
+        int w = (width + (1 << BLOCK_SHIFT) - 1) >> BLOCK_SHIFT;
+        int h = (height + (1 << BLOCK_SHIFT) - 1) >> BLOCK_SHIFT;
+        int count = 1;
+        for (int lw = w, lh = h; lw > 1 || lh > 1; lw = (lw + 1) >> 1, lh = (lh + 1) >> 1) {
+            count++;
+        }
+        if (levels.length < count) {
+            levels = new float[count][];
+            levelWidth = new int[count];
+            levelHeight = new int[count];
+        }
+        levelCount = count;
+        for (int l = 0; l < count; l++) {
+            levelWidth[l] = w;
+            levelHeight[l] = h;
+            if (levels[l] == null || levels[l].length < w * h) {
+                levels[l] = new float[w * h];
+            }
+            w = (w + 1) >> 1;
+            h = (h + 1) >> 1;
+        }
+
+        // 第0层：每个8×8块的最大深度
+        float[] base = levels[0];
+        int bw = levelWidth[0];
+        Arrays.fill(base, 0, bw * levelHeight[0], Float.NEGATIVE_INFINITY);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int out = (y >> BLOCK_SHIFT) * bw;
+            for (int x = 0; x < width; x++) {
+                float z = depth[row + x];
+                int o = out + (x >> BLOCK_SHIFT);
+                if (z > base[o]) {
+                    base[o] = z;
+                }
+            }
+        }
+
+        // 上面各层：2×2取最大（边缘处越界的元素忽略）
+        for (int l = 1; l < count; l++) {
+            float[] src = levels[l - 1], dst = levels[l];
+            int sw = levelWidth[l - 1], sh = levelHeight[l - 1];
+            int dw = levelWidth[l], dh = levelHeight[l];
+            for (int y = 0; y < dh; y++) {
+                int sy0 = y * 2, sy1 = Math.min(sh - 1, sy0 + 1);
+                for (int x = 0; x < dw; x++) {
+                    int sx0 = x * 2, sx1 = Math.min(sw - 1, sx0 + 1);
+                    float m = Math.max(
+                            Math.max(src[sy0 * sw + sx0], src[sy0 * sw + sx1]),
+                            Math.max(src[sy1 * sw + sx0], src[sy1 * sw + sx1]));
+                    dst[y * dw + x] = m;
+                }
+            }
+        }
+        valid = true;
+    }
+
+    /**
+     * 作废金字塔（之后的测试都返回"可见"）
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * 包围球是否被完全遮挡（按外接立方体测试）
+     */
+    public boolean isSphereOccluded(double x, double y, double z, double r) {
+        return isBoxOccluded(x - r, y - r, z - r, x + r, y + r, z + r);
+    }
+
+    /**
+     * 世界空间包围盒是否被完全遮挡
+     *
+     * @return true表示一定看不见；false表示可能看得见
+     */
+    public boolean isBoxOccluded(double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ) {
+        if (!valid) {
+            return false;
+        }
+
+        // ========== 投影8个角 ==========
+        double[] m = viewProj;
+        double sxMin = Double.POSITIVE_INFINITY, syMin = sxMin, zMin = sxMin;
+        double sxMax = Double.NEGATIVE_INFINITY, syMax = sxMax;
+        for (int c = 0; c < 8; c++) {
+            double x = (c & 1) == 0 ? minX : maxX;
+            double y = (c & 2) == 0 ? minY : maxY;
+            double z = (c & 4) == 0 ? minZ : maxZ;
+            double w = m[12] * x + m[13] * y + m[14] * z + m[15];
+            if (w < MIN_W) {
+                return false; // 跨过相机平面，投影不可靠
+            }
+            double inv = 1.0 / w;
+            double sx = ((m[0] * x + m[1] * y + m[2] * z + m[3]) * inv + 1) * width / 2;
+            double sy = (1 - (m[4] * x + m[5] * y + m[6] * z + m[7]) * inv) * height / 2;
+            double sz = (m[8] * x + m[9] * y + m[10] * z + m[11]) * inv;
+            sxMin = Math.min(sxMin, sx);
+            sxMax = Math.max(sxMax, sx);
+            syMin = Math.min(syMin, sy);
+            syMax = Math.max(syMax, sy);
+            zMin = Math.min(zMin, sz);
+        }
+
+        // ========== 屏幕矩形（裁到屏幕内，完全在屏幕外的交给视锥剔除） ==========
+        if (sxMax < 0 || syMax < 0 || sxMin >= width || syMin >= height) {
+            return false;
+        }
+        int tx0 = (int) Math.max(0, sxMin) >> BLOCK_SHIFT;
+        int ty0 = (int) Math.max(0, syMin) >> BLOCK_SHIFT;
+        int tx1 = (int) Math.min(width - 1, sxMax) >> BLOCK_SHIFT;
+        int ty1 = (int) Math.min(height - 1, syMax) >> BLOCK_SHIFT;
+
+        // ========== 选层：覆盖范围不超过4×4个元素 ==========
+        int level = 0;
+        while (level < levelCount - 1 && (tx1 - tx0 > MAX_TEXEL_SPAN || ty1 - ty0 > MAX_TEXEL_SPAN)) {
+            tx0 >>= 1;
+            tx1 >>= 1;
+            ty0 >>= 1;
+            ty1 >>= 1;
+            level++;
+        }
+
+        // ========== 比较：任何一个元素的最远深度不比zMin近，就可能可见 ==========
+        float[] data = levels[level];
+        int lw = levelWidth[level];
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                if (data[ty * lw + tx] >= zMin) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,142 @@
+package com.graphics;
+
+import java.util.Arrays;
+
+/**
+ * ====================================================================
+ * DepthSorter.java - 画家算法的帧间连贯深度排序
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 画家算法要把所有三角形从远到近排序。
+ * 排序键（深度）每帧只计算一次，存进float[]，排序只移动int下标，
+ * 不在比较函数里做任何矩阵运算。
+ *
+ * 【帧间连贯性】
+ * 相机每帧只移动一点点，上一帧的顺序几乎就是这一帧的顺序。
+ * 所以先拿上一帧的顺序做插入排序：几乎有序时接近O(n)。
+ * 三角形数量变了（物体进出视野）或者移动次数超过上限（相机大幅转动），
+ * 就改用基数排序，保证最坏也是O(n)。
+ *
+ * 【基数排序】
+ * float按位重新解释为int后，把负数的全部位、正数的符号位取反，
+ * 得到的无符号整数与原浮点数大小顺序一致，然后按11位一组做3趟LSD计数排序。
+ *
+ * @author Computer Graphics Course
+ */
+public class DepthSorter {
+
+    /** 插入排序允许的平均每个元素移动次数，超过就改用基数排序 */
+    private static final int MAX_SHIFTS_PER_ITEM = 4;
+
+    /** 基数排序每趟的位数及桶数 */
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX_SIZE = 1 << RADIX_BITS;
+
+    /** 当前顺序（下标数组），跨帧保留 */
+    private int[] order = new int[0];
+
+    /** 当前顺序对应的元素个数 */
+    private int count = -1;
+
+    /** 基数排序的临时数组 */
+    private int[] radixKeys = new int[0], scratchKeys = new int[0], scratchOrder = new int[0];
+    private final int[] histogram = new int[RADIX_SIZE];
+
+    /** 最近一次排序是否沿用了上一帧的顺序（调试、统计用） */
+    private boolean coherent;
+
+    /**
+     * 按键值从小到大排序下标 0..n-1
+     *
+     * @param keys 排序键（只读）
+     * @param n    元素个数
+     * @return 排好序的下标（内部数组，下次调用前有效）
+     */
+    public int[] sort(float[] keys, int n) {
+        coherent = n == count && insertionSort(keys, n);
+        if (!coherent) {
+            radixSort(keys, n);
+        }
+        count = n;
+        return order;
+    }
+
+    /**
+     * @return 最近一次排序是否只用插入排序完成
+     */
+    public boolean wasCoherent() {
+        return coherent;
+    }
+
+    /**
+     * 以上一帧的顺序为起点做插入排序
+     *
+     * @return false表示移动次数超限（order已被部分修改，需要重排）
+     */
+    private boolean insertionSort(float[] keys, int n) {
+        int[] a = order;
+        long budget = (long) n * MAX_SHIFTS_PER_ITEM;
+        for (int i = 1; i < n; i++) {
+            int item = a[i];
+            float key = keys[item];
+            int j = i - 1;
+            while (j >= 0 && keys[a[j]] > key) {
+                a[j + 1] = a[j];
+                j--;
+                if (--budget < 0) {
+                    a[j + 1] = item;
+                    return false;
+                }
+            }
+            a[j + 1] = item;
+        }
+        return true;
+    }
+
+    /**
+     * LSD基数排序（稳定，3趟×11位）
+     */
+    private void radixSort(float[] keys, int n) {
+        if (order.length < n) {
+            int cap = Math.max(n, order.length * 2);
+            order = new int[cap];
+            radixKeys = new int[cap];
+            scratchKeys = new int[cap];
+            scratchOrder = new int[cap];
+        }
+        int[] src = order, srcKeys = radixKeys;
+        int[] dst = scratchOrder, dstKeys = scratchKeys;
+        for (int i = 0; i < n; i++) {
+            int bits = Float.floatToIntBits(keys[i]);
+            srcKeys[i] = bits ^ ((bits >> 31) | 0x80000000); // 转成按无符号比较有序的整数
+            src[i] = i;
+        }
+
+        for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+            Arrays.fill(histogram, 0);
+            for (int i = 0; i < n; i++) {
+                histogram[(srcKeys[i] >>> shift) & (RADIX_SIZE - 1)]++;
+            }
+            int sum = 0;
+            for (int b = 0; b < RADIX_SIZE; b++) {
+                int c = histogram[b];
+                histogram[b] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int pos = histogram[(srcKeys[i] >>> shift) & (RADIX_SIZE - 1)]++;
+                dst[pos] = src[i];
+                dstKeys[pos] = srcKeys[i];
+            }
+            int[] t = src; src = dst; dst = t;
+            t = srcKeys; srcKeys = dstKeys; dstKeys = t;
+        }
+
+        // 3趟之后结果在scratch里，交换数组所有权
+        order = src;
+        radixKeys = srcKeys;
+        scratchOrder = dst;
+        scratchKeys = dstKeys;
+    }
+}
@@ -0,0 +1,142 @@
+package com.graphics;
+
+/**
+ * ====================================================================
+ * Frustum.java - 视锥体（用于视锥剔除）
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 在做任何逐多边形的工作之前，先用包围球判断整个物体是否可能可见。
+ * 物体完全在视锥体外时直接跳过：不变换顶点、不做背面剔除、不算光照。
+ *
+ * 【平面提取（Gribb-Hartmann方法）】
+ * 设 M = 投影 × 视图，行向量为 r0..r3，裁剪坐标 c = M × v。
+ * 视见体条件 -w ≤ x ≤ w 等价于 (r3 + r0)·v ≥ 0 和 (r3 - r0)·v ≥ 0，
+ * 六个平面依次是：
+ * - 左 r3 + r0,  右 r3 - r0
+ * - 下 r3 + r1,  上 r3 - r1
+ * - 近 r3 + r2,  远 r3 - r2
+ * 平面法向量归一化后，a·x + b·y + c·z + d 就是点到平面的有向距离。
+ *
+ * 【包围球测试】
+ * 球心到某个平面的距离 < -半径：球完全在该平面外侧，物体不可见。
+ * 这是保守测试：通过测试的物体不一定真的可见，但被剔除的一定不可见。
+ *
+ * 【投影大小】
+ * 给定视口高度后还能估计包围球投影到屏幕上的半径（像素），用于选择细节层次：
+ * 半径 ≈ r × |r1的前三个分量| × 高度/2 / w，w = r3·球心（正交投影时w恒为1）。
+ *
+ * @author Computer Graphics Course
+ */
+public class Frustum {
+
+    /** 六个平面，每个(a, b, c, d)，法向量指向视锥体内部 */
+    private final double[] planes = new double[24];
+
+    /** 矩阵第4行（求w）及每单位世界长度对应的像素数（未设置视口时为0） */
+    private double w0, w1, w2, w3;
+    private double pixelScale;
+
+    /**
+     * 从扁平的 投影 × 视图 矩阵提取六个平面
+     *
+     * @param viewProj 扁平矩阵（行主序）
+     * @return this
+     */
+    public Frustum set(double[] viewProj) {
+        for (int p = 0; p < 6; p++) {
+            int row = p / 2; // 0:x 1:y 2:z
+            double sign = (p % 2 == 0) ? 1 : -1; // 偶数：r3 + r，奇数：r3 - r
+            double a = viewProj[12] + sign * viewProj[row * 4];
+            double b = viewProj[13] + sign * viewProj[row * 4 + 1];
+            double c = viewProj[14] + sign * viewProj[row * 4 + 2];
+            double d = viewProj[15] + sign * viewProj[row * 4 + 3];
+            double len = Math.sqrt(a * a + b * b + c * c);
+            if (len > 0) {
+                a /= len;
+                b /= len;
+                c /= len;
+                d /= len;
+            }
+            int o = p * 4;
+            planes[o] = a;
+            planes[o + 1] = b;
+            planes[o + 2] = c;
+            planes[o + 3] = d;
+        }
+        w0 = viewProj[12];
+        w1 = viewProj[13];
+        w2 = viewProj[14];
+        w3 = viewProj[15];
+        pixelScale = 0;
+        return this;
+    }
+
+    /**
+     * 提取六个平面，并记录视口高度用于估计投影大小
+     *
+     * @param viewProj       扁平矩阵（行主序）
+     * @param viewportHeight 视口高度（像素）
+     * @return this
+     */
+    public Frustum set(double[] viewProj, int viewportHeight) {
+        set(viewProj);
+        double rowY = Math.sqrt(viewProj[4] * viewProj[4] + viewProj[5] * viewProj[5] + viewProj[6] * viewProj[6]);
+        pixelScale = rowY * viewportHeight / 2;
+        return this;
+    }
+
+    /**
+     * 包围球投影到屏幕上的半径（像素）
+     * 没有视口信息时返回0；球心在相机平面上或后方（相机在球内）时返回+∞
+     */
+    public double projectedRadius(double x, double y, double z, double radius) {
+        if (pixelScale == 0) {
+            return 0;
+        }
+        double w = w0 * x + w1 * y + w2 * z + w3;
+        if (w <= 1e-6) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return radius * pixelScale / w;
+    }
+
+    /**
+     * 包围球是否与视锥体相交（或在其内部）
+     *
+     * @param x      球心X（世界坐标）
+     * @param y      球心Y
+     * @param z      球心Z
+     * @param radius 半径
+     * @return false表示完全在视锥体外
+     */
+    public boolean intersectsSphere(double x, double y, double z, double radius) {
+        for (int o = 0; o < 24; o += 4) {
+            if (planes[o] * x + planes[o + 1] * y + planes[o + 2] * z + planes[o + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 轴对齐包围盒是否与视锥体相交（或在其内部）
+     * 对每个平面只测试沿法向量最远的那个角点（p-vertex）：
+     * 它都在外侧，整个盒子就在外侧
+     *
+     * @return false表示完全在视锥体外
+     */
+    public boolean intersectsBox(double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ) {
+        for (int o = 0; o < 24; o += 4) {
+            double a = planes[o], b = planes[o + 1], c = planes[o + 2];
+            double px = a >= 0 ? maxX : minX;
+            double py = b >= 0 ? maxY : minY;
+            double pz = c >= 0 ? maxZ : minZ;
+            if (a * px + b * py + c * pz + planes[o + 3] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
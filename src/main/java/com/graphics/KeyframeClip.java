@@ -0,0 +1,523 @@
+package com.graphics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * ====================================================================
+ * KeyframeClip.java - 关键帧动画片段（二进制文件）
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 用关键帧曲线描述的动画：每条曲线驱动一个通道（头、手臂、腿的关节角度，
+ * 或根运动MOVE_Z），在关键帧之间插值。长的编舞不必写成代码，
+ * 可以从文件加载，toClip()得到的AnimationClip和内置片段一样播放。
+ *
+ * 【时间】
+ * 关键帧的时间是整数格（每秒keyRate格），片段长lengthFrames格。
+ * 取样时把秒换算成格，二分查找所在的区间，不创建任何对象，
+ * 所以可以每帧为成千上万个机器人取样（见RobotCrowd.setClip）。
+ *
+ * 【插值】
+ * - STEP:   保持前一个关键帧的值
+ * - LINEAR: 线性插值
+ * - SMOOTH: 三次Hermite插值，切线取相邻关键帧的斜率（Catmull-Rom）
+ * 第一个关键帧之前和最后一个之后保持端点的值。
+ *
+ * 【文件格式】（大端序，约每个关键帧5字节）
+ *   int     MAGIC ("RKF1")
+ *   UTF     名称
+ *   u16     keyRate
+ *   varint  lengthFrames
+ *   u8      曲线数
+ *   每条曲线: u8 通道, u8 插值方式, varint 关键帧数,
+ *            每个关键帧: varint 与前一个关键帧相差的格数, float 值
+ * varint为无符号LEB128（每字节7位，最高位表示还有后续字节）。
+ *
+ * 【烘焙】
+ * bake()按固定格数对任意片段取样，再删去线性插值能在误差内还原的关键帧，
+ * 可以把内置片段存成文件作为编舞的起点。误差按通道的单位分开给出：
+ * 关节角度以度计（默认1度，肉眼看不出），行走位移以世界单位计（默认0.005）。
+ *
+ * 创建后不再修改，可以在多个线程同时取样。
+ *
+ * @author Computer Graphics Course
+ */
+public final class KeyframeClip {
+
+    /** 文件标识 "RKF1" */
+    public static final int MAGIC = 0x524B4631;
+
+    /** 一条曲线最多的关键帧数（读文件时防止损坏的文件申请过多内存） */
+    private static final int MAX_KEYS = 1 << 24;
+
+    /** 插值方式 */
+    public static final int STEP = 0, LINEAR = 1, SMOOTH = 2;
+
+    /** 通道名称（命令行显示用，下标为通道） */
+    private static final String[] CHANNEL_NAMES = {
+            "头部Y", "左臂X", "左臂Z", "右臂X", "右臂Z", "左腿X", "右腿X", "前进Z"
+    };
+
+    /**
+     * 一条关键帧曲线
+     */
+    public static final class Curve {
+        /** 驱动的通道（Robot.HEAD_ROT_Y等） */
+        public final int channel;
+
+        /** 插值方式（STEP / LINEAR / SMOOTH） */
+        public final int interpolation;
+
+        /** 关键帧的时间（格，严格递增）和值 */
+        private final int[] frames;
+        private final float[] values;
+
+        private Curve(int channel, int interpolation, int[] frames, float[] values) {
+            this.channel = channel;
+            this.interpolation = interpolation;
+            this.frames = frames;
+            this.values = values;
+        }
+
+        /**
+         * 创建曲线
+         *
+         * @param channel       通道
+         * @param interpolation 插值方式
+         * @param frames        关键帧时间（格，严格递增，不小于0）
+         * @param values        关键帧的值（与frames等长）
+         */
+        public static Curve of(int channel, int interpolation, int[] frames, float[] values) {
+            if (channel < 0 || channel >= Robot.CHANNELS) {
+                throw new IllegalArgumentException("无效的通道: " + channel);
+            }
+            if (interpolation < STEP || interpolation > SMOOTH) {
+                throw new IllegalArgumentException("无效的插值方式: " + interpolation);
+            }
+            if (frames.length == 0 || frames.length != values.length) {
+                throw new IllegalArgumentException("关键帧的时间和值必须等长且非空");
+            }
+            for (int i = 0; i < frames.length; i++) {
+                if (frames[i] < 0 || (i > 0 && frames[i] <= frames[i - 1])) {
+                    throw new IllegalArgumentException("关键帧时间必须非负且严格递增");
+                }
+            }
+            return new Curve(channel, interpolation, frames.clone(), values.clone());
+        }
+
+        /**
+         * 关键帧数
+         */
+        public int keyCount() {
+            return frames.length;
+        }
+
+        /**
+         * 在frame格处取值（frame可以是小数）
+         */
+        double evaluate(double frame) {
+            int last = frames.length - 1;
+            if (frame <= frames[0]) {
+                return values[0];
+            }
+            if (frame >= frames[last]) {
+                return values[last];
+            }
+            // 所在区间 [frames[i], frames[i + 1])
+            int i = Arrays.binarySearch(frames, (int) frame);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            double f0 = frames[i], f1 = frames[i + 1];
+            double v0 = values[i], v1 = values[i + 1];
+            double u = (frame - f0) / (f1 - f0);
+            switch (interpolation) {
+                case STEP:
+                    return v0;
+                case LINEAR:
+                    return v0 + (v1 - v0) * u;
+                default: {
+                    double dt = f1 - f0;
+                    double m0 = slope(i), m1 = slope(i + 1);
+                    double u2 = u * u, u3 = u2 * u;
+                    return (2 * u3 - 3 * u2 + 1) * v0 + (u3 - 2 * u2 + u) * dt * m0
+                            + (-2 * u3 + 3 * u2) * v1 + (u3 - u2) * dt * m1;
+                }
+            }
+        }
+
+        /**
+         * 第i个关键帧处的切线（相邻关键帧连线的斜率，端点取单侧）
+         */
+        private double slope(int i) {
+            int a = Math.max(0, i - 1), b = Math.min(frames.length - 1, i + 1);
+            return (values[b] - values[a]) / (double) (frames[b] - frames[a]);
+        }
+    }
+
+    /** 片段名称 */
+    public final String name;
+
+    /** 每秒的格数 */
+    public final int keyRate;
+
+    /** 片段长度（格） */
+    public final int lengthFrames;
+
+    private final Curve[] curves;
+
+    /** 作为AnimationClip播放 */
+    private final AnimationClip clip;
+
+    private KeyframeClip(String name, int keyRate, int lengthFrames, Curve[] curves) {
+        this.name = name;
+        this.keyRate = keyRate;
+        this.lengthFrames = lengthFrames;
+        this.curves = curves;
+        int channels = 0;
+        for (Curve c : curves) {
+            channels |= AnimationClip.mask(c.channel);
+        }
+        this.clip = AnimationClip.of(name, (double) lengthFrames / keyRate, channels, this::sample);
+    }
+
+    /**
+     * 创建片段
+     *
+     * @param name         名称
+     * @param keyRate      每秒的格数（1 ~ 65535）
+     * @param lengthFrames 长度（格）
+     * @param curves       曲线（每个通道最多一条）
+     */
+    public static KeyframeClip of(String name, int keyRate, int lengthFrames, Curve... curves) {
+        if (keyRate <= 0 || keyRate > 0xFFFF) {
+            throw new IllegalArgumentException("每秒格数必须在1到65535之间: " + keyRate);
+        }
+        if (lengthFrames < 0) {
+            throw new IllegalArgumentException("长度不能为负: " + lengthFrames);
+        }
+        if (curves.length > 0xFF) {
+            throw new IllegalArgumentException("曲线太多: " + curves.length);
+        }
+        int channels = 0;
+        for (Curve c : curves) {
+            if ((channels & AnimationClip.mask(c.channel)) != 0) {
+                throw new IllegalArgumentException("通道有多条曲线: " + c.channel);
+            }
+            channels |= AnimationClip.mask(c.channel);
+        }
+        return new KeyframeClip(name, keyRate, lengthFrames, curves.clone());
+    }
+
+    /**
+     * 作为AnimationClip播放（Robot.play、AnimationClock.play）
+     */
+    public AnimationClip toClip() {
+        return clip;
+    }
+
+    /**
+     * 时长（秒）
+     */
+    public double duration() {
+        return clip.duration;
+    }
+
+    /**
+     * 关键帧总数
+     */
+    public int keyCount() {
+        int n = 0;
+        for (Curve c : curves) {
+            n += c.keyCount();
+        }
+        return n;
+    }
+
+    /**
+     * 曲线（副本）
+     */
+    public Curve[] getCurves() {
+        return curves.clone();
+    }
+
+    /**
+     * 把t秒时各曲线的值写进pose（不创建对象）
+     */
+    public void sample(double t, double[] pose) {
+        double frame = t * keyRate;
+        for (Curve c : curves) {
+            pose[c.channel] = c.evaluate(frame);
+        }
+    }
+
+    // ==================== 烘焙 ====================
+
+    /** 烘焙时关节角度通道的默认误差（度） */
+    public static final double DEFAULT_ANGLE_TOLERANCE = 1.0;
+
+    /** 烘焙时位移通道（MOVE_Z）的默认误差（世界单位） */
+    public static final double DEFAULT_MOVE_TOLERANCE = 0.005;
+
+    /**
+     * 按默认误差把任意片段烘焙成线性插值的关键帧
+     *
+     * @param clip    片段
+     * @param keyRate 每秒取样的格数
+     */
+    public static KeyframeClip bake(AnimationClip clip, int keyRate) {
+        return bake(clip, keyRate, DEFAULT_ANGLE_TOLERANCE, DEFAULT_MOVE_TOLERANCE);
+    }
+
+    /**
+     * 把任意片段烘焙成线性插值的关键帧
+     * 删去误差内可由相邻关键帧还原的关键帧；误差为0表示保留全部
+     *
+     * @param clip           片段
+     * @param keyRate        每秒取样的格数
+     * @param angleTolerance 关节角度通道允许的误差（度）
+     * @param moveTolerance  位移通道允许的误差（世界单位）
+     */
+    public static KeyframeClip bake(AnimationClip clip, int keyRate, double angleTolerance, double moveTolerance) {
+        int length = (int) Math.round(clip.duration * keyRate);
+        double[][] samples = new double[length + 1][Robot.CHANNELS];
+        for (int f = 0; f <= length; f++) {
+            clip.sample((double) f / keyRate, samples[f]);
+        }
+        Curve[] curves = new Curve[Integer.bitCount(clip.channels)];
+        int n = 0;
+        for (int channel = 0; channel < Robot.CHANNELS; channel++) {
+            if ((clip.channels & AnimationClip.mask(channel)) == 0) {
+                continue;
+            }
+            float[] v = new float[length + 1];
+            for (int f = 0; f <= length; f++) {
+                v[f] = (float) samples[f][channel];
+            }
+            curves[n++] = reduce(channel, v, channel == Robot.MOVE_Z ? moveTolerance : angleTolerance);
+        }
+        return of(clip.name, keyRate, length, curves);
+    }
+
+    /**
+     * 逐格取样的值 → 线性曲线（贪心地延长每一段，直到中间有点超出误差）
+     */
+    private static Curve reduce(int channel, float[] v, double tolerance) {
+        int[] keys = new int[v.length];
+        int count = 0;
+        keys[count++] = 0;
+        int anchor = 0;
+        for (int end = 2; end < v.length; end++) {
+            for (int j = anchor + 1; j < end; j++) {
+                double lerp = v[anchor] + (v[end] - v[anchor]) * (j - anchor) / (double) (end - anchor);
+                if (Math.abs(lerp - v[j]) > tolerance) {
+                    anchor = end - 1;
+                    keys[count++] = anchor;
+                    break;
+                }
+            }
+        }
+        if (v.length > 1) {
+            keys[count++] = v.length - 1;
+        }
+        int[] frames = Arrays.copyOf(keys, count);
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = v[frames[i]];
+        }
+        return new Curve(channel, LINEAR, frames, values);
+    }
+
+    // ==================== 文件读写 ====================
+
+    /**
+     * 从文件加载
+     *
+     * @throws IOException 读取失败或不是关键帧动画文件
+     */
+    public static KeyframeClip load(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * 保存到文件
+     */
+    public void save(File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            write(out);
+        }
+    }
+
+    /**
+     * 从流读取（不关闭流）
+     */
+    public static KeyframeClip read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是关键帧动画文件");
+            }
+            String name = in.readUTF();
+            int keyRate = in.readUnsignedShort();
+            int lengthFrames = readVarInt(in);
+            Curve[] curves = new Curve[in.readUnsignedByte()];
+            for (int i = 0; i < curves.length; i++) {
+                int channel = in.readUnsignedByte();
+                int interpolation = in.readUnsignedByte();
+                int keys = readVarInt(in);
+                if (keys == 0 || keys > MAX_KEYS) {
+                    throw new IOException("关键帧数无效: " + keys);
+                }
+                int[] frames = new int[keys];
+                float[] values = new float[keys];
+                int frame = 0;
+                for (int k = 0; k < keys; k++) {
+                    frame += readVarInt(in);
+                    frames[k] = frame;
+                    values[k] = in.readFloat();
+                }
+                curves[i] = Curve.of(channel, interpolation, frames, values);
+            }
+            return of(name, keyRate, lengthFrames, curves);
+        } catch (EOFException e) {
+            throw new IOException("关键帧动画文件不完整", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("关键帧动画文件无效: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 写入流（不关闭流）
+     */
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeUTF(name);
+        out.writeShort(keyRate);
+        writeVarInt(out, lengthFrames);
+        out.writeByte(curves.length);
+        for (Curve c : curves) {
+            out.writeByte(c.channel);
+            out.writeByte(c.interpolation);
+            writeVarInt(out, c.frames.length);
+            int previous = 0;
+            for (int k = 0; k < c.frames.length; k++) {
+                writeVarInt(out, c.frames[k] - previous);
+                out.writeFloat(c.values[k]);
+                previous = c.frames[k];
+            }
+        }
+        out.flush();
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IOException("数值超出范围");
+    }
+
+    // ==================== 命令行 ====================
+
+    private static final String USAGE = "用法: KeyframeClip 文件.rkf                              显示片段信息\n"
+            + "      KeyframeClip --bake head|arms|legs|walk|wave 文件.rkf [--rate N]\n"
+            + "                   [--tolerance 度（关节角度误差，默认" + DEFAULT_ANGLE_TOLERANCE + "）]\n"
+            + "                   [--move-tolerance 单位（行走位移误差，默认" + DEFAULT_MOVE_TOLERANCE + "）]";
+
+    public static void main(String[] args) {
+        try {
+            if (args.length == 1) {
+                KeyframeClip clip = load(new File(args[0]));
+                System.out.printf("%s: %.2f 秒, 每秒 %d 格, %d 个关键帧%n",
+                        clip.name, clip.duration(), clip.keyRate, clip.keyCount());
+                for (Curve c : clip.curves) {
+                    System.out.printf("  %s: %d 个关键帧 (%s)%n", CHANNEL_NAMES[c.channel], c.keyCount(),
+                            c.interpolation == STEP ? "阶梯" : c.interpolation == LINEAR ? "线性" : "平滑");
+                }
+                return;
+            }
+            if (args.length < 3 || args.length % 2 == 0 || !args[0].equals("--bake")) {
+                throw new IllegalArgumentException("参数错误");
+            }
+            AnimationClip source;
+            switch (args[1].toLowerCase(Locale.ROOT)) {
+                case "head":
+                    source = AnimationClip.HEAD_SHAKE;
+                    break;
+                case "arms":
+                    source = AnimationClip.ARM_SWING;
+                    break;
+                case "legs":
+                    source = AnimationClip.LEG_SWING;
+                    break;
+                case "walk":
+                    source = AnimationClip.WALK;
+                    break;
+                case "wave":
+                    source = AnimationClip.WAVE;
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知片段: " + args[1]);
+            }
+            int rate = 30;
+            double tolerance = DEFAULT_ANGLE_TOLERANCE;
+            double moveTolerance = DEFAULT_MOVE_TOLERANCE;
+            for (int i = 3; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--rate":
+                        rate = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--tolerance":
+                        tolerance = Double.parseDouble(args[i + 1]);
+                        break;
+                    case "--move-tolerance":
+                        moveTolerance = Double.parseDouble(args[i + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("未知选项: " + args[i]);
+                }
+            }
+            KeyframeClip clip = bake(source, rate, tolerance, moveTolerance);
+            File file = new File(args[2]);
+            clip.save(file);
+            System.out.printf("已保存 %s: %d 个关键帧, %d 字节%n", file, clip.keyCount(), file.length());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("读写失败: " + e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.graphics;
+
+import java.util.function.IntFunction;
+
+/**
+ * ====================================================================
+ * LODMesh.java - 细节层次（Level of Detail）网格链
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 同一个曲面形状（球体、圆柱体）按不同的分段数预先细分成几个网格，
+ * 从粗到细排列。每帧按物体投影到屏幕上的大小选一级：
+ * 远处只有几个像素大的球用6段，近处占半个屏幕的球用48段。
+ * 远处的设计几乎不花时间，特写又能得到更平滑的轮廓。
+ *
+ * 【选择规则】
+ * 让每一段在屏幕上大约EDGE_PIXELS像素长：
+ * 投影半径为R像素时，周长约2πR，分段数为seg的那一级在
+ * R ≥ seg × EDGE_PIXELS / 2π 时才值得使用。
+ *
+ * 【滞后（Hysteresis）】
+ * 物体在阈值附近前后移动时，如果每帧都按同一个阈值判断，
+ * 级别会来回跳变（popping）。升级要求超过阈值HYSTERESIS，
+ * 降级要求低于阈值HYSTERESIS，两者之间保持当前级别。
+ * 当前级别属于使用者（每个SceneNode各存一份），网格链本身可以共享。
+ *
+ * @author Computer Graphics Course
+ */
+public class LODMesh {
+
+    /** 每段在屏幕上的目标长度（像素） */
+    public static final double EDGE_PIXELS = 6;
+
+    /** 升级/降级阈值的相对滞后量 */
+    public static final double HYSTERESIS = 0.2;
+
+    /** 球体、圆柱体使用的分段数（从粗到细） */
+    public static final int[] DEFAULT_SEGMENTS = { 6, 12, 24, 48 };
+
+    /** 各级网格（从粗到细） */
+    public final Mesh[] levels;
+
+    /** 使用各级所需的最小投影半径（像素），thresholds[0] = 0 */
+    private final double[] thresholds;
+
+    /** 包含所有级别的局部包围球（各级的包围球略有差别，取并集） */
+    public final double boundsX, boundsY, boundsZ, boundsRadius;
+
+    /**
+     * @param levels   各级网格（从粗到细）
+     * @param segments 各级的分段数（用来计算切换阈值）
+     */
+    public LODMesh(Mesh[] levels, int[] segments) {
+        this.levels = levels;
+        this.thresholds = new double[levels.length];
+        for (int i = 1; i < levels.length; i++) {
+            thresholds[i] = segments[i] * EDGE_PIXELS / (2 * Math.PI);
+        }
+
+        // 以最细一级的包围球为中心，半径扩大到包含所有级别
+        Mesh finest = levels[levels.length - 1];
+        double cx = finest.boundsX, cy = finest.boundsY, cz = finest.boundsZ;
+        double r = 0;
+        for (Mesh m : levels) {
+            double dx = m.boundsX - cx, dy = m.boundsY - cy, dz = m.boundsZ - cz;
+            r = Math.max(r, Math.sqrt(dx * dx + dy * dy + dz * dz) + m.boundsRadius);
+        }
+        boundsX = cx;
+        boundsY = cy;
+        boundsZ = cz;
+        boundsRadius = r;
+    }
+
+    /**
+     * 按分段数逐级细分
+     *
+     * @param segments   各级分段数（从粗到细）
+     * @param tessellate 给定分段数生成网格
+     */
+    public static LODMesh build(int[] segments, IntFunction<Mesh> tessellate) {
+        Mesh[] levels = new Mesh[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            levels[i] = tessellate.apply(segments[i]);
+        }
+        return new LODMesh(levels, segments);
+    }
+
+    /**
+     * 选择级别（带滞后）
+     *
+     * @param current         当前级别
+     * @param projectedRadius 包围球投影到屏幕上的半径（像素）
+     * @return 新级别
+     */
+    public int select(int current, double projectedRadius) {
+        int level = Math.max(0, Math.min(levels.length - 1, current));
+        while (level + 1 < levels.length && projectedRadius >= thresholds[level + 1] * (1 + HYSTERESIS)) {
+            level++;
+        }
+        while (level > 0 && projectedRadius < thresholds[level] * (1 - HYSTERESIS)) {
+            level--;
+        }
+        return level;
+    }
+}
@@ -0,0 +1,152 @@
+package com.graphics;
+
+/**
+ * ====================================================================
+ * Light.java - 光源
+ * ====================================================================
+ *
+ * 【光源类型】
+ * - POINT: 点光源，从一个位置向所有方向发光（电灯泡）
+ * - SPOT: 聚光灯，从一个位置沿一个方向发出锥形的光（舞台追光灯）
+ * - DIRECTIONAL: 方向光，所有光线平行（太阳），没有位置、不衰减
+ *
+ * 【衰减】
+ * 点光源和聚光灯有一个作用半径range，强度按
+ *   att = (1 - (d / range)²)²
+ * 平滑地降到0，半径之外完全没有贡献。这样每个光源只影响一个有限的球，
+ * 分簇光照剔除（见LightClusters）才能只让附近的像素计算它。
+ * range为+∞表示不衰减，这样的光源照亮所有地方。
+ *
+ * 【聚光灯锥角】
+ * 光线方向与聚光灯轴的夹角小于innerAngle时全亮，大于outerAngle时全暗，
+ * 之间用smoothstep过渡（角度都是半角，单位度）。
+ * 聚光灯照亮的是半径range的球里的一个圆锥，包围球取圆锥的最小包围球：
+ * - 外锥半角θ ≤ 45°: 球心在轴上 L/(2cosθ) 处，半径 L/(2cosθ)
+ * - 外锥半角θ > 45°: 球心在轴上 L·cosθ 处，半径 L·sinθ
+ *
+ * 光源创建后不再修改，修改参数就创建一个新的光源替换它。
+ *
+ * @author Computer Graphics Course
+ */
+public final class Light {
+
+    /** 光源类型 */
+    public enum Type {
+        POINT, SPOT, DIRECTIONAL
+    }
+
+    public final Type type;
+
+    /** 位置（点光源、聚光灯） */
+    public final double x, y, z;
+
+    /** 光线前进的方向（单位向量；聚光灯、方向光） */
+    public final double dirX, dirY, dirZ;
+
+    /** 颜色（0xRRGGBB） */
+    public final int color;
+
+    /** 强度（1.0为标准亮度） */
+    public final double intensity;
+
+    /** 作用半径（+∞表示不衰减） */
+    public final double range;
+
+    /** 聚光灯内、外锥半角（度） */
+    public final double innerAngle, outerAngle;
+
+    /** 照亮范围的包围球（局部光源用于分簇） */
+    public final double boundsX, boundsY, boundsZ, boundsRadius;
+
+    private Light(Type type, double x, double y, double z, double dirX, double dirY, double dirZ,
+            int color, double intensity, double range, double innerAngle, double outerAngle) {
+        double len = Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+        if (len > 0) {
+            dirX /= len;
+            dirY /= len;
+            dirZ /= len;
+        }
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.dirX = dirX;
+        this.dirY = dirY;
+        this.dirZ = dirZ;
+        this.color = color & 0xFFFFFF;
+        this.intensity = intensity;
+        this.range = range;
+        this.innerAngle = innerAngle;
+        this.outerAngle = outerAngle;
+
+        // 照亮范围的包围球
+        double offset = 0, radius = range;
+        if (type == Type.SPOT && outerAngle < 90) {
+            double theta = Math.toRadians(outerAngle);
+            if (theta <= Math.PI / 4) {
+                offset = radius = range / (2 * Math.cos(theta));
+            } else {
+                offset = range * Math.cos(theta);
+                radius = range * Math.sin(theta);
+            }
+        }
+        this.boundsX = x + this.dirX * offset;
+        this.boundsY = y + this.dirY * offset;
+        this.boundsZ = z + this.dirZ * offset;
+        this.boundsRadius = radius;
+    }
+
+    // ==================== 创建 ====================
+
+    /**
+     * 点光源
+     *
+     * @param range 作用半径（Double.POSITIVE_INFINITY表示不衰减）
+     */
+    public static Light point(double x, double y, double z, int color, double intensity, double range) {
+        return new Light(Type.POINT, x, y, z, 0, -1, 0, color, intensity, range, 0, 0);
+    }
+
+    /**
+     * 聚光灯
+     *
+     * @param dirX       照射方向（不必是单位向量）
+     * @param innerAngle 全亮的锥半角（度）
+     * @param outerAngle 全暗的锥半角（度）
+     */
+    public static Light spot(double x, double y, double z, double dirX, double dirY, double dirZ,
+            double innerAngle, double outerAngle, int color, double intensity, double range) {
+        return new Light(Type.SPOT, x, y, z, dirX, dirY, dirZ, color, intensity, range,
+                Math.min(innerAngle, outerAngle), outerAngle);
+    }
+
+    /**
+     * 方向光
+     *
+     * @param dirX 光线前进的方向（不必是单位向量）
+     */
+    public static Light directional(double dirX, double dirY, double dirZ, int color, double intensity) {
+        return new Light(Type.DIRECTIONAL, 0, 0, 0, dirX, dirY, dirZ, color, intensity,
+                Double.POSITIVE_INFINITY, 0, 0);
+    }
+
+    /**
+     * 是否照亮所有地方（方向光或不衰减的光源），这样的光源不参与分簇剔除
+     */
+    public boolean isGlobal() {
+        return type == Type.DIRECTIONAL || Double.isInfinite(range);
+    }
+
+    @Override
+    public String toString() {
+        String rgb = String.format("#%06X", color);
+        switch (type) {
+            case POINT:
+                return String.format("点光源 (%.1f, %.1f, %.1f) %s", x, y, z, rgb);
+            case SPOT:
+                return String.format("聚光灯 (%.1f, %.1f, %.1f) %s", x, y, z, rgb);
+            default:
+                return String.format("方向光 (%.2f, %.2f, %.2f) %s", dirX, dirY, dirZ, rgb);
+        }
+    }
+}
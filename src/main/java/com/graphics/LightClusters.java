@@ -0,0 +1,237 @@
+package com.graphics;
+
+import java.util.Arrays;
+
+/**
+ * ====================================================================
+ * LightClusters.java - 分簇光照剔除（Clustered Light Culling）
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 几十盏舞台灯时，如果每个像素都把每盏灯算一遍，
+ * 开销是 光源数 × 像素数。但局部光源只照亮作用半径内的一个球，
+ * 大部分像素离大部分灯都很远。
+ * 这里每帧先把视见体切成很多小格子（簇），算出每个簇和哪些光源的球相交，
+ * 着色时像素只计算自己所在簇的光源列表。
+ *
+ * 【簇的划分】
+ * - 屏幕上按TILE_SIZE × TILE_SIZE像素分块
+ * - 深度方向在近、远裁剪面之间按指数分SLICES层：
+ *   slice = log(depth / near) / log(far / near) × SLICES
+ *   近处的层薄、远处的层厚，和透视投影下物体在屏幕上的大小变化一致
+ * 簇编号 = (slice × tilesY + tileY) × tilesX + tileX
+ *
+ * 【光源分配】
+ * 对每个局部光源的包围球（见Light.boundsRadius）：
+ * 1. 球心变换到视图空间，取包围盒并把深度裁到近裁剪面之后
+ *    （像素都在近裁剪面之后，跨过相机平面的光源也不必覆盖整个屏幕）
+ * 2. 包围盒8个角投影到屏幕，得到覆盖的方块范围
+ * 3. 深度范围得到覆盖的深度层范围
+ * 4. 这个长方体范围内的每个簇都记下这个光源
+ * 列表用CSR格式存储：先数每个簇的数量，前缀和得到起点，再填下标，
+ * 每帧不分配新内存。
+ * 方向光和不衰减的光源照亮所有像素，不参与分配，着色时总是计算。
+ *
+ * 【线程安全】
+ * build()在渲染线程上、光栅化开始之前调用；
+ * 之后只读，光栅化的多个工作线程可以同时调用shade()。
+ *
+ * @author Computer Graphics Course
+ */
+public class LightClusters {
+
+    /** 屏幕方块边长（像素） */
+    public static final int TILE_SIZE = 32;
+
+    /** 深度层数 */
+    public static final int SLICES = 16;
+
+    /** 本帧的光照参数 */
+    private Lighting lighting;
+
+    /** 方块数量 */
+    private int tilesX, tilesY;
+
+    /** 视图矩阵第3行（视图深度 = -(row·p)） */
+    private double v0, v1, v2, v3;
+
+    /** 深度层参数 */
+    private double near, sliceScale;
+
+    /** 每个簇的光源列表起点（CSR，长度 = 簇数 + 1） */
+    private int[] offsets = new int[1];
+
+    /** 光源下标（Lighting中的编号） */
+    private int[] indices = new int[0];
+
+    /** 是否有需要分配的局部光源 */
+    private boolean hasLocal;
+
+    // ---------- 分配时的临时数组 ----------
+    private int[] counts = new int[0];
+    private int[] bounds = new int[0];
+
+    /**
+     * 为本帧的光源建立簇列表
+     *
+     * @param lighting 光照参数
+     * @param proj     投影矩阵（扁平，行主序）
+     * @param view     视图矩阵（扁平，行主序）
+     * @param width    屏幕宽度
+     * @param height   屏幕高度
+     * @param near     近裁剪面
+     * @param far      远裁剪面
+     */
+    public void build(Lighting lighting, double[] proj, double[] view, int width, int height,
+            double near, double far) {
+        this.lighting = lighting;
+        tilesX = Math.max(1, (width + TILE_SIZE - 1) / TILE_SIZE);
+        tilesY = Math.max(1, (height + TILE_SIZE - 1) / TILE_SIZE);
+        v0 = view[8];
+        v1 = view[9];
+        v2 = view[10];
+        v3 = view[11];
+        this.near = near;
+        sliceScale = SLICES / Math.log(far / near);
+
+        int first = lighting.globalCount(), n = lighting.lightCount();
+        hasLocal = n > first;
+        if (!hasLocal) {
+            return;
+        }
+
+        int clusters = tilesX * tilesY * SLICES;
+        if (counts.length < clusters) {
+            counts = new int[clusters];
+            offsets = new int[clusters + 1];
+        }
+        Arrays.fill(counts, 0, clusters, 0);
+        if (bounds.length < n * 6) {
+            bounds = new int[n * 6];
+        }
+
+        // ========== 1. 每个光源覆盖的簇范围，统计每个簇的数量 ==========
+        for (int i = first; i < n; i++) {
+            int[] b = bounds;
+            int o = i * 6;
+            b[o] = 1; // 空范围（tx0 > tx1）
+            b[o + 1] = 0;
+            Light l = lighting.light(i);
+            double r = l.boundsRadius;
+            double cx = view[0] * l.boundsX + view[1] * l.boundsY + view[2] * l.boundsZ + view[3];
+            double cy = view[4] * l.boundsX + view[5] * l.boundsY + view[6] * l.boundsZ + view[7];
+            double depth = -(view[8] * l.boundsX + view[9] * l.boundsY + view[10] * l.boundsZ + view[11]);
+            double dNear = Math.max(near, depth - r), dFar = Math.min(far, depth + r);
+            if (dNear > dFar) {
+                continue;
+            }
+
+            // 屏幕范围：视图空间包围盒（深度裁到[dNear, dFar]）的8个角
+            double sxMin = Double.POSITIVE_INFINITY, syMin = sxMin;
+            double sxMax = Double.NEGATIVE_INFINITY, syMax = sxMax;
+            for (int c = 0; c < 8; c++) {
+                double x = (c & 1) == 0 ? cx - r : cx + r;
+                double y = (c & 2) == 0 ? cy - r : cy + r;
+                double z = (c & 4) == 0 ? -dNear : -dFar;
+                double w = proj[12] * x + proj[13] * y + proj[14] * z + proj[15];
+                double sx = ((proj[0] * x + proj[1] * y + proj[2] * z + proj[3]) / w + 1) * width / 2;
+                double sy = (1 - (proj[4] * x + proj[5] * y + proj[6] * z + proj[7]) / w) * height / 2;
+                sxMin = Math.min(sxMin, sx);
+                sxMax = Math.max(sxMax, sx);
+                syMin = Math.min(syMin, sy);
+                syMax = Math.max(syMax, sy);
+            }
+            if (sxMax < 0 || syMax < 0 || sxMin >= width || syMin >= height) {
+                continue;
+            }
+            // 多留1像素，像素中心与方块边界的舍入不会漏掉光源
+            int tx0 = Math.max(0, (int) (sxMin - 1) / TILE_SIZE);
+            int ty0 = Math.max(0, (int) (syMin - 1) / TILE_SIZE);
+            int tx1 = Math.min(tilesX - 1, (int) (sxMax + 1) / TILE_SIZE);
+            int ty1 = Math.min(tilesY - 1, (int) (syMax + 1) / TILE_SIZE);
+            int s0 = slice(dNear), s1 = slice(dFar);
+
+            b[o] = tx0;
+            b[o + 1] = tx1;
+            b[o + 2] = ty0;
+            b[o + 3] = ty1;
+            b[o + 4] = s0;
+            b[o + 5] = s1;
+            for (int s = s0; s <= s1; s++) {
+                for (int ty = ty0; ty <= ty1; ty++) {
+                    int row = (s * tilesY + ty) * tilesX;
+                    for (int tx = tx0; tx <= tx1; tx++) {
+                        counts[row + tx]++;
+                    }
+                }
+            }
+        }
+
+        // ========== 2. 前缀和得到每个簇的起点 ==========
+        int total = 0;
+        for (int c = 0; c < clusters; c++) {
+            offsets[c] = total;
+            total += counts[c];
+        }
+        offsets[clusters] = total;
+        if (indices.length < total) {
+            indices = new int[Math.max(total, indices.length * 2)];
+        }
+
+        // ========== 3. 填写光源下标（counts复用为写入位置） ==========
+        System.arraycopy(offsets, 0, counts, 0, clusters);
+        for (int i = first; i < n; i++) {
+            int o = i * 6;
+            int tx0 = bounds[o], tx1 = bounds[o + 1];
+            if (tx0 > tx1) {
+                continue;
+            }
+            for (int s = bounds[o + 4]; s <= bounds[o + 5]; s++) {
+                for (int ty = bounds[o + 2]; ty <= bounds[o + 3]; ty++) {
+                    int row = (s * tilesY + ty) * tilesX;
+                    for (int tx = tx0; tx <= tx1; tx++) {
+                        indices[counts[row + tx]++] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 视图深度所在的层
+     */
+    private int slice(double depth) {
+        if (depth <= near) {
+            return 0;
+        }
+        return Math.min(SLICES - 1, (int) (Math.log(depth / near) * sliceScale));
+    }
+
+    /**
+     * 本帧的光照参数
+     */
+    public Lighting lighting() {
+        return lighting;
+    }
+
+    /**
+     * 计算一个像素的颜色：全局光源 + 所在簇的局部光源
+     *
+     * @param x         像素列
+     * @param y         像素行
+     * @param nx        单位法向量X（同ny、nz）
+     * @param px        表面点的世界坐标X（同py、pz）
+     * @param baseColor 材质颜色
+     */
+    public int shade(int x, int y, double nx, double ny, double nz,
+            double px, double py, double pz, int baseColor) {
+        if (!hasLocal) {
+            return lighting.shade(nx, ny, nz, px, py, pz, baseColor, null, 0, 0);
+        }
+        int tx = Math.min(tilesX - 1, x / TILE_SIZE);
+        int ty = Math.min(tilesY - 1, y / TILE_SIZE);
+        int s = slice(-(v0 * px + v1 * py + v2 * pz + v3));
+        int c = (s * tilesY + ty) * tilesX + tx;
+        return lighting.shade(nx, ny, nz, px, py, pz, baseColor, indices, offsets[c], offsets[c + 1]);
+    }
+}
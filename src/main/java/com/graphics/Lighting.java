@@ -0,0 +1,379 @@
+package com.graphics;
+
+/**
+ * ====================================================================
+ * Lighting.java - 光照模型（逐顶点/逐像素共用）
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 一帧内不变的光照参数（光源、相机、环境光）加上Phong光照公式。
+ * 三种着色模式使用同一个公式，区别只在于在哪里计算：
+ * - Flat: 每个三角形在面中心用面法向量算一次
+ * - Gouraud: 每个顶点用顶点法向量算一次，光栅化时插值颜色
+ * - Phong: 光栅化时插值法向量和位置，每个像素算一次
+ *
+ * 【Phong光照模型】
+ * I = k_a + Σ [k_d × max(0, N·L) + k_s × max(0, R·V)^n] × att × C
+ * - N: 表面法向量（单位向量）
+ * - L: 光源方向（从表面指向光源；方向光为光线方向取反）
+ * - V: 观察方向（从表面指向相机）
+ * - R: L关于N的反射方向 R = 2(N·L)N - L
+ * - n: 光泽度
+ * - att: 距离衰减 × 聚光灯锥角衰减（见Light）
+ * - C: 光源颜色 × 强度，每个通道分别累加
+ *
+ * 【多光源】
+ * 光源按"全局"（方向光、不衰减的光源）在前、"局部"（有作用半径）在后排列。
+ * shade()逐个检查所有光源，局部光源先用距离平方排除半径外的；
+ * 逐像素着色时改用带光源列表的shade()，只计算全局光源和
+ * LightClusters给出的、可能影响这个像素的局部光源。
+ *
+ * 【阴影】
+ * withShadow()返回带阴影贴图的副本（共用光源数组），主光源（下标0，
+ * 见RenderState.lights）的贡献乘以它在阴影贴图中的可见比例（见ShadowMap）。
+ *
+ * 【线程安全】
+ * 所有字段在构造后不再修改，shade()不分配内存，
+ * 光栅化的多个工作线程可以同时调用。
+ *
+ * @author Computer Graphics Course
+ */
+public final class Lighting {
+
+    /** 环境光、漫反射、镜面反射系数 */
+    public static final double AMBIENT = 0.2;
+    public static final double DIFFUSE = 0.5;
+    public static final double SPECULAR = 0.5;
+
+    /** 光泽度指数（64 = 2^6，用6次平方代替Math.pow） */
+    public static final int SHININESS = 64;
+
+    /** 总光强上限（避免高光把颜色完全冲白） */
+    private static final double MAX_INTENSITY = 1.2;
+
+    /** types[]中的取值（Light.Type的序号） */
+    private static final byte SPOT = (byte) Light.Type.SPOT.ordinal();
+    private static final byte DIRECTIONAL = (byte) Light.Type.DIRECTIONAL.ordinal();
+
+    /** 相机位置 */
+    public final double cameraX, cameraY, cameraZ;
+
+    /** 光源（全局在前，局部在后） */
+    private final Light[] lights;
+
+    /** 全局光源数量 */
+    private final int globalCount;
+
+    // ---------- 光源参数（按下标排列，着色循环里直接读数组） ----------
+    private final byte[] types;
+    private final double[] posX, posY, posZ;
+    private final double[] dirX, dirY, dirZ;
+    private final double[] rangeSq;
+    private final double[] cosInner, cosOuter;
+    /** 颜色×强度（每个通道，0-1） */
+    private final double[] colorR, colorG, colorB;
+
+    /** 所有光源都是白光（三个通道的系数相同，只需累加一个通道） */
+    private final boolean monochrome;
+
+    /** 环境项系数与光强上限 */
+    private final double ambientLevel, maxLevel;
+
+    /** 环境光颜色的附加量（每个通道） */
+    private final double ambientR, ambientG, ambientB;
+
+    /** 主光源的阴影贴图（null表示没有阴影）、贴图版本与是否PCF */
+    private final ShadowMap shadow;
+    private final int shadowGeneration;
+    private final boolean pcf;
+
+    /**
+     * @param lights       光源
+     * @param ambientScale 环境项k_a的倍数（主光源强度，保持单光源时的亮度）
+     * @param ambientRGB   环境光颜色
+     */
+    public Lighting(Light[] lights, double cameraX, double cameraY, double cameraZ,
+            double ambientScale, int ambientRGB) {
+        this.cameraX = cameraX;
+        this.cameraY = cameraY;
+        this.cameraZ = cameraZ;
+        this.ambientLevel = AMBIENT * ambientScale;
+        this.maxLevel = MAX_INTENSITY * Math.max(1, ambientScale);
+        this.ambientR = ((ambientRGB >> 16) & 0xFF) * 0.1;
+        this.ambientG = ((ambientRGB >> 8) & 0xFF) * 0.1;
+        this.ambientB = (ambientRGB & 0xFF) * 0.1;
+
+        // 全局光源排在前面
+        int n = lights.length;
+        this.lights = new Light[n];
+        int global = 0;
+        for (Light l : lights) {
+            if (l.isGlobal()) {
+                this.lights[global++] = l;
+            }
+        }
+        int local = global;
+        for (Light l : lights) {
+            if (!l.isGlobal()) {
+                this.lights[local++] = l;
+            }
+        }
+        this.globalCount = global;
+
+        types = new byte[n];
+        posX = new double[n];
+        posY = new double[n];
+        posZ = new double[n];
+        dirX = new double[n];
+        dirY = new double[n];
+        dirZ = new double[n];
+        rangeSq = new double[n];
+        cosInner = new double[n];
+        cosOuter = new double[n];
+        colorR = new double[n];
+        colorG = new double[n];
+        colorB = new double[n];
+        boolean mono = true;
+        for (int i = 0; i < n; i++) {
+            Light l = this.lights[i];
+            types[i] = (byte) l.type.ordinal();
+            posX[i] = l.x;
+            posY[i] = l.y;
+            posZ[i] = l.z;
+            dirX[i] = l.dirX;
+            dirY[i] = l.dirY;
+            dirZ[i] = l.dirZ;
+            rangeSq[i] = l.range * l.range;
+            cosInner[i] = Math.cos(Math.toRadians(l.innerAngle));
+            cosOuter[i] = Math.cos(Math.toRadians(l.outerAngle));
+            colorR[i] = ((l.color >> 16) & 0xFF) / 255.0 * l.intensity;
+            colorG[i] = ((l.color >> 8) & 0xFF) / 255.0 * l.intensity;
+            colorB[i] = (l.color & 0xFF) / 255.0 * l.intensity;
+            mono &= colorR[i] == colorG[i] && colorG[i] == colorB[i];
+        }
+        this.monochrome = mono;
+        this.shadow = null;
+        this.shadowGeneration = 0;
+        this.pcf = false;
+    }
+
+    /**
+     * 带阴影的副本（光源参数与原对象共用）
+     */
+    private Lighting(Lighting o, ShadowMap shadow, boolean pcf) {
+        cameraX = o.cameraX;
+        cameraY = o.cameraY;
+        cameraZ = o.cameraZ;
+        lights = o.lights;
+        globalCount = o.globalCount;
+        types = o.types;
+        posX = o.posX;
+        posY = o.posY;
+        posZ = o.posZ;
+        dirX = o.dirX;
+        dirY = o.dirY;
+        dirZ = o.dirZ;
+        rangeSq = o.rangeSq;
+        cosInner = o.cosInner;
+        cosOuter = o.cosOuter;
+        colorR = o.colorR;
+        colorG = o.colorG;
+        colorB = o.colorB;
+        monochrome = o.monochrome;
+        ambientLevel = o.ambientLevel;
+        maxLevel = o.maxLevel;
+        ambientR = o.ambientR;
+        ambientG = o.ambientG;
+        ambientB = o.ambientB;
+        this.shadow = shadow;
+        this.shadowGeneration = shadow.generation();
+        this.pcf = pcf;
+    }
+
+    /**
+     * 从渲染状态快照创建
+     */
+    public static Lighting from(RenderState s) {
+        return new Lighting(s.lights, s.cameraX, s.cameraY, s.cameraZ, s.lightIntensity, s.ambientLight.getRGB());
+    }
+
+    /**
+     * 主光源用阴影贴图遮挡的副本
+     *
+     * @param shadow 已为本帧画好（或正在画）的阴影贴图，采样前必须画完
+     * @param pcf    true用PCF软化阴影边缘，false为硬阴影
+     */
+    public Lighting withShadow(ShadowMap shadow, boolean pcf) {
+        return new Lighting(this, shadow, pcf);
+    }
+
+    /**
+     * 光源数量
+     */
+    public int lightCount() {
+        return lights.length;
+    }
+
+    /**
+     * 全局光源数量（下标[0, globalCount)，其余为局部光源）
+     */
+    public int globalCount() {
+        return globalCount;
+    }
+
+    /**
+     * 第i个光源（按本类的排列顺序）
+     */
+    public Light light(int i) {
+        return lights[i];
+    }
+
+    /**
+     * 两组参数是否给出完全相同的光照结果（用于判断光照缓存是否还有效）
+     */
+    public boolean sameAs(Lighting o) {
+        if (o == null || cameraX != o.cameraX || cameraY != o.cameraY || cameraZ != o.cameraZ
+                || ambientLevel != o.ambientLevel
+                || ambientR != o.ambientR || ambientG != o.ambientG || ambientB != o.ambientB
+                || shadow != o.shadow || shadowGeneration != o.shadowGeneration || pcf != o.pcf
+                || lights.length != o.lights.length) {
+            return false;
+        }
+        for (int i = 0; i < lights.length; i++) {
+            Light a = lights[i], b = o.lights[i];
+            if (a != b && (a.type != b.type || a.x != b.x || a.y != b.y || a.z != b.z
+                    || a.dirX != b.dirX || a.dirY != b.dirY || a.dirZ != b.dirZ
+                    || a.color != b.color || a.intensity != b.intensity || a.range != b.range
+                    || a.innerAngle != b.innerAngle || a.outerAngle != b.outerAngle)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 计算一个表面点的颜色（所有光源）
+     *
+     * @param nx        单位法向量X（同ny、nz）
+     * @param px        表面点的世界坐标X（同py、pz）
+     * @param baseColor 材质颜色（0xRRGGBB）
+     * @return 光照后的颜色（0xRRGGBB）
+     */
+    public int shade(double nx, double ny, double nz, double px, double py, double pz, int baseColor) {
+        return shade(nx, ny, nz, px, py, pz, baseColor, null, globalCount, lights.length);
+    }
+
+    /**
+     * 计算一个表面点的颜色（全局光源 + 列表中的局部光源）
+     *
+     * @param list 局部光源下标（为null时使用下标[from, to)本身）
+     * @param from list中的起始位置
+     * @param to   list中的结束位置（不含）
+     */
+    public int shade(double nx, double ny, double nz, double px, double py, double pz, int baseColor,
+            int[] list, int from, int to) {
+        // 观察方向V（所有光源共用）
+        double vx = cameraX - px, vy = cameraY - py, vz = cameraZ - pz;
+        double vLen = Math.sqrt(vx * vx + vy * vy + vz * vz);
+        if (vLen > 0) {
+            vx /= vLen;
+            vy /= vLen;
+            vz /= vLen;
+        }
+
+        // 全是白光时只累加一个通道
+        boolean mono = monochrome;
+        double lr = ambientLevel, lg = ambientLevel, lb = ambientLevel;
+        for (int i = 0; i < globalCount; i++) {
+            double w = contribution(i, nx, ny, nz, px, py, pz, vx, vy, vz);
+            if (i == 0 && shadow != null && w > 0) {
+                w *= shadow.visibility(px, py, pz, nx, ny, nz, pcf);
+            }
+            lr += w * colorR[i];
+            if (!mono) {
+                lg += w * colorG[i];
+                lb += w * colorB[i];
+            }
+        }
+        for (int k = from; k < to; k++) {
+            int i = list == null ? k : list[k];
+            double w = contribution(i, nx, ny, nz, px, py, pz, vx, vy, vz);
+            lr += w * colorR[i];
+            if (!mono) {
+                lg += w * colorG[i];
+                lb += w * colorB[i];
+            }
+        }
+
+        double levelR = Math.min(maxLevel, lr);
+        double levelG = mono ? levelR : Math.min(maxLevel, lg);
+        double levelB = mono ? levelR : Math.min(maxLevel, lb);
+        int r = (int) Math.min(255, ((baseColor >> 16) & 0xFF) * levelR + ambientR);
+        int g = (int) Math.min(255, ((baseColor >> 8) & 0xFF) * levelG + ambientG);
+        int b = (int) Math.min(255, (baseColor & 0xFF) * levelB + ambientB);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * 一个光源的漫反射+镜面反射系数（已乘衰减，未乘颜色）
+     *
+     * @param vx 单位观察方向X（同vy、vz；相机与表面点重合时为0向量）
+     */
+    private double contribution(int i, double nx, double ny, double nz,
+            double px, double py, double pz, double vx, double vy, double vz) {
+        // ========== 光源方向L与衰减 ==========
+        double lx, ly, lz, att = 1;
+        if (types[i] == DIRECTIONAL) {
+            lx = -dirX[i];
+            ly = -dirY[i];
+            lz = -dirZ[i];
+        } else {
+            lx = posX[i] - px;
+            ly = posY[i] - py;
+            lz = posZ[i] - pz;
+            double d2 = lx * lx + ly * ly + lz * lz;
+            double r2 = rangeSq[i];
+            if (d2 >= r2) {
+                return 0;
+            }
+            double len = Math.sqrt(d2);
+            if (len > 0) {
+                lx /= len;
+                ly /= len;
+                lz /= len;
+            }
+            if (r2 != Double.POSITIVE_INFINITY) {
+                double f = 1 - d2 / r2;
+                att = f * f;
+            }
+            if (types[i] == SPOT) {
+                // 光线方向(-L)与聚光灯轴的夹角
+                double cos = -(lx * dirX[i] + ly * dirY[i] + lz * dirZ[i]);
+                if (cos <= cosOuter[i]) {
+                    return 0;
+                }
+                if (cos < cosInner[i]) {
+                    double t = (cos - cosOuter[i]) / (cosInner[i] - cosOuter[i]);
+                    att *= t * t * (3 - 2 * t);
+                }
+            }
+        }
+
+        // ========== 漫反射与镜面反射 ==========
+        double nDotL = nx * lx + ny * ly + nz * lz;
+        double level = Math.max(0, nDotL) * DIFFUSE;
+        double rx = 2 * nDotL * nx - lx, ry = 2 * nDotL * ny - ly, rz = 2 * nDotL * nz - lz;
+        double spec = rx * vx + ry * vy + rz * vz;
+        if (spec > 0) {
+            // spec^64
+            spec *= spec;
+            spec *= spec;
+            spec *= spec;
+            spec *= spec;
+            spec *= spec;
+            spec *= spec;
+            level += spec * SPECULAR;
+        }
+        return level * att;
+    }
+}
@@ -2,6 +2,8 @@ package com.graphics;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * ====================================================================
@@ -23,6 +25,11 @@ import java.awt.*;
  * - 类似电灯泡
  * - 产生明暗变化和高光
  * 
+ * 3. 光源管理（聚光灯、方向光和更多的点光源）
+ * - 列表中的光源叠加在主点光源之上，可以逐个添加、编辑和删除
+ * - 点光源和聚光灯有作用半径，半径外不受影响（见Light）
+ * - "舞台灯阵列"一次添加一圈照向舞台中心的彩色聚光灯
+ * 
  * 【Phong光照模型】
  * 本系统使用Phong模型计算光照：
  * I_total = I_ambient + I_diffuse + I_specular
@@ -41,7 +48,8 @@ public class LightingDialog extends JDialog {
      */
     public enum LightType {
         AMBIENT, // 环境光
-        POINT // 点光源
+        POINT, // 点光源
+        LIST // 光源管理
     }
 
     // ==================== 属性 ====================
@@ -64,10 +72,27 @@ public class LightingDialog extends JDialog {
     /** 点光源位置滑块（仅点光源使用） */
     private JSlider posXSlider, posYSlider, posZSlider;
 
+    // ---------- 光源管理 ----------
+
+    /** 附加光源列表 */
+    private DefaultListModel<Light> lightListModel;
+    private JList<Light> lightList;
+
+    /** 所选光源的方向（偏航、俯仰，度）、作用半径和锥角（半角，度）滑块 */
+    private JSlider yawSlider, pitchSlider, rangeSlider, coneSlider;
+
+    /** 把所选光源的参数填进控件时为true，避免控件事件反过来修改光源 */
+    private boolean loadingLight;
+
+    /** 舞台灯阵列的灯数、半径和高度 */
+    private static final int STAGE_RING_COUNT = 12;
+    private static final double STAGE_RING_RADIUS = 6, STAGE_RING_HEIGHT = 7;
+
     // ==================== 构造函数 ====================
 
     public LightingDialog(JFrame parent, Scene3DPanel scene, LightType type) {
-        super(parent, type == LightType.AMBIENT ? "环境光设置" : "点光源设置", false);
+        super(parent, type == LightType.AMBIENT ? "环境光设置" : type == LightType.POINT ? "点光源设置" : "光源管理",
+                false);
         this.scene = scene;
         this.type = type;
         initUI();
@@ -76,6 +101,11 @@ public class LightingDialog extends JDialog {
     // ==================== 界面初始化 ====================
 
     private void initUI() {
+        if (type == LightType.LIST) {
+            initListUI();
+            return;
+        }
+
         // 点光源需要更大的窗口来显示位置控制
         setSize(400, type == LightType.POINT ? 350 : 220);
         setLocationRelativeTo(getParent());
@@ -231,4 +261,250 @@ public class LightingDialog extends JDialog {
         }
         updateLight();
     }
+
+    // ==================== 光源管理 ====================
+
+    /**
+     * 光源管理界面：左侧光源列表，右侧编辑所选光源，底部添加/删除按钮
+     */
+    private void initListUI() {
+        setSize(720, 480);
+        setLocationRelativeTo(getParent());
+        setLayout(new BorderLayout(10, 10));
+
+        // ========== 光源列表 ==========
+        lightListModel = new DefaultListModel<>();
+        for (Light light : scene.getAdditionalLights()) {
+            lightListModel.addElement(light);
+        }
+        lightList = new JList<>(lightListModel);
+        lightList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        lightList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                loadSelectedLight();
+            }
+        });
+        JScrollPane listScroll = new JScrollPane(lightList);
+        listScroll.setPreferredSize(new Dimension(300, 0));
+        listScroll.setBorder(BorderFactory.createTitledBorder("附加光源（叠加在主点光源之上）"));
+        add(listScroll, BorderLayout.WEST);
+
+        // ========== 所选光源的参数 ==========
+        JPanel editPanel = new JPanel(new GridBagLayout());
+        editPanel.setBorder(BorderFactory.createTitledBorder("所选光源"));
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.insets = new Insets(2, 5, 2, 5);
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+
+        colorButton = new JButton();
+        colorButton.setBackground(lightColor);
+        colorButton.setPreferredSize(new Dimension(100, 25));
+        colorButton.addActionListener(e -> {
+            Color c = JColorChooser.showDialog(this, "选择光源颜色", lightColor);
+            if (c != null) {
+                lightColor = c;
+                colorButton.setBackground(c);
+                updateSelectedLight();
+            }
+        });
+        addEditorRow(editPanel, gbc, 0, "颜色:", colorButton);
+        intensitySlider = addEditorSlider(editPanel, gbc, 1, "强度(%):", 0, 300, 100);
+        posXSlider = addEditorSlider(editPanel, gbc, 2, "X:", -15, 15, 0);
+        posYSlider = addEditorSlider(editPanel, gbc, 3, "Y:", 0, 15, 6);
+        posZSlider = addEditorSlider(editPanel, gbc, 4, "Z:", -15, 15, 0);
+        yawSlider = addEditorSlider(editPanel, gbc, 5, "偏航(°):", -180, 180, 0);
+        pitchSlider = addEditorSlider(editPanel, gbc, 6, "俯仰(°):", -90, 90, -90);
+        rangeSlider = addEditorSlider(editPanel, gbc, 7, "作用半径:", 1, 30, 10);
+        coneSlider = addEditorSlider(editPanel, gbc, 8, "锥角(°):", 5, 80, 25);
+        add(editPanel, BorderLayout.CENTER);
+
+        // ========== 按钮面板 ==========
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+
+        JButton addPointButton = new JButton("添加点光源");
+        addPointButton.addActionListener(e -> addLight(Light.point(0, 3, 0, 0xFFFFFF, 1.0, 8)));
+        buttonPanel.add(addPointButton);
+
+        JButton addSpotButton = new JButton("添加聚光灯");
+        addSpotButton.addActionListener(e -> addLight(Light.spot(0, 6, 0, 0, -1, 0, 15, 25, 0xFFFFFF, 2.0, 14)));
+        buttonPanel.add(addSpotButton);
+
+        JButton addDirectionalButton = new JButton("添加方向光");
+        addDirectionalButton.addActionListener(e -> addLight(Light.directional(-1, -1, -1, 0xFFFFFF, 0.3)));
+        buttonPanel.add(addDirectionalButton);
+
+        JButton addRingButton = new JButton("添加舞台灯阵列");
+        addRingButton.addActionListener(e -> addStageRing());
+        buttonPanel.add(addRingButton);
+
+        JButton removeButton = new JButton("删除");
+        removeButton.addActionListener(e -> {
+            int index = lightList.getSelectedIndex();
+            if (index >= 0) {
+                lightListModel.remove(index);
+                applyLights();
+            }
+        });
+        buttonPanel.add(removeButton);
+
+        JButton clearButton = new JButton("清空");
+        clearButton.addActionListener(e -> {
+            lightListModel.clear();
+            applyLights();
+        });
+        buttonPanel.add(clearButton);
+
+        JButton closeButton = new JButton("关闭");
+        closeButton.addActionListener(e -> dispose());
+        buttonPanel.add(closeButton);
+
+        add(buttonPanel, BorderLayout.SOUTH);
+
+        // ========== 顶部说明 ==========
+        JTextArea infoArea = new JTextArea("聚光灯: 沿方向照出锥形光，锥角外不受影响\n"
+                + "方向光: 平行光（如太阳），位置无关、不衰减\n"
+                + "有作用半径的光源按屏幕方块和深度分簇，每个像素只计算附近的光源");
+        infoArea.setEditable(false);
+        infoArea.setBackground(getBackground());
+        infoArea.setFont(new Font("SansSerif", Font.PLAIN, 11));
+        infoArea.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        add(infoArea, BorderLayout.NORTH);
+
+        setEditorEnabled(false);
+        if (!lightListModel.isEmpty()) {
+            lightList.setSelectedIndex(0);
+        }
+    }
+
+    private void addEditorRow(JPanel panel, GridBagConstraints gbc, int row, String label, JComponent field) {
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.weightx = 0;
+        panel.add(new JLabel(label), gbc);
+        gbc.gridx = 1;
+        gbc.weightx = 1;
+        panel.add(field, gbc);
+    }
+
+    private JSlider addEditorSlider(JPanel panel, GridBagConstraints gbc, int row, String label,
+            int min, int max, int value) {
+        JSlider slider = new JSlider(min, max, value);
+        slider.addChangeListener(e -> updateSelectedLight());
+        addEditorRow(panel, gbc, row, label, slider);
+        return slider;
+    }
+
+    /**
+     * 添加一个光源并选中它
+     */
+    private void addLight(Light light) {
+        lightListModel.addElement(light);
+        applyLights();
+        lightList.setSelectedIndex(lightListModel.size() - 1);
+    }
+
+    /**
+     * 添加一圈照向舞台中心的彩色聚光灯
+     */
+    private void addStageRing() {
+        for (int i = 0; i < STAGE_RING_COUNT; i++) {
+            double angle = 2 * Math.PI * i / STAGE_RING_COUNT;
+            double x = STAGE_RING_RADIUS * Math.cos(angle);
+            double z = STAGE_RING_RADIUS * Math.sin(angle);
+            int color = Color.HSBtoRGB((float) i / STAGE_RING_COUNT, 0.6f, 1f);
+            // 照向舞台中心与灯之间的一点，光斑在舞台上排成一圈
+            lightListModel.addElement(Light.spot(x, STAGE_RING_HEIGHT, z, -x / 2, -STAGE_RING_HEIGHT, -z / 2,
+                    10, 18, color, 2.5, 16));
+        }
+        applyLights();
+    }
+
+    /**
+     * 把列表中的光源交给场景
+     */
+    private void applyLights() {
+        List<Light> lights = new ArrayList<>();
+        for (int i = 0; i < lightListModel.size(); i++) {
+            lights.add(lightListModel.get(i));
+        }
+        scene.setAdditionalLights(lights);
+    }
+
+    /**
+     * 把所选光源的参数填进控件
+     */
+    private void loadSelectedLight() {
+        Light light = lightList.getSelectedValue();
+        setEditorEnabled(light != null);
+        if (light == null) {
+            return;
+        }
+        loadingLight = true;
+        lightColor = new Color(light.color);
+        colorButton.setBackground(lightColor);
+        intensitySlider.setValue((int) Math.round(light.intensity * 100));
+        posXSlider.setValue((int) Math.round(light.x));
+        posYSlider.setValue((int) Math.round(light.y));
+        posZSlider.setValue((int) Math.round(light.z));
+        yawSlider.setValue((int) Math.round(Math.toDegrees(Math.atan2(light.dirX, light.dirZ))));
+        pitchSlider.setValue((int) Math.round(Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, light.dirY))))));
+        if (!Double.isInfinite(light.range)) {
+            rangeSlider.setValue((int) Math.round(light.range));
+        }
+        coneSlider.setValue((int) Math.round(light.outerAngle));
+        loadingLight = false;
+
+        // 只启用这种光源用得到的控件
+        boolean positional = light.type != Light.Type.DIRECTIONAL;
+        boolean directed = light.type != Light.Type.POINT;
+        posXSlider.setEnabled(positional);
+        posYSlider.setEnabled(positional);
+        posZSlider.setEnabled(positional);
+        rangeSlider.setEnabled(positional);
+        yawSlider.setEnabled(directed);
+        pitchSlider.setEnabled(directed);
+        coneSlider.setEnabled(light.type == Light.Type.SPOT);
+    }
+
+    private void setEditorEnabled(boolean enabled) {
+        for (JComponent c : new JComponent[] { colorButton, intensitySlider, posXSlider, posYSlider, posZSlider,
+                yawSlider, pitchSlider, rangeSlider, coneSlider }) {
+            c.setEnabled(enabled);
+        }
+    }
+
+    /**
+     * 按控件的值重新创建所选光源
+     */
+    private void updateSelectedLight() {
+        int index = lightList.getSelectedIndex();
+        if (loadingLight || index < 0) {
+            return;
+        }
+        Light old = lightListModel.get(index);
+        int color = lightColor.getRGB() & 0xFFFFFF;
+        double intensity = intensitySlider.getValue() / 100.0;
+        double x = posXSlider.getValue(), y = posYSlider.getValue(), z = posZSlider.getValue();
+        double yaw = Math.toRadians(yawSlider.getValue()), pitch = Math.toRadians(pitchSlider.getValue());
+        double dx = Math.cos(pitch) * Math.sin(yaw), dy = Math.sin(pitch), dz = Math.cos(pitch) * Math.cos(yaw);
+        double range = rangeSlider.getValue();
+
+        Light light;
+        switch (old.type) {
+            case SPOT:
+                double cone = coneSlider.getValue();
+                // 保持原来内、外锥角的比例
+                double ratio = old.outerAngle > 0 ? old.innerAngle / old.outerAngle : 0.6;
+                light = Light.spot(x, y, z, dx, dy, dz, cone * ratio, cone, color, intensity, range);
+                break;
+            case DIRECTIONAL:
+                light = Light.directional(dx, dy, dz, color, intensity);
+                break;
+            default:
+                light = Light.point(x, y, z, color, intensity, range);
+                break;
+        }
+        lightListModel.set(index, light);
+        applyLights();
+    }
 }
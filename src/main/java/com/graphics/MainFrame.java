@@ -5,6 +5,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
+import java.io.IOException;
 
 /**
  * ====================================================================
@@ -73,6 +74,9 @@ public class MainFrame extends JFrame {
     /** 是否处于2D模式（false表示3D模式） */
     private boolean is2DMode = false;
 
+    /** 播放关键帧动画时从当前动作过渡的时间（秒） */
+    private static final double KEYFRAME_FADE_SECONDS = 0.3;
+
     // ==================== 构造函数 ====================
 
     public MainFrame() {
@@ -227,9 +231,18 @@ public class MainFrame extends JFrame {
         JMenu visibilityMenu = new JMenu("可见面判定");
         visibilityMenu.add(createMenuItem("Z-Buffer消隐", e -> enableZBuffer()));
         visibilityMenu.add(createMenuItem("扫描线消隐", e -> enableScanlineHSR()));
+        visibilityMenu.add(createMenuItem("画家算法 (深度排序)", e -> enablePainter()));
+        visibilityMenu.add(createMenuItem("BSP树 (静态几何)", e -> enableBSP()));
         visibilityMenu.add(createMenuItem("后向面消除", e -> enableBackfaceCulling()));
         visibilityMenu.addSeparator();
         visibilityMenu.add(createMenuItem("显示线框 (未消隐)", e -> showWireframe()));
+        visibilityMenu.addSeparator();
+        JMenu antiAliasMenu = new JMenu("抗锯齿");
+        antiAliasMenu.add(createMenuItem("关闭", e -> setAntiAliasMode(Scene3DPanel.AntiAliasMode.OFF)));
+        antiAliasMenu.add(createMenuItem("FXAA (后处理)", e -> setAntiAliasMode(Scene3DPanel.AntiAliasMode.FXAA)));
+        antiAliasMenu.add(createMenuItem("2x2超采样", e -> setAntiAliasMode(Scene3DPanel.AntiAliasMode.SSAA_2X)));
+        antiAliasMenu.add(createMenuItem("4x4超采样", e -> setAntiAliasMode(Scene3DPanel.AntiAliasMode.SSAA_4X)));
+        visibilityMenu.add(antiAliasMenu);
         menuBar.add(visibilityMenu);
 
         // ========== 7. 光照明模型 ==========
@@ -237,12 +250,17 @@ public class MainFrame extends JFrame {
         JMenu lightingMenu = new JMenu("光照明模型");
         lightingMenu.add(createMenuItem("环境光设置", e -> showAmbientLightDialog()));
         lightingMenu.add(createMenuItem("点光源设置", e -> showPointLightDialog()));
+        lightingMenu.add(createMenuItem("光源管理 (聚光灯/方向光)", e -> showLightListDialog()));
         lightingMenu.addSeparator();
         lightingMenu.add(createMenuItem("材质设置", e -> showMaterialDialog()));
         lightingMenu.addSeparator();
         lightingMenu.add(createMenuItem("Flat明暗 (无插值)", e -> setFlatShading()));
         lightingMenu.add(createMenuItem("Gouraud明暗", e -> setGouraudShading()));
         lightingMenu.add(createMenuItem("Phong明暗", e -> setPhongShading()));
+        lightingMenu.addSeparator();
+        lightingMenu.add(createMenuItem("关闭阴影", e -> setShadowMode(Scene3DPanel.ShadowMode.OFF)));
+        lightingMenu.add(createMenuItem("硬阴影", e -> setShadowMode(Scene3DPanel.ShadowMode.HARD)));
+        lightingMenu.add(createMenuItem("柔和阴影 (PCF)", e -> setShadowMode(Scene3DPanel.ShadowMode.PCF)));
         menuBar.add(lightingMenu);
 
         // ========== 8. 机器人动画 ==========
@@ -253,6 +271,9 @@ public class MainFrame extends JFrame {
         robotMenu.add(createMenuItem("形状设计器", e -> showShapeDesigner()));
         robotMenu.add(createMenuItem("添加机器人", e -> addRobot()));
         robotMenu.add(createMenuItem("删除最后一个", e -> removeLastRobot()));
+        robotMenu.add(createMenuItem("机器人群(1000个)", e -> showCrowd(1000)));
+        robotMenu.add(createMenuItem("机器人群(10000个)", e -> showCrowd(10000)));
+        robotMenu.add(createMenuItem("移除机器人群", e -> removeCrowd()));
         robotMenu.addSeparator();
         robotMenu.add(createMenuItem("头部旋转", e -> rotateHead()));
         robotMenu.add(createMenuItem("手臂动画", e -> animateArms()));
@@ -260,6 +281,7 @@ public class MainFrame extends JFrame {
         robotMenu.addSeparator();
         robotMenu.add(createMenuItem("行走动画", e -> walkAnimation()));
         robotMenu.add(createMenuItem("挥手动画", e -> waveAnimation()));
+        robotMenu.add(createMenuItem("播放关键帧动画...", e -> playKeyframeClip()));
         menuBar.add(robotMenu);
 
         // ========== 9. 帮助 ==========
@@ -493,7 +515,19 @@ public class MainFrame extends JFrame {
     private void enableScanlineHSR() {
         switchTo3D();
         scene3DPanel.setHiddenSurfaceMode(Scene3DPanel.HSRMode.SCANLINE);
-        updateStatus("扫描线消隐");
+        updateStatus("扫描线消隐 - 逐段求可见面，不使用深度缓冲");
+    }
+
+    private void enablePainter() {
+        switchTo3D();
+        scene3DPanel.setHiddenSurfaceMode(Scene3DPanel.HSRMode.PAINTER);
+        updateStatus("画家算法 - 从远到近按深度排序后覆盖绘制");
+    }
+
+    private void enableBSP() {
+        switchTo3D();
+        scene3DPanel.setHiddenSurfaceMode(Scene3DPanel.HSRMode.BSP);
+        updateStatus("BSP树 - 地板只建一次树，按相机位置遍历得到从远到近的顺序");
     }
 
     private void enableBackfaceCulling() {
@@ -520,6 +554,11 @@ public class MainFrame extends JFrame {
         dialog.setVisible(true);
     }
 
+    private void showLightListDialog() {
+        LightingDialog dialog = new LightingDialog(this, scene3DPanel, LightingDialog.LightType.LIST);
+        dialog.setVisible(true);
+    }
+
     private void showMaterialDialog() {
         MaterialDialog dialog = new MaterialDialog(this, scene3DPanel);
         dialog.setVisible(true);
@@ -543,6 +582,27 @@ public class MainFrame extends JFrame {
         updateStatus("Phong明暗 - 逐像素光照计算,高光明显");
     }
 
+    private void setAntiAliasMode(Scene3DPanel.AntiAliasMode mode) {
+        switchTo3D();
+        scene3DPanel.setAntiAliasMode(mode);
+        updateStatus(switch (mode) {
+            case OFF -> "抗锯齿已关闭";
+            case FXAA -> "FXAA - 整帧画完后沿边缘混合相邻像素";
+            case SSAA_2X -> "2x2超采样 - 按4倍像素数渲染后缩小";
+            case SSAA_4X -> "4x4超采样 - 按16倍像素数渲染后缩小";
+        });
+    }
+
+    private void setShadowMode(Scene3DPanel.ShadowMode mode) {
+        switchTo3D();
+        scene3DPanel.setShadowMode(mode);
+        updateStatus(switch (mode) {
+            case OFF -> "阴影已关闭";
+            case HARD -> "硬阴影 - 主光源的阴影贴图,每点比较一次";
+            case PCF -> "柔和阴影 - 阴影贴图3x3 PCF过滤,边缘柔和";
+        });
+    }
+
     // ==================== 机器人动画菜单处理 ====================
 
     private void resetRobotPose() {
@@ -566,6 +626,23 @@ public class MainFrame extends JFrame {
         updateStatus("机器人数量: " + scene3DPanel.getRobotCount());
     }
 
+    private void showCrowd(int count) {
+        switchTo3D();
+        // 每个机器人约占1.5×1.5的地面，舞台随之放大
+        double size = Math.max(16, Math.ceil(Math.sqrt(count) * 1.5));
+        RobotCrowd crowd = RobotCrowd.random(count, size, size, System.nanoTime());
+        scene3DPanel.getStage().setSize(size, size);
+        scene3DPanel.setCrowd(crowd);
+        crowd.startWalking();
+        updateStatus("机器人群: " + count + " 个（共享网格实例化渲染）");
+    }
+
+    private void removeCrowd() {
+        scene3DPanel.setCrowd(null);
+        scene3DPanel.getStage().setSize(16, 16);
+        updateStatus("已移除机器人群");
+    }
+
     private void rotateHead() {
         scene3DPanel.getRobot().animateHead();
         updateStatus("头部旋转动画");
@@ -591,6 +668,41 @@ public class MainFrame extends JFrame {
         updateStatus("挥手动画");
     }
 
+    /**
+     * 从文件加载关键帧动画，在当前机器人（如果有）上交叉淡入播放
+     * 显示机器人群时，群里所有实例的关节也改由这个片段驱动
+     */
+    private void playKeyframeClip() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("播放关键帧动画");
+        chooser.setFileFilter(new FileNameExtensionFilter("关键帧动画 (*.rkf)", "rkf"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        KeyframeClip clip;
+        try {
+            clip = KeyframeClip.load(chooser.getSelectedFile());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "加载失败: " + e.getMessage());
+            return;
+        }
+        AnimationClip animation = clip.toClip();
+        Robot robot = scene3DPanel.getRobot();
+        if (robot != null) {
+            robot.play(animation, KEYFRAME_FADE_SECONDS);
+        }
+        RobotCrowd crowd = scene3DPanel.getCrowd();
+        if (crowd != null) {
+            crowd.setClip(animation);
+        }
+        if (robot == null && crowd == null) {
+            updateStatus("关键帧动画: 场景中没有机器人");
+            return;
+        }
+        updateStatus(String.format("关键帧动画: %s（%.1f 秒，%d 个关键帧）",
+                clip.name, clip.duration(), clip.keyCount()));
+    }
+
     // ==================== 帮助菜单处理 ====================
 
     private void clearAll() {
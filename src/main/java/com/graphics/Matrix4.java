@@ -29,6 +29,11 @@ package com.graphics;
  * 例如：先平移再旋转 = 旋转矩阵 * 平移矩阵
  * 注意：矩阵乘法不满足交换律，顺序很重要！
  * 
+ * 【扁平表示】
+ * 每帧大量调用的路径使用 double[16] 的扁平矩阵（m[行 * 4 + 列]），
+ * 配合 multiplyInto / transformInto / transformPoints 等方法，
+ * 结果写入调用者提供的数组，不产生垃圾。
+ * 
  * @author Computer Graphics Course
  */
 public class Matrix4 {
@@ -206,6 +211,55 @@ public class Matrix4 {
         };
     }
 
+    // ==================== 视图矩阵 ====================
+
+    /**
+     * 创建"看向某点"的视图矩阵
+     *
+     * 【作用】
+     * 相机位于eye，朝向target，世界Y轴朝上（画面不会倾斜）。
+     * 三行分别是相机的右方向r、上方向u和后方向-f：
+     * | rx ry rz -r·eye |
+     * | ux uy uz -u·eye |
+     * | -fx -fy -fz f·eye |
+     * | 0 0 0 1 |
+     * 几乎竖直地向上或向下看时，改用Z轴作为参考的上方向。
+     *
+     * @return 视图矩阵（eye与target重合时返回平移矩阵）
+     */
+    public static double[][] lookAt(double eyeX, double eyeY, double eyeZ,
+            double targetX, double targetY, double targetZ) {
+        double fx = targetX - eyeX, fy = targetY - eyeY, fz = targetZ - eyeZ;
+        double fl = Math.sqrt(fx * fx + fy * fy + fz * fz);
+        if (fl < 1e-9) {
+            return translate(-eyeX, -eyeY, -eyeZ);
+        }
+        fx /= fl;
+        fy /= fl;
+        fz /= fl;
+
+        // 右方向 = 前方向 × 参考上方向
+        double upX = 0, upY = 1, upZ = 0;
+        if (Math.abs(fy) > 0.999) {
+            upY = 0;
+            upZ = 1;
+        }
+        double rx = fy * upZ - fz * upY, ry = fz * upX - fx * upZ, rz = fx * upY - fy * upX;
+        double rl = Math.sqrt(rx * rx + ry * ry + rz * rz);
+        rx /= rl;
+        ry /= rl;
+        rz /= rl;
+
+        // 真正的上方向 = 右方向 × 前方向
+        double ux = ry * fz - rz * fy, uy = rz * fx - rx * fz, uz = rx * fy - ry * fx;
+        return new double[][] {
+                { rx, ry, rz, -(rx * eyeX + ry * eyeY + rz * eyeZ) },
+                { ux, uy, uz, -(ux * eyeX + uy * eyeY + uz * eyeZ) },
+                { -fx, -fy, -fz, fx * eyeX + fy * eyeY + fz * eyeZ },
+                { 0, 0, 0, 1 }
+        };
+    }
+
     // ==================== 投影矩阵 ====================
 
     /**
@@ -431,6 +485,290 @@ public class Matrix4 {
         };
     }
 
+    // ==================== 扁平矩阵（无分配运算） ====================
+    //
+    // 【为什么需要扁平矩阵？】
+    // double[4][4]是5个对象（外层数组 + 4行），每次multiply/transformPoint
+    // 都要new新数组，每帧调用成千上万次会产生大量垃圾，引起GC停顿。
+    // 扁平矩阵用一个double[16]按行存储：m[行 * 4 + 列]，
+    // 下面的方法都把结果写进调用者提供的数组，运算过程中不分配内存。
+
+    /**
+     * 把double[4][4]矩阵转换为扁平矩阵
+     *
+     * @param m   4x4矩阵
+     * @param out 输出的扁平矩阵（长度16）
+     * @return out
+     */
+    public static double[] toFlat(double[][] m, double[] out) {
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                out[i * 4 + j] = m[i][j];
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 把double[4][4]矩阵转换为新的扁平矩阵
+     */
+    public static double[] toFlat(double[][] m) {
+        return toFlat(m, new double[16]);
+    }
+
+    /**
+     * 把扁平矩阵设为单位矩阵
+     *
+     * @param out 扁平矩阵（长度16）
+     * @return out
+     */
+    public static double[] setIdentity(double[] out) {
+        for (int i = 0; i < 16; i++) {
+            out[i] = (i % 5 == 0) ? 1 : 0;
+        }
+        return out;
+    }
+
+    /**
+     * 扁平矩阵乘法: out = a × b
+     *
+     * 【注意】
+     * out可以和a是同一个数组（逐行计算时先把a的一行读到局部变量），
+     * 但不能和b是同一个数组。
+     *
+     * @param a   左矩阵
+     * @param b   右矩阵
+     * @param out 结果
+     * @return out
+     */
+    public static double[] multiplyInto(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < 16; i += 4) {
+            double a0 = a[i], a1 = a[i + 1], a2 = a[i + 2], a3 = a[i + 3];
+            out[i] = a0 * b[0] + a1 * b[4] + a2 * b[8] + a3 * b[12];
+            out[i + 1] = a0 * b[1] + a1 * b[5] + a2 * b[9] + a3 * b[13];
+            out[i + 2] = a0 * b[2] + a1 * b[6] + a2 * b[10] + a3 * b[14];
+            out[i + 3] = a0 * b[3] + a1 * b[7] + a2 * b[11] + a3 * b[15];
+        }
+        return out;
+    }
+
+    /**
+     * 扁平矩阵求逆: out = m⁻¹（伴随矩阵除以行列式）
+     * 用于把屏幕上的点反投影回世界空间（如鼠标拾取）
+     *
+     * @param m   原矩阵
+     * @param out 结果（不能与m是同一个数组）
+     * @return 可逆时返回true；行列式为0时返回false，out内容未定义
+     */
+    public static boolean invertInto(double[] m, double[] out) {
+        out[0] = m[5] * m[10] * m[15] - m[5] * m[11] * m[14] - m[9] * m[6] * m[15]
+                + m[9] * m[7] * m[14] + m[13] * m[6] * m[11] - m[13] * m[7] * m[10];
+        out[4] = -m[4] * m[10] * m[15] + m[4] * m[11] * m[14] + m[8] * m[6] * m[15]
+                - m[8] * m[7] * m[14] - m[12] * m[6] * m[11] + m[12] * m[7] * m[10];
+        out[8] = m[4] * m[9] * m[15] - m[4] * m[11] * m[13] - m[8] * m[5] * m[15]
+                + m[8] * m[7] * m[13] + m[12] * m[5] * m[11] - m[12] * m[7] * m[9];
+        out[12] = -m[4] * m[9] * m[14] + m[4] * m[10] * m[13] + m[8] * m[5] * m[14]
+                - m[8] * m[6] * m[13] - m[12] * m[5] * m[10] + m[12] * m[6] * m[9];
+        out[1] = -m[1] * m[10] * m[15] + m[1] * m[11] * m[14] + m[9] * m[2] * m[15]
+                - m[9] * m[3] * m[14] - m[13] * m[2] * m[11] + m[13] * m[3] * m[10];
+        out[5] = m[0] * m[10] * m[15] - m[0] * m[11] * m[14] - m[8] * m[2] * m[15]
+                + m[8] * m[3] * m[14] + m[12] * m[2] * m[11] - m[12] * m[3] * m[10];
+        out[9] = -m[0] * m[9] * m[15] + m[0] * m[11] * m[13] + m[8] * m[1] * m[15]
+                - m[8] * m[3] * m[13] - m[12] * m[1] * m[11] + m[12] * m[3] * m[9];
+        out[13] = m[0] * m[9] * m[14] - m[0] * m[10] * m[13] - m[8] * m[1] * m[14]
+                + m[8] * m[2] * m[13] + m[12] * m[1] * m[10] - m[12] * m[2] * m[9];
+        out[2] = m[1] * m[6] * m[15] - m[1] * m[7] * m[14] - m[5] * m[2] * m[15]
+                + m[5] * m[3] * m[14] + m[13] * m[2] * m[7] - m[13] * m[3] * m[6];
+        out[6] = -m[0] * m[6] * m[15] + m[0] * m[7] * m[14] + m[4] * m[2] * m[15]
+                - m[4] * m[3] * m[14] - m[12] * m[2] * m[7] + m[12] * m[3] * m[6];
+        out[10] = m[0] * m[5] * m[15] - m[0] * m[7] * m[13] - m[4] * m[1] * m[15]
+                + m[4] * m[3] * m[13] + m[12] * m[1] * m[7] - m[12] * m[3] * m[5];
+        out[14] = -m[0] * m[5] * m[14] + m[0] * m[6] * m[13] + m[4] * m[1] * m[14]
+                - m[4] * m[2] * m[13] - m[12] * m[1] * m[6] + m[12] * m[2] * m[5];
+        out[3] = -m[1] * m[6] * m[11] + m[1] * m[7] * m[10] + m[5] * m[2] * m[11]
+                - m[5] * m[3] * m[10] - m[9] * m[2] * m[7] + m[9] * m[3] * m[6];
+        out[7] = m[0] * m[6] * m[11] - m[0] * m[7] * m[10] - m[4] * m[2] * m[11]
+                + m[4] * m[3] * m[10] + m[8] * m[2] * m[7] - m[8] * m[3] * m[6];
+        out[11] = -m[0] * m[5] * m[11] + m[0] * m[7] * m[9] + m[4] * m[1] * m[11]
+                - m[4] * m[3] * m[9] - m[8] * m[1] * m[7] + m[8] * m[3] * m[5];
+        out[15] = m[0] * m[5] * m[10] - m[0] * m[6] * m[9] - m[4] * m[1] * m[10]
+                + m[4] * m[2] * m[9] + m[8] * m[1] * m[6] - m[8] * m[2] * m[5];
+
+        double det = m[0] * out[0] + m[1] * out[4] + m[2] * out[8] + m[3] * out[12];
+        if (det == 0) {
+            return false;
+        }
+        double invDet = 1.0 / det;
+        for (int i = 0; i < 16; i++) {
+            out[i] *= invDet;
+        }
+        return true;
+    }
+
+    /**
+     * 右乘平移: m = m × T(tx, ty, tz)
+     * 与 multiply(m, translate(tx, ty, tz)) 等价，但不创建新矩阵
+     */
+    public static double[] translateInPlace(double[] m, double tx, double ty, double tz) {
+        for (int i = 0; i < 16; i += 4) {
+            m[i + 3] += m[i] * tx + m[i + 1] * ty + m[i + 2] * tz;
+        }
+        return m;
+    }
+
+    /**
+     * 右乘绕X轴旋转: m = m × Rx(angle)
+     *
+     * @param angle 旋转角度（弧度）
+     */
+    public static double[] rotateXInPlace(double[] m, double angle) {
+        double c = Math.cos(angle), s = Math.sin(angle);
+        for (int i = 0; i < 16; i += 4) {
+            double m1 = m[i + 1], m2 = m[i + 2];
+            m[i + 1] = m1 * c + m2 * s;
+            m[i + 2] = -m1 * s + m2 * c;
+        }
+        return m;
+    }
+
+    /**
+     * 右乘绕Y轴旋转: m = m × Ry(angle)
+     *
+     * @param angle 旋转角度（弧度）
+     */
+    public static double[] rotateYInPlace(double[] m, double angle) {
+        double c = Math.cos(angle), s = Math.sin(angle);
+        for (int i = 0; i < 16; i += 4) {
+            double m0 = m[i], m2 = m[i + 2];
+            m[i] = m0 * c - m2 * s;
+            m[i + 2] = m0 * s + m2 * c;
+        }
+        return m;
+    }
+
+    /**
+     * 右乘绕Z轴旋转: m = m × Rz(angle)
+     *
+     * @param angle 旋转角度（弧度）
+     */
+    public static double[] rotateZInPlace(double[] m, double angle) {
+        double c = Math.cos(angle), s = Math.sin(angle);
+        for (int i = 0; i < 16; i += 4) {
+            double m0 = m[i], m1 = m[i + 1];
+            m[i] = m0 * c + m1 * s;
+            m[i + 1] = -m0 * s + m1 * c;
+        }
+        return m;
+    }
+
+    /**
+     * 用扁平矩阵变换一个点，结果写入out
+     *
+     * @param m   扁平矩阵
+     * @param x   点的X坐标
+     * @param y   点的Y坐标
+     * @param z   点的Z坐标
+     * @param out 输出 [x', y', z', w']（长度至少4）
+     * @return out
+     */
+    public static double[] transformInto(double[] m, double x, double y, double z, double[] out) {
+        out[0] = m[0] * x + m[1] * y + m[2] * z + m[3];
+        out[1] = m[4] * x + m[5] * y + m[6] * z + m[7];
+        out[2] = m[8] * x + m[9] * y + m[10] * z + m[11];
+        out[3] = m[12] * x + m[13] * y + m[14] * z + m[15];
+        return out;
+    }
+
+    /**
+     * 批量变换交错存储的点（x0 y0 z0 x1 y1 z1 ...），只输出x, y, z
+     * 适用于仿射变换（模型、视图矩阵），w恒为1
+     *
+     * @param m      扁平矩阵
+     * @param src    源坐标数组
+     * @param srcOff 源数组起始下标
+     * @param dst    目标坐标数组（可以与src相同）
+     * @param dstOff 目标数组起始下标
+     * @param count  点的个数
+     */
+    public static void transformPoints(double[] m, double[] src, int srcOff,
+            double[] dst, int dstOff, int count) {
+        for (int i = 0; i < count; i++) {
+            int s = srcOff + i * 3, d = dstOff + i * 3;
+            double x = src[s], y = src[s + 1], z = src[s + 2];
+            dst[d] = m[0] * x + m[1] * y + m[2] * z + m[3];
+            dst[d + 1] = m[4] * x + m[5] * y + m[6] * z + m[7];
+            dst[d + 2] = m[8] * x + m[9] * y + m[10] * z + m[11];
+        }
+    }
+
+    /**
+     * 批量变换分量分开存储（结构数组，SoA）的点，只输出x, y, z
+     *
+     * @param m     扁平矩阵
+     * @param xs    源X坐标
+     * @param ys    源Y坐标
+     * @param zs    源Z坐标
+     * @param count 点的个数
+     * @param outX  目标X坐标
+     * @param outY  目标Y坐标
+     * @param outZ  目标Z坐标
+     */
+    public static void transformPoints(double[] m, float[] xs, float[] ys, float[] zs, int count,
+            float[] outX, float[] outY, float[] outZ) {
+        double m0 = m[0], m1 = m[1], m2 = m[2], m3 = m[3];
+        double m4 = m[4], m5 = m[5], m6 = m[6], m7 = m[7];
+        double m8 = m[8], m9 = m[9], m10 = m[10], m11 = m[11];
+        for (int i = 0; i < count; i++) {
+            double x = xs[i], y = ys[i], z = zs[i];
+            outX[i] = (float) (m0 * x + m1 * y + m2 * z + m3);
+            outY[i] = (float) (m4 * x + m5 * y + m6 * z + m7);
+            outZ[i] = (float) (m8 * x + m9 * y + m10 * z + m11);
+        }
+    }
+
+    /**
+     * 批量变换SoA存储的点到齐次坐标（输出x, y, z, w）
+     * 用于投影矩阵，结果是裁剪空间坐标
+     */
+    public static void transformPoints(double[] m, float[] xs, float[] ys, float[] zs, int count,
+            float[] outX, float[] outY, float[] outZ, float[] outW) {
+        for (int i = 0; i < count; i++) {
+            double x = xs[i], y = ys[i], z = zs[i];
+            outX[i] = (float) (m[0] * x + m[1] * y + m[2] * z + m[3]);
+            outY[i] = (float) (m[4] * x + m[5] * y + m[6] * z + m[7]);
+            outZ[i] = (float) (m[8] * x + m[9] * y + m[10] * z + m[11]);
+            outW[i] = (float) (m[12] * x + m[13] * y + m[14] * z + m[15]);
+        }
+    }
+
+    /**
+     * 批量变换SoA存储的法向量并重新归一化
+     * 只使用矩阵左上角3×3部分（不受平移影响），
+     * 适用于旋转和等比缩放（模型矩阵中没有非等比缩放）
+     *
+     * @param m     扁平矩阵
+     * @param xs    源法向量X分量（同ys、zs）
+     * @param count 法向量个数
+     * @param outX  目标X分量（同outY、outZ）
+     */
+    public static void transformNormals(double[] m, float[] xs, float[] ys, float[] zs, int count,
+            float[] outX, float[] outY, float[] outZ) {
+        double m0 = m[0], m1 = m[1], m2 = m[2];
+        double m4 = m[4], m5 = m[5], m6 = m[6];
+        double m8 = m[8], m9 = m[9], m10 = m[10];
+        for (int i = 0; i < count; i++) {
+            double x = xs[i], y = ys[i], z = zs[i];
+            double nx = m0 * x + m1 * y + m2 * z;
+            double ny = m4 * x + m5 * y + m6 * z;
+            double nz = m8 * x + m9 * y + m10 * z;
+            double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            double inv = len > 0 ? 1 / len : 0;
+            outX[i] = (float) (nx * inv);
+            outY[i] = (float) (ny * inv);
+            outZ[i] = (float) (nz * inv);
+        }
+    }
+
     /**
      * 打印矩阵（调试用）
      * 
@@ -0,0 +1,371 @@
+package com.graphics;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ====================================================================
+ * Mesh.java - 索引三角网格（结构数组存储）
+ * ====================================================================
+ *
+ * 【功能说明】
+ * Polygon3D每个面都保存自己的一份顶点，相邻面共享的顶点被重复存储、
+ * 重复变换。Mesh把每个不同的顶点只存一次，面通过下标引用顶点，
+ * 渲染器每帧对每个顶点只做一次变换。
+ *
+ * 【存储格式（结构数组 SoA）】
+ * - x[], y[], z[]: 顶点坐标，每个分量一个float数组
+ * - nx[], ny[], nz[]: 法向量（单独编号，棱角处同一位置可以有多个法向量）
+ * - indices[]: 每个三角形3个顶点下标
+ * - normalIndices[]: 每个三角形3个法向量下标（与indices一一对应）
+ * - materials[]: 每个三角形的材质编号，作为下标查palette[]得到颜色
+ *
+ * 【法向量】
+ * 顶点法向量在构建时计算一次：对共享同一位置、且与本面夹角小于
+ * 折痕角(crease angle)的所有面的法向量求平均。
+ * 所以球面是光滑的，立方体的棱角仍然是硬的。
+ *
+ * 【例子】
+ * 立方体: 8个顶点、6个法向量、12个三角形
+ * （原来6个Polygon3D共存储24个顶点）
+ *
+ * @author Computer Graphics Course
+ */
+public class Mesh {
+
+    /** 默认折痕角（度）：小于它的相邻面被视为光滑连接 */
+    public static final double DEFAULT_CREASE_ANGLE = 45;
+
+    // ==================== 顶点 ====================
+
+    /** 顶点个数 */
+    public final int vertexCount;
+
+    /** 顶点坐标 */
+    public final float[] x, y, z;
+
+    // ==================== 法向量 ====================
+
+    /** 法向量个数 */
+    public final int normalCount;
+
+    /** 单位法向量 */
+    public final float[] nx, ny, nz;
+
+    // ==================== 三角形 ====================
+
+    /** 三角形个数 */
+    public final int triangleCount;
+
+    /** 顶点下标，每个三角形3个 */
+    public final int[] indices;
+
+    /** 法向量下标，每个三角形3个 */
+    public final int[] normalIndices;
+
+    /** 每个三角形的材质编号 */
+    public final int[] materials;
+
+    // ==================== 材质 ====================
+
+    /** 默认调色板：材质编号 → 颜色（0xRRGGBB） */
+    public final int[] palette;
+
+    /** 是否双面渲染（不做背面剔除） */
+    public final boolean doubleSided;
+
+    // ==================== 包围球 ====================
+
+    /** 包围球球心（模型空间，取包围盒中心） */
+    public final double boundsX, boundsY, boundsZ;
+
+    /** 包围球半径 */
+    public final double boundsRadius;
+
+    // ==================== 构造函数 ====================
+
+    /**
+     * 直接由数组构造网格（数组由网格接管，不再复制）
+     */
+    public Mesh(float[] x, float[] y, float[] z,
+            float[] nx, float[] ny, float[] nz,
+            int[] indices, int[] normalIndices, int[] materials,
+            int[] palette, boolean doubleSided) {
+        this.vertexCount = x.length;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.normalCount = nx.length;
+        this.nx = nx;
+        this.ny = ny;
+        this.nz = nz;
+        this.triangleCount = indices.length / 3;
+        this.indices = indices;
+        this.normalIndices = normalIndices;
+        this.materials = materials;
+        this.palette = palette;
+        this.doubleSided = doubleSided;
+
+        // 包围球：以包围盒中心为球心，到最远顶点的距离为半径
+        double minX = Double.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        for (int i = 0; i < vertexCount; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+            maxZ = Math.max(maxZ, z[i]);
+        }
+        if (vertexCount == 0) {
+            boundsX = boundsY = boundsZ = boundsRadius = 0;
+        } else {
+            boundsX = (minX + maxX) / 2;
+            boundsY = (minY + maxY) / 2;
+            boundsZ = (minZ + maxZ) / 2;
+            double r2 = 0;
+            for (int i = 0; i < vertexCount; i++) {
+                double dx = x[i] - boundsX, dy = y[i] - boundsY, dz = z[i] - boundsZ;
+                r2 = Math.max(r2, dx * dx + dy * dy + dz * dz);
+            }
+            boundsRadius = Math.sqrt(r2);
+        }
+    }
+
+    // ==================== 工厂方法 ====================
+
+    /**
+     * 创建以原点为中心的长方体网格
+     *
+     * @param width  宽度（X方向）
+     * @param height 高度（Y方向）
+     * @param depth  深度（Z方向）
+     * @param color  颜色（材质0）
+     */
+    public static Mesh box(double width, double height, double depth, Color color) {
+        double w = width / 2, h = height / 2, d = depth / 2;
+        double[][] c = {
+                { -w, -h, d }, { w, -h, d }, { w, h, d }, { -w, h, d },
+                { -w, -h, -d }, { w, -h, -d }, { w, h, -d }, { -w, h, -d }
+        };
+        int[][] faces = {
+                { 0, 1, 2, 3 }, { 5, 4, 7, 6 }, { 4, 0, 3, 7 },
+                { 1, 5, 6, 2 }, { 3, 2, 6, 7 }, { 4, 5, 1, 0 }
+        };
+        List<Polygon3D> polys = new ArrayList<>();
+        for (int[] f : faces) {
+            polys.add(new Polygon3D(new double[][] { c[f[0]], c[f[1]], c[f[2]], c[f[3]] }, color));
+        }
+        return fromPolygons(polys, DEFAULT_CREASE_ANGLE);
+    }
+
+    /**
+     * 把多边形列表转换为索引网格
+     *
+     * 【处理步骤】
+     * 1. 坐标完全相同的顶点合并为一个
+     * 2. 每个多边形按扇形拆成三角形
+     * 3. 每种不同的颜色分配一个材质编号
+     * 4. 按折痕角计算顶点法向量，相同的法向量只存一次
+     *
+     * @param polygons     多边形列表（凸多边形）
+     * @param creaseAngle  折痕角（度）
+     * @return 索引网格；所有多边形都是双面时网格为双面
+     */
+    public static Mesh fromPolygons(List<Polygon3D> polygons, double creaseAngle) {
+        // ========== 1. 合并顶点 ==========
+        Map<String, Integer> vertexIds = new HashMap<>();
+        List<double[]> positions = new ArrayList<>();
+        Map<Integer, Integer> colorIds = new HashMap<>();
+        List<Integer> colors = new ArrayList<>();
+        int[] tri = new int[0];
+        int[] mat = new int[0];
+        int triCount = 0;
+        boolean doubleSided = !polygons.isEmpty();
+
+        for (Polygon3D poly : polygons) {
+            doubleSided &= poly.doubleSided;
+            int rgb = poly.color.getRGB() & 0xFFFFFF;
+            Integer m = colorIds.get(rgb);
+            if (m == null) {
+                m = colors.size();
+                colorIds.put(rgb, m);
+                colors.add(rgb);
+            }
+
+            int n = poly.vertices.length;
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                double[] v = poly.vertices[i];
+                String key = (float) v[0] + "," + (float) v[1] + "," + (float) v[2];
+                Integer id = vertexIds.get(key);
+                if (id == null) {
+                    id = positions.size();
+                    vertexIds.put(key, id);
+                    positions.add(v);
+                }
+                ids[i] = id;
+            }
+
+            // ========== 2. 扇形三角化 ==========
+            for (int i = 1; i + 1 < n; i++) {
+                if (triCount * 3 + 3 > tri.length) {
+                    tri = Arrays.copyOf(tri, Math.max(48, tri.length * 2));
+                    mat = Arrays.copyOf(mat, tri.length / 3);
+                }
+                tri[triCount * 3] = ids[0];
+                tri[triCount * 3 + 1] = ids[i];
+                tri[triCount * 3 + 2] = ids[i + 1];
+                mat[triCount] = m;
+                triCount++;
+            }
+        }
+        tri = Arrays.copyOf(tri, triCount * 3);
+        mat = Arrays.copyOf(mat, triCount);
+
+        int vc = positions.size();
+        float[] x = new float[vc], y = new float[vc], z = new float[vc];
+        for (int i = 0; i < vc; i++) {
+            double[] v = positions.get(i);
+            x[i] = (float) v[0];
+            y[i] = (float) v[1];
+            z[i] = (float) v[2];
+        }
+
+        // ========== 3. 调色板 ==========
+        int[] palette = new int[colors.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = colors.get(i);
+        }
+
+        // ========== 4. 法向量 ==========
+        float[][] normals = new float[3][];
+        int[] normalIndices = computeNormals(x, y, z, tri, creaseAngle, normals);
+
+        return new Mesh(x, y, z, normals[0], normals[1], normals[2],
+                tri, normalIndices, mat, palette, doubleSided);
+    }
+
+    /**
+     * 计算每个三角形角点的法向量
+     *
+     * 【方法】
+     * 角点法向量 = 共享该顶点、且与本面法向量夹角 ≤ 折痕角的
+     * 所有面的法向量之和（面积加权，因为叉积长度正比于面积），再归一化。
+     *
+     * @param normalsOut 输出 {nx[], ny[], nz[]}
+     * @return 每个角点的法向量下标
+     */
+    private static int[] computeNormals(float[] x, float[] y, float[] z, int[] tri,
+            double creaseAngle, float[][] normalsOut) {
+        int triCount = tri.length / 3;
+        double cosCrease = Math.cos(Math.toRadians(creaseAngle));
+
+        // 面法向量：未归一化的（面积加权）和单位化的
+        double[] faceN = new double[triCount * 3];
+        double[] unitN = new double[triCount * 3];
+        for (int t = 0; t < triCount; t++) {
+            int a = tri[t * 3], b = tri[t * 3 + 1], c = tri[t * 3 + 2];
+            double e1x = x[b] - x[a], e1y = y[b] - y[a], e1z = z[b] - z[a];
+            double e2x = x[c] - x[a], e2y = y[c] - y[a], e2z = z[c] - z[a];
+            double fx = e1y * e2z - e1z * e2y;
+            double fy = e1z * e2x - e1x * e2z;
+            double fz = e1x * e2y - e1y * e2x;
+            double len = Math.sqrt(fx * fx + fy * fy + fz * fz);
+            faceN[t * 3] = fx;
+            faceN[t * 3 + 1] = fy;
+            faceN[t * 3 + 2] = fz;
+            if (len > 1e-12) {
+                unitN[t * 3] = fx / len;
+                unitN[t * 3 + 1] = fy / len;
+                unitN[t * 3 + 2] = fz / len;
+            }
+        }
+
+        // 顶点 → 使用它的三角形列表
+        List<List<Integer>> incident = new ArrayList<>();
+        for (int i = 0; i < x.length; i++) {
+            incident.add(new ArrayList<>());
+        }
+        for (int t = 0; t < triCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                incident.get(tri[t * 3 + k]).add(t);
+            }
+        }
+
+        // 逐角点求平均法向量，相同的法向量只存一次
+        Map<String, Integer> normalIds = new HashMap<>();
+        List<float[]> normals = new ArrayList<>();
+        int[] normalIndices = new int[tri.length];
+        for (int t = 0; t < triCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                double sx = 0, sy = 0, sz = 0;
+                for (int other : incident.get(tri[t * 3 + k])) {
+                    double dot = unitN[t * 3] * unitN[other * 3]
+                            + unitN[t * 3 + 1] * unitN[other * 3 + 1]
+                            + unitN[t * 3 + 2] * unitN[other * 3 + 2];
+                    if (dot >= cosCrease) {
+                        sx += faceN[other * 3];
+                        sy += faceN[other * 3 + 1];
+                        sz += faceN[other * 3 + 2];
+                    }
+                }
+                double len = Math.sqrt(sx * sx + sy * sy + sz * sz);
+                float[] n = len > 1e-12
+                        ? new float[] { (float) (sx / len), (float) (sy / len), (float) (sz / len) }
+                        : new float[] { 0, 1, 0 };
+                String key = n[0] + "," + n[1] + "," + n[2];
+                Integer id = normalIds.get(key);
+                if (id == null) {
+                    id = normals.size();
+                    normalIds.put(key, id);
+                    normals.add(n);
+                }
+                normalIndices[t * 3 + k] = id;
+            }
+        }
+
+        int nc = normals.size();
+        float[] nx = new float[nc], ny = new float[nc], nz = new float[nc];
+        for (int i = 0; i < nc; i++) {
+            float[] n = normals.get(i);
+            nx[i] = n[0];
+            ny[i] = n[1];
+            nz[i] = n[2];
+        }
+        normalsOut[0] = nx;
+        normalsOut[1] = ny;
+        normalsOut[2] = nz;
+        return normalIndices;
+    }
+
+    // ==================== 转换 ====================
+
+    /**
+     * 用变换后的顶点位置展开成多边形列表（每个三角形一个Polygon3D）
+     * 供仍使用Polygon3D的代码使用，渲染器直接使用网格本身
+     *
+     * @param px      各顶点的X坐标（传入this.x即为模型空间）
+     * @param py      各顶点的Y坐标
+     * @param pz      各顶点的Z坐标
+     * @param palette 调色板（null表示使用默认调色板）
+     * @param out     输出列表
+     */
+    public void toPolygons(float[] px, float[] py, float[] pz, int[] palette, List<Polygon3D> out) {
+        int[] colors = palette != null ? palette : this.palette;
+        for (int tIndex = 0; tIndex < triangleCount; tIndex++) {
+            double[][] verts = new double[3][];
+            for (int k = 0; k < 3; k++) {
+                int v = indices[tIndex * 3 + k];
+                verts[k] = new double[] { px[v], py[v], pz[v] };
+            }
+            Polygon3D poly = new Polygon3D(verts, new Color(colors[materials[tIndex]]));
+            poly.doubleSided = doubleSided;
+            out.add(poly);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.graphics;
+
+/**
+ * ====================================================================
+ * MeshSink.java - 网格绘制接口
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 场景对象（机器人、舞台）通过这个接口把"哪个网格、顶点在世界中的位置、什么颜色"
+ * 交给渲染器，而不是生成一堆多边形对象。
+ * 世界空间顶点由场景对象提供（可以跨帧缓存，见SceneNode），
+ * 渲染器只负责视图投影之后的部分。
+ *
+ * @author Computer Graphics Course
+ */
+public interface MeshSink {
+
+    /**
+     * 绘制一个网格
+     *
+     * @param mesh    网格（提供三角形索引和材质）
+     * @param worldX  各顶点的世界坐标X（下标与mesh顶点对应）；
+     *                调用方可能在返回后修改这些数组，实现方不能保存它们
+     * @param worldY  各顶点的世界坐标Y
+     * @param worldZ  各顶点的世界坐标Z
+     * @param world   模型的世界矩阵（扁平4×4，用于变换法向量），null表示单位矩阵；
+     *                同样不能保存
+     * @param palette 调色板，null表示使用网格的默认调色板
+     */
+    void drawMesh(Mesh mesh, float[] worldX, float[] worldY, float[] worldZ, double[] world, int[] palette);
+
+    /**
+     * 绘制一个网格，同时给出提交它的物体
+     * owner在物体的生命期内不变（例如场景图节点），渲染器可以把它当作键
+     * 跨帧缓存按物体计算的结果；顶点数组仍然不能保存
+     *
+     * @param owner 提交网格的物体
+     */
+    default void drawMesh(Object owner, Mesh mesh, float[] worldX, float[] worldY, float[] worldZ,
+            double[] world, int[] palette) {
+        drawMesh(mesh, worldX, worldY, worldZ, world, palette);
+    }
+}
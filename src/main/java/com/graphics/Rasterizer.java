@@ -0,0 +1,396 @@
+package com.graphics;
+
+import java.util.Arrays;
+
+/**
+ * ====================================================================
+ * Rasterizer.java - 软件光栅化器（Z-Buffer）
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 这是3D管线的最后一步：把屏幕空间的三角形"涂"到像素上。
+ * 与Graphics2D.fillPolygon不同，这里直接写入int[]颜色缓冲区，
+ * 并为每个像素维护一个float深度值，实现真正的逐像素深度测试。
+ *
+ * 【缓冲区】
+ * - colorBuffer: int[宽×高]，每个元素是一个0xRRGGBB像素
+ * - depthBuffer: float[宽×高]，存储当前像素最近表面的NDC深度
+ *
+ * 【边函数(Edge Function)】
+ * 对于有向边 Vi→Vj，点P的边函数为：
+ * E(P) = (xj - xi) × (Py - yi) - (yj - yi) × (Px - xi)
+ * 三条边的E都 ≥ 0 时，P在三角形内部。
+ * E是P的线性函数，所以沿X方向每走一个像素只需加一个常数，
+ * 沿Y方向每走一行也只需加一个常数（增量计算，无乘法）。
+ *
+ * 【重心坐标插值】
+ * 三个边函数除以三角形面积就是重心坐标(w0, w1, w2)，
+ * 深度 z = w0×z0 + w1×z1 + w2×z2 同样可以增量计算。
+ *
+ * 【透视正确的属性插值】
+ * 颜色、法向量等属性在屏幕空间不是线性的，但a/w和1/w是。
+ * 对每个像素插值 Σwi×(ai/wi) 和 Σwi×(1/wi)，两者相除得到属性；
+ * 重心坐标的公共分母(面积)在相除时抵消，直接用边函数值做权重即可。
+ * 属性只在通过深度测试后才计算，被遮挡的像素不做除法和光照。
+ *
+ * 【多线程】
+ * fillTriangle()只读取缓冲区引用，不修改对象状态，
+ * 多个线程可以同时在互不重叠的区域内调用（见TileRenderer）。
+ *
+ * 【填充规则】
+ * 采用"左上规则"：像素中心恰好落在边上时，只有上边和左边算内部，
+ * 相邻三角形的公共边不会被画两次，也不会留缝。
+ *
+ * @author Computer Graphics Course
+ */
+public class Rasterizer {
+
+    /** 非左上边的偏移量：像素中心必须严格在边内 */
+    private static final double EDGE_EPSILON = 1e-9;
+
+    // ==================== 缓冲区 ====================
+
+    /** 帧缓冲宽度和高度（像素） */
+    private int width, height;
+
+    /** 颜色缓冲区（通常直接指向BufferedImage的像素数组） */
+    private int[] colorBuffer;
+
+    /** 深度缓冲区，值越小离相机越近 */
+    private float[] depthBuffer;
+
+    // ==================== 缓冲区管理 ====================
+
+    /**
+     * 绑定颜色缓冲区
+     * 深度缓冲区的尺寸会随之调整
+     *
+     * @param pixels 颜色缓冲区，长度至少为 width × height
+     * @param width  宽度
+     * @param height 高度
+     */
+    public void bind(int[] pixels, int width, int height) {
+        this.colorBuffer = pixels;
+        this.width = width;
+        this.height = height;
+        if (depthBuffer == null || depthBuffer.length < width * height) {
+            depthBuffer = new float[width * height];
+        }
+    }
+
+    /**
+     * 清空颜色缓冲区和深度缓冲区
+     *
+     * @param background 背景颜色（0xRRGGBB）
+     */
+    public void clear(int background) {
+        int n = width * height;
+        Arrays.fill(colorBuffer, 0, n, background);
+        Arrays.fill(depthBuffer, 0, n, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * 只清空一个矩形区域（分块渲染时每个方块清空自己的部分）
+     *
+     * @param minX       区域左边界（含）
+     * @param minY       区域上边界（含）
+     * @param maxX       区域右边界（不含）
+     * @param maxY       区域下边界（不含）
+     * @param background 背景颜色（0xRRGGBB）
+     */
+    public void clearRegion(int minX, int minY, int maxX, int maxY, int background) {
+        clearRegion(minX, minY, maxX, maxY, background, true);
+    }
+
+    /**
+     * 清空一个矩形区域，可以只清颜色（不做深度测试的绘制不需要深度缓冲）
+     *
+     * @param clearDepth 是否同时清空深度缓冲
+     */
+    public void clearRegion(int minX, int minY, int maxX, int maxY, int background, boolean clearDepth) {
+        for (int y = minY; y < maxY; y++) {
+            int row = y * width;
+            Arrays.fill(colorBuffer, row + minX, row + maxX, background);
+            if (clearDepth) {
+                Arrays.fill(depthBuffer, row + minX, row + maxX, Float.POSITIVE_INFINITY);
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getColorBuffer() {
+        return colorBuffer;
+    }
+
+    public float[] getDepthBuffer() {
+        return depthBuffer;
+    }
+
+    // ==================== 三角形光栅化 ====================
+
+    /**
+     * 绘制一个屏幕空间三角形（带深度测试）
+     *
+     * @param x0    顶点0的屏幕X坐标（可带小数，亚像素精度）
+     * @param y0    顶点0的屏幕Y坐标
+     * @param z0    顶点0的NDC深度
+     * @param x1    顶点1的屏幕X坐标
+     * @param y1    顶点1的屏幕Y坐标
+     * @param z1    顶点1的NDC深度
+     * @param x2    顶点2的屏幕X坐标
+     * @param y2    顶点2的屏幕Y坐标
+     * @param z2    顶点2的NDC深度
+     * @param color 填充颜色（0xRRGGBB）
+     */
+    public void drawTriangle(double x0, double y0, double z0,
+            double x1, double y1, double z1,
+            double x2, double y2, double z2, int color) {
+        fillTriangle(x0, y0, z0, x1, y1, z1, x2, y2, z2, color, true, 0, 0, width, height);
+    }
+
+    /**
+     * 在给定的矩形区域内光栅化三角形
+     * 区域之外的像素不会被触碰
+     *
+     * @param depthTest false表示不做深度测试、不写深度（画家算法按远到近覆盖）
+     * @param minX 区域左边界（含）
+     * @param minY 区域上边界（含）
+     * @param maxX 区域右边界（不含）
+     * @param maxY 区域下边界（不含）
+     */
+    void fillTriangle(double x0, double y0, double z0,
+            double x1, double y1, double z1,
+            double x2, double y2, double z2, int color, boolean depthTest,
+            int minX, int minY, int maxX, int maxY) {
+
+        // ========== Step 1: 三角形面积（有向） ==========
+        double area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (area == 0 || Double.isNaN(area)) {
+            return; // 退化三角形
+        }
+        // 统一为正面积，交换顶点1和顶点2
+        if (area < 0) {
+            double t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            t = z1; z1 = z2; z2 = t;
+            area = -area;
+        }
+
+        // ========== Step 2: 包围盒（与区域求交） ==========
+        int bx0 = Math.max(minX, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int by0 = Math.max(minY, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int bx1 = Math.min(maxX - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int by1 = Math.min(maxY - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (bx0 > bx1 || by0 > by1) {
+            return; // 完全在区域之外
+        }
+
+        // ========== Step 3: 边函数的增量系数 ==========
+        // E12对应顶点0的权重，E20对应顶点1，E01对应顶点2
+        double a12 = -(y2 - y1), b12 = x2 - x1;
+        double a20 = -(y0 - y2), b20 = x0 - x2;
+        double a01 = -(y1 - y0), b01 = x1 - x0;
+
+        // 左上规则：非左上边上的像素不算内部
+        double bias12 = isTopLeft(x1, y1, x2, y2) ? 0 : -EDGE_EPSILON;
+        double bias20 = isTopLeft(x2, y2, x0, y0) ? 0 : -EDGE_EPSILON;
+        double bias01 = isTopLeft(x0, y0, x1, y1) ? 0 : -EDGE_EPSILON;
+
+        // 起始像素中心
+        double px = bx0 + 0.5, py = by0 + 0.5;
+        double e12Row = b12 * (py - y1) + a12 * (px - x1) + bias12;
+        double e20Row = b20 * (py - y2) + a20 * (px - x2) + bias20;
+        double e01Row = b01 * (py - y0) + a01 * (px - x0) + bias01;
+
+        // 深度的平面方程：z = zRow + dzdx × Δx
+        double invArea = 1.0 / area;
+        double dzdx = (a12 * z0 + a20 * z1 + a01 * z2) * invArea;
+        double dzdy = (b12 * z0 + b20 * z1 + b01 * z2) * invArea;
+        double zRow = (e12Row * z0 + e20Row * z1 + e01Row * z2) * invArea;
+
+        int[] color32 = colorBuffer;
+        float[] depth = depthBuffer;
+
+        // ========== Step 4: 逐行扫描 ==========
+        for (int y = by0; y <= by1; y++) {
+            double e12 = e12Row, e20 = e20Row, e01 = e01Row;
+            double z = zRow;
+            int index = y * width + bx0;
+            boolean entered = false;
+
+            for (int x = bx0; x <= bx1; x++, index++) {
+                if (e12 >= 0 && e20 >= 0 && e01 >= 0) {
+                    entered = true;
+                    // ========== 深度测试 ==========
+                    if (!depthTest) {
+                        color32[index] = color;
+                    } else {
+                        float fz = (float) z;
+                        if (fz < depth[index]) {
+                            depth[index] = fz;
+                            color32[index] = color;
+                        }
+                    }
+                } else if (entered) {
+                    break; // 三角形是凸的，离开后本行不会再进入
+                }
+                e12 += a12;
+                e20 += a20;
+                e01 += a01;
+                z += dzdx;
+            }
+
+            e12Row += b12;
+            e20Row += b20;
+            e01Row += b01;
+            zRow += dzdy;
+        }
+    }
+
+    /**
+     * 在给定的矩形区域内光栅化一个带顶点属性的三角形（Gouraud/Phong）
+     *
+     * @param kind      TriangleBatch.GOURAUD或TriangleBatch.PHONG
+     * @param attr      顶点属性数组（格式见TriangleBatch）
+     * @param offset    本三角形属性的起始下标
+     * @param baseColor 材质颜色（Phong逐像素光照用）
+     * @param lights    分簇光源（Phong逐像素光照用）
+     * @param depthTest false表示不做深度测试、不写深度
+     */
+    void fillShadedTriangle(double x0, double y0, double z0,
+            double x1, double y1, double z1,
+            double x2, double y2, double z2,
+            byte kind, float[] attr, int offset, int baseColor, LightClusters lights, boolean depthTest,
+            int minX, int minY, int maxX, int maxY) {
+
+        int stride = kind == TriangleBatch.PHONG ? TriangleBatch.PHONG_STRIDE : TriangleBatch.GOURAUD_STRIDE;
+        int a0 = offset, a1 = offset + stride, a2 = offset + 2 * stride;
+
+        // ========== 面积、包围盒、边函数（与fillTriangle相同） ==========
+        double area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (area == 0 || Double.isNaN(area)) {
+            return;
+        }
+        if (area < 0) {
+            double t;
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+            t = z1; z1 = z2; z2 = t;
+            int ta = a1; a1 = a2; a2 = ta; // 属性跟着顶点交换
+            area = -area;
+        }
+
+        int bx0 = Math.max(minX, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int by0 = Math.max(minY, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int bx1 = Math.min(maxX - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int by1 = Math.min(maxY - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (bx0 > bx1 || by0 > by1) {
+            return;
+        }
+
+        double a12 = -(y2 - y1), b12 = x2 - x1;
+        double a20 = -(y0 - y2), b20 = x0 - x2;
+        double a01 = -(y1 - y0), b01 = x1 - x0;
+
+        double bias12 = isTopLeft(x1, y1, x2, y2) ? 0 : -EDGE_EPSILON;
+        double bias20 = isTopLeft(x2, y2, x0, y0) ? 0 : -EDGE_EPSILON;
+        double bias01 = isTopLeft(x0, y0, x1, y1) ? 0 : -EDGE_EPSILON;
+
+        double px = bx0 + 0.5, py = by0 + 0.5;
+        double e12Row = b12 * (py - y1) + a12 * (px - x1) + bias12;
+        double e20Row = b20 * (py - y2) + a20 * (px - x2) + bias20;
+        double e01Row = b01 * (py - y0) + a01 * (px - x0) + bias01;
+
+        double invArea = 1.0 / area;
+        double dzdx = (a12 * z0 + a20 * z1 + a01 * z2) * invArea;
+        double dzdy = (b12 * z0 + b20 * z1 + b01 * z2) * invArea;
+        double zRow = (e12Row * z0 + e20Row * z1 + e01Row * z2) * invArea;
+
+        // 各顶点的1/w（边函数e12对应顶点0，e20对应顶点1，e01对应顶点2）
+        double q0 = attr[a0], q1 = attr[a1], q2 = attr[a2];
+        boolean phong = kind == TriangleBatch.PHONG;
+
+        int[] color32 = colorBuffer;
+        float[] depth = depthBuffer;
+
+        // ========== 逐行扫描 ==========
+        for (int y = by0; y <= by1; y++) {
+            double e12 = e12Row, e20 = e20Row, e01 = e01Row;
+            double z = zRow;
+            int index = y * width + bx0;
+            boolean entered = false;
+
+            for (int x = bx0; x <= bx1; x++, index++) {
+                if (e12 >= 0 && e20 >= 0 && e01 >= 0) {
+                    entered = true;
+                    float fz = (float) z;
+                    if (!depthTest || fz < depth[index]) {
+                        if (depthTest) {
+                            depth[index] = fz;
+                        }
+                        // 透视校正：属性 = Σe×(a×q) / Σe×q
+                        double inv = 1.0 / (e12 * q0 + e20 * q1 + e01 * q2);
+                        double w0 = e12 * inv, w1 = e20 * inv, w2 = e01 * inv;
+                        if (phong) {
+                            double nx = w0 * attr[a0 + 1] + w1 * attr[a1 + 1] + w2 * attr[a2 + 1];
+                            double ny = w0 * attr[a0 + 2] + w1 * attr[a1 + 2] + w2 * attr[a2 + 2];
+                            double nz = w0 * attr[a0 + 3] + w1 * attr[a1 + 3] + w2 * attr[a2 + 3];
+                            double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+                            if (len > 0) {
+                                nx /= len;
+                                ny /= len;
+                                nz /= len;
+                            }
+                            color32[index] = lights.shade(x, y, nx, ny, nz,
+                                    w0 * attr[a0 + 4] + w1 * attr[a1 + 4] + w2 * attr[a2 + 4],
+                                    w0 * attr[a0 + 5] + w1 * attr[a1 + 5] + w2 * attr[a2 + 5],
+                                    w0 * attr[a0 + 6] + w1 * attr[a1 + 6] + w2 * attr[a2 + 6],
+                                    baseColor);
+                        } else {
+                            int r = clampChannel(w0 * attr[a0 + 1] + w1 * attr[a1 + 1] + w2 * attr[a2 + 1]);
+                            int g = clampChannel(w0 * attr[a0 + 2] + w1 * attr[a1 + 2] + w2 * attr[a2 + 2]);
+                            int b = clampChannel(w0 * attr[a0 + 3] + w1 * attr[a1 + 3] + w2 * attr[a2 + 3]);
+                            color32[index] = (r << 16) | (g << 8) | b;
+                        }
+                    }
+                } else if (entered) {
+                    break;
+                }
+                e12 += a12;
+                e20 += a20;
+                e01 += a01;
+                z += dzdx;
+            }
+
+            e12Row += b12;
+            e20Row += b20;
+            e01Row += b01;
+            zRow += dzdy;
+        }
+    }
+
+    /**
+     * 把插值得到的颜色分量截断到0~255（插值误差可能略微越界）
+     */
+    private static int clampChannel(double c) {
+        return c <= 0 ? 0 : c >= 255 ? 255 : (int) c;
+    }
+
+    /**
+     * 判断有向边是否为"上边"或"左边"
+     * （面积为正时屏幕上是顺时针：上边向右走，左边向上走）
+     */
+    private static boolean isTopLeft(double xa, double ya, double xb, double yb) {
+        boolean top = ya == yb && xb > xa;
+        boolean left = yb < ya;
+        return top || left;
+    }
+}
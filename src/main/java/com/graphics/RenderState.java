@@ -0,0 +1,158 @@
+package com.graphics;
+
+import java.awt.Color;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ====================================================================
+ * RenderState.java - 渲染状态快照
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 渲染一帧所需的全部相机、光照和模式参数。
+ * Swing线程(EDT)每次修改相机或光源时创建一个新的快照，
+ * 通过AtomicReference发布给渲染线程，渲染线程每帧开始时取一次。
+ *
+ * 【无锁约定】
+ * 快照只在发布之前填写，发布之后不再修改（视为不可变对象）。
+ * AtomicReference.set()/get()保证渲染线程看到完整填写的字段，
+ * 所以EDT和渲染线程之间不需要任何锁，菜单和对话框也不会被渲染阻塞。
+ *
+ * 【离屏渲染】
+ * defaults()给出与Scene3DPanel初始状态相同的快照，按需修改字段后
+ * 交给SceneRenderer.render()；改过光照参数要再调用updateLighting()。
+ *
+ * @author Computer Graphics Course
+ */
+public class RenderState implements Cloneable {
+
+    // ==================== 画面 ====================
+
+    /** 帧宽度和高度（像素） */
+    public int width, height;
+
+    /** 背景颜色（0xRRGGBB） */
+    public int background;
+
+    // ==================== 模式 ====================
+
+    public Scene3DPanel.ProjectionMode projectionMode;
+    public Scene3DPanel.HSRMode hsrMode;
+    public Scene3DPanel.ShadingMode shadingMode;
+    public Scene3DPanel.ShadowMode shadowMode;
+    public Scene3DPanel.AntiAliasMode antiAliasMode;
+
+    /** 超采样倍数（每个方向；width、height已乘过它，1表示按屏幕分辨率渲染） */
+    public int supersample = 1;
+
+    // ==================== 相机 ====================
+
+    /** 相机位置 */
+    public double cameraX, cameraY, cameraZ;
+
+    /** 相机俯仰和偏航（度） */
+    public double cameraRotX, cameraRotY;
+
+    /** 相机看向的点（非null时代替俯仰和偏航，世界Y轴朝上；发布后不可修改） */
+    public double[] lookAtTarget;
+
+    /** 视场角（度） */
+    public double fov;
+
+    /** 近、远裁剪面 */
+    public double nearPlane, farPlane;
+
+    // ==================== 光照 ====================
+
+    /** 环境光颜色 */
+    public Color ambientLight;
+
+    /** 点光源位置（发布后不可修改） */
+    public double[] lightPosition;
+
+    /** 光源颜色 */
+    public Color lightColor;
+
+    /** 光照强度 */
+    public double lightIntensity;
+
+    /** 全部光源：第0个是主光源（lightPosition处的点光源），之后是附加光源 */
+    public Light[] lights;
+
+    /** 由以上参数构造的光照模型（发布前填写） */
+    public Lighting lighting;
+
+    /**
+     * 与Scene3DPanel初始参数相同的快照（离屏渲染的起点）
+     *
+     * @param width  帧宽度
+     * @param height 帧高度
+     */
+    public static RenderState defaults(int width, int height) {
+        RenderState s = new RenderState();
+        s.width = width;
+        s.height = height;
+        s.background = 0x1E1E28; // 深灰蓝背景
+        s.projectionMode = Scene3DPanel.ProjectionMode.PERSPECTIVE;
+        s.hsrMode = Scene3DPanel.HSRMode.ZBUFFER;
+        s.shadingMode = Scene3DPanel.ShadingMode.PHONG;
+        s.shadowMode = Scene3DPanel.ShadowMode.PCF;
+        s.antiAliasMode = Scene3DPanel.AntiAliasMode.FXAA;
+        s.cameraX = 0;
+        s.cameraY = 3;
+        s.cameraZ = 12;
+        s.cameraRotX = -10;
+        s.cameraRotY = 0;
+        s.fov = 50;
+        s.nearPlane = 1.0;
+        s.farPlane = 200;
+        s.ambientLight = new Color(50, 50, 50);
+        s.lightPosition = new double[] { 5, 10, 5 };
+        s.lightColor = Color.WHITE;
+        s.lightIntensity = 1.0;
+        s.updateLighting(Collections.emptyList());
+        return s;
+    }
+
+    /**
+     * 由主光源参数和附加光源填写lights和lighting（发布前调用）
+     *
+     * @param additionalLights 主光源之外的光源
+     */
+    public void updateLighting(List<Light> additionalLights) {
+        lights = new Light[additionalLights.size() + 1];
+        lights[0] = Light.point(lightPosition[0], lightPosition[1], lightPosition[2],
+                lightColor.getRGB(), lightIntensity, Double.POSITIVE_INFINITY);
+        for (int i = 1; i < lights.length; i++) {
+            lights[i] = additionalLights.get(i - 1);
+        }
+        lighting = Lighting.from(this);
+    }
+
+    /**
+     * 把相机放在eye处看向target（环绕拍摄用）
+     * 高光与相机位置有关，之后要再调用updateLighting()
+     */
+    public void lookAt(double eyeX, double eyeY, double eyeZ, double targetX, double targetY, double targetZ) {
+        cameraX = eyeX;
+        cameraY = eyeY;
+        cameraZ = eyeZ;
+        lookAtTarget = new double[] { targetX, targetY, targetZ };
+    }
+
+    /**
+     * 按factor倍分辨率渲染用的副本（其余参数相同）
+     */
+    public RenderState supersampled(int factor) {
+        try {
+            RenderState s = (RenderState) clone();
+            s.width = width * factor;
+            s.height = height * factor;
+            s.supersample = supersample * factor;
+            return s;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
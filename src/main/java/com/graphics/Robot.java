@@ -2,7 +2,10 @@ package com.graphics;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * ====================================================================
@@ -26,6 +29,17 @@ import java.util.List;
  * 3. 再平移回原来的位置
  * 这样旋转就是绕关节点进行的
  * 
+ * 【动画】
+ * 关节角度和行走位移是姿态的各个通道（HEAD_ROT_Y ... MOVE_Z），
+ * 由AnimationClock按固定步长推进AnimationClip得到；每一步把上一步和这一步的
+ * 通道值复制进两块预先分配的数组，渲染线程在相邻两步之间插值。
+ * 片段可以是代码写的函数，也可以是从文件加载的关键帧（KeyframeClip）。
+ * 
+ * 【线程】
+ * 位置、朝向和姿态由同一把StampedLock保护：EDT的平移、动画时钟并入行走距离
+ * 都持有写锁，渲染线程用乐观读一次取得一致的快照（冲突时退回读锁），
+ * 不会丢失某一方的修改，也不会看到新位置配旧姿态（机器人跳一步）。
+ * 
  * 【坐标系】
  * - X轴：左右方向（正向为右）
  * - Y轴：上下方向（正向为上）
@@ -55,24 +69,39 @@ public class Robot {
     /** 右腿 */
     private RobotPart rightLeg;
 
-    // ==================== 关节角度（单位：度） ====================
+    // ==================== 姿态通道（关节角度单位：度） ====================
 
     /** 头部绕Y轴旋转角度（左右转头） */
-    private double headRotY = 0;
+    public static final int HEAD_ROT_Y = 0;
 
     /** 左臂绕X轴旋转（前后摆动）和绕Z轴旋转（侧向摆动） */
-    private double leftArmRotX = 0, leftArmRotZ = 0;
+    public static final int LEFT_ARM_ROT_X = 1, LEFT_ARM_ROT_Z = 2;
 
     /** 右臂旋转角度 */
-    private double rightArmRotX = 0, rightArmRotZ = 0;
+    public static final int RIGHT_ARM_ROT_X = 3, RIGHT_ARM_ROT_Z = 4;
+
+    /** 左腿、右腿绕X轴旋转（前后摆动） */
+    public static final int LEFT_LEG_ROT_X = 5, RIGHT_LEG_ROT_X = 6;
+
+    /** 动画中沿Z轴的位移（行走；片段结束时并入位置） */
+    public static final int MOVE_Z = 7;
+
+    /** 通道数 */
+    public static final int CHANNELS = 8;
 
-    /** 左腿绕X轴旋转（前后摆动） */
-    private double leftLegRotX = 0;
+    /** 静止姿态（全部通道为0） */
+    private static final double[] REST = new double[CHANNELS];
 
-    /** 右腿旋转角度 */
-    private double rightLegRotX = 0;
+    /** 保护位置、朝向和姿态（见【线程】） */
+    private final StampedLock poseLock = new StampedLock();
 
-    // ==================== 整体位置和朝向 ====================
+    /** 上一步和最新一步的通道值（由poseLock保护） */
+    private final double[] previousPose = new double[CHANNELS], currentPose = new double[CHANNELS];
+
+    /** 产生当前姿态的时钟（提供插值系数；null表示不插值，由poseLock保护） */
+    private AnimationClock poseClock;
+
+    // ==================== 整体位置和朝向（由poseLock保护） ====================
 
     /** 机器人在世界坐标系中的位置 */
     private double posX = 0, posY = 0, posZ = 0;
@@ -80,13 +109,25 @@ public class Robot {
     /** 机器人整体绕Y轴的旋转角度（朝向） */
     private double rotY = 0;
 
-    // ==================== 动画状态 ====================
+    // ==================== 本帧快照（仅渲染线程使用） ====================
 
-    /** 是否正在播放动画 */
-    private boolean isAnimating = false;
+    /** update()读到的位置和朝向 */
+    private double frameX, frameY, frameZ, frameRotY;
 
-    /** 动画计时器 */
-    private double animationTime = 0;
+    /** update()读到的姿态（已插值） */
+    private final double[] framePose = new double[CHANNELS];
+
+    // ==================== 变更通知 ====================
+
+    /**
+     * 姿态版本号
+     * 位置、朝向、关节角度或颜色每变化一次就加1，
+     * 渲染器据此判断机器人是否需要重新绘制
+     */
+    private volatile long version = 0;
+
+    /** 变更监听器（通常是所在的Scene3DPanel，用于请求重绘） */
+    private volatile Runnable changeListener;
 
     // ==================== 颜色设置 ====================
 
@@ -108,6 +149,17 @@ public class Robot {
      */
     private List<Polygon3D> customParts = null;
 
+    /** 自定义模型合并后的索引网格（共享顶点只存一次） */
+    private Mesh customMesh = null;
+
+    // ==================== 场景图（仅渲染线程使用） ====================
+
+    /**
+     * 根节点：承载机器人整体的位置和朝向（标准机器人的躯干网格也挂在这里）
+     * 头和四肢是它的子节点，关节角度只影响各自的子树
+     */
+    private SceneNode root;
+
     // ==================== 构造函数 ====================
 
     /**
@@ -123,211 +175,233 @@ public class Robot {
      * @param customParts 自定义的多边形列表
      */
     public Robot(List<Polygon3D> customParts) {
+        this(customParts, Collections.emptyList());
+    }
+
+    /**
+     * 自定义模型构造函数（曲面部件带细节层次）
+     * 平面部件合并成一个网格挂在根节点上；每个曲面部件（球体、圆柱体）
+     * 是根节点的一个子节点，绘制时按投影大小选择细分级别
+     * 
+     * @param customParts 自定义的多边形列表
+     * @param lodParts    曲面部件的细节层次网格链（顶点与customParts在同一坐标系）
+     */
+    public Robot(List<Polygon3D> customParts, List<LODMesh> lodParts) {
         this.customParts = customParts;
+        this.customMesh = Mesh.fromPolygons(customParts, Mesh.DEFAULT_CREASE_ANGLE);
+        this.root = new SceneNode("custom", customMesh, null);
+        for (int i = 0; i < lodParts.size(); i++) {
+            SceneNode part = new SceneNode("lod" + i);
+            part.setLOD(lodParts.get(i), null);
+            root.addChild(part);
+        }
     }
 
     // ==================== 模型构建 ====================
 
     /**
      * 构建机器人各部件
-     * 每个部件使用createBox方法创建长方体
-     * 参数说明：中心位置(cx, cy, cz), 尺寸(width, height, depth)
+     * 每个部件是一个以原点为中心的长方体网格（Mesh.box）
      */
     private void buildRobot() {
-        // 躯干 - 位于原点，是最大的部件
-        body = new RobotPart("body", createBox(0, 0, 0, 0.8, 1.2, 0.5), bodyColor);
-
-        // 头部 - 在躯干上方
-        head = new RobotPart("head", createBox(0, 1.0, 0, 0.5, 0.5, 0.5), headColor);
-
-        // 左臂 - 在躯干左侧，Y坐标稍高表示从肩膀开始
-        leftArm = new RobotPart("leftArm", createBox(-0.65, 0.3, 0, 0.25, 0.8, 0.25), limbColor);
-
-        // 右臂 - 在躯干右侧
-        rightArm = new RobotPart("rightArm", createBox(0.65, 0.3, 0, 0.25, 0.8, 0.25), limbColor);
-
-        // 左腿 - 在躯干下方左侧
-        leftLeg = new RobotPart("leftLeg", createBox(-0.25, -1.2, 0, 0.3, 0.9, 0.3), limbColor);
-
-        // 右腿 - 在躯干下方右侧
-        rightLeg = new RobotPart("rightLeg", createBox(0.25, -1.2, 0, 0.3, 0.9, 0.3), limbColor);
-    }
-
-    /**
-     * 创建长方体的8个顶点
-     * 
-     * 【长方体顶点编号】
-     * 顶点按照以下方式编号（从前面看）：
-     * 7----6
-     * /| /|
-     * 3----2 |
-     * | 4--|-5
-     * |/ |/
-     * 0----1
-     * 
-     * @param cx     中心X坐标
-     * @param cy     中心Y坐标
-     * @param cz     中心Z坐标
-     * @param width  宽度（X方向）
-     * @param height 高度（Y方向）
-     * @param depth  深度（Z方向）
-     * @return 8个顶点的坐标数组
-     */
-    private double[][] createBox(double cx, double cy, double cz,
-            double width, double height, double depth) {
-        double w = width / 2; // 半宽
-        double h = height / 2; // 半高
-        double d = depth / 2; // 半深
-
-        return new double[][] {
-                // 前面四个顶点 (z正方向)
-                { cx - w, cy - h, cz + d }, // 0: 左下前
-                { cx + w, cy - h, cz + d }, // 1: 右下前
-                { cx + w, cy + h, cz + d }, // 2: 右上前
-                { cx - w, cy + h, cz + d }, // 3: 左上前
-                // 后面四个顶点 (z负方向)
-                { cx - w, cy - h, cz - d }, // 4: 左下后
-                { cx + w, cy - h, cz - d }, // 5: 右下后
-                { cx + w, cy + h, cz - d }, // 6: 右上后
-                { cx - w, cy + h, cz - d } // 7: 左上后
-        };
+        // 各部件的网格以自身中心为原点建模，
+        // 部件在身体上的位置由场景图节点的关节参数决定
+
+        // 躯干 - 挂在根节点上，是最大的部件
+        body = new RobotPart("body", Mesh.box(0.8, 1.2, 0.5, bodyColor), bodyColor);
+        root = body.node;
+
+        // 头部 - 关节在躯干上方，绕Y轴转动
+        head = new RobotPart("head", Mesh.box(0.5, 0.5, 0.5, headColor), headColor);
+        head.node.setPivot(0, 0.85, 0);
+
+        // 左右臂共享同一个网格，关节在肩部，手臂中心在关节下方0.4
+        Mesh armMesh = Mesh.box(0.25, 0.8, 0.25, limbColor);
+        leftArm = new RobotPart("leftArm", armMesh, limbColor);
+        leftArm.node.setPivot(-0.525, 0.5, 0);
+        leftArm.node.setOffset(0, -0.4, 0);
+        rightArm = new RobotPart("rightArm", armMesh, limbColor);
+        rightArm.node.setPivot(0.525, 0.5, 0);
+        rightArm.node.setOffset(0, -0.4, 0);
+
+        // 左右腿共享同一个网格，关节在髋部，腿中心在关节下方0.45
+        Mesh legMesh = Mesh.box(0.3, 0.9, 0.3, limbColor);
+        leftLeg = new RobotPart("leftLeg", legMesh, limbColor);
+        leftLeg.node.setPivot(-0.2, -0.6, 0);
+        leftLeg.node.setOffset(0, -0.45, 0);
+        rightLeg = new RobotPart("rightLeg", legMesh, limbColor);
+        rightLeg.node.setPivot(0.2, -0.6, 0);
+        rightLeg.node.setOffset(0, -0.45, 0);
+
+        // 层次结构：躯干 → 头/左右臂/左右腿
+        root.addChild(head.node);
+        root.addChild(leftArm.node);
+        root.addChild(rightArm.node);
+        root.addChild(leftLeg.node);
+        root.addChild(rightLeg.node);
     }
 
     // ==================== 多边形获取（核心渲染方法） ====================
 
     /**
-     * 获取所有变换后的多边形
+     * 把机器人的各部件网格交给渲染器（渲染线程调用）
      * 这是渲染机器人的核心方法，会被Scene3DPanel调用
      * 
      * 【处理流程】
-     * 1. 计算机器人整体的世界变换矩阵
-     * 2. 对每个部件，计算其局部变换（关节旋转）
-     * 3. 将局部变换与世界变换组合
-     * 4. 应用变换到部件顶点，生成多边形
+     * 1. 把当前的位置、朝向和关节角度同步到场景图节点
+     *    （数值没变的节点保持干净）
+     * 2. 只重算变脏子树的世界矩阵
+     * 3. 用包围球做视锥剔除：整个机器人不可见就直接返回，
+     *    否则逐部件剔除（自定义模型也一样，它的网格挂在根节点上）
+     * 4. 各节点把世界空间顶点交给渲染器；没动过的部件直接复用上一帧的顶点
      * 
-     * @return 所有部件的多边形列表
+     * @param sink    渲染器
+     * @param frustum 视锥体（null表示不剔除）
      */
-    public List<Polygon3D> getTransformedPolygons() {
-        List<Polygon3D> allPolygons = new ArrayList<>();
+    public void draw(MeshSink sink, Frustum frustum) {
+        draw(sink, frustum, null);
+    }
 
-        // ========== 1. 计算世界变换矩阵 ==========
-        // 先平移到世界位置，再绕Y轴旋转
-        double[][] worldMatrix = Matrix4.identity();
-        worldMatrix = Matrix4.multiply(Matrix4.translate(posX, posY, posZ), worldMatrix);
-        worldMatrix = Matrix4.multiply(Matrix4.rotateY(Math.toRadians(rotY)), worldMatrix);
-
-        // ========== 2. 处理自定义模型 ==========
-        if (customParts != null && !customParts.isEmpty()) {
-            for (Polygon3D poly : customParts) {
-                double[][] transformedVerts = new double[poly.vertices.length][3];
-                for (int i = 0; i < poly.vertices.length; i++) {
-                    double[] v = poly.vertices[i];
-                    double[] t = Matrix4.transformPoint(worldMatrix, v);
-                    transformedVerts[i] = new double[] { t[0], t[1], t[2] };
-                }
-                allPolygons.add(new Polygon3D(transformedVerts, poly.color));
+    /**
+     * 同上，另外逐部件做遮挡剔除（被前面的物体完全挡住的部件不变换顶点）
+     *
+     * @param sink      渲染器
+     * @param frustum   视锥体（null表示不剔除）
+     * @param occlusion 遮挡测试用的深度金字塔（null表示不做遮挡剔除）
+     */
+    public void draw(MeshSink sink, Frustum frustum, DepthPyramid occlusion) {
+        // ========== 1-2. 同步姿态，更新世界矩阵 ==========
+        update();
+
+        // ========== 3-4. 剔除 + 绘制 ==========
+        root.draw(sink, frustum, occlusion);
+    }
+
+    /**
+     * 把当前的位置、朝向、关节角度和颜色同步到场景图，
+     * 并更新变脏节点的世界矩阵和包围球（渲染线程调用）
+     */
+    public void update() {
+        // ========== 1. 同步姿态 ==========
+        // 位置和姿态一起读（动画结束时位移并入posZ，与姿态在同一次写锁内修改）
+        long stamp = poseLock.tryOptimisticRead();
+        readFrame();
+        if (!poseLock.validate(stamp)) {
+            stamp = poseLock.readLock();
+            try {
+                readFrame();
+            } finally {
+                poseLock.unlockRead(stamp);
             }
-            return allPolygons;
+        }
+        double[] p = framePose;
+
+        // 根节点：先平移到世界位置，再绕Y轴旋转：W = Ry × T
+        root.setRotation(0, frameRotY, 0);
+        root.setOffset(frameX, frameY, frameZ + p[MOVE_Z]);
+
+        if (customParts == null) {
+            head.node.setRotation(0, p[HEAD_ROT_Y], 0);
+            // 前后摆动 + 侧向摆动
+            leftArm.node.setRotation(p[LEFT_ARM_ROT_X], 0, p[LEFT_ARM_ROT_Z]);
+            rightArm.node.setRotation(p[RIGHT_ARM_ROT_X], 0, p[RIGHT_ARM_ROT_Z]);
+            leftLeg.node.setRotation(p[LEFT_LEG_ROT_X], 0, 0); // 前后摆动
+            rightLeg.node.setRotation(p[RIGHT_LEG_ROT_X], 0, 0);
+
+            // 颜色可能在其他线程被修改，这里取最新的调色板
+            body.syncPalette();
+            head.syncPalette();
+            leftArm.syncPalette();
+            rightArm.syncPalette();
+            leftLeg.syncPalette();
+            rightLeg.syncPalette();
         }
 
-        // ========== 3. 处理标准机器人各部件 ==========
-
-        // 躯干：直接使用世界矩阵
-        allPolygons.addAll(body.getPolygons(worldMatrix));
-
-        // 头部：在世界矩阵基础上，先平移到头部位置，再绕Y轴旋转
-        double[][] headMatrix = Matrix4.multiply(worldMatrix,
-                Matrix4.multiply(Matrix4.translate(0, 0.85, 0), Matrix4.rotateY(Math.toRadians(headRotY))));
-        allPolygons.addAll(transformPart(head, headMatrix));
-
-        // 左臂：关节在肩部，需要先移动到关节位置，旋转，再移回
-        double[][] leftArmMatrix = Matrix4.multiply(worldMatrix,
-                Matrix4.translate(-0.525, 0.5, 0)); // 移到肩关节
-        leftArmMatrix = Matrix4.multiply(leftArmMatrix, Matrix4.rotateX(Math.toRadians(leftArmRotX))); // 前后摆动
-        leftArmMatrix = Matrix4.multiply(leftArmMatrix, Matrix4.rotateZ(Math.toRadians(leftArmRotZ))); // 侧向摆动
-        leftArmMatrix = Matrix4.multiply(leftArmMatrix, Matrix4.translate(0, -0.4, 0)); // 手臂中心偏移
-        allPolygons.addAll(transformPart(leftArm, leftArmMatrix));
-
-        // 右臂
-        double[][] rightArmMatrix = Matrix4.multiply(worldMatrix,
-                Matrix4.translate(0.525, 0.5, 0));
-        rightArmMatrix = Matrix4.multiply(rightArmMatrix, Matrix4.rotateX(Math.toRadians(rightArmRotX)));
-        rightArmMatrix = Matrix4.multiply(rightArmMatrix, Matrix4.rotateZ(Math.toRadians(rightArmRotZ)));
-        rightArmMatrix = Matrix4.multiply(rightArmMatrix, Matrix4.translate(0, -0.4, 0));
-        allPolygons.addAll(transformPart(rightArm, rightArmMatrix));
-
-        // 左腿：关节在髋部
-        double[][] leftLegMatrix = Matrix4.multiply(worldMatrix,
-                Matrix4.translate(-0.2, -0.6, 0)); // 移到髋关节
-        leftLegMatrix = Matrix4.multiply(leftLegMatrix, Matrix4.rotateX(Math.toRadians(leftLegRotX))); // 前后摆动
-        leftLegMatrix = Matrix4.multiply(leftLegMatrix, Matrix4.translate(0, -0.45, 0)); // 腿中心偏移
-        allPolygons.addAll(transformPart(leftLeg, leftLegMatrix));
-
-        // 右腿
-        double[][] rightLegMatrix = Matrix4.multiply(worldMatrix,
-                Matrix4.translate(0.2, -0.6, 0));
-        rightLegMatrix = Matrix4.multiply(rightLegMatrix, Matrix4.rotateX(Math.toRadians(rightLegRotX)));
-        rightLegMatrix = Matrix4.multiply(rightLegMatrix, Matrix4.translate(0, -0.45, 0));
-        allPolygons.addAll(transformPart(rightLeg, rightLegMatrix));
-
-        return allPolygons;
+        // ========== 2. 更新世界矩阵 ==========
+        root.updateWorld();
     }
 
     /**
-     * 将部件顶点应用变换矩阵，生成多边形列表
-     * 
-     * @param part   机器人部件
-     * @param matrix 变换矩阵
-     * @return 该部件的6个面（长方体有6个面）
-     */
-    private List<Polygon3D> transformPart(RobotPart part, double[][] matrix) {
-        List<Polygon3D> polygons = new ArrayList<>();
-        double[][] transformedVertices = new double[part.vertices.length][3];
-
-        // 对每个顶点应用变换
-        for (int i = 0; i < part.vertices.length; i++) {
-            double[] v = part.vertices[i];
-            double[] transformed = Matrix4.transformPoint(matrix, v);
-            transformedVertices[i] = new double[] { transformed[0], transformed[1], transformed[2] };
+     * 读取位置、朝向和插值后的姿态（渲染线程，调用者负责验证乐观读或持有读锁）
+     */
+    private void readFrame() {
+        frameX = posX;
+        frameY = posY;
+        frameZ = posZ;
+        frameRotY = rotY;
+        AnimationClock clock = poseClock;
+        double alpha = clock != null ? clock.interpolation() : 1;
+        for (int c = 0; c < CHANNELS; c++) {
+            framePose[c] = previousPose[c] + (currentPose[c] - previousPose[c]) * alpha;
         }
+    }
 
-        // 定义长方体的6个面（每个面4个顶点索引）
-        int[][] faces = {
-                { 0, 1, 2, 3 }, // 前面
-                { 5, 4, 7, 6 }, // 后面
-                { 4, 0, 3, 7 }, // 左面
-                { 1, 5, 6, 2 }, // 右面
-                { 3, 2, 6, 7 }, // 顶面
-                { 4, 5, 1, 0 } // 底面
-        };
-
-        // 为每个面创建多边形
-        for (int[] face : faces) {
-            double[][] faceVerts = new double[4][3];
-            for (int i = 0; i < 4; i++) {
-                faceVerts[i] = transformedVertices[face[i]];
-            }
-            polygons.add(new Polygon3D(faceVerts, part.color));
+    /**
+     * 获取整个机器人的世界包围盒（各部件包围球的外接盒，调用前应先update）
+     *
+     * @param out    输出数组
+     * @param offset 写入位置：(minX, minY, minZ, maxX, maxY, maxZ)
+     */
+    public void getBounds(double[] out, int offset) {
+        root.getBox(out, offset);
+        if (out[offset] > out[offset + 3]) {
+            // 没有任何网格：退化为位置上的一个点
+            out[offset] = out[offset + 3] = frameX;
+            out[offset + 1] = out[offset + 4] = frameY;
+            out[offset + 2] = out[offset + 5] = frameZ;
         }
+    }
+
+    /**
+     * 射线与机器人所有部件求交（调用前应先update）
+     *
+     * @return 最近命中的t，没有命中返回Double.POSITIVE_INFINITY
+     */
+    public double raycast(double ox, double oy, double oz, double dx, double dy, double dz, double maxT) {
+        return root.raycast(ox, oy, oz, dx, dy, dz, maxT);
+    }
 
-        return polygons;
+    /**
+     * 把机器人的各部件网格交给渲染器（不做剔除）
+     * 
+     * @param sink 渲染器
+     */
+    public void draw(MeshSink sink) {
+        draw(sink, null);
+    }
+
+    /**
+     * 获取所有变换后的多边形（每个三角形一个Polygon3D）
+     * 渲染器使用draw()直接处理网格；这个方法保留给需要多边形列表的代码，
+     * 与draw()共享场景图缓存，所以同样只能在渲染线程调用
+     * 
+     * @return 所有部件的多边形列表
+     */
+    public List<Polygon3D> getTransformedPolygons() {
+        List<Polygon3D> allPolygons = new ArrayList<>();
+        draw((mesh, wx, wy, wz, world, palette) -> mesh.toPolygons(wx, wy, wz, palette, allPolygons));
+        return allPolygons;
     }
 
     // ==================== 动画方法 ====================
 
     /**
-     * 重置机器人姿态到默认状态
+     * 重置机器人姿态到默认状态（停止所有动画）
      */
     public void resetPose() {
-        headRotY = 0;
-        leftArmRotX = 0;
-        leftArmRotZ = 0;
-        rightArmRotX = 0;
-        rightArmRotZ = 0;
-        leftLegRotX = 0;
-        rightLegRotX = 0;
-        animationTime = 0;
-        isAnimating = false;
+        AnimationClock clock;
+        long stamp = poseLock.readLock();
+        try {
+            clock = poseClock;
+        } finally {
+            poseLock.unlockRead(stamp);
+        }
+        if (clock != null) {
+            clock.stop(this);
+        }
+        AnimationClock.shared().stop(this); // 刚开始播放、还没有发布过姿态的片段
+        publishPose(REST, REST, 0, null);
+        markChanged();
     }
 
     /**
@@ -335,16 +409,7 @@ public class Robot {
      * 使用正弦函数产生平滑的左右摆动
      */
     public void animateHead() {
-        new Thread(() -> {
-            for (int i = 0; i < 60; i++) {
-                headRotY = 30 * Math.sin(i * Math.PI / 15); // 振幅30度
-                try {
-                    Thread.sleep(33);
-                } catch (InterruptedException e) {
-                }
-            }
-            headRotY = 0;
-        }).start();
+        play(AnimationClip.HEAD_SHAKE);
     }
 
     /**
@@ -352,38 +417,14 @@ public class Robot {
      * 左右手臂反向摆动
      */
     public void animateArms() {
-        new Thread(() -> {
-            for (int i = 0; i < 120; i++) {
-                double t = i * Math.PI / 30;
-                leftArmRotX = 45 * Math.sin(t); // 左臂
-                rightArmRotX = -45 * Math.sin(t); // 右臂反向
-                try {
-                    Thread.sleep(25);
-                } catch (InterruptedException e) {
-                }
-            }
-            leftArmRotX = 0;
-            rightArmRotX = 0;
-        }).start();
+        play(AnimationClip.ARM_SWING);
     }
 
     /**
      * 腿部摆动动画
      */
     public void animateLegs() {
-        new Thread(() -> {
-            for (int i = 0; i < 120; i++) {
-                double t = i * Math.PI / 30;
-                leftLegRotX = 30 * Math.sin(t);
-                rightLegRotX = -30 * Math.sin(t);
-                try {
-                    Thread.sleep(25);
-                } catch (InterruptedException e) {
-                }
-            }
-            leftLegRotX = 0;
-            rightLegRotX = 0;
-        }).start();
+        play(AnimationClip.LEG_SWING);
     }
 
     /**
@@ -391,25 +432,7 @@ public class Robot {
      * 腿部和手臂协调摆动，同时向前移动
      */
     public void walkAnimation() {
-        new Thread(() -> {
-            isAnimating = true;
-            for (int i = 0; i < 180 && isAnimating; i++) {
-                double t = i * Math.PI / 20;
-                // 腿部摆动
-                leftLegRotX = 35 * Math.sin(t);
-                rightLegRotX = -35 * Math.sin(t);
-                // 手臂反向摆动（自然行走姿态）
-                leftArmRotX = -25 * Math.sin(t);
-                rightArmRotX = 25 * Math.sin(t);
-                // 向前移动
-                posZ -= 0.02;
-                try {
-                    Thread.sleep(25);
-                } catch (InterruptedException e) {
-                }
-            }
-            resetPose();
-        }).start();
+        play(AnimationClip.WALK);
     }
 
     /**
@@ -417,41 +440,109 @@ public class Robot {
      * 先举起右臂，然后挥动，最后放下
      */
     public void waveAnimation() {
-        new Thread(() -> {
-            // 阶段1：举起右臂
-            for (int i = 0; i < 30; i++) {
-                rightArmRotZ = -i * 4; // 向上抬起
-                try {
-                    Thread.sleep(20);
-                } catch (InterruptedException e) {
-                }
-            }
-            // 阶段2：挥手
-            for (int i = 0; i < 90; i++) {
-                rightArmRotX = 20 * Math.sin(i * Math.PI / 10);
-                try {
-                    Thread.sleep(25);
-                } catch (InterruptedException e) {
-                }
-            }
-            // 阶段3：放下手臂
-            for (int i = 30; i >= 0; i--) {
-                rightArmRotZ = -i * 4;
-                rightArmRotX = 0;
-                try {
-                    Thread.sleep(20);
-                } catch (InterruptedException e) {
-                }
-            }
-            rightArmRotZ = 0;
-        }).start();
+        play(AnimationClip.WAVE);
     }
 
     /**
-     * 停止当前动画
+     * 在共享的动画时钟上播放片段
+     */
+    public void play(AnimationClip clip) {
+        AnimationClock.shared().play(this, clip);
+    }
+
+    /**
+     * 在共享的动画时钟上播放片段，在fadeSeconds秒内从当前动作交叉淡入
+     */
+    public void play(AnimationClip clip, double fadeSeconds) {
+        AnimationClock.shared().play(this, clip, fadeSeconds);
+    }
+
+    /**
+     * 停止当前动画，回到静止姿态
      */
     public void stopAnimation() {
-        isAnimating = false;
+        AnimationClock.shared().stop(this);
+    }
+
+    /**
+     * 直接设置姿态（不插值，离线逐帧渲染时配合AnimationClip.sample使用）
+     *
+     * @param channels 各通道的值（长度CHANNELS）
+     */
+    public void setPose(double[] channels) {
+        double[] copy = Arrays.copyOf(channels, CHANNELS);
+        publishPose(copy, copy, 0, null);
+        markChanged();
+    }
+
+    /**
+     * 把当前姿态（最新一步）的各通道值复制到out
+     */
+    void copyCurrentPose(double[] out) {
+        long stamp = poseLock.readLock();
+        try {
+            System.arraycopy(currentPose, 0, out, 0, CHANNELS);
+        } finally {
+            poseLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 发布动画时钟算出的姿态（复制进预先分配的数组，不创建对象）
+     * 结束的片段走过的距离在同一次写锁内并入位置，渲染线程看到的位置和姿态总是配套的
+     *
+     * @param previous   上一步的各通道值
+     * @param current    最新一步的各通道值
+     * @param committedZ 并入位置的位移
+     * @param clock      产生姿态的时钟（null表示不插值）
+     */
+    void publishPose(double[] previous, double[] current, double committedZ, AnimationClock clock) {
+        long stamp = poseLock.writeLock();
+        try {
+            System.arraycopy(previous, 0, previousPose, 0, CHANNELS);
+            System.arraycopy(current, 0, currentPose, 0, CHANNELS);
+            posZ += committedZ;
+            poseClock = clock;
+        } finally {
+            poseLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 回到静止姿态，已经走过的距离并入位置（动画时钟调用）
+     */
+    void restPose(double committedZ) {
+        publishPose(REST, REST, committedZ, null);
+    }
+
+    // ==================== 变更通知 ====================
+
+    /**
+     * 标记机器人已变化
+     * 增加版本号并通知监听器
+     */
+    void markChanged() {
+        version++;
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @return 当前姿态版本号
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 设置变更监听器
+     * 
+     * @param listener 每次姿态或颜色变化后调用（可能在动画线程中调用）
+     */
+    public void setChangeListener(Runnable listener) {
+        this.changeListener = listener;
     }
 
     // ==================== Getter/Setter 方法 ====================
@@ -460,32 +551,56 @@ public class Robot {
      * 设置机器人在世界坐标系中的位置
      */
     public void setPosition(double x, double y, double z) {
-        this.posX = x;
-        this.posY = y;
-        this.posZ = z;
+        long stamp = poseLock.writeLock();
+        try {
+            this.posX = x;
+            this.posY = y;
+            this.posZ = z;
+        } finally {
+            poseLock.unlockWrite(stamp);
+        }
+        markChanged();
     }
 
     /**
      * 设置机器人的朝向（绕Y轴旋转角度）
      */
     public void setRotation(double rotY) {
-        this.rotY = rotY;
+        long stamp = poseLock.writeLock();
+        try {
+            this.rotY = rotY;
+        } finally {
+            poseLock.unlockWrite(stamp);
+        }
+        markChanged();
     }
 
     /**
      * 相对平移机器人
      */
     public void translate(double dx, double dy, double dz) {
-        this.posX += dx;
-        this.posY += dy;
-        this.posZ += dz;
+        long stamp = poseLock.writeLock();
+        try {
+            this.posX += dx;
+            this.posY += dy;
+            this.posZ += dz;
+        } finally {
+            poseLock.unlockWrite(stamp);
+        }
+        markChanged();
     }
 
     /**
      * 相对旋转机器人
      */
     public void rotate(double dRotY) {
-        this.rotY += dRotY;
+        long stamp = poseLock.writeLock();
+        try {
+            this.rotY += dRotY;
+        } finally {
+            poseLock.unlockWrite(stamp);
+        }
+        markChanged();
     }
 
     /**
@@ -493,7 +608,8 @@ public class Robot {
      */
     public void setBodyColor(Color color) {
         this.bodyColor = color;
-        body.color = color;
+        body.setColor(color);
+        markChanged();
     }
 
     /**
@@ -501,58 +617,39 @@ public class Robot {
      */
     public void setLimbColor(Color color) {
         this.limbColor = color;
-        leftArm.color = color;
-        rightArm.color = color;
-        leftLeg.color = color;
-        rightLeg.color = color;
+        leftArm.setColor(color);
+        rightArm.setColor(color);
+        leftLeg.setColor(color);
+        rightLeg.setColor(color);
+        markChanged();
     }
 
     // ==================== 内部类 ====================
 
     /**
      * 机器人部件类
-     * 每个部件包含名称、顶点数据和颜色
+     * 每个部件包含名称、场景图节点和颜色（节点的网格可以被多个部件共享）
      */
     private static class RobotPart {
         String name; // 部件名称
-        double[][] vertices; // 顶点坐标（8个顶点）
+        SceneNode node; // 部件的场景图节点（网格以部件中心为原点）
         Color color; // 部件颜色
+        volatile int[] palette; // 绘制时使用的调色板（材质0 = color）
 
-        RobotPart(String name, double[][] vertices, Color color) {
+        RobotPart(String name, Mesh mesh, Color color) {
             this.name = name;
-            this.vertices = vertices;
-            this.color = color;
+            this.node = new SceneNode(name, mesh, null);
+            setColor(color);
         }
 
-        /**
-         * 获取该部件的多边形列表（应用变换矩阵后）
-         */
-        List<Polygon3D> getPolygons(double[][] matrix) {
-            List<Polygon3D> polygons = new ArrayList<>();
-            double[][] transformedVertices = new double[vertices.length][3];
-
-            // 变换所有顶点
-            for (int i = 0; i < vertices.length; i++) {
-                double[] v = vertices[i];
-                double[] transformed = Matrix4.transformPoint(matrix, v);
-                transformedVertices[i] = new double[] { transformed[0], transformed[1], transformed[2] };
-            }
-
-            // 长方体的6个面
-            int[][] faces = {
-                    { 0, 1, 2, 3 }, { 5, 4, 7, 6 }, { 4, 0, 3, 7 },
-                    { 1, 5, 6, 2 }, { 3, 2, 6, 7 }, { 4, 5, 1, 0 }
-            };
-
-            for (int[] face : faces) {
-                double[][] faceVerts = new double[4][3];
-                for (int i = 0; i < 4; i++) {
-                    faceVerts[i] = transformedVertices[face[i]];
-                }
-                polygons.add(new Polygon3D(faceVerts, color));
-            }
+        void setColor(Color color) {
+            this.color = color;
+            // 整体替换数组，渲染线程不会读到一半的修改
+            this.palette = new int[] { color.getRGB() & 0xFFFFFF };
+        }
 
-            return polygons;
+        void syncPalette() {
+            node.setPalette(palette);
         }
     }
 }
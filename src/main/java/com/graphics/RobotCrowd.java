@@ -0,0 +1,509 @@
+package com.graphics;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * ====================================================================
+ * RobotCrowd.java - 机器人群（实例化渲染）
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 一次绘制成百上千个行走的机器人。
+ * 每个Robot对象都有自己的部件、场景图和动画轨道，几十个就到头了；
+ * 机器人群只保存一份共享的部件网格，再用几个紧凑的数组记录每个实例的
+ * 位置、朝向、颜色和关节角度。
+ *
+ * 【实例数据（结构数组）】
+ * - posX/posZ/rotY: 实例在地面上的位置和朝向（度）
+ * - phase/speed:    步态相位（弧度；播放片段时为片段内的时间，秒）和行走速度（单位/秒）
+ * - bodyColors/limbColors: 躯干和四肢颜色（0xRRGGBB）
+ * - joints:         关节角度，每个实例JOINT_STRIDE个：
+ *                   [头Y, 左臂X, 右臂X, 左腿X, 右腿X]
+ *
+ * 【关节片段】
+ * setClip()之后关节角度不再用正弦步态，而是每步对片段（例如从文件加载的
+ * KeyframeClip）按各实例的时间取样，循环播放；取样写进一个复用的数组，
+ * 上万个实例每步也不创建对象。实例只有绕X轴的手臂关节，
+ * 片段的手臂Z通道和根运动被忽略，位置仍按速度前进。
+ *
+ * 【绘制】
+ * draw()按实例依次计算部件矩阵，把共享网格的顶点变换到一块复用的
+ * 世界坐标缓存里，再交给MeshSink。整个过程不创建任何对象。
+ * 所有实例每帧都在动，所以这里不使用SceneNode的缓存，直接现算矩阵。
+ * 每个实例先用一个固定的包围球做视锥剔除，不可见的实例连矩阵都不算。
+ *
+ * 【行走】
+ * startWalking()把机器人群交给共享的AnimationClock，与机器人的动画片段
+ * 用同一个固定步长推进（step(AnimationClock.STEP_SECONDS)），没有自己的线程，
+ * 第n步的状态只取决于n，可以逐帧重现。
+ *
+ * 【线程】
+ * 模拟数组只在持有this的锁时修改（时钟推进、add）。每一步结束时把位置、朝向、
+ * 关节角度复制进三份实例快照中的写快照，再像TripleBuffer一样用一个AtomicInteger
+ * 与中间快照交换；渲染线程每帧开始时sync()取得最新的一份，本帧各遍都画它。
+ * 双方永远不会拿到同一份快照，渲染线程看不到走了一半的一步。
+ *
+ * @author Computer Graphics Course
+ */
+public class RobotCrowd {
+
+    /** 每个实例的关节角度个数 */
+    public static final int JOINT_STRIDE = 5;
+
+    /** 关节在joints中的偏移 */
+    public static final int JOINT_HEAD = 0, JOINT_LEFT_ARM = 1, JOINT_RIGHT_ARM = 2,
+            JOINT_LEFT_LEG = 3, JOINT_RIGHT_LEG = 4;
+
+    // ==================== 共享网格（与Robot的部件尺寸一致） ====================
+
+    private final Mesh bodyMesh = Mesh.box(0.8, 1.2, 0.5, Color.WHITE);
+    private final Mesh headMesh = Mesh.box(0.5, 0.5, 0.5, Color.WHITE);
+    private final Mesh armMesh = Mesh.box(0.25, 0.8, 0.25, Color.WHITE);
+    private final Mesh legMesh = Mesh.box(0.3, 0.9, 0.3, Color.WHITE);
+
+    /**
+     * 实例包围球（相对实例位置）：机器人从脚底y=-1.65到头顶y=1.1，
+     * 球心取中点，半径覆盖摆动的四肢
+     */
+    private static final double BOUNDS_MIN_Y = -1.65, BOUNDS_MAX_Y = 1.1;
+    private static final double BOUNDS_CENTER_Y = (BOUNDS_MIN_Y + BOUNDS_MAX_Y) / 2, BOUNDS_RADIUS = 1.6;
+
+    /**
+     * 实例包围盒的水平半宽：肩宽0.65，手臂、腿前后摆动不超过0.7，
+     * 绕Y轴任意转向后仍在1.0以内（遮挡测试用，比包围球紧）
+     */
+    private static final double BOUNDS_HALF_WIDTH = 1.0;
+
+    /** 头部颜色（所有实例共用） */
+    private final int headColor = 0xFFC896;
+
+    // ==================== 实例数据（模拟，由this的锁保护） ====================
+
+    private float[] posX, posZ, rotY, phase, speed;
+    private int[] bodyColors, limbColors;
+    private float[] joints;
+
+    /** 实例数量 */
+    private volatile int count;
+
+    // ==================== 实例快照（三重缓冲） ====================
+
+    /** 中间快照中"有新快照"的标志位 */
+    private static final int FRESH = 4;
+
+    /** 索引掩码（低两位） */
+    private static final int INDEX_MASK = 3;
+
+    /**
+     * 一份发布给渲染线程的实例状态
+     * 颜色数组直接引用模拟数组：已有实例的颜色不再修改，扩容时换成新数组
+     */
+    private static final class Instances {
+        float[] posX = new float[0], posZ = new float[0], rotY = new float[0], joints = new float[0];
+        int[] bodyColors, limbColors;
+        int count;
+    }
+
+    private final Instances[] slots = { new Instances(), new Instances(), new Instances() };
+
+    /** 中间快照索引 | FRESH标志 */
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    /** 写快照索引（由this的锁保护） */
+    private int writeIndex = 0;
+
+    /** 读快照索引和本帧绘制的快照（仅渲染线程使用） */
+    private int readIndex = 2;
+    private Instances frame = slots[readIndex];
+
+    /** 行走区域（以原点为中心的矩形，走出去会从另一边回来） */
+    private final double halfWidth, halfDepth;
+
+    // ==================== 状态 ====================
+
+    /** 版本号，每走一步加1 */
+    private volatile long version = 0;
+
+    /** 变更监听器（通常是所在的Scene3DPanel，用于请求重绘） */
+    private volatile Runnable changeListener;
+
+    /** 驱动关节的片段（null表示正弦步态） */
+    private volatile AnimationClip clip;
+
+    /** 片段取样结果（由this的锁保护） */
+    private final double[] clipPose = new double[Robot.CHANNELS];
+
+    // ==================== 绘制缓存（仅渲染线程使用） ====================
+
+    private final double[] worldMatrix = new double[16];
+    private final double[] partMatrix = new double[16];
+    private final float[] worldX, worldY, worldZ;
+    private final int[] bodyPalette = new int[1], headPalette = new int[1], limbPalette = new int[1];
+
+    // ==================== 构造 ====================
+
+    /**
+     * 创建空的机器人群
+     *
+     * @param capacity 初始容量
+     * @param width    行走区域宽度（X方向）
+     * @param depth    行走区域深度（Z方向）
+     */
+    public RobotCrowd(int capacity, double width, double depth) {
+        int cap = Math.max(1, capacity);
+        posX = new float[cap];
+        posZ = new float[cap];
+        rotY = new float[cap];
+        phase = new float[cap];
+        speed = new float[cap];
+        bodyColors = new int[cap];
+        limbColors = new int[cap];
+        joints = new float[cap * JOINT_STRIDE];
+        this.halfWidth = width / 2;
+        this.halfDepth = depth / 2;
+
+        int maxVertices = Math.max(Math.max(bodyMesh.vertexCount, headMesh.vertexCount),
+                Math.max(armMesh.vertexCount, legMesh.vertexCount));
+        worldX = new float[maxVertices];
+        worldY = new float[maxVertices];
+        worldZ = new float[maxVertices];
+    }
+
+    /**
+     * 创建一个随机分布在区域内的机器人群
+     * 朝向、步态相位、速度和颜色都随机，看起来不会像在齐步走
+     *
+     * @param count 机器人数量
+     * @param width 区域宽度
+     * @param depth 区域深度
+     * @param seed  随机种子
+     */
+    public static RobotCrowd random(int count, double width, double depth, long seed) {
+        RobotCrowd crowd = new RobotCrowd(count, width, depth);
+        Random random = new Random(seed);
+        synchronized (crowd) {
+            for (int i = 0; i < count; i++) {
+                Color body = Color.getHSBColor(random.nextFloat(), 0.45f, 0.75f);
+                crowd.append((random.nextDouble() - 0.5) * width,
+                        (random.nextDouble() - 0.5) * depth,
+                        random.nextDouble() * 360,
+                        body.getRGB() & 0xFFFFFF,
+                        body.darker().getRGB() & 0xFFFFFF);
+                crowd.phase[i] = (float) (random.nextDouble() * Math.PI * 2);
+                crowd.speed[i] = (float) (0.6 + random.nextDouble() * 0.4);
+            }
+            crowd.publish(); // 全部加完再发布一次
+        }
+        return crowd;
+    }
+
+    /**
+     * 添加一个实例
+     *
+     * @param x         位置X
+     * @param z         位置Z
+     * @param rotYDeg   朝向（度）
+     * @param bodyColor 躯干颜色（0xRRGGBB）
+     * @param limbColor 四肢颜色（0xRRGGBB）
+     */
+    public synchronized void add(double x, double z, double rotYDeg, int bodyColor, int limbColor) {
+        append(x, z, rotYDeg, bodyColor, limbColor);
+        publish();
+        markChanged();
+    }
+
+    /**
+     * 添加一个实例，不发布（调用者持有锁）
+     */
+    private void append(double x, double z, double rotYDeg, int bodyColor, int limbColor) {
+        int i = count;
+        if (i == posX.length) {
+            grow(i * 2);
+        }
+        posX[i] = (float) x;
+        posZ[i] = (float) z;
+        rotY[i] = (float) rotYDeg;
+        speed[i] = 0.8f;
+        bodyColors[i] = bodyColor;
+        limbColors[i] = limbColor;
+        count = i + 1;
+    }
+
+    private void grow(int cap) {
+        posX = Arrays.copyOf(posX, cap);
+        posZ = Arrays.copyOf(posZ, cap);
+        rotY = Arrays.copyOf(rotY, cap);
+        phase = Arrays.copyOf(phase, cap);
+        speed = Arrays.copyOf(speed, cap);
+        bodyColors = Arrays.copyOf(bodyColors, cap);
+        limbColors = Arrays.copyOf(limbColors, cap);
+        joints = Arrays.copyOf(joints, cap * JOINT_STRIDE);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 整个机器人群的世界包围盒：行走区域向外扩一个实例包围球半径，
+     * 竖直方向取脚底到头顶（实例位置都在y=0）
+     *
+     * @param out 输出 (minX, minY, minZ, maxX, maxY, maxZ)
+     */
+    public void getBounds(double[] out) {
+        out[0] = -halfWidth - BOUNDS_RADIUS;
+        out[1] = BOUNDS_MIN_Y;
+        out[2] = -halfDepth - BOUNDS_RADIUS;
+        out[3] = halfWidth + BOUNDS_RADIUS;
+        out[4] = BOUNDS_MAX_Y;
+        out[5] = halfDepth + BOUNDS_RADIUS;
+    }
+
+    /**
+     * 实例是否被完全遮挡（按实例的包围盒测试）
+     *
+     * @param i         实例下标
+     * @param occlusion 深度金字塔
+     */
+    public boolean isInstanceOccluded(int i, DepthPyramid occlusion) {
+        Instances f = frame;
+        double x = f.posX[i], z = f.posZ[i];
+        return occlusion.isBoxOccluded(x - BOUNDS_HALF_WIDTH, BOUNDS_MIN_Y, z - BOUNDS_HALF_WIDTH,
+                x + BOUNDS_HALF_WIDTH, BOUNDS_MAX_Y, z + BOUNDS_HALF_WIDTH);
+    }
+
+    // ==================== 动画 ====================
+
+    /**
+     * 所有实例前进dt秒并通知变化
+     *
+     * @param dt 时间步长（秒）
+     */
+    public void step(double dt) {
+        advance(dt);
+        markChanged();
+    }
+
+    /**
+     * 所有实例前进dt秒，发布新的实例快照（不通知，AnimationClock在自己的锁外通知）
+     * 步态与Robot.walkAnimation相同：腿±35度、手臂反向±25度，
+     * 每秒约一个周期；沿朝向前进，走出区域后从对边回来
+     *
+     * @param dt 时间步长（秒）
+     */
+    synchronized void advance(double dt) {
+        int n = count;
+        float[] px = posX, pz = posZ, ry = rotY, ph = phase, sp = speed, jt = joints;
+        AnimationClip c = clip;
+        double[] pose = clipPose;
+        for (int i = 0; i < n; i++) {
+            int j = i * JOINT_STRIDE;
+            if (c != null) {
+                // 片段内的时间，循环播放
+                double t = c.duration > 0 ? (ph[i] + dt) % c.duration : 0;
+                ph[i] = (float) t;
+                Arrays.fill(pose, 0);
+                c.sample(t, pose);
+                jt[j + JOINT_HEAD] = (float) pose[Robot.HEAD_ROT_Y];
+                jt[j + JOINT_LEFT_ARM] = (float) pose[Robot.LEFT_ARM_ROT_X];
+                jt[j + JOINT_RIGHT_ARM] = (float) pose[Robot.RIGHT_ARM_ROT_X];
+                jt[j + JOINT_LEFT_LEG] = (float) pose[Robot.LEFT_LEG_ROT_X];
+                jt[j + JOINT_RIGHT_LEG] = (float) pose[Robot.RIGHT_LEG_ROT_X];
+            } else {
+                double p = ph[i] + dt * Math.PI * 2;
+                if (p > Math.PI * 2) {
+                    p -= Math.PI * 2;
+                }
+                ph[i] = (float) p;
+
+                double swing = Math.sin(p);
+                jt[j + JOINT_HEAD] = 0;
+                jt[j + JOINT_LEFT_LEG] = (float) (35 * swing);
+                jt[j + JOINT_RIGHT_LEG] = (float) (-35 * swing);
+                jt[j + JOINT_LEFT_ARM] = (float) (-25 * swing);
+                jt[j + JOINT_RIGHT_ARM] = (float) (25 * swing);
+            }
+
+            // 机器人面朝-Z行走，朝向为rotY时前进方向是(-sin, -cos)
+            double r = Math.toRadians(ry[i]);
+            double x = px[i] - Math.sin(r) * sp[i] * dt;
+            double z = pz[i] - Math.cos(r) * sp[i] * dt;
+            if (x < -halfWidth) x += halfWidth * 2;
+            else if (x > halfWidth) x -= halfWidth * 2;
+            if (z < -halfDepth) z += halfDepth * 2;
+            else if (z > halfDepth) z -= halfDepth * 2;
+            px[i] = (float) x;
+            pz[i] = (float) z;
+        }
+        publish();
+    }
+
+    /**
+     * 把模拟状态复制进写快照，与中间快照交换（调用者持有锁）
+     */
+    private void publish() {
+        Instances w = slots[writeIndex];
+        int n = count;
+        if (w.posX.length < n) {
+            int cap = posX.length;
+            w.posX = new float[cap];
+            w.posZ = new float[cap];
+            w.rotY = new float[cap];
+            w.joints = new float[cap * JOINT_STRIDE];
+        }
+        System.arraycopy(posX, 0, w.posX, 0, n);
+        System.arraycopy(posZ, 0, w.posZ, 0, n);
+        System.arraycopy(rotY, 0, w.rotY, 0, n);
+        System.arraycopy(joints, 0, w.joints, 0, n * JOINT_STRIDE);
+        w.bodyColors = bodyColors;
+        w.limbColors = limbColors;
+        w.count = n;
+        int old = middle.getAndSet(writeIndex | FRESH);
+        writeIndex = old & INDEX_MASK;
+    }
+
+    /**
+     * 取得最新发布的实例快照（渲染线程每帧开始时调用一次）
+     * 之后本帧的draw()和isInstanceOccluded()都使用这一份
+     */
+    public void sync() {
+        if ((middle.get() & FRESH) != 0) {
+            int old = middle.getAndSet(readIndex);
+            readIndex = old & INDEX_MASK;
+            frame = slots[readIndex];
+        }
+    }
+
+    /**
+     * 用片段驱动所有实例的关节（null恢复正弦步态）
+     * 各实例从自己当前的相位对应的时间开始，不会整齐划一
+     */
+    public void setClip(AnimationClip clip) {
+        this.clip = clip;
+    }
+
+    public AnimationClip getClip() {
+        return clip;
+    }
+
+    /**
+     * 开始行走（由共享的动画时钟按固定步长推进）
+     */
+    public void startWalking() {
+        AnimationClock.shared().play(this);
+    }
+
+    /**
+     * 停止行走
+     */
+    public void stopWalking() {
+        AnimationClock.shared().stop(this);
+    }
+
+    public boolean isWalking() {
+        return AnimationClock.shared().isPlaying(this);
+    }
+
+    // ==================== 变更通知 ====================
+
+    void markChanged() {
+        version++;
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setChangeListener(Runnable listener) {
+        this.changeListener = listener;
+    }
+
+    // ==================== 绘制 ====================
+
+    /**
+     * 把所有实例交给渲染器（渲染线程调用）
+     * 关节布局与Robot完全一致：头在躯干上方0.85，肩关节(±0.525, 0.5)，
+     * 髋关节(±0.2, -0.6)，手臂和腿的中心分别在关节下方0.4和0.45
+     *
+     * @param sink    渲染器
+     * @param frustum 视锥体（null表示不剔除）
+     */
+    public void draw(MeshSink sink, Frustum frustum) {
+        draw(sink, frustum, null);
+    }
+
+    /**
+     * 把通过筛选的实例交给渲染器
+     * 筛选在视锥剔除之后、计算矩阵之前进行，例如用于遮挡剔除
+     *
+     * @param sink    渲染器
+     * @param frustum 视锥体（null表示不剔除）
+     * @param filter  实例筛选（参数为实例下标，返回false跳过；null表示全部绘制）
+     */
+    public void draw(MeshSink sink, Frustum frustum, IntPredicate filter) {
+        Instances f = frame;
+        int n = f.count;
+        float[] px = f.posX, pz = f.posZ, ry = f.rotY, jt = f.joints;
+        int[] bc = f.bodyColors, lc = f.limbColors;
+        double[] world = worldMatrix, m = partMatrix;
+        headPalette[0] = headColor;
+
+        for (int i = 0; i < n; i++) {
+            if (frustum != null && !frustum.intersectsSphere(px[i], BOUNDS_CENTER_Y, pz[i], BOUNDS_RADIUS)) {
+                continue; // 整个实例在视锥体外
+            }
+            if (filter != null && !filter.test(i)) {
+                continue;
+            }
+            int j = i * JOINT_STRIDE;
+            bodyPalette[0] = bc[i];
+            limbPalette[0] = lc[i];
+
+            // 世界矩阵：原地转向后放到(x, 0, z)：W = T × Ry
+            Matrix4.setIdentity(world);
+            Matrix4.translateInPlace(world, px[i], 0, pz[i]);
+            Matrix4.rotateYInPlace(world, Math.toRadians(ry[i]));
+            emit(sink, bodyMesh, world, bodyPalette);
+
+            // 头部
+            System.arraycopy(world, 0, m, 0, 16);
+            Matrix4.translateInPlace(m, 0, 0.85, 0);
+            Matrix4.rotateYInPlace(m, Math.toRadians(jt[j + JOINT_HEAD]));
+            emit(sink, headMesh, m, headPalette);
+
+            // 手臂
+            limb(sink, armMesh, world, -0.525, 0.5, jt[j + JOINT_LEFT_ARM], 0.4);
+            limb(sink, armMesh, world, 0.525, 0.5, jt[j + JOINT_RIGHT_ARM], 0.4);
+
+            // 腿
+            limb(sink, legMesh, world, -0.2, -0.6, jt[j + JOINT_LEFT_LEG], 0.45);
+            limb(sink, legMesh, world, 0.2, -0.6, jt[j + JOINT_RIGHT_LEG], 0.45);
+        }
+    }
+
+    /**
+     * 绘制一个绕X轴摆动的肢体
+     */
+    private void limb(MeshSink sink, Mesh mesh, double[] world, double jointX, double jointY,
+            float angle, double length) {
+        double[] m = partMatrix;
+        System.arraycopy(world, 0, m, 0, 16);
+        Matrix4.translateInPlace(m, jointX, jointY, 0);
+        Matrix4.rotateXInPlace(m, Math.toRadians(angle));
+        Matrix4.translateInPlace(m, 0, -length, 0);
+        emit(sink, mesh, m, limbPalette);
+    }
+
+    private void emit(MeshSink sink, Mesh mesh, double[] matrix, int[] palette) {
+        Matrix4.transformPoints(matrix, mesh.x, mesh.y, mesh.z, mesh.vertexCount, worldX, worldY, worldZ);
+        sink.drawMesh(mesh, worldX, worldY, worldZ, matrix, palette);
+    }
+}
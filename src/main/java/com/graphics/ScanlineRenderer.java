@@ -0,0 +1,481 @@
+package com.graphics;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ====================================================================
+ * ScanlineRenderer.java - 扫描线消隐（Watkins算法）
+ * ====================================================================
+ *
+ * 【功能说明】
+ * Z-Buffer之外的另一种消隐引擎：逐条扫描线求出每一段(span)上最近的多边形，
+ * 整段一次填色。不需要全屏深度缓冲，每个像素只写一次颜色。
+ * 画面大、深度复杂度低（大片区域只被一两个多边形覆盖）时，
+ * 比Z-Buffer少很多内存读写。
+ *
+ * 【数据结构】
+ * - 边表(ET, Edge Table): 所有非水平边按起始扫描线分桶（链表）
+ * - 活动边表(AEL, Active Edge List): 与当前扫描线相交的边，按交点x排序
+ * - 活动多边形表(APL, Active Polygon List): 当前位置"在其内部"的多边形，
+ *   从左到右走过AEL时，每经过一条边就切换该边所属多边形的内外状态
+ *
+ * 【逐段求可见面】
+ * 相邻两条活动边之间是一段，段内的活动多边形集合不变：
+ * 1. 集合为空：填背景色
+ * 2. 否则在段左端求最近的多边形P（深度是平面方程 z = A·x + B·y + C）
+ * 3. 深度之差是x的线性函数：如果没有别的多边形在段内变得比P更近，整段都是P；
+ *    否则在最先发生穿插的位置把段切开，右边部分重复第2步
+ * 所以穿插的多边形也能正确处理，而大多数段只需一次判断。
+ *
+ * 【并行】
+ * 屏幕按水平条带(band)划分，三角形按y范围分到条带，
+ * 每个条带有自己的ET/AEL/APL，在ForkJoinPool上并行处理，互不干扰。
+ *
+ * 【像素覆盖】
+ * 与Rasterizer一致以像素中心采样：边在 [ceil(ya-0.5), ceil(yb-0.5)) 行内活动，
+ * 段覆盖中心落在 [x左, x右) 的像素（左闭右开，相邻三角形不重叠不留缝）。
+ *
+ * @author Computer Graphics Course
+ */
+public class ScanlineRenderer {
+
+    /** 条带高度（像素行） */
+    public static final int BAND_HEIGHT = 32;
+
+    /**
+     * 每个多边形的平面方程个数：深度、1/w、最多6个属性×1/w
+     * 每个平面3个系数(A, B, C)，值 = A·x + B·y + C
+     */
+    private static final int PLANES_PER_POLYGON = 2 + TriangleBatch.PHONG_STRIDE - 1;
+    private static final int PLANE_STRIDE = PLANES_PER_POLYGON * 3;
+
+    /** 执行条带任务的线程池 */
+    private final ForkJoinPool pool;
+
+    /** 颜色缓冲区及尺寸 */
+    private int[] colorBuffer;
+    private int width, height;
+
+    /** 条带（跨帧复用） */
+    private Band[] bands = new Band[0];
+    private int bandCount;
+
+    public ScanlineRenderer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ScanlineRenderer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 渲染一个批次到颜色缓冲区（每个像素恰好写一次）
+     *
+     * @param batch      屏幕空间三角形
+     * @param pixels     颜色缓冲区，长度至少为 width × height
+     * @param width      宽度
+     * @param height     高度
+     * @param background 背景颜色（0xRRGGBB）
+     */
+    public void render(TriangleBatch batch, int[] pixels, int width, int height, int background) {
+        this.colorBuffer = pixels;
+        this.width = width;
+        this.height = height;
+        bin(batch);
+        pool.invoke(new BandTask(batch, background, 0, bandCount));
+    }
+
+    // ==================== 分条带 ====================
+
+    /**
+     * 把三角形分到它覆盖的所有条带
+     */
+    private void bin(TriangleBatch batch) {
+        bandCount = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        if (bands.length < bandCount) {
+            Band[] grown = Arrays.copyOf(bands, bandCount);
+            for (int i = bands.length; i < bandCount; i++) {
+                grown[i] = new Band();
+            }
+            bands = grown;
+        }
+        for (int i = 0; i < bandCount; i++) {
+            bands[i].triangleCount = 0;
+        }
+
+        float[] xyz = batch.xyz;
+        for (int t = 0; t < batch.size(); t++) {
+            int o = t * TriangleBatch.XYZ_STRIDE;
+            float minY = Math.min(xyz[o + 1], Math.min(xyz[o + 4], xyz[o + 7]));
+            float maxY = Math.max(xyz[o + 1], Math.max(xyz[o + 4], xyz[o + 7]));
+            int firstRow = Math.max(0, (int) Math.ceil(minY - 0.5));
+            int endRow = Math.min(height, (int) Math.ceil(maxY - 0.5));
+            if (firstRow >= endRow) {
+                continue; // 不覆盖任何像素中心
+            }
+            for (int b = firstRow / BAND_HEIGHT; b <= (endRow - 1) / BAND_HEIGHT; b++) {
+                bands[b].addTriangle(t);
+            }
+        }
+    }
+
+    /**
+     * 分治任务：条带区间[from, to)多于一个时一分为二
+     */
+    private class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TriangleBatch batch;
+        private final int background;
+        private final int from, to;
+
+        BandTask(TriangleBatch batch, int background, int from, int to) {
+            this.batch = batch;
+            this.background = background;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int b = from; b < to; b++) {
+                    int y0 = b * BAND_HEIGHT;
+                    bands[b].render(batch, y0, Math.min(height, y0 + BAND_HEIGHT), background);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new BandTask(batch, background, from, mid),
+                    new BandTask(batch, background, mid, to));
+        }
+    }
+
+    // ==================== 单个条带 ====================
+
+    /**
+     * 一个条带的扫描线状态（只被一个线程使用）
+     * 条带内的三角形用局部编号 [0, triangleCount)
+     */
+    private class Band {
+
+        /** 条带内的三角形（批次中的索引） */
+        int[] triangles = new int[64];
+        int triangleCount;
+
+        /** 每个三角形的平面方程（深度、1/w、属性），见PLANES_PER_POLYGON */
+        double[] planes = new double[64 * PLANE_STRIDE];
+
+        // ---------- 边表（结构数组） ----------
+
+        /** 边在当前扫描线上的x、每行的x增量 */
+        double[] edgeX = new double[192], edgeDx = new double[192];
+
+        /** 边的结束行（不含）、所属三角形（局部编号）、同一桶中的下一条边 */
+        int[] edgeEnd = new int[192], edgePolygon = new int[192], edgeNext = new int[192];
+        int edgeCount;
+
+        /** ET的桶：每行第一条边（-1表示空） */
+        final int[] bucketHead = new int[BAND_HEIGHT];
+
+        // ---------- 活动边表与活动多边形表 ----------
+
+        /** AEL：按x排序的边编号 */
+        int[] activeEdges = new int[192];
+        int activeEdgeCount;
+
+        /** APL：当前在其内部的三角形，及每个三角形在APL中的位置（-1表示不在） */
+        int[] activePolygons = new int[64];
+        int[] activePosition = new int[64];
+        int activePolygonCount;
+
+        /** 逐段求可见面时各活动多边形在段左端的深度 */
+        double[] spanDepth = new double[64];
+
+        void addTriangle(int t) {
+            if (triangleCount == triangles.length) {
+                triangles = Arrays.copyOf(triangles, triangleCount * 2);
+            }
+            triangles[triangleCount++] = t;
+        }
+
+        /**
+         * 渲染条带内的扫描线 [y0, y1)
+         */
+        void render(TriangleBatch batch, int y0, int y1, int background) {
+            buildEdgeTable(batch, y0, y1);
+
+            int[] color = colorBuffer;
+            activeEdgeCount = 0;
+            activePolygonCount = 0;
+            for (int y = y0; y < y1; y++) {
+                updateActiveEdges(y - y0, y);
+
+                // 从左到右走过AEL：段 → 切换内外状态
+                int row = y * width;
+                int cursor = 0;
+                double yc = y + 0.5;
+                for (int i = 0; i < activeEdgeCount; i++) {
+                    int e = activeEdges[i];
+                    int column = (int) Math.ceil(edgeX[e] - 0.5);
+                    column = Math.max(0, Math.min(width, column));
+                    if (column > cursor) {
+                        if (activePolygonCount == 0) {
+                            Arrays.fill(color, row + cursor, row + column, background);
+                        } else {
+                            resolveSpan(batch, cursor, column, y, yc);
+                        }
+                        cursor = column;
+                    }
+                    togglePolygon(edgePolygon[e]);
+                }
+                if (cursor < width) {
+                    Arrays.fill(color, row + cursor, row + width, background);
+                }
+                // 每个三角形在一行上恰好有两条活动边，走完后APL为空
+                while (activePolygonCount > 0) {
+                    togglePolygon(activePolygons[0]);
+                }
+            }
+        }
+
+        /**
+         * 建立边表，并计算每个三角形的平面方程
+         */
+        private void buildEdgeTable(TriangleBatch batch, int y0, int y1) {
+            int n = triangleCount;
+            if (planes.length < n * PLANE_STRIDE) {
+                planes = new double[Math.max(n, planes.length / PLANE_STRIDE * 2) * PLANE_STRIDE];
+            }
+            if (activePosition.length < n) {
+                int cap = Math.max(n, activePosition.length * 2);
+                activePosition = new int[cap];
+                activePolygons = new int[cap];
+                spanDepth = new double[cap];
+            }
+            Arrays.fill(activePosition, 0, n, -1);
+            Arrays.fill(bucketHead, -1);
+            edgeCount = 0;
+
+            float[] xyz = batch.xyz;
+            for (int l = 0; l < n; l++) {
+                int t = triangles[l];
+                int o = t * TriangleBatch.XYZ_STRIDE;
+                double x0 = xyz[o], py0 = xyz[o + 1];
+                double x1 = xyz[o + 3], py1 = xyz[o + 4];
+                double x2 = xyz[o + 6], py2 = xyz[o + 7];
+                double area = (x1 - x0) * (py2 - py0) - (x2 - x0) * (py1 - py0);
+                if (area == 0 || Double.isNaN(area)) {
+                    continue; // 退化三角形：没有边，不会进入APL
+                }
+                computePlanes(batch, t, l, x0, py0, x1, py1, x2, py2, area);
+                addEdge(x0, py0, x1, py1, l, y0, y1);
+                addEdge(x1, py1, x2, py2, l, y0, y1);
+                addEdge(x2, py2, x0, py0, l, y0, y1);
+            }
+        }
+
+        /**
+         * 计算三角形的深度平面和（Gouraud/Phong）属性平面
+         * 平面通过三个顶点：v = A·x + B·y + C
+         */
+        private void computePlanes(TriangleBatch batch, int t, int l,
+                double x0, double y0, double x1, double y1, double x2, double y2, double area) {
+            int o = t * TriangleBatch.XYZ_STRIDE;
+            int p = l * PLANE_STRIDE;
+            float[] xyz = batch.xyz;
+            setPlane(p, x0, y0, x1, y1, x2, y2, area, xyz[o + 2], xyz[o + 5], xyz[o + 8]);
+
+            byte kind = batch.kinds[t];
+            if (kind == TriangleBatch.FLAT) {
+                return;
+            }
+            int stride = kind == TriangleBatch.PHONG ? TriangleBatch.PHONG_STRIDE : TriangleBatch.GOURAUD_STRIDE;
+            float[] attr = batch.attributes;
+            int a = batch.attributeOffsets[t];
+            for (int j = 0; j < stride; j++) {
+                setPlane(p + 3 + j * 3, x0, y0, x1, y1, x2, y2, area,
+                        attr[a + j], attr[a + stride + j], attr[a + 2 * stride + j]);
+            }
+        }
+
+        private void setPlane(int p, double x0, double y0, double x1, double y1, double x2, double y2,
+                double area, double v0, double v1, double v2) {
+            double a = ((v1 - v0) * (y2 - y0) - (v2 - v0) * (y1 - y0)) / area;
+            double b = ((v2 - v0) * (x1 - x0) - (v1 - v0) * (x2 - x0)) / area;
+            planes[p] = a;
+            planes[p + 1] = b;
+            planes[p + 2] = v0 - a * x0 - b * y0;
+        }
+
+        /**
+         * 把一条边放进ET（水平边、不跨像素中心的边、条带外的边都忽略）
+         */
+        private void addEdge(double xa, double ya, double xb, double yb, int polygon, int y0, int y1) {
+            if (ya > yb) {
+                double t;
+                t = xa; xa = xb; xb = t;
+                t = ya; ya = yb; yb = t;
+            }
+            int first = Math.max(y0, (int) Math.ceil(ya - 0.5));
+            int end = Math.min(y1, (int) Math.ceil(yb - 0.5));
+            if (first >= end) {
+                return;
+            }
+            if (edgeCount == edgeX.length) {
+                int cap = edgeCount * 2;
+                edgeX = Arrays.copyOf(edgeX, cap);
+                edgeDx = Arrays.copyOf(edgeDx, cap);
+                edgeEnd = Arrays.copyOf(edgeEnd, cap);
+                edgePolygon = Arrays.copyOf(edgePolygon, cap);
+                edgeNext = Arrays.copyOf(edgeNext, cap);
+                activeEdges = Arrays.copyOf(activeEdges, cap);
+            }
+            int e = edgeCount++;
+            double dx = (xb - xa) / (yb - ya);
+            edgeDx[e] = dx;
+            edgeX[e] = xa + (first + 0.5 - ya) * dx;
+            edgeEnd[e] = end;
+            edgePolygon[e] = polygon;
+            edgeNext[e] = bucketHead[first - y0];
+            bucketHead[first - y0] = e;
+        }
+
+        /**
+         * 进入新的一行：删除结束的边，其余边x前进一行，加入新边，按x重新排序
+         */
+        private void updateActiveEdges(int bucket, int y) {
+            int kept = 0;
+            for (int i = 0; i < activeEdgeCount; i++) {
+                int e = activeEdges[i];
+                if (edgeEnd[e] > y) {
+                    edgeX[e] += edgeDx[e];
+                    activeEdges[kept++] = e;
+                }
+            }
+            for (int e = bucketHead[bucket]; e >= 0; e = edgeNext[e]) {
+                activeEdges[kept++] = e;
+            }
+            activeEdgeCount = kept;
+
+            // 插入排序：上一行已经有序，通常只需很少的移动
+            for (int i = 1; i < kept; i++) {
+                int e = activeEdges[i];
+                double x = edgeX[e];
+                int j = i - 1;
+                while (j >= 0 && edgeX[activeEdges[j]] > x) {
+                    activeEdges[j + 1] = activeEdges[j];
+                    j--;
+                }
+                activeEdges[j + 1] = e;
+            }
+        }
+
+        /**
+         * 切换多边形的内外状态（进入APL或离开APL）
+         */
+        private void togglePolygon(int l) {
+            int pos = activePosition[l];
+            if (pos < 0) {
+                activePosition[l] = activePolygonCount;
+                activePolygons[activePolygonCount++] = l;
+            } else {
+                int last = activePolygons[--activePolygonCount];
+                activePolygons[pos] = last;
+                activePosition[last] = pos;
+                activePosition[l] = -1;
+            }
+        }
+
+        /**
+         * 求一段 [xs, xe) 上的可见面并填色（活动多边形集合在段内不变）
+         */
+        private void resolveSpan(TriangleBatch batch, int xs, int xe, int y, double yc) {
+            double[] pl = planes;
+            while (xs < xe) {
+                double px = xs + 0.5;
+
+                // 段左端最近的多边形
+                int best = -1;
+                double bestZ = Double.POSITIVE_INFINITY;
+                for (int k = 0; k < activePolygonCount; k++) {
+                    int p = activePolygons[k] * PLANE_STRIDE;
+                    double z = pl[p] * px + pl[p + 1] * yc + pl[p + 2];
+                    spanDepth[k] = z;
+                    if (z < bestZ) {
+                        bestZ = z;
+                        best = k;
+                    }
+                }
+
+                // 最先比它更近的位置（深度差线性，斜率为负才可能反超）
+                int cut = xe;
+                if (activePolygonCount > 1) {
+                    double bestSlope = pl[activePolygons[best] * PLANE_STRIDE];
+                    for (int k = 0; k < activePolygonCount; k++) {
+                        double slope = pl[activePolygons[k] * PLANE_STRIDE] - bestSlope;
+                        if (k == best || slope >= 0) {
+                            continue;
+                        }
+                        double cross = px + (spanDepth[k] - bestZ) / -slope;
+                        if (cross < cut - 0.5) {
+                            cut = Math.max(xs + 1, (int) Math.ceil(cross - 0.5));
+                        }
+                    }
+                }
+
+                fillSpan(batch, activePolygons[best], xs, cut, y, yc);
+                xs = cut;
+            }
+        }
+
+        /**
+         * 用一个多边形填充 [xs, xe)
+         */
+        private void fillSpan(TriangleBatch batch, int l, int xs, int xe, int y, double yc) {
+            int t = triangles[l];
+            int row = y * width;
+            byte kind = batch.kinds[t];
+            if (kind == TriangleBatch.FLAT) {
+                Arrays.fill(colorBuffer, row + xs, row + xe, batch.colors[t]);
+                return;
+            }
+
+            // 透视正确的属性：各平面的值除以1/w平面的值
+            double[] pl = planes;
+            int q = l * PLANE_STRIDE + 3;
+            boolean phong = kind == TriangleBatch.PHONG;
+            int baseColor = batch.colors[t];
+            LightClusters lights = batch.lights;
+            for (int x = xs; x < xe; x++) {
+                double px = x + 0.5;
+                double inv = 1.0 / (pl[q] * px + pl[q + 1] * yc + pl[q + 2]);
+                double v1 = (pl[q + 3] * px + pl[q + 4] * yc + pl[q + 5]) * inv;
+                double v2 = (pl[q + 6] * px + pl[q + 7] * yc + pl[q + 8]) * inv;
+                double v3 = (pl[q + 9] * px + pl[q + 10] * yc + pl[q + 11]) * inv;
+                if (phong) {
+                    double len = Math.sqrt(v1 * v1 + v2 * v2 + v3 * v3);
+                    if (len > 0) {
+                        v1 /= len;
+                        v2 /= len;
+                        v3 /= len;
+                    }
+                    colorBuffer[row + x] = lights.shade(x, y, v1, v2, v3,
+                            (pl[q + 12] * px + pl[q + 13] * yc + pl[q + 14]) * inv,
+                            (pl[q + 15] * px + pl[q + 16] * yc + pl[q + 17]) * inv,
+                            (pl[q + 18] * px + pl[q + 19] * yc + pl[q + 20]) * inv,
+                            baseColor);
+                } else {
+                    int r = clampChannel(v1), g = clampChannel(v2), b = clampChannel(v3);
+                    colorBuffer[row + x] = (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+    }
+
+    private static int clampChannel(double c) {
+        return c <= 0 ? 0 : c >= 255 ? 255 : (int) c;
+    }
+}
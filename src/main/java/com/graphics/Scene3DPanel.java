@@ -6,6 +6,9 @@ import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * ====================================================================
@@ -13,26 +16,20 @@ import java.util.List;
  * ====================================================================
  * 
  * 【功能说明】
- * 这是3D图形的核心渲染引擎，使用纯软件渲染实现3D显示。
- * 包含机器人模型、舞台场景，以及完整的3D图形管线。
+ * 3D场景的Swing面板：保存相机、光源和各种模式参数，处理鼠标交互，
+ * 把渲染线程画好的帧贴到屏幕上。
+ * 场景对象和完整的3D图形管线（纯软件渲染）在SceneRenderer中，
+ * 它不依赖Swing，也可以离屏使用。
  * 
- * 【3D渲染管线】
- * 1. 模型变换(Model Transform) - 在Robot.java中完成
- * 2. 视图变换(View Transform) - createViewMatrix()
- * 3. 投影变换(Projection Transform) - createProjectionMatrix()
- * 4. 裁剪(Clipping) - 简易实现
- * 5. 视口变换(Viewport Transform) - NDC到屏幕坐标
+ * 【线程模型】
+ * - 渲染线程: 调用SceneRenderer执行完整的3D管线，把画面画进三重缓冲的写缓冲
+ * - Swing线程(EDT): paintComponent只把最新完成的一帧贴到屏幕上
+ * - 相机、光源等参数修改后发布为RenderState快照（无锁），渲染线程每帧读取一次
  * 
- * 【消隐算法】
- * - Z-Buffer: 概念上的深度排序
- * - 画家算法: 实际使用的方法，从远到近绘制
- * - 背面剔除: 不绘制背向摄像机的面
- * - 线框模式: 只显示边，不做消隐
- * 
- * 【着色模式】
- * - Flat: 每个面一个颜色，无高光
- * - Gouraud: 顶点颜色插值，弱高光
- * - Phong: 法向量插值，完整高光
+ * 【按需渲染】
+ * 场景维护一个版本号(sceneVersion)。相机、光源、材质、机器人姿态、
+ * 舞台的任何变化都会调用requestRender()使版本号加1并唤醒渲染线程。
+ * 版本号没有变化时渲染线程处于park状态，静止场景几乎不占CPU。
  * 
  * 【交互控制】
  * - 左键拖拽: 旋转相机/平移物体（取决于模式）
@@ -61,13 +58,15 @@ public class Scene3DPanel extends JPanel implements MouseListener, MouseMotionLi
 
     /**
      * 隐藏面消除模式
-     * - ZBUFFER: Z缓冲算法（概念实现）
-     * - SCANLINE: 扫描线消隐
+     * - ZBUFFER: Z缓冲算法（逐像素深度测试）
+     * - SCANLINE: 扫描线消隐（Watkins算法，逐段求可见面，无深度缓冲）
+     * - PAINTER: 画家算法（按深度从远到近绘制，不做深度测试）
+     * - BSP: 静态几何用BSP树遍历得到从远到近的顺序，动态物体按所在区域插入
      * - BACKFACE: 背面剔除
      * - WIREFRAME: 线框模式（不做消隐）
      */
     public enum HSRMode {
-        ZBUFFER, SCANLINE, BACKFACE, WIREFRAME
+        ZBUFFER, SCANLINE, PAINTER, BSP, BACKFACE, WIREFRAME
     }
 
     private HSRMode hsrMode = HSRMode.ZBUFFER;
@@ -86,18 +85,51 @@ public class Scene3DPanel extends JPanel implements MouseListener, MouseMotionLi
 
     private ShadingMode shadingMode = ShadingMode.PHONG;
 
+    // ==================== 阴影模式枚举 ====================
+
+    /**
+     * 阴影模式
+     * - OFF: 不画阴影
+     * - HARD: 硬阴影（每个点比较一次阴影贴图）
+     * - PCF: 比较周围3×3个贴图像素，阴影边缘柔和
+     */
+    public enum ShadowMode {
+        OFF, HARD, PCF
+    }
+
+    private ShadowMode shadowMode = ShadowMode.PCF;
+
+    // ==================== 抗锯齿模式枚举 ====================
+
+    /**
+     * 抗锯齿模式
+     * - OFF: 不做抗锯齿
+     * - FXAA: 后处理抗锯齿（快速近似）
+     * - SSAA_2X: 2×2倍分辨率超采样（每像素4个样本）
+     * - SSAA_4X: 4×4倍分辨率超采样（每像素16个样本）
+     */
+    public enum AntiAliasMode {
+        OFF(1), FXAA(1), SSAA_2X(2), SSAA_4X(4);
+
+        /** 每个方向的超采样倍数 */
+        public final int supersample;
+
+        AntiAliasMode(int supersample) {
+            this.supersample = supersample;
+        }
+    }
+
+    private AntiAliasMode antiAliasMode = AntiAliasMode.FXAA;
+
     // ==================== 交互模式 ====================
 
     /** 当前交互模式: ROTATE/TRANSLATE/SCALE */
     private String interactionMode = "ROTATE";
 
-    // ==================== 场景对象 ====================
+    // ==================== 场景与渲染 ====================
 
-    /** 机器人模型列表（支持多个） */
-    private List<Robot> robots = new ArrayList<>();
-
-    /** 舞台场景（地板） */
-    private Stage stage;
+    /** 场景对象和3D管线（只由渲染线程调用render） */
+    private final SceneRenderer renderer = new SceneRenderer();
 
     // ==================== 相机参数 ====================
 
@@ -127,15 +159,36 @@ public class Scene3DPanel extends JPanel implements MouseListener, MouseMotionLi
     /** 光照强度（0.0-1.0） */
     private double lightIntensity = 1.0;
 
+    /** 主光源之外的光源（EDT修改，发布时复制进快照） */
+    private final List<Light> additionalLights = new ArrayList<>();
+
     // ==================== 鼠标交互状态 ====================
 
     private int lastMouseX, lastMouseY;
     private boolean isDragging = false;
 
-    // ==================== 帧缓冲 ====================
+    // ==================== 渲染线程与帧缓冲 ====================
+
+    /** 三重缓冲：渲染线程写、EDT读，互不等待 */
+    private final TripleBuffer frames = new TripleBuffer();
+
+    /** 最新发布的渲染状态快照 */
+    private final AtomicReference<RenderState> renderState = new AtomicReference<>();
+
+    /** 渲染线程 */
+    private final Thread renderThread;
+
+    /** 最小帧间隔（毫秒，最高约60 FPS） */
+    private static final long FRAME_INTERVAL_MS = 16;
+
+    /** 最近一帧renderFrame的耗时（毫秒，显示在信息栏） */
+    private volatile double frameMillis;
+
+    /** 场景版本号：任何影响画面的变化都会使它加1 */
+    private final AtomicLong sceneVersion = new AtomicLong();
 
-    /** 离屏渲染缓冲区 */
-    private BufferedImage frameBuffer;
+    /** 当前选中的机器人（null表示未选中） */
+    private volatile Robot selectedRobot;
 
     // ==================== 构造函数 ====================
 
@@ -143,313 +196,136 @@ public class Scene3DPanel extends JPanel implements MouseListener, MouseMotionLi
         setBackground(new Color(30, 30, 40)); // 深灰蓝背景
         setPreferredSize(new Dimension(1000, 700));
 
-        // 初始化场景对象
-        robots.add(new Robot()); // 添加默认机器人
-        stage = new Stage(); // 添加舞台地板
+        // 场景变化时唤醒渲染线程；拾取结果成为选中的机器人
+        renderer.setChangeListener(this::requestRender);
+        renderer.setPickListener(robot -> {
+            selectedRobot = robot;
+            SwingUtilities.invokeLater(this::repaint);
+        });
+        addRobot(new Robot()); // 添加默认机器人
 
         // 添加鼠标监听器
         addMouseListener(this);
         addMouseMotionListener(this);
         addMouseWheelListener(this);
 
-        // 启动渲染循环（约60 FPS）
-        Timer renderTimer = new Timer(16, e -> repaint());
-        renderTimer.start();
+        // 尺寸变化时重新发布快照
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                publishState();
+            }
+        });
+        publishState();
+
+        // 启动渲染线程（场景变化时才渲染）
+        renderThread = new Thread(this::renderLoop, "Scene3D-Render");
+        renderThread.setDaemon(true);
+        renderThread.start();
     }
 
     // ==================== 核心渲染方法 ====================
 
+    /**
+     * 绘制组件（EDT）
+     * 只贴上渲染线程最新完成的一帧，不做任何几何计算
+     */
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        int width = getWidth();
-        int height = getHeight();
+        // 画面已在渲染线程做过抗锯齿，这里只需文字平滑
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 
-        // 初始化或调整帧缓冲区大小
-        if (frameBuffer == null || frameBuffer.getWidth() != width || frameBuffer.getHeight() != height) {
-            frameBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage frame = frames.latest();
+        if (frame != null) {
+            g2d.drawImage(frame, 0, 0, null);
         }
 
-        // 清空帧缓冲区
-        Graphics2D fbg = frameBuffer.createGraphics();
-        fbg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        fbg.setColor(getBackground());
-        fbg.fillRect(0, 0, width, height);
-
-        // ========== 3D渲染管线 ==========
-
-        // Step 1: 创建视图矩阵（相机变换）
-        double[][] viewMatrix = createViewMatrix();
-
-        // Step 2: 创建投影矩阵
-        double[][] projMatrix = createProjectionMatrix(width, height);
-
-        // Step 3: 分层渲染
-        // 先渲染地板，再渲染机器人，确保正确的遮挡关系
-
-        // 第1层：舞台(地板)多边形
-        renderPolygons(fbg, stage.getPolygons(), viewMatrix, projMatrix, width, height);
-
-        // 第2层：所有机器人的多边形
-        List<Polygon3D> robotPolygons = new ArrayList<>();
-        for (Robot robot : robots) {
-            robotPolygons.addAll(robot.getTransformedPolygons());
-        }
-        renderPolygons(fbg, robotPolygons, viewMatrix, projMatrix, width, height);
-
-        fbg.dispose();
-
-        // 将帧缓冲区绘制到屏幕
-        g2d.drawImage(frameBuffer, 0, 0, null);
-
         // 绘制场景信息显示
         drawInfo(g2d);
     }
 
     /**
-     * 创建视图矩阵
-     * 
-     * 【视图变换原理】
-     * 将世界坐标转换到相机坐标系。
-     * 等价于移动整个世界，使相机位于原点并朝向-Z方向。
-     * 
-     * 【变换顺序】
-     * 1. 平移：将相机移到原点（T(-camX, -camY, -camZ)）
-     * 2. 旋转：使相机朝向-Z轴（R(-rotX) × R(-rotY)）
+     * 渲染线程主循环
+     * 场景版本号变化时读取最新快照，画一帧，发布后请求EDT重绘；
+     * 没有变化时park等待requestRender()唤醒
      */
-    private double[][] createViewMatrix() {
-        double[][] result = Matrix4.identity();
-        // 先平移
-        result = Matrix4.multiply(Matrix4.translate(-cameraX, -cameraY, -cameraZ), result);
-        // 再旋转（注意顺序和符号）
-        result = Matrix4.multiply(Matrix4.rotateX(Math.toRadians(-cameraRotX)), result);
-        result = Matrix4.multiply(Matrix4.rotateY(Math.toRadians(-cameraRotY)), result);
-        return result;
-    }
-
-    /**
-     * 创建投影矩阵
-     * 
-     * 【投影类型】
-     * - Frustum: 使用固定的45度视角
-     * - Perspective: 使用可调节的FOV
-     * - Orthographic: 正交投影，用于CAD等场景
-     */
-    private double[][] createProjectionMatrix(int width, int height) {
-        double aspect = (double) width / height;
-
-        switch (projectionMode) {
-            case FRUSTUM:
-                // 视锥体投影，使用较小的FOV
-                return Matrix4.perspective(Math.toRadians(45), aspect, nearPlane, farPlane);
-            case PERSPECTIVE:
-                // 标准透视投影
-                return Matrix4.perspective(Math.toRadians(fov), aspect, nearPlane, farPlane);
-            case ORTHOGRAPHIC:
-                // 正交投影
-                double size = 5;
-                return Matrix4.orthographic(-size * aspect, size * aspect, -size, size, nearPlane, farPlane);
-            default:
-                return Matrix4.identity();
-        }
-    }
-
-    /**
-     * 渲染多边形列表
-     * 
-     * 【渲染流程】
-     * 1. 深度排序（画家算法）
-     * 2. 背面剔除
-     * 3. 顶点变换（视图 × 投影）
-     * 4. 透视除法
-     * 5. 视口变换
-     * 6. 光照计算
-     * 7. 栅格化绘制
-     */
-    private void renderPolygons(Graphics2D g, List<Polygon3D> polygons,
-            double[][] view, double[][] proj, int w, int h) {
-
-        // ========== Step 1: 画家算法 - 按深度排序 ==========
-        // 从远到近排序，先绘制远处的，再绘制近处的
-        polygons.sort((a, b) -> {
-            double za = a.getAverageZ(view);
-            double zb = b.getAverageZ(view);
-            return Double.compare(zb, za); // 降序排列
-        });
-
-        for (Polygon3D poly : polygons) {
-
-            // ========== Step 2: 背面剔除 ==========
-            // 非线框模式且非双面多边形时进行背面剔除
-            if (hsrMode != HSRMode.WIREFRAME && !poly.doubleSided) {
-                double[] normal = poly.getNormal();
-                double[] center = poly.getCenter();
-                // 计算从多边形中心到相机的方向
-                double[] viewDir = Vector3.normalize(new double[] {
-                        cameraX - center[0], cameraY - center[1], cameraZ - center[2]
-                });
-                // 如果法向量与视线方向夹角大于90度，则是背面
-                // 使用-0.1而不是0是为了让接近水平的面（如地板）也能显示
-                if (Vector3.dot(normal, viewDir) < -0.1) {
-                    continue; // 跳过背面
-                }
+    private void renderLoop() {
+        long renderedVersion = -1;
+        while (!Thread.currentThread().isInterrupted()) {
+            long version = sceneVersion.get();
+            if (version == renderedVersion) {
+                // 场景没有变化，等待唤醒（先读版本号再park，唤醒不会丢失）
+                LockSupport.park(this);
+                continue;
             }
-
-            // ========== Step 3-5: 顶点变换 ==========
-            int[] screenX = new int[poly.vertices.length];
-            int[] screenY = new int[poly.vertices.length];
-            boolean allVisible = true;
-
-            for (int i = 0; i < poly.vertices.length; i++) {
-                double[] v = poly.vertices[i];
-
-                // Step 3: 视图变换
-                double[] transformed = Matrix4.transformPoint(view, v);
-
-                // Step 4: 投影变换
-                double[] projected = Matrix4.transformPoint(proj, transformed);
-
-                // Step 5: 透视除法（将齐次坐标转换为笛卡尔坐标）
-                if (Math.abs(projected[3]) > 0.001) {
-                    projected[0] /= projected[3];
-                    projected[1] /= projected[3];
-                    projected[2] /= projected[3];
-                }
-
-                // 简单裁剪（超出规范视见体的不渲染）
-                if (projected[2] < -1.5 || projected[2] > 1.5) {
-                    allVisible = false;
-                    break;
-                }
-
-                // 视口变换：[-1,1] → [0,w] × [0,h]
-                // 注意Y轴翻转（屏幕Y向下，3D空间Y向上）
-                screenX[i] = (int) ((projected[0] + 1) * w / 2);
-                screenY[i] = (int) ((1 - projected[1]) * h / 2);
+            renderedVersion = version;
+            long start = System.currentTimeMillis();
+
+            RenderState state = renderState.get();
+            if (state.width > 0 && state.height > 0) {
+                BufferedImage target = frames.beginFrame(state.width, state.height);
+                long frameStart = System.nanoTime();
+                renderer.render(state, target);
+                frameMillis = (System.nanoTime() - frameStart) / 1e6;
+                frames.publish();
+                repaint();
             }
 
-            if (!allVisible)
-                continue;
-
-            // ========== Step 6: 光照计算 ==========
-            Color shadedColor = calculateLighting(poly);
-
-            // ========== Step 7: 栅格化绘制 ==========
-            if (hsrMode == HSRMode.WIREFRAME) {
-                // 线框模式
-                g.setColor(Color.GREEN);
-                g.setStroke(new BasicStroke(1));
-                g.drawPolygon(screenX, screenY, screenX.length);
-            } else {
-                // 填充模式
-                g.setColor(shadedColor);
-                g.fillPolygon(screenX, screenY, screenX.length);
-                // 描边使颜色稍暗
-                g.setColor(shadedColor.darker());
-                g.setStroke(new BasicStroke(1));
-                g.drawPolygon(screenX, screenY, screenX.length);
+            // 连续变化（如动画）时限制最高帧率
+            long elapsed = System.currentTimeMillis() - start;
+            if (elapsed < FRAME_INTERVAL_MS) {
+                try {
+                    Thread.sleep(FRAME_INTERVAL_MS - elapsed);
+                } catch (InterruptedException e) {
+                    return;
+                }
             }
         }
     }
 
     /**
-     * 计算光照颜色
-     * 
-     * 【Phong光照模型】
-     * I = I_ambient + I_diffuse + I_specular
-     * 
-     * I_ambient = k_a × I_a （环境光）
-     * I_diffuse = k_d × I_l × max(0, N·L) （漫反射）
-     * I_specular = k_s × I_l × max(0, R·V)^n （镜面反射）
-     * 
-     * 其中：
-     * - N: 表面法向量
-     * - L: 光源方向
-     * - V: 观察方向
-     * - R: 反射方向
-     * - n: 光泽度
+     * 发布当前参数的快照（EDT调用）
+     * 渲染线程下一帧开始时会读到它
      */
-    private Color calculateLighting(Polygon3D poly) {
-        double[] normal = poly.getNormal();
-        double[] center = poly.getCenter();
-
-        // 计算光源方向（从表面指向光源）
-        double[] lightDir = Vector3.normalize(new double[] {
-                lightPosition[0] - center[0],
-                lightPosition[1] - center[1],
-                lightPosition[2] - center[2]
-        });
-
-        double ambient, diffuse, specular;
-
-        switch (shadingMode) {
-            case FLAT:
-                // ========== Flat着色 ==========
-                // 特点：只有环境光+简单漫反射，无高光
-                // 效果：每个面颜色均匀，有明显的面与面分界
-                ambient = 0.3;
-                diffuse = Math.max(0, Vector3.dot(normal, lightDir)) * 0.5;
-                specular = 0;
-                break;
-
-            case GOURAUD:
-                // ========== Gouraud着色 ==========
-                // 特点：环境光+漫反射+弱高光
-                // 效果：颜色过渡比Flat平滑，但高光可能丢失
-                ambient = 0.25;
-                diffuse = Math.max(0, Vector3.dot(normal, lightDir)) * 0.55;
-                // 使用半向量近似计算高光
-                double[] viewDirG = Vector3.normalize(new double[] {
-                        cameraX - center[0], cameraY - center[1], cameraZ - center[2]
-                });
-                double[] halfVectorG = Vector3.normalize(Vector3.add(lightDir, viewDirG));
-                double specG = Math.max(0, Vector3.dot(normal, halfVectorG));
-                specular = Math.pow(specG, 16) * 0.2; // 较小的高光
-                break;
-
-            case PHONG:
-            default:
-                // ========== Phong着色 ==========
-                // 特点：完整光照模型，明显高光
-                // 效果：最真实，高光清晰锐利
-                ambient = 0.2;
-                diffuse = Math.max(0, Vector3.dot(normal, lightDir)) * 0.5;
-                // 计算反射方向
-                double[] viewDir = Vector3.normalize(new double[] {
-                        cameraX - center[0], cameraY - center[1], cameraZ - center[2]
-                });
-                double[] reflectDir = Vector3.reflect(Vector3.negate(lightDir), normal);
-                double spec = Math.max(0, Vector3.dot(viewDir, reflectDir));
-                specular = Math.pow(spec, 64) * 0.5; // 明显的高光
-                break;
-        }
+    private void publishState() {
+        RenderState s = new RenderState();
+        s.width = getWidth();
+        s.height = getHeight();
+        s.background = getBackground().getRGB() & 0xFFFFFF;
+        s.projectionMode = projectionMode;
+        s.hsrMode = hsrMode;
+        s.shadingMode = shadingMode;
+        s.shadowMode = shadowMode;
+        s.antiAliasMode = antiAliasMode;
+        s.cameraX = cameraX;
+        s.cameraY = cameraY;
+        s.cameraZ = cameraZ;
+        s.cameraRotX = cameraRotX;
+        s.cameraRotY = cameraRotY;
+        s.fov = fov;
+        s.nearPlane = nearPlane;
+        s.farPlane = farPlane;
+        s.ambientLight = ambientLight;
+        s.lightPosition = lightPosition.clone();
+        s.lightColor = lightColor;
+        s.lightIntensity = lightIntensity;
+        s.updateLighting(additionalLights);
+        renderState.set(s);
+        requestRender();
+    }
 
-        // ========== 合成最终颜色 ==========
-        double intensity = Math.min(1.2, ambient + diffuse + specular) * lightIntensity;
-
-        int r = (int) Math.min(255, poly.color.getRed() * intensity + ambientLight.getRed() * 0.1);
-        int g = (int) Math.min(255, poly.color.getGreen() * intensity + ambientLight.getGreen() * 0.1);
-        int b = (int) Math.min(255, poly.color.getBlue() * intensity + ambientLight.getBlue() * 0.1);
-
-        // 添加着色模式特有的色调差异
-        if (shadingMode == ShadingMode.FLAT) {
-            // Flat模式略微偏暗偏灰
-            r = (int) (r * 0.9);
-            g = (int) (g * 0.9);
-            b = (int) (b * 0.9);
-        } else if (shadingMode == ShadingMode.GOURAUD) {
-            // Gouraud略微偏暖
-            r = Math.min(255, (int) (r * 1.05));
+    /**
+     * 请求渲染新的一帧（任何线程都可调用）
+     * 场景版本号加1并唤醒渲染线程
+     */
+    public void requestRender() {
+        sceneVersion.incrementAndGet();
+        Thread thread = renderThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
         }
-        // Phong保持原样
-
-        return new Color(
-                Math.max(0, Math.min(255, r)),
-                Math.max(0, Math.min(255, g)),
-                Math.max(0, Math.min(255, b)));
     }
 
     /**
@@ -467,18 +343,43 @@ public class Scene3DPanel extends JPanel implements MouseListener, MouseMotionLi
         y += 18;
         g.drawString("着色: " + shadingMode, 10, y);
         y += 18;
-        g.drawString("机器人: " + robots.size() + "个", 10, y);
+        g.drawString("阴影: " + shadowMode, 10, y);
+        y += 18;
+        g.drawString("抗锯齿: " + antiAliasMode, 10, y);
         y += 18;
+        g.drawString("机器人: " + renderer.getRobotCount() + "个", 10, y);
+        y += 18;
+        RobotCrowd currentCrowd = renderer.getCrowd();
+        if (currentCrowd != null) {
+            g.drawString("机器人群: " + currentCrowd.size() + "个", 10, y);
+            y += 18;
+        }
+        Robot selected = selectedRobot;
+        int selectedIndex = selected != null ? renderer.getRobots().indexOf(selected) : -1;
+        if (selectedIndex >= 0) {
+            g.drawString("选中: 机器人 #" + (selectedIndex + 1), 10, y);
+            y += 18;
+        }
         g.drawString(String.format("相机: (%.1f, %.1f, %.1f)", cameraX, cameraY, cameraZ), 10, y);
         y += 18;
         g.drawString("交互: " + interactionMode, 10, y);
+        y += 18;
+        g.drawString(String.format("帧时间: %.1f ms", frameMillis), 10, y);
+        if (!additionalLights.isEmpty()) {
+            y += 18;
+            g.drawString("光源: " + (additionalLights.size() + 1) + "个", 10, y);
+        }
+        if (hsrMode == HSRMode.ZBUFFER || hsrMode == HSRMode.BACKFACE) {
+            y += 18;
+            g.drawString("遮挡剔除: " + renderer.getOccludedCount() + "个", 10, y);
+        }
     }
 
     // ==================== 公共方法 ====================
 
     public void setProjectionMode(ProjectionMode mode) {
         this.projectionMode = mode;
-        repaint();
+        publishState();
     }
 
     public ProjectionMode getProjectionMode() {
@@ -487,35 +388,68 @@ public class Scene3DPanel extends JPanel implements MouseListener, MouseMotionLi
 
     public void setHiddenSurfaceMode(HSRMode mode) {
         this.hsrMode = mode;
-        repaint();
+        publishState();
     }
 
     public void setShadingMode(ShadingMode mode) {
         this.shadingMode = mode;
-        repaint();
+        publishState();
     }
 
     public ShadingMode getShadingMode() {
         return shadingMode;
     }
 
+    public void setShadowMode(ShadowMode mode) {
+        this.shadowMode = mode;
+        publishState();
+    }
+
+    public ShadowMode getShadowMode() {
+        return shadowMode;
+    }
+
+    public void setAntiAliasMode(AntiAliasMode mode) {
+        this.antiAliasMode = mode;
+        publishState();
+    }
+
+    public AntiAliasMode getAntiAliasMode() {
+        return antiAliasMode;
+    }
+
+    /**
+     * 获取当前操作的机器人：选中的机器人，没有选中时是第一个
+     */
     public Robot getRobot() {
+        List<Robot> robots = renderer.getRobots();
+        Robot selected = selectedRobot;
+        if (selected != null && robots.contains(selected)) {
+            return selected;
+        }
         return robots.isEmpty() ? null : robots.get(0);
     }
 
     public int getRobotCount() {
-        return robots.size();
+        return renderer.getRobotCount();
     }
 
     public Stage getStage() {
-        return stage;
+        return renderer.getStage();
+    }
+
+    /**
+     * 离屏渲染器（持有与面板相同的场景）
+     */
+    public SceneRenderer getRenderer() {
+        return renderer;
     }
 
     /**
      * 添加机器人到场景
      */
     public void addRobot(Robot robot) {
-        robots.add(robot);
+        renderer.addRobot(robot);
     }
 
     public void addRobot() {
@@ -525,7 +459,7 @@ public class Scene3DPanel extends JPanel implements MouseListener, MouseMotionLi
     public void addRobot(Color color) {
         Robot newRobot = new Robot();
         // 偏移位置避免重叠
-        double offset = robots.size() * 2.5;
+        double offset = renderer.getRobotCount() * 2.5;
         newRobot.setPosition(offset - 2.5, 0, 0);
 
         // 应用自定义颜色
@@ -534,52 +468,91 @@ public class Scene3DPanel extends JPanel implements MouseListener, MouseMotionLi
             newRobot.setLimbColor(color.darker());
         }
 
-        robots.add(newRobot);
-        repaint();
+        addRobot(newRobot);
     }
 
     public void removeLastRobot() {
-        if (robots.size() > 1) {
-            robots.remove(robots.size() - 1);
-            repaint();
+        int count = renderer.getRobotCount();
+        if (count > 1) {
+            renderer.removeRobot(count - 1);
         }
     }
 
     public void clearAllRobots() {
-        robots.clear();
-        repaint();
+        renderer.clearRobots();
+        selectedRobot = null;
+        setCrowd(null);
+    }
+
+    /**
+     * 设置机器人群（null表示移除）
+     * 旧的机器人群会停止行走
+     */
+    public void setCrowd(RobotCrowd newCrowd) {
+        renderer.setCrowd(newCrowd);
+    }
+
+    public RobotCrowd getCrowd() {
+        return renderer.getCrowd();
     }
 
     public void setInteractionMode(String mode) {
         this.interactionMode = mode;
+        repaint(); // 只更新信息显示，无需重新渲染
     }
 
     public void setAmbientLight(Color color) {
         this.ambientLight = color;
-        repaint();
+        publishState();
     }
 
     public void setLightPosition(double x, double y, double z) {
         this.lightPosition = new double[] { x, y, z };
-        repaint();
+        publishState();
     }
 
     public void setLightIntensity(double intensity) {
         this.lightIntensity = intensity;
-        repaint();
+        publishState();
+    }
+
+    /**
+     * 主光源之外的光源（副本）
+     */
+    public List<Light> getAdditionalLights() {
+        return new ArrayList<>(additionalLights);
+    }
+
+    /**
+     * 替换主光源之外的全部光源
+     */
+    public void setAdditionalLights(List<Light> lights) {
+        additionalLights.clear();
+        additionalLights.addAll(lights);
+        publishState();
+    }
+
+    public void addLight(Light light) {
+        additionalLights.add(light);
+        publishState();
+    }
+
+    public void removeLight(int index) {
+        additionalLights.remove(index);
+        publishState();
     }
 
     public void setCameraPosition(double x, double y, double z) {
         this.cameraX = x;
         this.cameraY = y;
         this.cameraZ = z;
-        repaint();
+        publishState();
     }
 
     public void setCameraRotation(double rotX, double rotY) {
         this.cameraRotX = rotX;
         this.cameraRotY = rotY;
-        repaint();
+        publishState();
     }
 
     // ==================== 鼠标事件处理 ====================
@@ -623,9 +596,10 @@ public class Scene3DPanel extends JPanel implements MouseListener, MouseMotionLi
                     cameraRotX = Math.max(-89, Math.min(89, cameraRotX));
                     break;
                 case "TRANSLATE":
-                    // 平移第一个机器人
-                    if (!robots.isEmpty()) {
-                        robots.get(0).translate(dx * 0.02, -dy * 0.02, 0);
+                    // 平移当前机器人（选中的，或第一个）
+                    Robot target = getRobot();
+                    if (target != null) {
+                        target.translate(dx * 0.02, -dy * 0.02, 0);
                     }
                     break;
                 case "SCALE":
@@ -647,7 +621,7 @@ public class Scene3DPanel extends JPanel implements MouseListener, MouseMotionLi
 
         lastMouseX = e.getX();
         lastMouseY = e.getY();
-        repaint();
+        publishState();
     }
 
     /**
@@ -657,11 +631,18 @@ public class Scene3DPanel extends JPanel implements MouseListener, MouseMotionLi
     public void mouseWheelMoved(MouseWheelEvent e) {
         cameraZ += e.getWheelRotation() * 0.5;
         cameraZ = Math.max(2, Math.min(50, cameraZ));
-        repaint();
+        publishState();
     }
 
+    /**
+     * 鼠标点击处理
+     * SELECT模式下左键点击拾取机器人（由渲染线程用BVH求交）
+     */
     @Override
     public void mouseClicked(MouseEvent e) {
+        if ("SELECT".equals(interactionMode) && SwingUtilities.isLeftMouseButton(e)) {
+            renderer.requestPick(e.getX(), e.getY());
+        }
     }
 
     @Override
@@ -0,0 +1,576 @@
+package com.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ====================================================================
+ * SceneNode.java - 场景图节点
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 层次建模的基本单元。每个节点有一个局部变换（相对父节点）和一个可选的网格，
+ * 子节点跟随父节点运动。机器人的层次是：躯干 → 头/左右臂/左右腿。
+ *
+ * 【局部变换】
+ * 局部矩阵固定按下面的顺序组合（右乘，最右边的先作用于顶点）：
+ * L = T(pivot) × Ry × Rx × Rz × T(offset)
+ * - pivot:  关节在父节点中的位置
+ * - R:      关节旋转（度）
+ * - offset: 部件中心相对关节的偏移
+ * 根节点把世界位置放在offset里，就得到 W = Ry × T(pos)。
+ *
+ * 【缓存与脏标记】
+ * - 局部矩阵只在关节参数变化时重算（localDirty）
+ * - 世界矩阵 = 父世界矩阵 × 局部矩阵，只在自己或祖先变化时重算
+ * - 世界空间顶点只在世界矩阵变化后、下一次绘制时重算
+ * - 祖先节点记一个childDirty标记，更新时只沿着有脏后代的分支往下走
+ *
+ * 【包围球】
+ * 每个节点有两个世界空间包围球：自己网格的，以及整棵子树的。
+ * 绘制时先用子树包围球做视锥剔除，整棵子树不可见就全部跳过；
+ * 再用自己的包围球剔除单个部件。被剔除的部件连顶点都不变换。
+ * 修改一个关节只会让这个节点及其子树变脏，姿态不变的部件每帧
+ * 直接复用上一帧的顶点，每帧的开销只与真正动了的部件成正比。
+ *
+ * 【细节层次】
+ * 节点也可以挂一条LODMesh网格链（setLOD），绘制时按网格包围球投影到屏幕的大小
+ * 选一级（带滞后），级别变化时只让世界空间顶点缓存失效。
+ * 包围球取所有级别的并集，切换级别不影响剔除和父节点的包围球。
+ *
+ * 【线程】
+ * 节点不是线程安全的，只应由渲染线程访问（Robot在绘制前把姿态同步进来）。
+ *
+ * @author Computer Graphics Course
+ */
+public class SceneNode {
+
+    /** 节点名称（调试用） */
+    public final String name;
+
+    /** 父节点（根节点为null） */
+    private SceneNode parent;
+
+    /** 子节点 */
+    private final List<SceneNode> children = new ArrayList<>();
+
+    // ==================== 局部变换参数 ====================
+
+    private double pivotX, pivotY, pivotZ;
+    private double rotX, rotY, rotZ;
+    private double offsetX, offsetY, offsetZ;
+
+    // ==================== 缓存 ====================
+
+    /** 局部矩阵和世界矩阵（扁平） */
+    private final double[] localMatrix = Matrix4.setIdentity(new double[16]);
+    private final double[] worldMatrix = Matrix4.setIdentity(new double[16]);
+
+    /** 局部参数变了，局部矩阵需要重算 */
+    private boolean localDirty = true;
+
+    /** 世界矩阵需要重算（自己或某个祖先变了） */
+    private boolean worldDirty = true;
+
+    /** 某个后代节点是脏的（自己可能是干净的） */
+    private boolean childDirty = false;
+
+    /** 世界矩阵变了，世界空间顶点需要重算 */
+    private boolean geometryDirty = true;
+
+    /** 网格和调色板（可为null，表示纯变换节点） */
+    private Mesh mesh;
+    private int[] palette;
+
+    /** 细节层次网格链（可为null）及当前级别；mesh总是当前级别的网格 */
+    private LODMesh lod;
+    private int lodLevel;
+
+    /** 世界空间顶点缓存 */
+    private float[] worldX, worldY, worldZ;
+
+    /** 自己网格的世界包围球（半径<0表示没有网格） */
+    private double meshBoundsX, meshBoundsY, meshBoundsZ, meshBoundsRadius = -1;
+
+    /** 整棵子树的世界包围球（半径<0表示子树中没有网格） */
+    private double boundsX, boundsY, boundsZ, boundsRadius = -1;
+
+    // ==================== 构造函数 ====================
+
+    public SceneNode(String name) {
+        this.name = name;
+    }
+
+    public SceneNode(String name, Mesh mesh, int[] palette) {
+        this.name = name;
+        setMesh(mesh, palette);
+    }
+
+    // ==================== 层次结构 ====================
+
+    /**
+     * 添加子节点
+     *
+     * @return 添加的子节点（便于链式构建）
+     */
+    public SceneNode addChild(SceneNode child) {
+        if (child.parent != null) {
+            child.parent.children.remove(child);
+        }
+        child.parent = this;
+        children.add(child);
+        // 结构变化很少发生，直接把整棵子树标脏
+        markSubtreeDirty();
+        markAncestors();
+        return child;
+    }
+
+    public SceneNode getParent() {
+        return parent;
+    }
+
+    public List<SceneNode> getChildren() {
+        return children;
+    }
+
+    // ==================== 局部变换设置 ====================
+
+    /**
+     * 设置关节位置（父节点坐标系）
+     */
+    public void setPivot(double x, double y, double z) {
+        if (x != pivotX || y != pivotY || z != pivotZ) {
+            pivotX = x;
+            pivotY = y;
+            pivotZ = z;
+            markLocalDirty();
+        }
+    }
+
+    /**
+     * 设置关节旋转（度），按 Ry × Rx × Rz 组合
+     */
+    public void setRotation(double x, double y, double z) {
+        if (x != rotX || y != rotY || z != rotZ) {
+            rotX = x;
+            rotY = y;
+            rotZ = z;
+            markLocalDirty();
+        }
+    }
+
+    /**
+     * 设置部件中心相对关节的偏移
+     */
+    public void setOffset(double x, double y, double z) {
+        if (x != offsetX || y != offsetY || z != offsetZ) {
+            offsetX = x;
+            offsetY = y;
+            offsetZ = z;
+            markLocalDirty();
+        }
+    }
+
+    /**
+     * 设置网格
+     * 网格顶点数变化时缓存会在下次绘制时重新分配
+     */
+    public void setMesh(Mesh mesh, int[] palette) {
+        lod = null;
+        replaceMesh(mesh, palette);
+    }
+
+    /**
+     * 设置细节层次网格链（从最粗一级开始，绘制时按投影大小切换）
+     */
+    public void setLOD(LODMesh lod, int[] palette) {
+        this.lod = lod;
+        lodLevel = 0;
+        replaceMesh(lod.levels[0], palette);
+    }
+
+    public LODMesh getLOD() {
+        return lod;
+    }
+
+    private void replaceMesh(Mesh mesh, int[] palette) {
+        if (mesh != this.mesh) {
+            this.mesh = mesh;
+            geometryDirty = true;
+            markWorldDirty(); // 包围球需要重算
+            markAncestors();
+        }
+        this.palette = palette;
+    }
+
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * 设置调色板（颜色变化不影响几何缓存）
+     */
+    public void setPalette(int[] palette) {
+        this.palette = palette;
+    }
+
+    // ==================== 脏标记 ====================
+
+    private void markLocalDirty() {
+        localDirty = true;
+        markWorldDirty();
+        markAncestors();
+    }
+
+    /**
+     * 通知祖先：下面有脏节点
+     */
+    private void markAncestors() {
+        for (SceneNode p = parent; p != null && !p.childDirty; p = p.parent) {
+            p.childDirty = true;
+        }
+    }
+
+    /**
+     * 把这个节点及其整个子树标记为需要重算世界矩阵
+     * 脏节点的子树一定也是脏的，所以遇到脏节点就可以停下
+     */
+    private void markWorldDirty() {
+        if (worldDirty) {
+            return;
+        }
+        worldDirty = true;
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).markWorldDirty();
+        }
+    }
+
+    private void markSubtreeDirty() {
+        worldDirty = true;
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).markSubtreeDirty();
+        }
+    }
+
+    // ==================== 更新与绘制 ====================
+
+    /**
+     * 更新这个节点及子树中所有变脏的世界矩阵
+     * 没有脏节点的子树直接跳过
+     */
+    public void updateWorld() {
+        if (worldDirty) {
+            recomputeWorld();
+        } else if (!childDirty) {
+            return;
+        }
+        childDirty = false;
+
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).updateWorld();
+        }
+        updateSubtreeBounds();
+    }
+
+    private void recomputeWorld() {
+        if (localDirty) {
+            double[] m = Matrix4.setIdentity(localMatrix);
+            Matrix4.translateInPlace(m, pivotX, pivotY, pivotZ);
+            Matrix4.rotateYInPlace(m, Math.toRadians(rotY));
+            Matrix4.rotateXInPlace(m, Math.toRadians(rotX));
+            Matrix4.rotateZInPlace(m, Math.toRadians(rotZ));
+            Matrix4.translateInPlace(m, offsetX, offsetY, offsetZ);
+            localDirty = false;
+        }
+
+        if (parent == null) {
+            System.arraycopy(localMatrix, 0, worldMatrix, 0, 16);
+        } else {
+            Matrix4.multiplyInto(parent.worldMatrix, localMatrix, worldMatrix);
+        }
+        worldDirty = false;
+        geometryDirty = true;
+
+        // 网格包围球变换到世界空间；半径乘以最大缩放（各列长度的最大值）
+        if (mesh != null && mesh.vertexCount > 0) {
+            double[] w = worldMatrix;
+            double bx = lod != null ? lod.boundsX : mesh.boundsX;
+            double by = lod != null ? lod.boundsY : mesh.boundsY;
+            double bz = lod != null ? lod.boundsZ : mesh.boundsZ;
+            meshBoundsX = w[0] * bx + w[1] * by + w[2] * bz + w[3];
+            meshBoundsY = w[4] * bx + w[5] * by + w[6] * bz + w[7];
+            meshBoundsZ = w[8] * bx + w[9] * by + w[10] * bz + w[11];
+            double sx = w[0] * w[0] + w[4] * w[4] + w[8] * w[8];
+            double sy = w[1] * w[1] + w[5] * w[5] + w[9] * w[9];
+            double sz = w[2] * w[2] + w[6] * w[6] + w[10] * w[10];
+            double r = lod != null ? lod.boundsRadius : mesh.boundsRadius;
+            meshBoundsRadius = r * Math.sqrt(Math.max(sx, Math.max(sy, sz)));
+        } else {
+            meshBoundsRadius = -1;
+        }
+    }
+
+    /**
+     * 子树包围球 = 自己的网格包围球与所有子节点子树包围球的并
+     */
+    private void updateSubtreeBounds() {
+        boundsX = meshBoundsX;
+        boundsY = meshBoundsY;
+        boundsZ = meshBoundsZ;
+        boundsRadius = meshBoundsRadius;
+        for (int i = 0; i < children.size(); i++) {
+            SceneNode c = children.get(i);
+            if (c.boundsRadius >= 0) {
+                mergeBounds(c.boundsX, c.boundsY, c.boundsZ, c.boundsRadius);
+            }
+        }
+    }
+
+    /**
+     * 把一个球并入子树包围球（取同时包含两个球的最小球）
+     */
+    private void mergeBounds(double x, double y, double z, double r) {
+        if (boundsRadius < 0) {
+            boundsX = x;
+            boundsY = y;
+            boundsZ = z;
+            boundsRadius = r;
+            return;
+        }
+        double dx = x - boundsX, dy = y - boundsY, dz = z - boundsZ;
+        double dist = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (dist + r <= boundsRadius) {
+            return; // 已经包含
+        }
+        if (dist + boundsRadius <= r) {
+            boundsX = x;
+            boundsY = y;
+            boundsZ = z;
+            boundsRadius = r;
+            return;
+        }
+        double newRadius = (dist + boundsRadius + r) / 2;
+        double t = (newRadius - boundsRadius) / dist;
+        boundsX += dx * t;
+        boundsY += dy * t;
+        boundsZ += dz * t;
+        boundsRadius = newRadius;
+    }
+
+    public double getBoundsX() {
+        return boundsX;
+    }
+
+    public double getBoundsY() {
+        return boundsY;
+    }
+
+    public double getBoundsZ() {
+        return boundsZ;
+    }
+
+    /**
+     * 子树包围球半径（调用前应先updateWorld；小于0表示子树中没有网格）
+     */
+    public double getBoundsRadius() {
+        return boundsRadius;
+    }
+
+    /**
+     * 子树中各网格包围球的外接长方体（调用前应先updateWorld）
+     * 比整棵子树的包围球紧得多：细长的肢体不会把盒子撑成一个大立方体
+     *
+     * @param out    输出数组
+     * @param offset 写入位置：(minX, minY, minZ, maxX, maxY, maxZ)；
+     *               子树中没有网格时最小值大于最大值
+     */
+    public void getBox(double[] out, int offset) {
+        out[offset] = out[offset + 1] = out[offset + 2] = Double.POSITIVE_INFINITY;
+        out[offset + 3] = out[offset + 4] = out[offset + 5] = Double.NEGATIVE_INFINITY;
+        expandBox(out, offset);
+    }
+
+    private void expandBox(double[] out, int o) {
+        double r = meshBoundsRadius;
+        if (r >= 0) {
+            out[o] = Math.min(out[o], meshBoundsX - r);
+            out[o + 1] = Math.min(out[o + 1], meshBoundsY - r);
+            out[o + 2] = Math.min(out[o + 2], meshBoundsZ - r);
+            out[o + 3] = Math.max(out[o + 3], meshBoundsX + r);
+            out[o + 4] = Math.max(out[o + 4], meshBoundsY + r);
+            out[o + 5] = Math.max(out[o + 5], meshBoundsZ + r);
+        }
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).expandBox(out, o);
+        }
+    }
+
+    /**
+     * 获取世界矩阵（调用前应先updateWorld）
+     */
+    public double[] getWorldMatrix() {
+        return worldMatrix;
+    }
+
+    /**
+     * 按投影大小选择细节级别，级别变了就换网格并让顶点缓存失效
+     */
+    private void selectLevel(Frustum frustum) {
+        double pixels = frustum.projectedRadius(meshBoundsX, meshBoundsY, meshBoundsZ, meshBoundsRadius);
+        int level = lod.select(lodLevel, pixels);
+        if (level != lodLevel) {
+            lodLevel = level;
+            mesh = lod.levels[level];
+            geometryDirty = true;
+        }
+    }
+
+    /**
+     * 保证世界空间顶点缓存是最新的
+     */
+    private void ensureGeometry() {
+        int n = mesh.vertexCount;
+        if (worldX == null || worldX.length < n) {
+            worldX = new float[n];
+            worldY = new float[n];
+            worldZ = new float[n];
+            geometryDirty = true;
+        }
+        if (geometryDirty) {
+            Matrix4.transformPoints(worldMatrix, mesh.x, mesh.y, mesh.z, n, worldX, worldY, worldZ);
+            geometryDirty = false;
+        }
+    }
+
+    /**
+     * 射线与子树中所有网格三角形求交（调用前应先updateWorld）
+     * 先用包围球排除不可能命中的子树，再对三角形做Möller-Trumbore求交
+     *
+     * @param ox   射线起点
+     * @param dx   射线方向
+     * @param maxT 最远距离
+     * @return 最近命中的t，没有命中返回Double.POSITIVE_INFINITY
+     */
+    public double raycast(double ox, double oy, double oz, double dx, double dy, double dz, double maxT) {
+        if (boundsRadius < 0 || !raySphere(ox, oy, oz, dx, dy, dz, boundsX, boundsY, boundsZ, boundsRadius, maxT)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        if (mesh != null && mesh.triangleCount > 0
+                && raySphere(ox, oy, oz, dx, dy, dz, meshBoundsX, meshBoundsY, meshBoundsZ, meshBoundsRadius, maxT)) {
+            ensureGeometry();
+            int[] idx = mesh.indices;
+            for (int t = 0; t < mesh.triangleCount; t++) {
+                int a = idx[t * 3], b = idx[t * 3 + 1], c = idx[t * 3 + 2];
+                double hit = rayTriangle(ox, oy, oz, dx, dy, dz,
+                        worldX[a], worldY[a], worldZ[a],
+                        worldX[b], worldY[b], worldZ[b],
+                        worldX[c], worldY[c], worldZ[c]);
+                if (hit < best && hit <= maxT) {
+                    best = hit;
+                }
+            }
+        }
+        for (int i = 0; i < children.size(); i++) {
+            double hit = children.get(i).raycast(ox, oy, oz, dx, dy, dz, Math.min(maxT, best));
+            if (hit < best) {
+                best = hit;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 射线是否可能在[0, maxT]内碰到球
+     */
+    private static boolean raySphere(double ox, double oy, double oz, double dx, double dy, double dz,
+            double cx, double cy, double cz, double r, double maxT) {
+        double lx = cx - ox, ly = cy - oy, lz = cz - oz;
+        double dd = dx * dx + dy * dy + dz * dz;
+        // 球心在射线上的投影参数，限制在[0, maxT]内
+        double t = Math.max(0, Math.min(maxT, (lx * dx + ly * dy + lz * dz) / dd));
+        double px = lx - dx * t, py = ly - dy * t, pz = lz - dz * t;
+        return px * px + py * py + pz * pz <= r * r;
+    }
+
+    /**
+     * Möller-Trumbore射线-三角形求交（双面）
+     *
+     * @return 命中的t，没有命中返回Double.POSITIVE_INFINITY
+     */
+    private static double rayTriangle(double ox, double oy, double oz, double dx, double dy, double dz,
+            double ax, double ay, double az, double bx, double by, double bz,
+            double cx, double cy, double cz) {
+        double e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+        double e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+        double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        double det = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(det) < 1e-12) {
+            return Double.POSITIVE_INFINITY; // 射线与三角形平行
+        }
+        double inv = 1.0 / det;
+        double tx = ox - ax, ty = oy - ay, tz = oz - az;
+        double u = (tx * px + ty * py + tz * pz) * inv;
+        if (u < 0 || u > 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double qx = ty * e1z - tz * e1y, qy = tz * e1x - tx * e1z, qz = tx * e1y - ty * e1x;
+        double v = (dx * qx + dy * qy + dz * qz) * inv;
+        if (v < 0 || u + v > 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double t = (e2x * qx + e2y * qy + e2z * qz) * inv;
+        return t >= 0 ? t : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * 把这个节点及子树的网格交给渲染器（不做剔除）
+     *
+     * @param sink 渲染器
+     */
+    public void draw(MeshSink sink) {
+        draw(sink, null);
+    }
+
+    /**
+     * 把这个节点及子树中可能可见的网格交给渲染器
+     * 世界空间顶点只在世界矩阵变化后、部件可见时重算一次
+     *
+     * @param sink    渲染器
+     * @param frustum 视锥体（null表示不剔除）
+     */
+    public void draw(MeshSink sink, Frustum frustum) {
+        draw(sink, frustum, null);
+    }
+
+    /**
+     * 同上，另外用层次深度缓冲剔除被完全挡住的子树和部件
+     *
+     * @param sink      渲染器
+     * @param frustum   视锥体（null表示不剔除）
+     * @param occlusion 遮挡测试用的深度金字塔（null表示不做遮挡剔除）
+     */
+    public void draw(MeshSink sink, Frustum frustum, DepthPyramid occlusion) {
+        if (frustum != null && (boundsRadius < 0
+                || !frustum.intersectsSphere(boundsX, boundsY, boundsZ, boundsRadius))) {
+            return; // 整棵子树不可见
+        }
+        if (occlusion != null && boundsRadius >= 0
+                && occlusion.isSphereOccluded(boundsX, boundsY, boundsZ, boundsRadius)) {
+            return; // 整棵子树被挡住
+        }
+        if (mesh != null && mesh.triangleCount > 0 && (frustum == null
+                || frustum.intersectsSphere(meshBoundsX, meshBoundsY, meshBoundsZ, meshBoundsRadius))
+                && (occlusion == null
+                || !occlusion.isSphereOccluded(meshBoundsX, meshBoundsY, meshBoundsZ, meshBoundsRadius))) {
+            if (lod != null && frustum != null) {
+                selectLevel(frustum);
+            }
+            ensureGeometry();
+            sink.drawMesh(this, mesh, worldX, worldY, worldZ, worldMatrix, palette);
+        }
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).draw(sink, frustum, occlusion);
+        }
+    }
+}
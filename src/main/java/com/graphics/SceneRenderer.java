@@ -0,0 +1,1519 @@
+package com.graphics;
+
+import com.graphics.Scene3DPanel.AntiAliasMode;
+import com.graphics.Scene3DPanel.HSRMode;
+import com.graphics.Scene3DPanel.ShadingMode;
+import com.graphics.Scene3DPanel.ShadowMode;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * ====================================================================
+ * SceneRenderer.java - 离屏场景渲染器
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 持有场景（机器人、机器人群、舞台），按RenderState快照（相机、光源、模式、
+ * 画面尺寸）把一帧画进BufferedImage或int[]。
+ * 不依赖任何Swing组件，java.awt.headless=true时也能使用：
+ * Scene3DPanel在渲染线程里用它画每一帧，也可以直接用来批量生成缩略图、
+ * 回归测试用的参考图像等。
+ *
+ * 【用法】
+ *   SceneRenderer renderer = new SceneRenderer();
+ *   renderer.addRobot(robot);
+ *   RenderState s = RenderState.defaults(320, 240); // 修改相机、光源后调用s.updateLighting(...)
+ *   BufferedImage image = renderer.render(s);
+ *
+ * 【3D渲染管线】
+ * 1. 模型变换(Model Transform) - 在Robot.java中完成
+ * 2. 视图变换(View Transform) - createViewMatrix()
+ * 3. 投影变换(Projection Transform) - createProjectionMatrix()
+ * 4. 裁剪(Clipping) - 齐次空间Sutherland-Hodgman裁剪（见Clipper）
+ * 5. 视口变换(Viewport Transform) - NDC到屏幕坐标
+ * 6. 光栅化(Rasterization) - 三角形分块后在多核上并行光栅化
+ *    （TileRenderer + Rasterizer，逐像素写入int[]帧缓冲）
+ *
+ * 【消隐算法】
+ * - Z-Buffer: 逐像素深度测试（float[]深度缓冲），无需排序
+ * - 扫描线: 每条扫描线上按活动边分段，每段求一次最近的面（见ScanlineRenderer）
+ * - 画家算法: 三角形按平均深度从远到近覆盖绘制；排序键每帧算一次，
+ *   利用上一帧的顺序做插入排序（见DepthSorter）
+ * - BSP树: 地板只建一次树，每帧从相机位置遍历就是正确的远近顺序（见BSPTree）；
+ *   机器人按包围盒落入树的区域，在遍历到该区域时按深度排序后插入
+ * - 背面剔除: 不绘制背向摄像机的面
+ * - 线框模式: 只显示边，不做消隐
+ * 
+ * 【遮挡剔除】（Z-Buffer和背面剔除模式，见DepthPyramid）
+ * 每帧分两遍提交：第一遍画地板和上一帧可见的物体，光栅化后从深度缓冲建立
+ * 层次深度金字塔；第二遍把其余物体（机器人、部件、机器人群实例）的包围盒
+ * 投影到屏幕和金字塔比较，被完全挡住的不进入顶点阶段。
+ * 帧末用完整的深度重新测试第一遍的物体，决定它们下一帧是否还当作遮挡物。
+ * 金字塔只由本帧真正画出来的像素构成，所以不会错误地剔除可见的物体。
+ * 
+ * 【着色模式】（同一个光照公式，见Lighting，区别在于计算频率）
+ * - Flat: 每个面在中心算一次光照，整个三角形一个颜色
+ * - Gouraud: 每个顶点算一次光照，光栅化时透视正确地插值颜色
+ * - Phong: 光栅化时插值法向量和位置，每个可见像素算一次光照
+ * 顶点法向量在网格创建时算好（Mesh.nx/ny/nz，棱角处不平滑），
+ * 绘制时只按世界矩阵旋转。三种模式的开销依次增加，左上角显示帧时间便于比较。
+ * 面法向量、面中心和Flat/Gouraud的光照结果按物体缓存（见ShadeCache），
+ * 静止的地板和没动的部件只在光照、材质或几何变化后才重算；
+ * 机器人群的实例共用一块临时顶点数组，每次都在动，所以不经过缓存。
+ * 
+ * 【多光源】（见Light、LightClusters）
+ * 主光源是lightPosition处不衰减的点光源，另外可以添加任意数量的
+ * 点光源、聚光灯和方向光（舞台灯）。有作用半径的光源每帧先分配到
+ * 屏幕方块 × 深度层的簇里，Phong逐像素着色只计算所在簇的光源；
+ * Flat/Gouraud逐面/逐顶点计算，按距离跳过作用半径外的光源。
+ * 
+ * 【阴影】（见ShadowMap）
+ * 主光源从自己的位置对准舞台画一张深度贴图，着色时比较表面点到光源的距离
+ * 判断它是否被挡住（硬阴影，或3×3 PCF柔化边缘）。
+ * 深度遍在顶点阶段之前提交，Phong模式下与主视图的顶点阶段并行光栅化；
+ * 光源、舞台、机器人和机器人群都没动时整个深度遍跳过，直接用上一次的贴图。
+ * 
+ * 【抗锯齿】（见AntiAliasing）
+ * 光栅化不做抗锯齿，整帧画完后再处理：
+ * - FXAA: 按亮度找边缘，沿边缘方向与相邻像素混合，开销与像素数成正比
+ * - 超采样: 按2×2或4×4倍分辨率渲染，再盒式滤波缩小
+ * 不使用Java2D的KEY_ANTIALIASING（逐多边形计算覆盖率，开销很大）。
+ *
+ * 【线程】
+ * render()同一时间只能由一个线程调用（各阶段内部的并行由ForkJoinPool完成）；
+ * 场景的增删改可以在任何线程进行，下一帧开始时生效。
+ * 场景变化时调用changeListener，Scene3DPanel借此唤醒渲染线程。
+ *
+ * @author Computer Graphics Course
+ */
+public class SceneRenderer {
+
+    // ==================== 场景对象 ====================
+
+    /** 机器人模型列表（支持多个，渲染线程并发遍历） */
+    private final List<Robot> robots = new CopyOnWriteArrayList<>();
+
+    /** 机器人群（实例化渲染，可为null） */
+    private volatile RobotCrowd crowd;
+
+    /** 舞台场景（地板） */
+    private final Stage stage;
+
+    /** 场景变化时的回调（可为null） */
+    private volatile Runnable changeListener;
+
+    /** 拾取完成时的回调（参数是命中的机器人，没有命中时为null） */
+    private volatile Consumer<Robot> pickListener;
+
+    // ==================== 帧缓冲与各阶段（仅渲染线程使用） ====================
+
+    /** 各阶段并行使用的线程池 */
+    private final ForkJoinPool pool;
+
+    /** 软件光栅化器（持有深度缓冲区） */
+    private final Rasterizer rasterizer = new Rasterizer();
+
+    /** 分块并行光栅化 */
+    private final TileRenderer tileRenderer;
+
+    /** 后处理抗锯齿 */
+    private final AntiAliasing antiAliasing;
+
+    /** 抗锯齿前的帧（FXAA的输入，或超采样的高分辨率帧） */
+    private BufferedImage aliasedFrame;
+
+    /** 扫描线消隐引擎（HSRMode.SCANLINE） */
+    private final ScanlineRenderer scanlineRenderer;
+
+    /** 画家算法的深度排序（保留上一帧的顺序） */
+    private final DepthSorter depthSorter = new DepthSorter();
+
+    /** 画家算法的排序键（每个三角形一个，按需扩容） */
+    private float[] depthKeys = new float[256];
+
+    // ==================== BSP模式（仅渲染线程使用） ====================
+
+    /** 静态几何（地板）的BSP树，及建树时的地板网格（地板重建后重新建树） */
+    private BSPTree bspTree;
+    private Mesh bspSource;
+
+    /**
+     * BSP网格每个三角形在triangleBatch中的起始位置（多一个结尾哨兵）：
+     * 裁剪可能把一个三角形拆成几个，被剔除的三角形范围为空
+     */
+    private int[] bspStarts = new int[64];
+
+    /** renderMesh记录三角形起始位置的数组（null表示不记录） */
+    private int[] meshTriangleStarts;
+
+    /** 动态物体所在的BSP区域，及它在triangleBatch中的三角形范围 [start, end) */
+    private int[] dynamicRegion = new int[16], dynamicStart = new int[16], dynamicEnd = new int[16];
+    private int dynamicCount;
+
+    /** 本帧的绘制顺序（triangleBatch下标） */
+    private int[] bspOrder = new int[256];
+    private int bspOrderSize;
+
+    /** 同一区域内动态三角形的深度排序 */
+    private final DepthSorter regionSorter = new DepthSorter();
+    private int[] regionTriangles = new int[256];
+
+    /** BSP模式下绘制BVH查询通过的物体并记录其区域 */
+    private final IntConsumer drawSceneItemBSP = this::drawSceneItemBSP;
+
+    /** BSP遍历：静态三角形和区域内的动态三角形依次追加到绘制顺序 */
+    private final BSPTree.Visitor bspVisitor = new BSPTree.Visitor() {
+        @Override
+        public void visitTriangles(int first, int count) {
+            appendOrder(bspStarts[first], bspStarts[first + count]);
+        }
+
+        @Override
+        public void visitRegion(int region) {
+            appendRegion(region);
+        }
+    };
+
+    // ==================== 遮挡剔除（仅渲染线程使用） ====================
+
+    /** 层次深度缓冲 */
+    private final DepthPyramid depthPyramid = new DepthPyramid();
+
+    /** 上一帧可见的机器人（按BVH物体编号）和机器人群实例：本帧第一遍直接绘制 */
+    private boolean[] robotVisible = new boolean[0];
+    private boolean[] instanceVisible = new boolean[0];
+
+    /** instanceVisible对应的机器人群 */
+    private RobotCrowd visibilityCrowd;
+
+    /** 本帧视锥内的机器人（BVH物体编号） */
+    private int[] frameRobots = new int[64];
+    private int frameRobotCount;
+
+    /** 本帧第一遍绘制的机器人群实例 */
+    private int[] firstPassInstances = new int[256];
+    private int firstPassInstanceCount;
+
+    /** 本帧被遮挡剔除的物体数（机器人 + 机器人群实例，显示在信息栏） */
+    private int occludedThisFrame;
+    private volatile int occludedCount;
+
+    /** 遮挡剔除各阶段的回调（避免每帧创建lambda） */
+    private final IntConsumer collectFrameRobot = this::collectFrameRobot;
+    private final IntPredicate firstPassInstance = this::firstPassInstance;
+    private final IntPredicate secondPassInstance = this::secondPassInstance;
+
+    /** 顶点阶段输出的屏幕空间三角形（每帧复用） */
+    private final TriangleBatch triangleBatch = new TriangleBatch();
+
+    /** 本帧局部光源的簇列表（Phong逐像素着色用） */
+    private final LightClusters lightClusters = new LightClusters();
+
+    // ==================== 阴影（仅渲染线程使用） ====================
+
+    /** 主光源的阴影贴图 */
+    private final ShadowMap shadowMap;
+
+    /** 正在异步光栅化的深度遍（null表示没有或已完成） */
+    private ForkJoinTask<?> shadowTask;
+
+    /** 本帧的光照（开启阴影时是s.lighting带阴影贴图的副本） */
+    private Lighting frameLighting;
+
+    // ==================== 顶点阶段缓存（仅渲染线程使用，避免每帧分配） ====================
+
+    /** 扁平的视图矩阵、投影矩阵及其乘积 */
+    private final double[] viewFlat = new double[16];
+    private final double[] projFlat = new double[16];
+    private final double[] viewProjFlat = new double[16];
+
+    /** 本帧的视锥体（物体级剔除） */
+    private final Frustum frustum = new Frustum();
+
+    // ==================== 场景BVH（仅渲染线程使用） ====================
+
+    /**
+     * 场景物体的层次包围盒：物体编号 [0, 机器人数) 是机器人，
+     * 之后是地板格子（地板仍整体绘制，格子只参与拾取等查询）
+     */
+    private final BVH sceneBVH = new BVH();
+
+    /** 建树时的机器人快照（物体编号 → 机器人）及反向索引 */
+    private final List<Robot> bvhRobots = new ArrayList<>();
+    private final Map<Robot, Integer> bvhIndex = new IdentityHashMap<>();
+
+    /** 建树时的地板格子快照 */
+    private List<Polygon3D> bvhTiles = new ArrayList<>();
+
+    /** 建树用的包围盒数组 */
+    private double[] bvhBounds = new double[0];
+
+    /** 物体增删或舞台重建后需要重新建树 */
+    private final AtomicBoolean bvhStale = new AtomicBoolean(true);
+
+    /** 自上一帧以来移动过的机器人（只需重新拟合） */
+    private final Set<Robot> movedRobots = ConcurrentHashMap.newKeySet();
+
+    /** 单个物体包围盒的临时数组 */
+    private final double[] itemBounds = new double[6];
+
+    /** 视锥查询的回调（避免每帧创建lambda） */
+    private final IntConsumer drawSceneItem = this::drawSceneItem;
+
+    // ==================== 拾取 ====================
+
+    /** 等待渲染线程处理的点击位置（SELECT模式） */
+    private final AtomicReference<Point> pendingPick = new AtomicReference<>();
+
+    /** 拾取用的逆矩阵和反投影结果 */
+    private final double[] inverseViewProj = new double[16];
+    private final double[] unprojectScratch = new double[4];
+    private final double[] pickT = new double[1];
+
+    /** 当前网格各顶点的裁剪坐标（按需扩容） */
+    private float[] clipX = new float[64], clipY = new float[64], clipZ = new float[64], clipW = new float[64];
+
+    /** 当前网格各顶点的区域编码（0表示在视见体内） */
+    private int[] outcodes = new int[64];
+
+    /** 当前网格各顶点的屏幕坐标和深度（只对编码为0的顶点有效） */
+    private double[] subX = new double[64], subY = new double[64], depth = new double[64];
+
+    /** 当前网格各法向量的世界空间方向（Gouraud/Phong使用，按需扩容） */
+    private float[] normalX = new float[64], normalY = new float[64], normalZ = new float[64];
+
+    /** 齐次空间裁剪器（每个顶点只有x, y, z, w） */
+    private final Clipper clipper = new Clipper(4);
+
+    /** Gouraud/Phong每个顶点需要插值的属性个数（颜色用前3个，法向量+位置用6个） */
+    private static final int SHADED_ATTRIBUTES = 6;
+
+    /** 带属性的裁剪器：x, y, z, w之后是SHADED_ATTRIBUTES个属性，裁剪时一起插值 */
+    private final Clipper attributeClipper = new Clipper(4 + SHADED_ATTRIBUTES);
+
+    /** 裁剪后多边形的屏幕坐标和深度 */
+    private final double[] clippedX = new double[Clipper.MAX_VERTICES];
+    private final double[] clippedY = new double[Clipper.MAX_VERTICES];
+    private final double[] clippedZ = new double[Clipper.MAX_VERTICES];
+
+    /** 裁剪后多边形各顶点的1/w和属性（Gouraud/Phong） */
+    private final double[] clippedQ = new double[Clipper.MAX_VERTICES];
+    private final double[] clippedAttr = new double[Clipper.MAX_VERTICES * SHADED_ATTRIBUTES];
+
+    /** 当前三角形三个角的属性（裁剪前） */
+    private final double[] cornerAttr = new double[3 * SHADED_ATTRIBUTES];
+
+    /** 当前三角形三个角的Gouraud光照颜色 */
+    private final int[] cornerColors = new int[3];
+
+    /**
+     * 面几何与光照缓存，按提交网格的物体区分：场景图节点提交时是节点，
+     * 顶点就是网格自身坐标的（地板、静态几何）是网格；物体增删或舞台重建时清空
+     */
+    private final Map<Object, ShadeCache> shadeCaches = new IdentityHashMap<>();
+
+    /**
+     * 其余网格使用的缓存：顶点在调用方的临时数组里（例如机器人群的各个实例共用一块），
+     * 每次绘制内容都不同，所以不查找也不比较，每次直接作废（只借用它的数组）
+     */
+    private final ShadeCache transientShadeCache = new ShadeCache();
+
+    /** 线框模式下一个多边形的整数屏幕坐标 */
+    private final int[] screenX = new int[Clipper.MAX_VERTICES], screenY = new int[Clipper.MAX_VERTICES];
+
+    /** 线框画笔（线宽等于超采样倍数，倍数变了才重新创建） */
+    private BasicStroke wireframeStroke = new BasicStroke(1);
+
+    /** 本帧的状态快照和线框画笔（renderFrame期间有效，供meshSink使用） */
+    private RenderState frameState;
+    private Graphics2D frameGraphics;
+
+    /**
+     * 把场景对象提交的网格送进顶点阶段
+     * 缓存键：给出owner时用owner；顶点就是网格自身的坐标时用网格；否则不缓存
+     */
+    private final MeshSink meshSink = new MeshSink() {
+        @Override
+        public void drawMesh(Mesh mesh, float[] wx, float[] wy, float[] wz, double[] world, int[] palette) {
+            drawMesh(wx == mesh.x ? mesh : null, mesh, wx, wy, wz, world, palette);
+        }
+
+        @Override
+        public void drawMesh(Object owner, Mesh mesh, float[] wx, float[] wy, float[] wz,
+                double[] world, int[] palette) {
+            renderMesh(frameGraphics, frameState, mesh, wx, wy, wz, world,
+                    palette != null ? palette : mesh.palette, frameState.width, frameState.height, owner);
+        }
+    };
+
+    // ==================== 构造函数 ====================
+
+    public SceneRenderer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool 各阶段（光栅化、扫描线、阴影、抗锯齿）并行使用的线程池；
+     *             多个渲染器同时工作时各给一个小池子，避免都挤在公共池上
+     */
+    public SceneRenderer(ForkJoinPool pool) {
+        this.pool = pool;
+        tileRenderer = new TileRenderer(rasterizer, pool);
+        antiAliasing = new AntiAliasing(pool);
+        scanlineRenderer = new ScanlineRenderer(pool);
+        shadowMap = new ShadowMap(pool);
+        stage = new Stage(); // 舞台地板
+        stage.setChangeListener(() -> {
+            bvhStale.set(true); // 地板格子变了
+            changed();
+        });
+    }
+
+    // ==================== 场景 ====================
+
+    /**
+     * 设置场景变化时的回调（任何线程都可能调用它，null表示不通知）
+     */
+    public void setChangeListener(Runnable listener) {
+        this.changeListener = listener;
+    }
+
+    /**
+     * 设置拾取完成时的回调（在渲染线程调用）
+     */
+    public void setPickListener(Consumer<Robot> listener) {
+        this.pickListener = listener;
+    }
+
+    private void changed() {
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * 添加机器人到场景
+     */
+    public void addRobot(Robot robot) {
+        // 机器人移动后只需重新拟合BVH中它所在的分支
+        robot.setChangeListener(() -> {
+            movedRobots.add(robot);
+            changed();
+        });
+        robots.add(robot);
+        bvhStale.set(true);
+        changed();
+    }
+
+    /**
+     * 从场景移除第index个机器人
+     *
+     * @return 被移除的机器人
+     */
+    public Robot removeRobot(int index) {
+        Robot robot = robots.remove(index);
+        robot.setChangeListener(null);
+        bvhStale.set(true);
+        changed();
+        return robot;
+    }
+
+    /**
+     * 移除全部机器人（不影响机器人群）
+     */
+    public void clearRobots() {
+        for (Robot robot : robots) {
+            robot.setChangeListener(null);
+        }
+        robots.clear();
+        bvhStale.set(true);
+        changed();
+    }
+
+    /**
+     * 场景中的机器人（只读视图）
+     */
+    public List<Robot> getRobots() {
+        return Collections.unmodifiableList(robots);
+    }
+
+    public int getRobotCount() {
+        return robots.size();
+    }
+
+    /**
+     * 设置机器人群（null表示移除）
+     * 旧的机器人群会停止行走
+     */
+    public void setCrowd(RobotCrowd newCrowd) {
+        RobotCrowd old = crowd;
+        if (old != null) {
+            old.stopWalking();
+            old.setChangeListener(null);
+        }
+        if (newCrowd != null) {
+            newCrowd.setChangeListener(this::changed);
+        }
+        crowd = newCrowd;
+        changed();
+    }
+
+    public RobotCrowd getCrowd() {
+        return crowd;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * 请求在下一帧拾取像素(x, y)处的物体（屏幕分辨率坐标）
+     * 结果通过pickListener报告
+     */
+    public void requestPick(int x, int y) {
+        pendingPick.set(new Point(x, y));
+        changed();
+    }
+
+    /**
+     * 最近一帧被遮挡剔除的物体数（机器人 + 机器人群实例）
+     */
+    public int getOccludedCount() {
+        return occludedCount;
+    }
+
+    // ==================== 渲染 ====================
+
+    /**
+     * 渲染一帧到新的图像
+     *
+     * @param s 状态快照（s.width × s.height）
+     * @return TYPE_INT_RGB图像
+     */
+    public BufferedImage render(RenderState s) {
+        BufferedImage image = new BufferedImage(s.width, s.height, BufferedImage.TYPE_INT_RGB);
+        render(s, image);
+        return image;
+    }
+
+    /**
+     * 渲染一帧，返回像素数组
+     *
+     * @param s 状态快照
+     * @return 按行存放的0xRRGGBB像素（长度s.width × s.height）
+     */
+    public int[] renderPixels(RenderState s) {
+        return ((DataBufferInt) render(s).getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * 按抗锯齿模式渲染一帧
+     * FXAA和超采样先画进aliasedFrame，再把处理结果写进target
+     *
+     * @param s      本帧的状态快照
+     * @param target 输出图像（TYPE_INT_RGB，s.width × s.height）
+     */
+    public void render(RenderState s, BufferedImage target) {
+        AntiAliasMode mode = s.antiAliasMode;
+        if (mode == AntiAliasMode.OFF) {
+            renderFrame(s, target);
+            return;
+        }
+        int factor = mode.supersample;
+        RenderState frame = factor > 1 ? s.supersampled(factor) : s;
+        if (aliasedFrame == null || aliasedFrame.getWidth() != frame.width
+                || aliasedFrame.getHeight() != frame.height) {
+            aliasedFrame = new BufferedImage(frame.width, frame.height, BufferedImage.TYPE_INT_RGB);
+        }
+        renderFrame(frame, aliasedFrame);
+
+        int[] src = ((DataBufferInt) aliasedFrame.getRaster().getDataBuffer()).getData();
+        int[] dst = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        if (factor > 1) {
+            antiAliasing.downsample(src, dst, s.width, s.height, factor);
+        } else {
+            antiAliasing.fxaa(src, dst, s.width, s.height);
+        }
+    }
+
+    /**
+     * 渲染一帧（渲染线程）
+     *
+     * @param s      本帧的状态快照
+     * @param target 要绘制的图像（TYPE_INT_RGB）
+     */
+    private void renderFrame(RenderState s, BufferedImage target) {
+        int width = s.width;
+        int height = s.height;
+
+        // 像素数组直接交给光栅化器（扫描线消隐不需要深度缓冲，不绑定）
+        int[] pixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        if (s.hsrMode != HSRMode.SCANLINE) {
+            rasterizer.bind(pixels, width, height);
+        }
+
+        triangleBatch.clear();
+        if (s.hsrMode == HSRMode.WIREFRAME) {
+            // 线框直接用Graphics2D描边，先清空缓冲区
+            rasterizer.clear(s.background);
+        }
+        Graphics2D fbg = target.createGraphics();
+
+        // ========== 3D渲染管线 ==========
+
+        // Step 1: 创建视图矩阵（相机变换）
+        double[][] viewMatrix = createViewMatrix(s);
+
+        // Step 2: 创建投影矩阵
+        double[][] projMatrix = createProjectionMatrix(s, width, height);
+
+        // 合并为一个扁平矩阵：每个顶点只需一次矩阵乘法
+        Matrix4.multiplyInto(Matrix4.toFlat(projMatrix, projFlat), Matrix4.toFlat(viewMatrix, viewFlat),
+                viewProjFlat);
+
+        // Step 3: 渲染舞台和机器人
+        // 遮挡关系由深度缓冲逐像素决定，与提交顺序无关（BSP模式另外求绘制顺序）
+        // 有深度缓冲的模式分两遍提交，第二遍做遮挡剔除（光栅化也在其中完成）
+        boolean occlusion = s.hsrMode == HSRMode.ZBUFFER || s.hsrMode == HSRMode.BACKFACE;
+        frameState = s;
+        frameGraphics = fbg;
+        frustum.set(viewProjFlat, height);
+        updateSceneBVH();
+        RobotCrowd frameCrowd = crowd;
+        if (frameCrowd != null) {
+            frameCrowd.sync(); // 本帧各遍（阴影、两遍遮挡剔除）都画同一份实例快照
+        }
+
+        // 阴影贴图的深度遍（需要本帧的机器人快照），然后局部光源分配到簇（光栅化前建好，之后只读）
+        updateShadowMap(s, frameCrowd);
+        lightClusters.build(frameLighting, projFlat, viewFlat, width, height, s.nearPlane, s.farPlane);
+        triangleBatch.setLights(lightClusters);
+
+        Point pick = pendingPick.getAndSet(null);
+        if (pick != null) {
+            pickAt(pick.x, pick.y, width / s.supersample, height / s.supersample);
+        }
+        if (s.hsrMode == HSRMode.BSP) {
+            drawSceneBSP(s, frameCrowd);
+        } else if (occlusion) {
+            drawSceneOccluded(s, frameCrowd);
+        } else {
+            Mesh floor = stage.getMesh();
+            meshSink.drawMesh(floor, floor.x, floor.y, floor.z, null, null);
+            // 机器人通过BVH做视锥剔除，看不见的不进入顶点阶段
+            sceneBVH.queryFrustum(frustum, drawSceneItem);
+            if (frameCrowd != null) {
+                frameCrowd.draw(meshSink, frustum);
+            }
+        }
+        frameGraphics = null;
+
+        // Step 4: 消隐 + 光栅化（采样阴影贴图前等深度遍完成）
+        awaitShadowMap();
+        if (s.hsrMode == HSRMode.SCANLINE) {
+            // 扫描线消隐：逐段求可见面，每个像素只写一次
+            scanlineRenderer.render(triangleBatch, pixels, width, height, s.background);
+        } else if (s.hsrMode == HSRMode.PAINTER) {
+            // 画家算法：从远到近排序后按顺序覆盖
+            tileRenderer.render(triangleBatch, s.background, sortBackToFront(triangleBatch));
+        } else if (s.hsrMode == HSRMode.BSP) {
+            // BSP遍历给出的顺序，同样不做深度测试
+            tileRenderer.render(triangleBatch, s.background, bspOrder);
+        }
+        // Z-Buffer/背面剔除已在drawSceneOccluded中分块并行光栅化，线框已直接描边
+
+        fbg.dispose();
+    }
+
+    /**
+     * 画家算法的绘制顺序：按平均深度从远到近
+     * 每个三角形的深度只计算一次（取负值，使远处的键更小、排在前面）
+     *
+     * @return 三角形下标的绘制顺序
+     */
+    private int[] sortBackToFront(TriangleBatch batch) {
+        int n = batch.size();
+        if (depthKeys.length < n) {
+            depthKeys = new float[Math.max(n, depthKeys.length * 2)];
+        }
+        for (int t = 0; t < n; t++) {
+            depthKeys[t] = -batch.averageDepth(t);
+        }
+        return depthSorter.sort(depthKeys, n);
+    }
+
+    // ==================== 阴影 ====================
+
+    /**
+     * 更新主光源的阴影贴图，并得到本帧的光照frameLighting
+     * 1. 光源视锥对准舞台（地板 + 其上CASTER_HEIGHT高的空间）
+     * 2. 先只记录投影物（网格和世界矩阵）；和上一次画贴图时完全一样就跳过深度遍
+     * 3. 否则把投影物变换到光源屏幕，交给线程池光栅化：
+     *    Phong在光栅化时才采样，深度遍与主视图的顶点阶段并行；
+     *    Flat/Gouraud在顶点阶段就要采样，这里直接等它完成
+     * 机器人不传视锥，避免光源视锥改动主视图的细节层次选择
+     *
+     * @param currentCrowd 本帧的机器人群（已经sync，null表示没有）
+     */
+    private void updateShadowMap(RenderState s, RobotCrowd currentCrowd) {
+        frameLighting = s.lighting;
+        if (s.shadowMode == ShadowMode.OFF || s.hsrMode == HSRMode.WIREFRAME) {
+            return;
+        }
+        double halfWidth = stage.getWidth() / 2, halfDepth = stage.getDepth() / 2;
+        double halfHeight = ShadowMap.CASTER_HEIGHT / 2;
+        double radius = Math.sqrt(halfWidth * halfWidth + halfDepth * halfDepth + halfHeight * halfHeight);
+        double[] light = s.lightPosition;
+        shadowMap.begin(light[0], light[1], light[2], 0, Stage.FLOOR_Y + halfHeight, 0, radius);
+
+        Mesh floor = stage.getMesh();
+        MeshSink recorder = shadowMap.recorder;
+        recorder.drawMesh(floor, floor.x, floor.y, floor.z, null, null);
+        for (int i = 0; i < bvhRobots.size(); i++) {
+            bvhRobots.get(i).draw(recorder, null);
+        }
+        shadowMap.recordCrowd(currentCrowd);
+
+        if (shadowMap.needsRedraw()) {
+            MeshSink caster = shadowMap.caster;
+            shadowMap.beginCasting();
+            caster.drawMesh(floor, floor.x, floor.y, floor.z, null, null);
+            for (int i = 0; i < bvhRobots.size(); i++) {
+                bvhRobots.get(i).draw(caster, null);
+            }
+            if (currentCrowd != null) {
+                currentCrowd.draw(caster, shadowMap.getFrustum());
+            }
+            shadowTask = shadowMap.rasterize(pool);
+            if (s.shadingMode != ShadingMode.PHONG) {
+                awaitShadowMap();
+            }
+        }
+        frameLighting = s.lighting.withShadow(shadowMap, s.shadowMode == ShadowMode.PCF);
+    }
+
+    /**
+     * 等待深度遍光栅化完成（主视图光栅化前调用）
+     */
+    private void awaitShadowMap() {
+        if (shadowTask != null) {
+            shadowTask.join();
+            shadowTask = null;
+        }
+    }
+
+    // ==================== BSP模式 ====================
+
+    /**
+     * BSP模式的场景提交：地板按BSP网格整体提交（记录每个三角形的批次范围），
+     * 机器人和机器人群提交后记录所在区域，最后遍历BSP树得到绘制顺序bspOrder
+     *
+     * @param currentCrowd 本帧的机器人群（已经sync，null表示没有）
+     */
+    private void drawSceneBSP(RenderState s, RobotCrowd currentCrowd) {
+        Mesh floor = stage.getMesh();
+        if (bspTree == null || bspSource != floor) {
+            bspTree = BSPTree.build(floor);
+            bspSource = floor;
+        }
+        BSPTree tree = bspTree;
+
+        // 静态几何
+        Mesh staticMesh = tree.mesh;
+        if (bspStarts.length < staticMesh.triangleCount + 1) {
+            bspStarts = new int[staticMesh.triangleCount + 1];
+        }
+        meshTriangleStarts = bspStarts;
+        meshSink.drawMesh(staticMesh, staticMesh.x, staticMesh.y, staticMesh.z, null, null);
+        meshTriangleStarts = null;
+
+        // 动态物体
+        dynamicCount = 0;
+        sceneBVH.queryFrustum(frustum, drawSceneItemBSP);
+        if (currentCrowd != null) {
+            int start = triangleBatch.size();
+            currentCrowd.draw(meshSink, frustum);
+            currentCrowd.getBounds(itemBounds);
+            addDynamic(tree, start);
+        }
+
+        // 从远到近遍历
+        if (bspOrder.length < triangleBatch.size()) {
+            bspOrder = new int[Math.max(triangleBatch.size(), bspOrder.length * 2)];
+        }
+        bspOrderSize = 0;
+        tree.traverse(s.cameraX, s.cameraY, s.cameraZ, bspVisitor);
+    }
+
+    /**
+     * BSP模式下绘制一个机器人，并按其包围盒记录所在区域
+     */
+    private void drawSceneItemBSP(int item) {
+        if (item < bvhRobots.size()) {
+            Robot robot = bvhRobots.get(item);
+            int start = triangleBatch.size();
+            robot.draw(meshSink, frustum);
+            robot.getBounds(itemBounds, 0);
+            addDynamic(bspTree, start);
+        }
+    }
+
+    /**
+     * 记录一个动态物体：区域由itemBounds决定，三角形范围是 [start, 当前批次大小)
+     */
+    private void addDynamic(BSPTree tree, int start) {
+        int end = triangleBatch.size();
+        if (end == start) {
+            return; // 全部被剔除
+        }
+        if (dynamicCount == dynamicRegion.length) {
+            int cap = dynamicCount * 2;
+            dynamicRegion = Arrays.copyOf(dynamicRegion, cap);
+            dynamicStart = Arrays.copyOf(dynamicStart, cap);
+            dynamicEnd = Arrays.copyOf(dynamicEnd, cap);
+        }
+        double[] b = itemBounds;
+        dynamicRegion[dynamicCount] = tree.locate(b[0], b[1], b[2], b[3], b[4], b[5]);
+        dynamicStart[dynamicCount] = start;
+        dynamicEnd[dynamicCount] = end;
+        dynamicCount++;
+    }
+
+    /**
+     * 把批次中 [from, to) 的三角形按原顺序追加到绘制顺序
+     */
+    private void appendOrder(int from, int to) {
+        for (int t = from; t < to; t++) {
+            bspOrder[bspOrderSize++] = t;
+        }
+    }
+
+    /**
+     * 把落在一个区域里的动态三角形按深度从远到近追加到绘制顺序
+     * （同一区域内的物体之间没有BSP平面分隔，只能排序）
+     */
+    private void appendRegion(int region) {
+        int n = 0;
+        for (int i = 0; i < dynamicCount; i++) {
+            if (dynamicRegion[i] != region) {
+                continue;
+            }
+            int count = dynamicEnd[i] - dynamicStart[i];
+            if (regionTriangles.length < n + count) {
+                regionTriangles = Arrays.copyOf(regionTriangles, Math.max(n + count, n * 2));
+            }
+            for (int t = dynamicStart[i]; t < dynamicEnd[i]; t++) {
+                regionTriangles[n++] = t;
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+        if (depthKeys.length < n) {
+            depthKeys = new float[Math.max(n, depthKeys.length * 2)];
+        }
+        for (int k = 0; k < n; k++) {
+            depthKeys[k] = -triangleBatch.averageDepth(regionTriangles[k]);
+        }
+        int[] order = regionSorter.sort(depthKeys, n);
+        for (int k = 0; k < n; k++) {
+            bspOrder[bspOrderSize++] = regionTriangles[order[k]];
+        }
+    }
+
+    /**
+     * 两遍提交并做遮挡剔除（Z-Buffer和背面剔除模式）
+     *
+     * 1. 第一遍：地板 + 上一帧可见的机器人和实例，光栅化
+     * 2. 用这时的深度缓冲建立金字塔
+     * 3. 第二遍：其余视锥内的物体先测包围盒，没被挡住的逐部件测试后绘制，
+     *    在已有画面上继续光栅化
+     * 4. 用完整的深度重新测试第一遍的物体，更新下一帧的可见性
+     *
+     * @param currentCrowd 本帧的机器人群（已经sync，null表示没有）
+     */
+    private void drawSceneOccluded(RenderState s, RobotCrowd currentCrowd) {
+        syncVisibility(currentCrowd);
+        occludedThisFrame = 0;
+
+        // ========== 1. 第一遍 ==========
+        Mesh floor = stage.getMesh();
+        meshSink.drawMesh(floor, floor.x, floor.y, floor.z, null, null);
+        frameRobotCount = 0;
+        sceneBVH.queryFrustum(frustum, collectFrameRobot);
+        for (int k = 0; k < frameRobotCount; k++) {
+            int item = frameRobots[k];
+            if (robotVisible[item]) {
+                bvhRobots.get(item).draw(meshSink, frustum);
+            }
+        }
+        firstPassInstanceCount = 0;
+        if (currentCrowd != null) {
+            currentCrowd.draw(meshSink, frustum, firstPassInstance);
+        }
+        awaitShadowMap();
+        tileRenderer.render(triangleBatch, s.background);
+
+        // ========== 2. 金字塔 ==========
+        float[] depth = rasterizer.getDepthBuffer();
+        depthPyramid.build(depth, s.width, s.height, viewProjFlat);
+
+        // ========== 3. 第二遍 ==========
+        triangleBatch.clear();
+        for (int k = 0; k < frameRobotCount; k++) {
+            int item = frameRobots[k];
+            if (robotVisible[item]) {
+                continue;
+            }
+            Robot robot = bvhRobots.get(item);
+            robot.update();
+            if (isRobotOccluded(robot)) {
+                occludedThisFrame++;
+            } else {
+                robotVisible[item] = true;
+                robot.draw(meshSink, frustum, depthPyramid);
+            }
+        }
+        if (currentCrowd != null) {
+            currentCrowd.draw(meshSink, frustum, secondPassInstance);
+        }
+        if (triangleBatch.size() > 0) {
+            tileRenderer.renderOver(triangleBatch);
+            depthPyramid.build(depth, s.width, s.height, viewProjFlat);
+        }
+
+        // ========== 4. 下一帧的可见性 ==========
+        for (int k = 0; k < frameRobotCount; k++) {
+            int item = frameRobots[k];
+            if (robotVisible[item] && isRobotOccluded(bvhRobots.get(item))) {
+                robotVisible[item] = false;
+            }
+        }
+        for (int k = 0; k < firstPassInstanceCount; k++) {
+            int i = firstPassInstances[k];
+            if (currentCrowd.isInstanceOccluded(i, depthPyramid)) {
+                instanceVisible[i] = false;
+            }
+        }
+        occludedCount = occludedThisFrame;
+    }
+
+    /**
+     * 让可见性数组与场景同步：新出现的机器人和实例先当作可见
+     */
+    private void syncVisibility(RobotCrowd currentCrowd) {
+        int robotCount = bvhRobots.size();
+        if (robotVisible.length < robotCount) {
+            int old = robotVisible.length;
+            robotVisible = Arrays.copyOf(robotVisible, Math.max(robotCount, old * 2));
+            Arrays.fill(robotVisible, old, robotVisible.length, true);
+        }
+        if (frameRobots.length < robotCount) {
+            frameRobots = new int[Math.max(robotCount, frameRobots.length * 2)];
+        }
+
+        int instanceCount = currentCrowd != null ? currentCrowd.size() : 0;
+        if (currentCrowd != visibilityCrowd) {
+            visibilityCrowd = currentCrowd;
+            Arrays.fill(instanceVisible, true);
+        }
+        if (instanceVisible.length < instanceCount) {
+            int old = instanceVisible.length;
+            instanceVisible = Arrays.copyOf(instanceVisible, Math.max(instanceCount, old * 2));
+            Arrays.fill(instanceVisible, old, instanceVisible.length, true);
+        }
+        if (firstPassInstances.length < instanceCount) {
+            firstPassInstances = new int[Math.max(instanceCount, firstPassInstances.length * 2)];
+        }
+    }
+
+    private boolean isRobotOccluded(Robot robot) {
+        robot.getBounds(itemBounds, 0);
+        return depthPyramid.isBoxOccluded(itemBounds[0], itemBounds[1], itemBounds[2],
+                itemBounds[3], itemBounds[4], itemBounds[5]);
+    }
+
+    /**
+     * 记录BVH视锥查询通过的机器人
+     */
+    private void collectFrameRobot(int item) {
+        if (item < bvhRobots.size()) {
+            frameRobots[frameRobotCount++] = item;
+        }
+    }
+
+    /**
+     * 第一遍：只画上一帧可见的实例
+     */
+    private boolean firstPassInstance(int i) {
+        if (i >= instanceVisible.length || !instanceVisible[i]) {
+            return false;
+        }
+        firstPassInstances[firstPassInstanceCount++] = i;
+        return true;
+    }
+
+    /**
+     * 第二遍：其余实例没被挡住才画
+     */
+    private boolean secondPassInstance(int i) {
+        if (i >= instanceVisible.length || instanceVisible[i]) {
+            return false;
+        }
+        if (visibilityCrowd.isInstanceOccluded(i, depthPyramid)) {
+            occludedThisFrame++;
+            return false;
+        }
+        instanceVisible[i] = true;
+        return true;
+    }
+
+    /**
+     * 绘制BVH视锥查询通过的物体
+     */
+    private void drawSceneItem(int item) {
+        if (item < bvhRobots.size()) {
+            bvhRobots.get(item).draw(meshSink, frustum);
+        }
+    }
+
+    /**
+     * 让BVH与场景同步（渲染线程）
+     * 机器人增删、舞台重建：重新建树；机器人移动：只重新拟合它所在的分支
+     */
+    private void updateSceneBVH() {
+        if (bvhStale.getAndSet(false)) {
+            movedRobots.clear();
+            bvhRobots.clear();
+            bvhRobots.addAll(robots);
+            bvhIndex.clear();
+            bvhTiles = stage.getPolygons();
+
+            int robotCount = bvhRobots.size();
+            int count = robotCount + bvhTiles.size();
+            if (bvhBounds.length < count * 6) {
+                bvhBounds = new double[count * 6];
+            }
+            for (int i = 0; i < robotCount; i++) {
+                Robot robot = bvhRobots.get(i);
+                robot.update();
+                robot.getBounds(bvhBounds, i * 6);
+                bvhIndex.put(robot, i);
+            }
+            for (int i = 0; i < bvhTiles.size(); i++) {
+                polygonBounds(bvhTiles.get(i), bvhBounds, (robotCount + i) * 6);
+            }
+            sceneBVH.build(bvhBounds, count);
+            shadeCaches.clear(); // 删除的物体不再出现
+            Arrays.fill(robotVisible, true); // 编号重新分配，全部先当作可见
+        } else if (!movedRobots.isEmpty()) {
+            for (Iterator<Robot> it = movedRobots.iterator(); it.hasNext();) {
+                Robot robot = it.next();
+                it.remove();
+                Integer item = bvhIndex.get(robot);
+                if (item != null) {
+                    robot.update();
+                    robot.getBounds(itemBounds, 0);
+                    sceneBVH.updateItem(item, itemBounds[0], itemBounds[1], itemBounds[2],
+                            itemBounds[3], itemBounds[4], itemBounds[5]);
+                }
+            }
+        }
+    }
+
+    private static void polygonBounds(Polygon3D poly, double[] out, int o) {
+        out[o] = out[o + 1] = out[o + 2] = Double.POSITIVE_INFINITY;
+        out[o + 3] = out[o + 4] = out[o + 5] = Double.NEGATIVE_INFINITY;
+        for (double[] v : poly.vertices) {
+            for (int k = 0; k < 3; k++) {
+                out[o + k] = Math.min(out[o + k], v[k]);
+                out[o + 3 + k] = Math.max(out[o + 3 + k], v[k]);
+            }
+        }
+    }
+
+    /**
+     * 射线拾取（渲染线程）
+     * 把像素在近平面和远平面上的点反投影回世界空间，连成射线，
+     * 用BVH找最近的物体，把命中的机器人（命中地板或空白处时为null）交给pickListener
+     */
+    private void pickAt(int px, int py, int w, int h) {
+        if (!Matrix4.invertInto(viewProjFlat, inverseViewProj)) {
+            return;
+        }
+        double ndcX = 2 * (px + 0.5) / w - 1;
+        double ndcY = 1 - 2 * (py + 0.5) / h;
+        double[] p = unprojectScratch;
+
+        Matrix4.transformInto(inverseViewProj, ndcX, ndcY, -1, p);
+        double ox = p[0] / p[3], oy = p[1] / p[3], oz = p[2] / p[3];
+        Matrix4.transformInto(inverseViewProj, ndcX, ndcY, 1, p);
+        double dx = p[0] / p[3] - ox, dy = p[1] / p[3] - oy, dz = p[2] / p[3] - oz;
+
+        // 射线参数t∈[0, 1]覆盖近平面到远平面
+        int item = sceneBVH.raycast(ox, oy, oz, dx, dy, dz, 1, this::intersectSceneItem, pickT);
+        Robot picked = item >= 0 && item < bvhRobots.size() ? bvhRobots.get(item) : null;
+        Consumer<Robot> listener = pickListener;
+        if (listener != null) {
+            listener.accept(picked);
+        }
+    }
+
+    /**
+     * 射线与单个场景物体的精确求交（BVH.RayTest）
+     */
+    private double intersectSceneItem(int item, double ox, double oy, double oz,
+            double dx, double dy, double dz, double maxT) {
+        if (item < bvhRobots.size()) {
+            return bvhRobots.get(item).raycast(ox, oy, oz, dx, dy, dz, maxT);
+        }
+        // 地板格子是水平矩形：先求与平面的交点，再看是否落在格子内
+        Polygon3D tile = bvhTiles.get(item - bvhRobots.size());
+        double[] b = itemBounds;
+        polygonBounds(tile, b, 0);
+        if (dy == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double t = (b[1] - oy) / dy;
+        if (t < 0 || t > maxT) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double x = ox + dx * t, z = oz + dz * t;
+        return x >= b[0] && x <= b[3] && z >= b[2] && z <= b[5] ? t : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * 创建视图矩阵
+     * 
+     * 【视图变换原理】
+     * 将世界坐标转换到相机坐标系。
+     * 等价于移动整个世界，使相机位于原点并朝向-Z方向。
+     * 
+     * 【变换顺序】
+     * 1. 平移：将相机移到原点（T(-camX, -camY, -camZ)）
+     * 2. 旋转：使相机朝向-Z轴（R(-rotX) × R(-rotY)）
+     * 设置了lookAtTarget时改为看向该点（见Matrix4.lookAt）
+     */
+    private double[][] createViewMatrix(RenderState s) {
+        double[] target = s.lookAtTarget;
+        if (target != null) {
+            return Matrix4.lookAt(s.cameraX, s.cameraY, s.cameraZ, target[0], target[1], target[2]);
+        }
+        double[][] result = Matrix4.identity();
+        // 先平移
+        result = Matrix4.multiply(Matrix4.translate(-s.cameraX, -s.cameraY, -s.cameraZ), result);
+        // 再旋转（注意顺序和符号）
+        result = Matrix4.multiply(Matrix4.rotateX(Math.toRadians(-s.cameraRotX)), result);
+        result = Matrix4.multiply(Matrix4.rotateY(Math.toRadians(-s.cameraRotY)), result);
+        return result;
+    }
+
+    /**
+     * 创建投影矩阵
+     * 
+     * 【投影类型】
+     * - Frustum: 使用固定的45度视角
+     * - Perspective: 使用可调节的FOV
+     * - Orthographic: 正交投影，用于CAD等场景
+     */
+    private double[][] createProjectionMatrix(RenderState s, int width, int height) {
+        double aspect = (double) width / height;
+
+        switch (s.projectionMode) {
+            case FRUSTUM:
+                // 视锥体投影，使用较小的FOV
+                return Matrix4.perspective(Math.toRadians(45), aspect, s.nearPlane, s.farPlane);
+            case PERSPECTIVE:
+                // 标准透视投影
+                return Matrix4.perspective(Math.toRadians(s.fov), aspect, s.nearPlane, s.farPlane);
+            case ORTHOGRAPHIC:
+                // 正交投影
+                double size = 5;
+                return Matrix4.orthographic(-size * aspect, size * aspect, -size, size, s.nearPlane, s.farPlane);
+            default:
+                return Matrix4.identity();
+        }
+    }
+
+    /**
+     * 渲染一个索引网格
+     * 
+     * 【渲染流程】
+     * 1. 顶点变换：每个共享顶点只做一次 世界 → 裁剪空间 变换
+     * 2. 区域编码；视见体内的顶点做透视除法 + 视口变换
+     * 3. 逐三角形：平凡拒绝，背面剔除（世界空间面法向量）
+     * 4. 光照计算：Flat在面中心算一次；Gouraud在三个顶点各算一次；
+     *    Phong只准备顶点法向量和位置，留给光栅化逐像素计算
+     * 5. 平凡接受的三角形直接输出；跨越视见体边界的先在齐次空间裁剪
+     *    （顶点属性一起插值），裁剪结果按扇形拆成三角形输出到triangleBatch
+     * （光栅化在所有网格处理完后由TileRenderer统一进行）
+     * 
+     * @param worldX  各顶点的世界坐标（同worldY、worldZ）
+     * @param world   世界矩阵（变换法向量用），null表示单位矩阵
+     * @param palette 材质槽位对应的颜色（0xRRGGBB）
+     * @param cacheKey 面/光照缓存的键（null表示顶点数组是临时缓存，不查找缓存）
+     */
+    private void renderMesh(Graphics2D g, RenderState s, Mesh mesh, float[] worldX, float[] worldY, float[] worldZ,
+            double[] world, int[] palette, int w, int h, Object cacheKey) {
+
+        int n = mesh.vertexCount;
+        ensureVertexCapacity(n);
+
+        // ========== Step 1: 顶点变换（结构数组，批量） ==========
+        Matrix4.transformPoints(viewProjFlat, worldX, worldY, worldZ, n, clipX, clipY, clipZ, clipW);
+
+        // ========== Step 2: 区域编码 + 透视除法 + 视口变换 ==========
+        for (int i = 0; i < n; i++) {
+            double pw = clipW[i];
+            int code = Clipper.outcode(clipX[i], clipY[i], clipZ[i], pw);
+            outcodes[i] = code;
+            if (code != 0) {
+                continue; // 视见体外的顶点只参与裁剪，不直接投影
+            }
+
+            // 视口变换：[-1,1] → [0,w] × [0,h]
+            // 注意Y轴翻转（屏幕Y向下，3D空间Y向上）
+            subX[i] = (clipX[i] / pw + 1) * w / 2;
+            subY[i] = (1 - clipY[i] / pw) * h / 2;
+            depth[i] = clipZ[i] / pw;
+        }
+
+        // ========== Step 3-5: 逐三角形 ==========
+        int[] indices = mesh.indices;
+        boolean wireframe = s.hsrMode == HSRMode.WIREFRAME;
+        if (wireframe) {
+            // 线框模式（不做消隐，直接描边）
+            g.setColor(Color.GREEN);
+            if (wireframeStroke.getLineWidth() != s.supersample) {
+                wireframeStroke = new BasicStroke(s.supersample);
+            }
+            g.setStroke(wireframeStroke);
+        }
+        Lighting lighting = frameLighting;
+        byte kind = s.shadingMode == ShadingMode.GOURAUD ? TriangleBatch.GOURAUD
+                : s.shadingMode == ShadingMode.PHONG ? TriangleBatch.PHONG : TriangleBatch.FLAT;
+
+        // 面几何和光照缓存：网格、世界矩阵、光照、材质都没变时直接复用上一帧的结果
+        ShadeCache cache = null;
+        if (!wireframe && cacheKey == null) {
+            cache = transientShadeCache;
+            cache.invalidate(mesh);
+        } else if (!wireframe) {
+            cache = shadeCaches.get(cacheKey);
+            if (cache == null) {
+                cache = new ShadeCache();
+                shadeCaches.put(cacheKey, cache);
+            }
+            cache.begin(mesh, world, lighting, palette, kind);
+        }
+
+        // 顶点法向量：网格里是模型空间的，只需旋转到世界空间
+        float[] nx = mesh.nx, ny = mesh.ny, nz = mesh.nz;
+        if (kind != TriangleBatch.FLAT && !wireframe && world != null) {
+            if (normalX.length < mesh.normalCount) {
+                int cap = Math.max(mesh.normalCount, normalX.length * 2);
+                normalX = new float[cap];
+                normalY = new float[cap];
+                normalZ = new float[cap];
+            }
+            Matrix4.transformNormals(world, mesh.nx, mesh.ny, mesh.nz, mesh.normalCount, normalX, normalY, normalZ);
+            nx = normalX;
+            ny = normalY;
+            nz = normalZ;
+        }
+
+        int[] starts = meshTriangleStarts;
+        for (int t = 0; t < mesh.triangleCount; t++) {
+            if (starts != null) {
+                starts[t] = triangleBatch.size();
+            }
+            int i0 = indices[t * 3], i1 = indices[t * 3 + 1], i2 = indices[t * 3 + 2];
+            int c0 = outcodes[i0], c1 = outcodes[i1], c2 = outcodes[i2];
+            if ((c0 & c1 & c2) != 0) {
+                continue; // 平凡拒绝：三个顶点都在同一平面外侧
+            }
+            int planes = c0 | c1 | c2;
+
+            if (wireframe) {
+                int count = planes == 0 ? copyTriangle(i0, i1, i2) : clipTriangle(i0, i1, i2, planes, w, h);
+                for (int k = 0; k < count; k++) {
+                    screenX[k] = (int) clippedX[k];
+                    screenY[k] = (int) clippedY[k];
+                }
+                if (count >= 3) {
+                    g.drawPolygon(screenX, screenY, count);
+                }
+                continue;
+            }
+
+            // 世界空间的面法向量（叉积）和中心（几何没变时取缓存）
+            if (!cache.hasFace(t)) {
+                storeFace(cache, t, i0, i1, i2, worldX, worldY, worldZ);
+            }
+            double fnx = cache.face(t, 0), fny = cache.face(t, 1), fnz = cache.face(t, 2);
+            if (fnx == 0 && fny == 0 && fnz == 0) {
+                continue; // 退化三角形
+            }
+            double cx = cache.face(t, 3), cy = cache.face(t, 4), cz = cache.face(t, 5);
+
+            // ========== Step 3: 背面剔除 ==========
+            if (!mesh.doubleSided) {
+                // 计算从三角形中心到相机的方向（不归一化，最后除以长度）
+                double vx = s.cameraX - cx, vy = s.cameraY - cy, vz = s.cameraZ - cz;
+                double len = Math.sqrt(vx * vx + vy * vy + vz * vz);
+                // 如果法向量与视线方向夹角大于90度，则是背面
+                // 使用-0.1而不是0是为了让接近水平的面（如地板）也能显示
+                if (fnx * vx + fny * vy + fnz * vz < -0.1 * len) {
+                    continue; // 跳过背面
+                }
+            }
+
+            int baseColor = palette[mesh.materials[t]];
+            if (kind != TriangleBatch.FLAT) {
+                // Gouraud/Phong：顶点属性 + 插值
+                emitShadedTriangle(mesh, t, planes, kind, baseColor, lighting, cache,
+                        worldX, worldY, worldZ, nx, ny, nz, w, h);
+                continue;
+            }
+
+            // ========== Step 4: 光照计算（Flat：面中心一次，结果缓存） ==========
+            if (!cache.hasShade(t)) {
+                int shaded = lighting.shade(fnx, fny, fnz, cx, cy, cz, baseColor);
+                cache.storeShade(t, shaded, shaded, shaded);
+            }
+            int rgb = cache.shade(t, 0);
+
+            // ========== Step 5: 输出三角形 ==========
+            if (planes == 0) {
+                // 平凡接受
+                triangleBatch.add(
+                        subX[i0], subY[i0], depth[i0],
+                        subX[i1], subY[i1], depth[i1],
+                        subX[i2], subY[i2], depth[i2], rgb);
+            } else {
+                int count = clipTriangle(i0, i1, i2, planes, w, h);
+                // 裁剪结果是凸多边形，扇形三角化：(0, k, k+1)
+                for (int k = 1; k + 1 < count; k++) {
+                    triangleBatch.add(
+                            clippedX[0], clippedY[0], clippedZ[0],
+                            clippedX[k], clippedY[k], clippedZ[k],
+                            clippedX[k + 1], clippedY[k + 1], clippedZ[k + 1], rgb);
+                }
+            }
+        }
+        if (starts != null) {
+            starts[mesh.triangleCount] = triangleBatch.size();
+        }
+    }
+
+    /**
+     * 计算并缓存三角形的单位面法向量（退化时为0向量）和中心
+     */
+    private static void storeFace(ShadeCache cache, int t, int i0, int i1, int i2,
+            float[] worldX, float[] worldY, float[] worldZ) {
+        double ax = worldX[i1] - worldX[i0], ay = worldY[i1] - worldY[i0], az = worldZ[i1] - worldZ[i0];
+        double bx = worldX[i2] - worldX[i0], by = worldY[i2] - worldY[i0], bz = worldZ[i2] - worldZ[i0];
+        double fnx = ay * bz - az * by, fny = az * bx - ax * bz, fnz = ax * by - ay * bx;
+        double nlen = Math.sqrt(fnx * fnx + fny * fny + fnz * fnz);
+        if (nlen > 0) {
+            fnx /= nlen;
+            fny /= nlen;
+            fnz /= nlen;
+        }
+        cache.storeFace(t, fnx, fny, fnz,
+                (worldX[i0] + worldX[i1] + worldX[i2]) / 3.0,
+                (worldY[i0] + worldY[i1] + worldY[i2]) / 3.0,
+                (worldZ[i0] + worldZ[i1] + worldZ[i2]) / 3.0);
+    }
+
+    /**
+     * 把一个完全可见的三角形复制到裁剪结果数组（线框模式统一处理用）
+     *
+     * @return 顶点数（3）
+     */
+    private int copyTriangle(int i0, int i1, int i2) {
+        clippedX[0] = subX[i0];
+        clippedY[0] = subY[i0];
+        clippedX[1] = subX[i1];
+        clippedY[1] = subY[i1];
+        clippedX[2] = subX[i2];
+        clippedY[2] = subY[i2];
+        return 3;
+    }
+
+    /**
+     * 在齐次裁剪空间裁剪一个三角形，结果做透视除法和视口变换后
+     * 写入clippedX/clippedY/clippedZ
+     *
+     * @param planes 需要裁剪的平面（三个顶点区域编码的OR）
+     * @return 裁剪后的顶点数，小于3表示完全不可见
+     */
+    private int clipTriangle(int i0, int i1, int i2, int planes, int w, int h) {
+        double[] in = clipper.getInput();
+        loadClipVertex(in, 0, i0);
+        loadClipVertex(in, 4, i1);
+        loadClipVertex(in, 8, i2);
+
+        int count = clipper.clip(3, planes);
+        double[] out = clipper.getOutput();
+        for (int k = 0; k < count; k++) {
+            int o = k * 4;
+            double pw = out[o + 3];
+            clippedX[k] = (out[o] / pw + 1) * w / 2;
+            clippedY[k] = (1 - out[o + 1] / pw) * h / 2;
+            clippedZ[k] = out[o + 2] / pw;
+        }
+        return count;
+    }
+
+    private void loadClipVertex(double[] buffer, int offset, int i) {
+        buffer[offset] = clipX[i];
+        buffer[offset + 1] = clipY[i];
+        buffer[offset + 2] = clipZ[i];
+        buffer[offset + 3] = clipW[i];
+    }
+
+    /**
+     * 保证顶点缓存至少能容纳n个顶点
+     */
+    private void ensureVertexCapacity(int n) {
+        if (subX.length < n) {
+            int cap = Math.max(n, subX.length * 2);
+            clipX = new float[cap];
+            clipY = new float[cap];
+            clipZ = new float[cap];
+            clipW = new float[cap];
+            outcodes = new int[cap];
+            subX = new double[cap];
+            subY = new double[cap];
+            depth = new double[cap];
+        }
+    }
+
+    /**
+     * 输出一个Gouraud/Phong三角形（可能先裁剪）
+     *
+     * 【顶点属性】
+     * - Gouraud: 在三个角用顶点法向量做光照，属性是光照后的r, g, b
+     * - Phong: 属性是世界空间的顶点法向量和位置，光照留到逐像素
+     * 法向量按角取（mesh.normalIndices），同一位置在棱角两侧可以有不同法向量。
+     *
+     * @param t       三角形编号
+     * @param planes  需要裁剪的平面（0表示平凡接受）
+     * @param kind    TriangleBatch.GOURAUD或TriangleBatch.PHONG
+     * @param cache   光照缓存（Gouraud的三个角颜色）
+     * @param nx      世界空间顶点法向量（同ny、nz）
+     */
+    private void emitShadedTriangle(Mesh mesh, int t, int planes, byte kind, int baseColor, Lighting lighting,
+            ShadeCache cache, float[] worldX, float[] worldY, float[] worldZ, float[] nx, float[] ny, float[] nz, int w, int h) {
+        int[] indices = mesh.indices, normalIndices = mesh.normalIndices;
+        boolean phong = kind == TriangleBatch.PHONG;
+
+        // 三个角的属性（Gouraud的角颜色没缓存时先算好存起来）
+        if (!phong && !cache.hasShade(t)) {
+            int[] rgb = cornerColors;
+            for (int k = 0; k < 3; k++) {
+                int i = indices[t * 3 + k], n = normalIndices[t * 3 + k];
+                rgb[k] = lighting.shade(nx[n], ny[n], nz[n], worldX[i], worldY[i], worldZ[i], baseColor);
+            }
+            cache.storeShade(t, rgb[0], rgb[1], rgb[2]);
+        }
+        for (int k = 0; k < 3; k++) {
+            int i = indices[t * 3 + k], n = normalIndices[t * 3 + k];
+            int o = k * SHADED_ATTRIBUTES;
+            if (phong) {
+                cornerAttr[o] = nx[n];
+                cornerAttr[o + 1] = ny[n];
+                cornerAttr[o + 2] = nz[n];
+                cornerAttr[o + 3] = worldX[i];
+                cornerAttr[o + 4] = worldY[i];
+                cornerAttr[o + 5] = worldZ[i];
+            } else {
+                int rgb = cache.shade(t, k);
+                cornerAttr[o] = (rgb >> 16) & 0xFF;
+                cornerAttr[o + 1] = (rgb >> 8) & 0xFF;
+                cornerAttr[o + 2] = rgb & 0xFF;
+            }
+        }
+
+        int count;
+        if (planes == 0) {
+            // 平凡接受：直接使用已投影的顶点
+            for (int k = 0; k < 3; k++) {
+                int i = indices[t * 3 + k];
+                clippedX[k] = subX[i];
+                clippedY[k] = subY[i];
+                clippedZ[k] = depth[i];
+                clippedQ[k] = 1.0 / clipW[i];
+            }
+            System.arraycopy(cornerAttr, 0, clippedAttr, 0, 3 * SHADED_ATTRIBUTES);
+            count = 3;
+        } else {
+            // 裁剪坐标和属性一起裁剪
+            int stride = attributeClipper.stride;
+            double[] in = attributeClipper.getInput();
+            for (int k = 0; k < 3; k++) {
+                loadClipVertex(in, k * stride, indices[t * 3 + k]);
+                System.arraycopy(cornerAttr, k * SHADED_ATTRIBUTES, in, k * stride + 4, SHADED_ATTRIBUTES);
+            }
+            count = attributeClipper.clip(3, planes);
+            double[] out = attributeClipper.getOutput();
+            for (int k = 0; k < count; k++) {
+                int o = k * stride;
+                double pw = out[o + 3];
+                clippedX[k] = (out[o] / pw + 1) * w / 2;
+                clippedY[k] = (1 - out[o + 1] / pw) * h / 2;
+                clippedZ[k] = out[o + 2] / pw;
+                clippedQ[k] = 1.0 / pw;
+                System.arraycopy(out, o + 4, clippedAttr, k * SHADED_ATTRIBUTES, SHADED_ATTRIBUTES);
+            }
+        }
+
+        // 扇形三角化：(0, k, k+1)
+        int stride = phong ? TriangleBatch.PHONG_STRIDE : TriangleBatch.GOURAUD_STRIDE;
+        for (int k = 1; k + 1 < count; k++) {
+            int tri = triangleBatch.add(
+                    clippedX[0], clippedY[0], clippedZ[0],
+                    clippedX[k], clippedY[k], clippedZ[k],
+                    clippedX[k + 1], clippedY[k + 1], clippedZ[k + 1], baseColor);
+            int a = triangleBatch.addAttributes(tri, kind);
+            float[] attr = triangleBatch.getAttributes();
+            writeVertexAttributes(attr, a, 0, stride);
+            writeVertexAttributes(attr, a + stride, k, stride);
+            writeVertexAttributes(attr, a + 2 * stride, k + 1, stride);
+        }
+    }
+
+    /**
+     * 把裁剪结果第k个顶点的属性写成 q, a×q, ...（格式见TriangleBatch）
+     */
+    private void writeVertexAttributes(float[] attr, int o, int k, int stride) {
+        double q = clippedQ[k];
+        attr[o] = (float) q;
+        int src = k * SHADED_ATTRIBUTES;
+        for (int j = 1; j < stride; j++) {
+            attr[o + j] = (float) (clippedAttr[src + j - 1] * q);
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.graphics;
+
+import java.util.Arrays;
+
+/**
+ * ====================================================================
+ * ShadeCache.java - 逐面/逐角的几何与光照缓存
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 同一块世界空间顶点（静止的地板、姿态没变的机器人部件）每帧都会重新
+ * 算一遍面法向量、面中心和光照颜色，结果却和上一帧完全一样。
+ * 这个缓存把它们按三角形存起来，只有相关的输入变了才重算：
+ * - 几何（面法向量、面中心）：网格或世界矩阵变了
+ * - 光照（Flat每个面一个颜色，Gouraud每个角一个颜色）：
+ *   几何、光照参数（光源、相机、强度、环境光）、材质调色板或着色模式变了
+ * Phong的光照在每个像素上算，不经过这里，但仍然复用几何缓存。
+ *
+ * 【键】
+ * 每次绘制前调用begin()把这次的输入和缓存的键比较，
+ * 不一致就把对应的"代数"(generation)加1，旧的条目一次全部作废，不用清空数组。
+ * 每个三角形记录自己是在哪一代算的，绘制时只有被剔除过的三角形才会留到后面补算。
+ * 每次绘制内容都不同的临时顶点数组用invalidate()代替begin()，不做比较直接作废。
+ *
+ * 【注意】
+ * 镜面反射与相机位置有关，所以相机移动时光照缓存会失效，几何缓存不受影响。
+ * 只由渲染线程使用。
+ *
+ * @author Computer Graphics Course
+ */
+public class ShadeCache {
+
+    /** 每个三角形的几何：法向量(3) + 中心(3) */
+    private static final int FACE_STRIDE = 6;
+
+    // ---------- 几何键 ----------
+    private Mesh mesh;
+    private final double[] world = new double[16];
+    private boolean identityWorld;
+    private int geometryGeneration;
+
+    // ---------- 光照键 ----------
+    private Lighting lighting;
+    private int[] palette = new int[0];
+    private byte kind = -1;
+    private int shadeGeneration;
+
+    // ---------- 逐三角形数据 ----------
+    private int[] geometryStamp = new int[0];
+    private double[] faces = new double[0];
+    private int[] shadeStamp = new int[0];
+    private int[] colors = new int[0];
+
+    /**
+     * 开始一次绘制：与缓存的键比较，变了的部分作废
+     *
+     * @param mesh     网格
+     * @param world    世界矩阵（null表示顶点本来就在世界空间）
+     * @param lighting 本帧光照参数
+     * @param palette  调色板
+     * @param kind     着色模式（TriangleBatch.FLAT/GOURAUD/PHONG）
+     */
+    public void begin(Mesh mesh, double[] world, Lighting lighting, int[] palette, byte kind) {
+        if (mesh != this.mesh || !sameWorld(world)) {
+            if (mesh != this.mesh) {
+                this.mesh = mesh;
+                ensureCapacity(mesh.triangleCount);
+            }
+            identityWorld = world == null;
+            if (world != null) {
+                System.arraycopy(world, 0, this.world, 0, 16);
+            }
+            geometryGeneration++;
+            shadeGeneration++;
+        } else if (kind != this.kind || !lighting.sameAs(this.lighting) || !Arrays.equals(palette, this.palette)) {
+            shadeGeneration++;
+        }
+        this.lighting = lighting;
+        this.kind = kind;
+        if (palette.length != this.palette.length) {
+            this.palette = new int[palette.length];
+        }
+        System.arraycopy(palette, 0, this.palette, 0, palette.length);
+    }
+
+    /**
+     * 开始一次不缓存的绘制：不比较键，也不复制调色板，之前的条目全部作废
+     * 用于每次绘制都换了内容的临时顶点数组（机器人群的各个实例共用一块），
+     * 这时键每次都对不上，比较和复制只是白费
+     *
+     * @param mesh 网格
+     */
+    public void invalidate(Mesh mesh) {
+        this.mesh = null; // 下一次begin()一定重新比较
+        this.kind = -1;
+        ensureCapacity(mesh.triangleCount);
+        geometryGeneration++;
+        shadeGeneration++;
+    }
+
+    private void ensureCapacity(int n) {
+        if (geometryStamp.length < n) {
+            geometryStamp = new int[n];
+            faces = new double[n * FACE_STRIDE];
+            shadeStamp = new int[n];
+            colors = new int[n * 3];
+            geometryGeneration = shadeGeneration = 0;
+        }
+    }
+
+    private boolean sameWorld(double[] m) {
+        if (m == null || identityWorld) {
+            return m == null && identityWorld;
+        }
+        for (int i = 0; i < 16; i++) {
+            if (m[i] != world[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ==================== 几何 ====================
+
+    /**
+     * 三角形的面法向量和中心是否已缓存
+     */
+    public boolean hasFace(int t) {
+        return geometryStamp[t] == geometryGeneration;
+    }
+
+    /**
+     * 缓存面法向量（单位向量，退化三角形为0向量）和中心
+     */
+    public void storeFace(int t, double nx, double ny, double nz, double cx, double cy, double cz) {
+        int o = t * FACE_STRIDE;
+        faces[o] = nx;
+        faces[o + 1] = ny;
+        faces[o + 2] = nz;
+        faces[o + 3] = cx;
+        faces[o + 4] = cy;
+        faces[o + 5] = cz;
+        geometryStamp[t] = geometryGeneration;
+    }
+
+    /**
+     * 缓存的几何分量（0-2: 法向量，3-5: 中心）
+     */
+    public double face(int t, int component) {
+        return faces[t * FACE_STRIDE + component];
+    }
+
+    // ==================== 光照 ====================
+
+    /**
+     * 三角形的光照颜色是否已缓存
+     */
+    public boolean hasShade(int t) {
+        return shadeStamp[t] == shadeGeneration;
+    }
+
+    /**
+     * 缓存光照颜色（Flat只用第0个角）
+     */
+    public void storeShade(int t, int c0, int c1, int c2) {
+        int o = t * 3;
+        colors[o] = c0;
+        colors[o + 1] = c1;
+        colors[o + 2] = c2;
+        shadeStamp[t] = shadeGeneration;
+    }
+
+    /**
+     * 缓存的光照颜色
+     *
+     * @param corner 角编号（0-2）
+     */
+    public int shade(int t, int corner) {
+        return colors[t * 3 + corner];
+    }
+}
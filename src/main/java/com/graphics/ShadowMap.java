@@ -0,0 +1,426 @@
+package com.graphics;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * ====================================================================
+ * ShadowMap.java - 阴影贴图（主点光源）
+ * ====================================================================
+ *
+ * 【原理】
+ * 1. 深度遍：把相机放到光源位置，只画深度，得到"光源能看到的最近距离"
+ * 2. 着色时：把表面点投影到光源的屏幕上，比贴图里存的深度更远，
+ *    说明光源和它之间有别的物体挡着，这个点在阴影里
+ *
+ * 【光源视锥】
+ * 点光源向所有方向发光，完整的做法是立方体贴图（6个方向各画一次）。
+ * 这里的阴影都落在舞台上，所以只用一个对准舞台中心的透视视锥：
+ * 视锥刚好包住舞台和站在上面的物体（高度CASTER_HEIGHT），
+ * 近、远裁剪面贴着这个包围球，深度精度都用在有东西的地方。
+ *
+ * 【深度遍】
+ * 顶点变换到光源的裁剪空间，跨越视见体边界的三角形用Clipper裁剪，
+ * 然后交给TileRenderer在多核上分块光栅化（与主视图共用同一套光栅化器）。
+ * 不做背面剔除：地板是单层的，两面都要能投影。
+ *
+ * 【阴影失真(Shadow Acne)与偏移】
+ * 贴图的一个像素覆盖表面上一小片区域，直接比较时表面会挡住自己，出现条纹。
+ * 采样前把表面点沿法向量推出去约NORMAL_OFFSET个贴图像素的距离，
+ * 再减去一个很小的常数偏移DEPTH_BIAS（世界单位）。
+ *
+ * 【PCF（Percentage-Closer Filtering）】
+ * 硬阴影只比较一个像素，边缘是锯齿。PCF比较周围3×3个像素，
+ * 取"被照亮"的比例，阴影边缘变成柔和的过渡。
+ *
+ * 【跳过不必要的深度遍】
+ * 每帧先遍历一次投影物（不变换、不光栅化），记录每次绘制的网格和世界矩阵；
+ * 机器人群只比较版本号（见RobotCrowd.getVersion），不逐个实例记录。
+ * 光源、舞台和所有投影物都和上一次画贴图时完全一样，就直接复用旧的贴图。
+ * 相机移动、只改颜色或材质都不会重画阴影贴图。
+ *
+ * 【线程】
+ * 遍历和变换在渲染线程；光栅化可以交给线程池异步进行，
+ * 与主视图的顶点阶段同时运行，主视图光栅化前join()。
+ * 贴图画完后只读，光栅化的多个工作线程可以同时采样。
+ *
+ * @author Computer Graphics Course
+ */
+public class ShadowMap {
+
+    /** 贴图边长（像素） */
+    public static final int SIZE = 1024;
+
+    /** 舞台上投影物的最大高度（光源视锥要包住的范围） */
+    public static final double CASTER_HEIGHT = 4;
+
+    /** 法向偏移（贴图像素数） */
+    private static final double NORMAL_OFFSET = 1.5;
+
+    /** 常数深度偏移（世界单位） */
+    private static final double DEPTH_BIAS = 0.02;
+
+    /** 光源在包围球内时视锥半角的上限（度） */
+    private static final double MAX_HALF_FOV = 75;
+
+    /** PCF的采样半径（1 = 3×3） */
+    private static final int PCF_RADIUS = 1;
+
+    // ---------- 深度遍 ----------
+    private final Rasterizer rasterizer = new Rasterizer();
+    private final TileRenderer tiles;
+    private final TriangleBatch batch = new TriangleBatch();
+    private final int[] colorSink = new int[SIZE * SIZE];
+    private final Clipper clipper = new Clipper(4);
+    private float[] depth;
+    private double[] clipX = new double[0], clipY = new double[0], clipZ = new double[0], clipW = new double[0];
+    private int[] outcodes = new int[0];
+
+    // ---------- 光源视锥 ----------
+    private final double[] viewProj = new double[16];
+    private final Frustum frustum = new Frustum();
+    private double eyeX, eyeY, eyeZ;
+    private double axisX, axisY, axisZ;
+    private double near, far;
+
+    /** 光源距离为1处一个贴图像素的世界尺寸 */
+    private double texelScale;
+
+    /** 本帧和画当前贴图时的光源位置与包围球（变化时必须重画） */
+    private final double[] frameLight = new double[7];
+    private final double[] drawnLight = new double[7];
+
+    // ---------- 投影物签名 ----------
+    private Mesh[] meshes = new Mesh[64];
+    private double[] matrices = new double[64 * 16];
+    private int recorded, drawnCount;
+    private boolean geometryChanged;
+
+    /** 机器人群及其版本号（本帧的和画当前贴图时的） */
+    private RobotCrowd frameCrowd, drawnCrowd;
+    private long frameCrowdVersion, drawnCrowdVersion;
+
+    /** 贴图有效（至少画过一次） */
+    private boolean valid;
+
+    /** 贴图每重画一次加1（光照缓存据此判断阴影是否变化） */
+    private int generation;
+
+    /** 本帧是否重画了贴图 */
+    private boolean redrawn;
+
+    /** 记录投影物签名（不变换、不光栅化） */
+    public final MeshSink recorder = this::record;
+
+    /** 把投影物变换到光源屏幕并加入深度批次 */
+    public final MeshSink caster = this::cast;
+
+    public ShadowMap() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ShadowMap(ForkJoinPool pool) {
+        tiles = new TileRenderer(rasterizer, pool);
+        rasterizer.bind(colorSink, SIZE, SIZE);
+        depth = rasterizer.getDepthBuffer();
+        Arrays.fill(drawnLight, Double.NaN);
+    }
+
+    // ==================== 每帧流程 ====================
+
+    /**
+     * 开始一帧：按光源位置和要包住的范围设置光源视锥，准备记录投影物
+     *
+     * @param lx 光源位置（同ly、lz）
+     * @param cx 场景包围球球心（同cy、cz）
+     * @param r  场景包围球半径
+     */
+    public void begin(double lx, double ly, double lz, double cx, double cy, double cz, double r) {
+        double dx = cx - lx, dy = cy - ly, dz = cz - lz;
+        double dist = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (dist < 1e-6) {
+            dx = 0;
+            dy = -1;
+            dz = 0;
+            dist = 1e-6;
+        } else {
+            dx /= dist;
+            dy /= dist;
+            dz /= dist;
+        }
+
+        // 视锥：半角刚好包住包围球（光源在球内时取上限）
+        double halfFov = r < dist ? Math.asin(r / dist) : Math.toRadians(MAX_HALF_FOV);
+        halfFov = Math.min(Math.toRadians(MAX_HALF_FOV), Math.max(Math.toRadians(1), halfFov));
+        near = Math.max(dist - r, dist * 0.05);
+        far = dist + r;
+
+        // 视图矩阵：看向球心（几乎竖直时换一个上方向）
+        double ux = 0, uy = 1, uz = 0;
+        if (Math.abs(dy) > 0.99) {
+            uy = 0;
+            uz = 1;
+        }
+        double rx = dy * uz - dz * uy, ry = dz * ux - dx * uz, rz = dx * uy - dy * ux;
+        double rl = Math.sqrt(rx * rx + ry * ry + rz * rz);
+        rx /= rl;
+        ry /= rl;
+        rz /= rl;
+        ux = ry * dz - rz * dy;
+        uy = rz * dx - rx * dz;
+        uz = rx * dy - ry * dx;
+        double[] view = {
+                rx, ry, rz, -(rx * lx + ry * ly + rz * lz),
+                ux, uy, uz, -(ux * lx + uy * ly + uz * lz),
+                -dx, -dy, -dz, dx * lx + dy * ly + dz * lz,
+                0, 0, 0, 1 };
+        double[] proj = Matrix4.toFlat(Matrix4.perspective(2 * halfFov, 1, near, far));
+        Matrix4.multiplyInto(proj, view, viewProj);
+        frustum.set(viewProj);
+
+        eyeX = lx;
+        eyeY = ly;
+        eyeZ = lz;
+        axisX = dx;
+        axisY = dy;
+        axisZ = dz;
+        texelScale = 2 * Math.tan(halfFov) / SIZE;
+
+        frameLight[0] = lx;
+        frameLight[1] = ly;
+        frameLight[2] = lz;
+        frameLight[3] = cx;
+        frameLight[4] = cy;
+        frameLight[5] = cz;
+        frameLight[6] = r;
+        geometryChanged = !Arrays.equals(frameLight, drawnLight);
+        recorded = 0;
+        frameCrowd = null;
+        redrawn = false;
+    }
+
+    /**
+     * 光源视锥（投影物剔除用）
+     */
+    public Frustum getFrustum() {
+        return frustum;
+    }
+
+    /**
+     * 记录完投影物后调用：是否需要重画贴图
+     */
+    public boolean needsRedraw() {
+        return !valid || geometryChanged || recorded != drawnCount
+                || frameCrowd != drawnCrowd || frameCrowdVersion != drawnCrowdVersion;
+    }
+
+    /**
+     * 开始重画：清空深度批次，之后把投影物交给caster
+     */
+    public void beginCasting() {
+        batch.clear();
+    }
+
+    /**
+     * 光栅化深度批次（异步，返回的任务需要在采样前join()）
+     *
+     * @param pool 执行光栅化的线程池
+     */
+    public ForkJoinTask<?> rasterize(ForkJoinPool pool) {
+        System.arraycopy(frameLight, 0, drawnLight, 0, frameLight.length);
+        drawnCount = recorded;
+        drawnCrowd = frameCrowd;
+        drawnCrowdVersion = frameCrowdVersion;
+        valid = true;
+        redrawn = true;
+        generation++;
+        return pool.submit(() -> tiles.render(batch, 0));
+    }
+
+    /**
+     * 本帧是否重画了贴图
+     */
+    public boolean wasRedrawn() {
+        return redrawn;
+    }
+
+    /**
+     * 贴图版本（每重画一次加1）
+     */
+    public int generation() {
+        return generation;
+    }
+
+    // ==================== 投影物 ====================
+
+    /**
+     * 记录一次绘制，与上一次画贴图时的同一次绘制比较
+     */
+    private void record(Mesh mesh, float[] worldX, float[] worldY, float[] worldZ, double[] world, int[] palette) {
+        int k = recorded++;
+        if (k == meshes.length) {
+            meshes = Arrays.copyOf(meshes, k * 2);
+            matrices = Arrays.copyOf(matrices, k * 2 * 16);
+        }
+        int o = k * 16;
+        if (meshes[k] != mesh) {
+            meshes[k] = mesh;
+            geometryChanged = true;
+        }
+        if (world == null) {
+            // 顶点本来就在世界空间：用NaN标记，与任何矩阵都不相等
+            if (!Double.isNaN(matrices[o])) {
+                Arrays.fill(matrices, o, o + 16, Double.NaN);
+                geometryChanged = true;
+            }
+        } else {
+            for (int i = 0; i < 16; i++) {
+                if (matrices[o + i] != world[i]) {
+                    System.arraycopy(world, 0, matrices, o, 16);
+                    geometryChanged = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录机器人群（实例都由位置、朝向和关节角度决定，版本号没变就没有动过）
+     */
+    public void recordCrowd(RobotCrowd crowd) {
+        frameCrowd = crowd;
+        frameCrowdVersion = crowd != null ? crowd.getVersion() : 0;
+    }
+
+    /**
+     * 变换、裁剪一个网格并加入深度批次
+     */
+    private void cast(Mesh mesh, float[] worldX, float[] worldY, float[] worldZ, double[] world, int[] palette) {
+        int n = mesh.vertexCount;
+        if (clipX.length < n) {
+            int cap = Math.max(n, clipX.length * 2);
+            clipX = new double[cap];
+            clipY = new double[cap];
+            clipZ = new double[cap];
+            clipW = new double[cap];
+            outcodes = new int[cap];
+        }
+        double[] m = viewProj;
+        for (int i = 0; i < n; i++) {
+            double x = worldX[i], y = worldY[i], z = worldZ[i];
+            double cx = m[0] * x + m[1] * y + m[2] * z + m[3];
+            double cy = m[4] * x + m[5] * y + m[6] * z + m[7];
+            double cz = m[8] * x + m[9] * y + m[10] * z + m[11];
+            double cw = m[12] * x + m[13] * y + m[14] * z + m[15];
+            clipX[i] = cx;
+            clipY[i] = cy;
+            clipZ[i] = cz;
+            clipW[i] = cw;
+            outcodes[i] = Clipper.outcode(cx, cy, cz, cw);
+        }
+
+        int[] idx = mesh.indices;
+        for (int t = 0; t < mesh.triangleCount; t++) {
+            int i0 = idx[t * 3], i1 = idx[t * 3 + 1], i2 = idx[t * 3 + 2];
+            int c0 = outcodes[i0], c1 = outcodes[i1], c2 = outcodes[i2];
+            if ((c0 & c1 & c2) != 0) {
+                continue; // 完全在光源视锥外
+            }
+            if ((c0 | c1 | c2) == 0) {
+                batch.add(screenX(i0), screenY(i0), clipZ[i0] / clipW[i0],
+                        screenX(i1), screenY(i1), clipZ[i1] / clipW[i1],
+                        screenX(i2), screenY(i2), clipZ[i2] / clipW[i2], 0);
+                continue;
+            }
+            double[] in = clipper.getInput();
+            store(in, 0, i0);
+            store(in, 4, i1);
+            store(in, 8, i2);
+            int count = clipper.clip(3, c0 | c1 | c2);
+            double[] out = clipper.getOutput();
+            for (int k = 1; k + 1 < count; k++) {
+                int a = 0, b = k * 4, c = (k + 1) * 4;
+                batch.add(sx(out, a), sy(out, a), out[a + 2] / out[a + 3],
+                        sx(out, b), sy(out, b), out[b + 2] / out[b + 3],
+                        sx(out, c), sy(out, c), out[c + 2] / out[c + 3], 0);
+            }
+        }
+    }
+
+    private void store(double[] buf, int o, int i) {
+        buf[o] = clipX[i];
+        buf[o + 1] = clipY[i];
+        buf[o + 2] = clipZ[i];
+        buf[o + 3] = clipW[i];
+    }
+
+    private double screenX(int i) {
+        return (clipX[i] / clipW[i] + 1) * SIZE / 2;
+    }
+
+    private double screenY(int i) {
+        return (1 - clipY[i] / clipW[i]) * SIZE / 2;
+    }
+
+    private static double sx(double[] v, int o) {
+        return (v[o] / v[o + 3] + 1) * SIZE / 2;
+    }
+
+    private static double sy(double[] v, int o) {
+        return (1 - v[o + 1] / v[o + 3]) * SIZE / 2;
+    }
+
+    // ==================== 采样 ====================
+
+    /**
+     * 表面点被主光源照到的比例
+     *
+     * @param px  表面点（同py、pz）
+     * @param nx  单位法向量（同ny、nz）
+     * @param pcf true用3×3 PCF，false为硬阴影
+     * @return 0（完全在阴影中）到1（完全照亮）；贴图范围外视为照亮
+     */
+    public double visibility(double px, double py, double pz, double nx, double ny, double nz, boolean pcf) {
+        // 沿法向量推出去，推出的距离与该处一个贴图像素的大小成正比
+        double d = (px - eyeX) * axisX + (py - eyeY) * axisY + (pz - eyeZ) * axisZ;
+        if (d <= near * 0.5) {
+            return 1;
+        }
+        double offset = NORMAL_OFFSET * texelScale * d;
+        px += nx * offset;
+        py += ny * offset;
+        pz += nz * offset;
+
+        double[] m = viewProj;
+        double w = m[12] * px + m[13] * py + m[14] * pz + m[15];
+        if (w <= 0) {
+            return 1;
+        }
+        double sx = ((m[0] * px + m[1] * py + m[2] * pz + m[3]) / w + 1) * SIZE / 2;
+        double sy = (1 - (m[4] * px + m[5] * py + m[6] * pz + m[7]) / w) * SIZE / 2;
+        if (sx < 0 || sy < 0 || sx >= SIZE || sy >= SIZE) {
+            return 1;
+        }
+        // 减去常数偏移后的深度（线性深度w换算成NDC深度：z = -A + B/w）
+        double biased = Math.max(near, w - DEPTH_BIAS);
+        double z = (far + near) / (far - near) - 2 * far * near / ((far - near) * biased);
+
+        int x = (int) sx, y = (int) sy;
+        float[] dp = depth;
+        if (!pcf) {
+            return z > dp[y * SIZE + x] ? 0 : 1;
+        }
+        int lit = 0, total = 0;
+        for (int j = Math.max(0, y - PCF_RADIUS); j <= Math.min(SIZE - 1, y + PCF_RADIUS); j++) {
+            int row = j * SIZE;
+            for (int i = Math.max(0, x - PCF_RADIUS); i <= Math.min(SIZE - 1, x + PCF_RADIUS); i++) {
+                if (z <= dp[row + i]) {
+                    lit++;
+                }
+                total++;
+            }
+        }
+        return (double) lit / total;
+    }
+}
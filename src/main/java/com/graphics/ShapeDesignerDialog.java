@@ -45,6 +45,10 @@ import java.util.List;
  * - 圆柱体(Cylinder): 用多边形近似
  * - 人形(Humanoid): 简笔人形
  * 
+ * 【细节层次】
+ * 球体和圆柱体按LODMesh.DEFAULT_SEGMENTS（6/12/24/48段）各细分一次，
+ * 生成的机器人每帧按它们在屏幕上的大小选择用哪一级（见LODMesh）。
+ * 
  * @author Computer Graphics Course
  */
 public class ShapeDesignerDialog extends JDialog {
@@ -81,6 +85,9 @@ public class ShapeDesignerDialog extends JDialog {
     /** 设计保存目录 */
     private static final String DESIGNS_FILE = "robot_designs.json";
 
+    /** 设计画布的默认大小 */
+    private static final int CANVAS_WIDTH = 500, CANVAS_HEIGHT = 400;
+
     // ==================== 构造函数 ====================
 
     public ShapeDesignerDialog(JFrame parent, Scene3DPanel scene) {
@@ -247,8 +254,29 @@ public class ShapeDesignerDialog extends JDialog {
         // 清除场景中的现有机器人
         mainScene.clearAllRobots();
 
-        // 创建自定义多边形列表
+        // 创建自定义机器人并添加到场景
+        Robot customRobot = buildRobot(shapes, canvasCenterX, canvasCenterY);
+        customRobot.setPosition(0, 0, 0);
+
+        mainScene.addRobot(customRobot);
+        mainScene.repaint();
+
+        JOptionPane.showMessageDialog(this,
+                "已生成自定义机器人\n" +
+                        "现在可以使用变换工具(平移/旋转/缩放)操作它了！");
+    }
+
+    /**
+     * 把2D形状转换为3D自定义机器人
+     *
+     * @param shapes        设计中的形状
+     * @param canvasCenterX 画布中心X（对应3D的x = 0）
+     * @param canvasCenterY 画布中心Y（对应3D的y = 0）
+     */
+    private static Robot buildRobot(List<DesignerShape> shapes, int canvasCenterX, int canvasCenterY) {
+        // 创建自定义多边形列表（平面形状）和细节层次网格链（曲面形状）
         List<Polygon3D> customParts = new ArrayList<>();
+        List<LODMesh> lodParts = new ArrayList<>();
 
         // 遍历每个2D形状，转换为3D
         for (DesignerShape shape : shapes) {
@@ -269,24 +297,17 @@ public class ShapeDesignerDialog extends JDialog {
             } else if (type.contains("金字塔") || type.contains("Pyramid")) {
                 customParts.addAll(createPyramid(x3d, y3d, z3d, scale, color));
             } else if (type.contains("球") || type.contains("Sphere")) {
-                customParts.addAll(createSphere(x3d, y3d, z3d, scale * 0.5, 12, color));
+                lodParts.add(LODMesh.build(LODMesh.DEFAULT_SEGMENTS, seg -> Mesh.fromPolygons(
+                        createSphere(x3d, y3d, z3d, scale * 0.5, seg, color), Mesh.DEFAULT_CREASE_ANGLE)));
             } else if (type.contains("圆柱") || type.contains("Cylinder")) {
-                customParts.addAll(createCylinder(x3d, y3d, z3d, scale * 0.4, scale, 12, color));
+                lodParts.add(LODMesh.build(LODMesh.DEFAULT_SEGMENTS, seg -> Mesh.fromPolygons(
+                        createCylinder(x3d, y3d, z3d, scale * 0.4, scale, seg, color), Mesh.DEFAULT_CREASE_ANGLE)));
             } else {
                 customParts.addAll(createBox(x3d, y3d, z3d, scale, scale, scale, color));
             }
         }
 
-        // 创建自定义机器人并添加到场景
-        Robot customRobot = new Robot(customParts);
-        customRobot.setPosition(0, 0, 0);
-
-        mainScene.addRobot(customRobot);
-        mainScene.repaint();
-
-        JOptionPane.showMessageDialog(this,
-                "已生成自定义机器人\n" +
-                        "现在可以使用变换工具(平移/旋转/缩放)操作它了！");
+        return new Robot(customParts, lodParts);
     }
 
     // ==================== 3D形状创建辅助方法 ====================
@@ -310,7 +331,7 @@ public class ShapeDesignerDialog extends JDialog {
      * @param d     深度(Z方向)
      * @param color 颜色
      */
-    private List<Polygon3D> createBox(double cx, double cy, double cz,
+    private static List<Polygon3D> createBox(double cx, double cy, double cz,
             double w, double h, double d, Color color) {
         List<Polygon3D> polys = new ArrayList<>();
         double hw = w / 2, hh = h / 2, hd = d / 2;
@@ -352,7 +373,7 @@ public class ShapeDesignerDialog extends JDialog {
     /**
      * 创建金字塔（1个底面 + 4个三角形侧面）
      */
-    private List<Polygon3D> createPyramid(double cx, double cy, double cz,
+    private static List<Polygon3D> createPyramid(double cx, double cy, double cz,
             double size, Color color) {
         List<Polygon3D> polys = new ArrayList<>();
         double hs = size / 2;
@@ -391,7 +412,7 @@ public class ShapeDesignerDialog extends JDialog {
      * θ ∈ [0, π] (纬度)
      * φ ∈ [0, 2π] (经度)
      */
-    private List<Polygon3D> createSphere(double cx, double cy, double cz,
+    private static List<Polygon3D> createSphere(double cx, double cy, double cz,
             double r, int seg, Color color) {
         List<Polygon3D> polys = new ArrayList<>();
         int latB = seg / 2, lonB = seg;
@@ -426,7 +447,7 @@ public class ShapeDesignerDialog extends JDialog {
      * z = r * sin(θ)
      * y ∈ [-h/2, h/2]
      */
-    private List<Polygon3D> createCylinder(double cx, double cy, double cz,
+    private static List<Polygon3D> createCylinder(double cx, double cy, double cz,
             double r, double h, int seg, Color color) {
         List<Polygon3D> polys = new ArrayList<>();
         double hh = h / 2;
@@ -538,29 +559,7 @@ public class ShapeDesignerDialog extends JDialog {
             String content = new String(java.nio.file.Files.readAllBytes(file.toPath()), "UTF-8");
 
             designerCanvas.clearShapes();
-
-            // 简单解析JSON
-            int shapesStart = content.indexOf("[");
-            int shapesEnd = content.lastIndexOf("]");
-            if (shapesStart > 0 && shapesEnd > shapesStart) {
-                String shapesStr = content.substring(shapesStart + 1, shapesEnd);
-                String[] shapeStrs = shapesStr.split("\\},\\s*\\{");
-
-                for (String shapeStr : shapeStrs) {
-                    shapeStr = shapeStr.replace("{", "").replace("}", "");
-                    String type = extractValue(shapeStr, "type");
-                    int x = Integer.parseInt(extractValue(shapeStr, "x"));
-                    int y = Integer.parseInt(extractValue(shapeStr, "y"));
-                    int rotation = Integer.parseInt(extractValue(shapeStr, "rotation"));
-                    double scale = Double.parseDouble(extractValue(shapeStr, "scale"));
-                    int colorRgb = Integer.parseInt(extractValue(shapeStr, "color"));
-
-                    DesignerShape shape = new DesignerShape(type, x, y, new Color(colorRgb), scale);
-                    shape.rotation = rotation;
-                    designerCanvas.shapes.add(shape);
-                }
-            }
-
+            designerCanvas.shapes.addAll(parseDesign(content));
             designerCanvas.repaint();
             JOptionPane.showMessageDialog(this, "已加载设计: " + selected);
         } catch (Exception e) {
@@ -568,10 +567,61 @@ public class ShapeDesignerDialog extends JDialog {
         }
     }
 
+    /**
+     * 解析设计文件的内容（简单解析JSON）
+     */
+    private static List<DesignerShape> parseDesign(String content) {
+        List<DesignerShape> shapes = new ArrayList<>();
+        int shapesStart = content.indexOf("[");
+        int shapesEnd = content.lastIndexOf("]");
+        if (shapesStart > 0 && shapesEnd > shapesStart) {
+            String shapesStr = content.substring(shapesStart + 1, shapesEnd);
+            String[] shapeStrs = shapesStr.split("\\},\\s*\\{");
+
+            for (String shapeStr : shapeStrs) {
+                shapeStr = shapeStr.replace("{", "").replace("}", "");
+                String type = extractValue(shapeStr, "type");
+                int x = Integer.parseInt(extractValue(shapeStr, "x"));
+                int y = Integer.parseInt(extractValue(shapeStr, "y"));
+                int rotation = Integer.parseInt(extractValue(shapeStr, "rotation"));
+                double scale = Double.parseDouble(extractValue(shapeStr, "scale"));
+                int colorRgb = Integer.parseInt(extractValue(shapeStr, "color"));
+
+                DesignerShape shape = new DesignerShape(type, x, y, new Color(colorRgb), scale);
+                shape.rotation = rotation;
+                shapes.add(shape);
+            }
+        }
+        return shapes;
+    }
+
+    /**
+     * 读取designs目录下的设计文件，生成自定义机器人（不需要打开对话框，可离屏使用）
+     * 水平方向以形状的左右范围居中，竖直方向按默认画布大小的中心换算
+     *
+     * @param file 设计文件（.json）
+     * @return 自定义机器人
+     * @throws IOException 读取失败
+     * @throws IllegalArgumentException 文件中没有形状
+     */
+    public static Robot loadDesign(File file) throws IOException {
+        String content = new String(java.nio.file.Files.readAllBytes(file.toPath()), "UTF-8");
+        List<DesignerShape> shapes = parseDesign(content);
+        if (shapes.isEmpty()) {
+            throw new IllegalArgumentException("设计中没有形状: " + file);
+        }
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+        for (DesignerShape shape : shapes) {
+            minX = Math.min(minX, shape.x);
+            maxX = Math.max(maxX, shape.x);
+        }
+        return buildRobot(shapes, (minX + maxX) / 2, CANVAS_HEIGHT / 2);
+    }
+
     /**
      * 从JSON字符串中提取指定键的值
      */
-    private String extractValue(String json, String key) {
+    private static String extractValue(String json, String key) {
         int idx = json.indexOf("\"" + key + "\"");
         if (idx < 0)
             return "";
@@ -633,7 +683,7 @@ public class ShapeDesignerDialog extends JDialog {
 
         public DesignerCanvas() {
             setBackground(new Color(35, 35, 45));
-            setPreferredSize(new Dimension(500, 400));
+            setPreferredSize(new Dimension(CANVAS_WIDTH, CANVAS_HEIGHT));
             addMouseListener(this);
             addMouseMotionListener(this);
             addMouseWheelListener(this);
@@ -29,11 +29,24 @@ public class Stage {
 
     // ==================== 属性 ====================
 
+    /**
+     * 地板的Y坐标 - 位于机器人脚底下方
+     * 机器人脚底约在Y=-1.65，所以地板放在Y=-1.7
+     */
+    public static final double FLOOR_Y = -1.7;
+
     /**
      * 存储组成地板的所有多边形
      * 每个格子是一个Polygon3D对象
+     * 重建时整体替换列表，渲染线程总能拿到一个完整的地板
      */
-    private List<Polygon3D> polygons = new ArrayList<>();
+    private volatile List<Polygon3D> polygons = new ArrayList<>();
+
+    /**
+     * 地板的索引网格（相邻格子共享角点）
+     * 与polygons同时重建，渲染器使用它而不是多边形列表
+     */
+    private volatile Mesh mesh;
 
     /**
      * 舞台宽度（X方向），以原点为中心
@@ -56,6 +69,9 @@ public class Stage {
      */
     private Color gridColor = new Color(35, 35, 45); // 更深的灰色
 
+    /** 变更监听器（地板重建后通知场景重绘） */
+    private volatile Runnable changeListener;
+
     // ==================== 构造函数 ====================
 
     /**
@@ -72,18 +88,16 @@ public class Stage {
      * 构建舞台
      * 
      * 【算法步骤】
-     * 1. 清除旧的多边形
+     * 1. 创建新的多边形列表
      * 2. 计算每个格子的大小
      * 3. 用双重循环创建8x8=64个格子
      * 4. 每个格子根据位置(i+j)决定颜色（奇偶交替）
      */
     private void buildStage() {
-        // 清除之前的多边形
-        polygons.clear();
+        // 在新列表中构建，完成后再替换旧列表
+        List<Polygon3D> polygons = new ArrayList<>();
 
-        // 地板的Y坐标 - 位于机器人脚底下方
-        // 机器人脚底约在Y=-1.65，所以地板放在Y=-1.7
-        double floorY = -1.7;
+        double floorY = FLOOR_Y;
 
         // 计算舞台的边界
         double halfWidth = stageWidth / 2; // 半宽
@@ -112,16 +126,17 @@ public class Stage {
                 // (0,0)用floorColor, (0,1)用gridColor, (1,0)用gridColor...
                 Color cellColor = (i + j) % 2 == 0 ? floorColor : gridColor;
 
-                // 创建格子的四个顶点（逆时针顺序）
-                // 从上往下看:
-                // (x1,z2) ---- (x2,z2)
-                // | |
+                // 创建格子的四个顶点（从上方看逆时针，法向量朝上+Y，
+                // 光源在地板上方时才有漫反射，阴影才看得出来）
+                // 从上往下看（Z轴朝向观察者）:
                 // (x1,z1) ---- (x2,z1)
+                // | |
+                // (x1,z2) ---- (x2,z2)
                 double[][] vertices = {
-                        { x1, floorY, z1 }, // 左下
-                        { x2, floorY, z1 }, // 右下
-                        { x2, floorY, z2 }, // 右上
-                        { x1, floorY, z2 } // 左上
+                        { x1, floorY, z1 },
+                        { x1, floorY, z2 },
+                        { x2, floorY, z2 },
+                        { x2, floorY, z1 }
                 };
 
                 // 创建多边形对象
@@ -134,6 +149,14 @@ public class Stage {
                 polygons.add(floor);
             }
         }
+
+        this.mesh = Mesh.fromPolygons(polygons, Mesh.DEFAULT_CREASE_ANGLE);
+        this.polygons = polygons;
+
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+        }
     }
 
     // ==================== 公共方法 ====================
@@ -148,6 +171,46 @@ public class Stage {
         return polygons;
     }
 
+    /**
+     * 获取地板网格
+     * 网格在世界空间中建模，顶点坐标可直接作为世界坐标使用
+     * 
+     * @return 地板网格
+     */
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * 设置变更监听器
+     * 
+     * @param listener 地板重建后调用
+     */
+    public void setChangeListener(Runnable listener) {
+        this.changeListener = listener;
+    }
+
+    /**
+     * 设置舞台尺寸
+     * 会立即重建地板（仍是8x8的棋盘格，格子随尺寸放大）
+     * 
+     * @param width 宽度（X方向）
+     * @param depth 深度（Z方向）
+     */
+    public void setSize(double width, double depth) {
+        this.stageWidth = width;
+        this.stageDepth = depth;
+        buildStage();
+    }
+
+    public double getWidth() {
+        return stageWidth;
+    }
+
+    public double getDepth() {
+        return stageDepth;
+    }
+
     /**
      * 设置地板主色
      * 会立即重建地板以应用新颜色
@@ -0,0 +1,225 @@
+package com.graphics;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ====================================================================
+ * TileRenderer.java - 分块(Tile)多核光栅化
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 把屏幕划分成固定大小的方块（默认64×64像素），
+ * 先把每个三角形"分箱"(Binning)到它的包围盒覆盖的方块里，
+ * 再在ForkJoinPool上并行地光栅化各个方块。
+ *
+ * 【为什么能并行？】
+ * 每个方块只写自己那一块颜色缓冲和深度缓冲，
+ * 不同线程写的像素互不重叠，所以不需要任何锁。
+ * 同一方块内三角形按提交顺序绘制，结果与单线程完全一致。
+ *
+ * 【流程】
+ * 1. bin(): 遍历批次，按包围盒把三角形索引追加到方块列表
+ * 2. 并行: 每个方块先清空自己的区域，再依次光栅化列表中的三角形
+ *
+ * 【画家算法】
+ * 给定绘制顺序(order)时按该顺序分箱，并关闭深度测试：
+ * 每个方块内仍按顺序覆盖，结果与单线程从远到近逐个绘制相同。
+ *
+ * @author Computer Graphics Course
+ */
+public class TileRenderer {
+
+    /** 方块边长（像素） */
+    public static final int TILE_SIZE = 64;
+
+    /** 少于这么多方块时不再拆分任务 */
+    private static final int TILES_PER_TASK = 2;
+
+    /** 实际写像素的光栅化器（只读访问其缓冲区，可多线程共享） */
+    private final Rasterizer rasterizer;
+
+    /** 执行方块任务的线程池 */
+    private final ForkJoinPool pool;
+
+    /** 方块列数和行数 */
+    private int tilesX, tilesY;
+
+    /** 每个方块的三角形索引列表 */
+    private int[][] bins = new int[0][];
+
+    /** 每个方块列表的有效长度 */
+    private int[] binCounts = new int[0];
+
+    public TileRenderer(Rasterizer rasterizer) {
+        this(rasterizer, ForkJoinPool.commonPool());
+    }
+
+    public TileRenderer(Rasterizer rasterizer, ForkJoinPool pool) {
+        this.rasterizer = rasterizer;
+        this.pool = pool;
+    }
+
+    /**
+     * 清空帧缓冲并渲染一个批次
+     *
+     * @param batch      屏幕空间三角形
+     * @param background 背景颜色（0xRRGGBB）
+     */
+    public void render(TriangleBatch batch, int background) {
+        render(batch, background, null);
+    }
+
+    /**
+     * 清空帧缓冲并按给定顺序渲染一个批次（不做深度测试）
+     *
+     * @param batch      屏幕空间三角形
+     * @param background 背景颜色（0xRRGGBB）
+     * @param order      绘制顺序（三角形下标，长度至少为batch.size()），
+     *                   null表示按提交顺序并做深度测试
+     */
+    public void render(TriangleBatch batch, int background, int[] order) {
+        bin(batch, order);
+        pool.invoke(new TileTask(batch, background, order == null, true, 0, tilesX * tilesY));
+    }
+
+    /**
+     * 在已有画面上继续渲染一个批次（不清空，做深度测试）
+     * 用于分两遍提交的场景，例如遮挡剔除的第二遍
+     *
+     * @param batch 屏幕空间三角形
+     */
+    public void renderOver(TriangleBatch batch) {
+        bin(batch, null);
+        pool.invoke(new TileTask(batch, 0, true, false, 0, tilesX * tilesY));
+    }
+
+    // ==================== 分箱 ====================
+
+    /**
+     * 把三角形分配到其包围盒覆盖的所有方块
+     */
+    private void bin(TriangleBatch batch, int[] order) {
+        int w = rasterizer.getWidth();
+        int h = rasterizer.getHeight();
+        tilesX = (w + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (h + TILE_SIZE - 1) / TILE_SIZE;
+        int tileCount = tilesX * tilesY;
+        if (bins.length < tileCount) {
+            bins = Arrays.copyOf(bins, tileCount);
+            binCounts = new int[tileCount];
+        }
+        Arrays.fill(binCounts, 0, tileCount, 0);
+
+        float[] xyz = batch.xyz;
+        for (int i = 0; i < batch.size(); i++) {
+            int t = order != null ? order[i] : i;
+            int o = t * TriangleBatch.XYZ_STRIDE;
+            float minX = Math.min(xyz[o], Math.min(xyz[o + 3], xyz[o + 6]));
+            float maxX = Math.max(xyz[o], Math.max(xyz[o + 3], xyz[o + 6]));
+            float minY = Math.min(xyz[o + 1], Math.min(xyz[o + 4], xyz[o + 7]));
+            float maxY = Math.max(xyz[o + 1], Math.max(xyz[o + 4], xyz[o + 7]));
+            if (maxX < 0 || maxY < 0 || minX >= w || minY >= h) {
+                continue; // 完全在屏幕外
+            }
+            int tx0 = Math.max(0, (int) minX / TILE_SIZE);
+            int ty0 = Math.max(0, (int) minY / TILE_SIZE);
+            int tx1 = Math.min(tilesX - 1, (int) maxX / TILE_SIZE);
+            int ty1 = Math.min(tilesY - 1, (int) maxY / TILE_SIZE);
+            for (int ty = ty0; ty <= ty1; ty++) {
+                for (int tx = tx0; tx <= tx1; tx++) {
+                    append(ty * tilesX + tx, t);
+                }
+            }
+        }
+    }
+
+    private void append(int tile, int triangle) {
+        int[] list = bins[tile];
+        int n = binCounts[tile];
+        if (list == null) {
+            list = bins[tile] = new int[64];
+        } else if (n == list.length) {
+            list = bins[tile] = Arrays.copyOf(list, n * 2);
+        }
+        list[n] = triangle;
+        binCounts[tile] = n + 1;
+    }
+
+    // ==================== 方块光栅化 ====================
+
+    /**
+     * 光栅化单个方块：清空该方块区域（clear为true时），再绘制分到它的全部三角形
+     */
+    private void renderTile(TriangleBatch batch, int tile, int background, boolean depthTest, boolean clear) {
+        int w = rasterizer.getWidth();
+        int h = rasterizer.getHeight();
+        int minX = (tile % tilesX) * TILE_SIZE;
+        int minY = (tile / tilesX) * TILE_SIZE;
+        int maxX = Math.min(w, minX + TILE_SIZE);
+        int maxY = Math.min(h, minY + TILE_SIZE);
+
+        if (clear) {
+            rasterizer.clearRegion(minX, minY, maxX, maxY, background, depthTest);
+        }
+
+        float[] xyz = batch.xyz;
+        int[] colors = batch.colors;
+        byte[] kinds = batch.kinds;
+        int[] list = bins[tile];
+        int n = binCounts[tile];
+        for (int i = 0; i < n; i++) {
+            int t = list[i];
+            int o = t * TriangleBatch.XYZ_STRIDE;
+            if (kinds[t] == TriangleBatch.FLAT) {
+                rasterizer.fillTriangle(
+                        xyz[o], xyz[o + 1], xyz[o + 2],
+                        xyz[o + 3], xyz[o + 4], xyz[o + 5],
+                        xyz[o + 6], xyz[o + 7], xyz[o + 8], colors[t], depthTest,
+                        minX, minY, maxX, maxY);
+            } else {
+                rasterizer.fillShadedTriangle(
+                        xyz[o], xyz[o + 1], xyz[o + 2],
+                        xyz[o + 3], xyz[o + 4], xyz[o + 5],
+                        xyz[o + 6], xyz[o + 7], xyz[o + 8],
+                        kinds[t], batch.attributes, batch.attributeOffsets[t], colors[t], batch.lights,
+                        depthTest, minX, minY, maxX, maxY);
+            }
+        }
+    }
+
+    /**
+     * 分治任务：方块区间[from, to)过大时一分为二
+     */
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TriangleBatch batch;
+        private final int background;
+        private final boolean depthTest, clear;
+        private final int from, to;
+
+        TileTask(TriangleBatch batch, int background, boolean depthTest, boolean clear, int from, int to) {
+            this.batch = batch;
+            this.background = background;
+            this.depthTest = depthTest;
+            this.clear = clear;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TILES_PER_TASK) {
+                for (int tile = from; tile < to; tile++) {
+                    renderTile(batch, tile, background, depthTest, clear);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TileTask(batch, background, depthTest, clear, from, mid),
+                    new TileTask(batch, background, depthTest, clear, mid, to));
+        }
+    }
+}
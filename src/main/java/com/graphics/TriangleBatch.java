@@ -0,0 +1,162 @@
+package com.graphics;
+
+import java.util.Arrays;
+
+/**
+ * ====================================================================
+ * TriangleBatch.java - 屏幕空间三角形批次
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 顶点阶段（变换、投影、视口映射）的输出。
+ * 每个三角形用紧凑的基本类型数组存储，不为单个三角形创建对象，
+ * 之后由TileRenderer分块、并行光栅化。
+ *
+ * 【存储格式】
+ * - xyz: 每个三角形9个float，依次为 x0 y0 z0 x1 y1 z1 x2 y2 z2
+ * （x, y为屏幕坐标，z为NDC深度）
+ * - colors: 每个三角形一个0xRRGGBB颜色（Phong模式下是材质颜色）
+ * - kinds: 着色方式（FLAT/GOURAUD/PHONG）
+ * - attributes: Gouraud/Phong三角形的顶点属性，紧凑追加，
+ *   attributeOffsets记录每个三角形的起始下标（Flat三角形不占空间）
+ *
+ * 【顶点属性】
+ * 每个顶点先存q = 1/w，再存各属性乘以q的值(a×q)。
+ * 屏幕空间里q和a×q都是线性的，光栅化时分别插值再相除，
+ * 就得到透视正确的属性 a = (a×q) / q。
+ * - GOURAUD: q, r×q, g×q, b×q（光照后的顶点颜色，0~255）
+ * - PHONG: q, nx×q, ny×q, nz×q, px×q, py×q, pz×q（世界空间法向量和位置）
+ *
+ * 数组按需翻倍扩容，每帧clear()后复用，稳定后不再分配内存。
+ *
+ * @author Computer Graphics Course
+ */
+public class TriangleBatch {
+
+    /** 每个三角形在xyz数组中占用的float个数 */
+    public static final int XYZ_STRIDE = 9;
+
+    /** 着色方式：整个三角形一个颜色 */
+    public static final byte FLAT = 0;
+
+    /** 着色方式：插值顶点颜色 */
+    public static final byte GOURAUD = 1;
+
+    /** 着色方式：插值法向量，逐像素光照 */
+    public static final byte PHONG = 2;
+
+    /** GOURAUD三角形每个顶点的属性个数 */
+    public static final int GOURAUD_STRIDE = 4;
+
+    /** PHONG三角形每个顶点的属性个数 */
+    public static final int PHONG_STRIDE = 7;
+
+    /** 顶点坐标 */
+    float[] xyz = new float[XYZ_STRIDE * 256];
+
+    /** 三角形颜色 */
+    int[] colors = new int[256];
+
+    /** 三角形着色方式 */
+    byte[] kinds = new byte[256];
+
+    /** 三角形顶点属性在attributes中的起始下标 */
+    int[] attributeOffsets = new int[256];
+
+    /** 顶点属性（见类注释） */
+    float[] attributes = new float[PHONG_STRIDE * 3 * 256];
+
+    /** attributes的已用长度 */
+    private int attributeSize = 0;
+
+    /** 逐像素着色用的分簇光源（Phong三角形需要） */
+    LightClusters lights;
+
+    /** 当前三角形数量 */
+    private int size = 0;
+
+    /**
+     * 清空批次（保留已分配的数组）
+     */
+    public void clear() {
+        size = 0;
+        attributeSize = 0;
+    }
+
+    /**
+     * 设置本批次逐像素着色使用的光源（已为本帧建立好簇列表）
+     */
+    public void setLights(LightClusters lights) {
+        this.lights = lights;
+    }
+
+    /**
+     * @return 三角形数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 追加一个屏幕空间三角形
+     *
+     * @return 新三角形的索引
+     */
+    public int add(double x0, double y0, double z0,
+            double x1, double y1, double z1,
+            double x2, double y2, double z2, int color) {
+        if (size == colors.length) {
+            colors = Arrays.copyOf(colors, size * 2);
+            kinds = Arrays.copyOf(kinds, size * 2);
+            attributeOffsets = Arrays.copyOf(attributeOffsets, size * 2);
+            xyz = Arrays.copyOf(xyz, size * 2 * XYZ_STRIDE);
+        }
+        int o = size * XYZ_STRIDE;
+        xyz[o] = (float) x0;
+        xyz[o + 1] = (float) y0;
+        xyz[o + 2] = (float) z0;
+        xyz[o + 3] = (float) x1;
+        xyz[o + 4] = (float) y1;
+        xyz[o + 5] = (float) z1;
+        xyz[o + 6] = (float) x2;
+        xyz[o + 7] = (float) y2;
+        xyz[o + 8] = (float) z2;
+        colors[size] = color;
+        kinds[size] = FLAT;
+        return size++;
+    }
+
+    /**
+     * 三角形三个顶点的平均深度（画家算法的排序键）
+     */
+    public float averageDepth(int triangle) {
+        int o = triangle * XYZ_STRIDE;
+        return (xyz[o + 2] + xyz[o + 5] + xyz[o + 8]) * (1f / 3);
+    }
+
+    /**
+     * 为刚添加的三角形分配顶点属性空间
+     *
+     * @param triangle 三角形索引（add()的返回值）
+     * @param kind     GOURAUD或PHONG
+     * @return 属性在attributes中的起始下标，调用方按顶点0、1、2的顺序写入
+     */
+    public int addAttributes(int triangle, byte kind) {
+        int stride = kind == PHONG ? PHONG_STRIDE : GOURAUD_STRIDE;
+        int needed = attributeSize + stride * 3;
+        if (needed > attributes.length) {
+            attributes = Arrays.copyOf(attributes, Math.max(needed, attributes.length * 2));
+        }
+        kinds[triangle] = kind;
+        attributeOffsets[triangle] = attributeSize;
+        attributeSize = needed;
+        return attributeOffsets[triangle];
+    }
+
+    /**
+     * @return 属性数组（addAttributes()之后写入）
+     */
+    public float[] getAttributes() {
+        return attributes;
+    }
+}
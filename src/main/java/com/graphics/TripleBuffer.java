@@ -0,0 +1,80 @@
+package com.graphics;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ====================================================================
+ * TripleBuffer.java - 三重缓冲
+ * ====================================================================
+ *
+ * 【功能说明】
+ * 三张BufferedImage轮流使用：
+ * - 写缓冲: 渲染线程正在绘制的一帧
+ * - 读缓冲: Swing线程(EDT)正在显示的一帧
+ * - 中间缓冲: 最近一次绘制完成、等待显示的一帧
+ *
+ * 【无锁交换】
+ * 中间缓冲的索引存放在一个AtomicInteger中，
+ * 渲染线程画完一帧后用getAndSet把写缓冲和中间缓冲交换，
+ * EDT发现有新帧时同样用getAndSet把读缓冲和中间缓冲交换。
+ * 双方永远不会拿到同一张图，渲染线程也从不等待EDT。
+ *
+ * @author Computer Graphics Course
+ */
+public class TripleBuffer {
+
+    /** 中间缓冲中"有新帧"的标志位 */
+    private static final int FRESH = 4;
+
+    /** 索引掩码（低两位） */
+    private static final int INDEX_MASK = 3;
+
+    /** 三个缓冲区 */
+    private final BufferedImage[] slots = new BufferedImage[3];
+
+    /** 中间缓冲索引 | FRESH标志 */
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    /** 写缓冲索引（只由渲染线程访问） */
+    private int writeIndex = 0;
+
+    /** 读缓冲索引（只由EDT访问） */
+    private int readIndex = 2;
+
+    /**
+     * 取得写缓冲（渲染线程调用）
+     * 尺寸不符时重新分配
+     *
+     * @return 本帧要绘制的图像
+     */
+    public BufferedImage beginFrame(int width, int height) {
+        BufferedImage image = slots[writeIndex];
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            slots[writeIndex] = image;
+        }
+        return image;
+    }
+
+    /**
+     * 发布刚绘制完成的一帧（渲染线程调用）
+     */
+    public void publish() {
+        int old = middle.getAndSet(writeIndex | FRESH);
+        writeIndex = old & INDEX_MASK;
+    }
+
+    /**
+     * 取得最新完成的一帧（EDT调用）
+     *
+     * @return 最新帧；还没有任何帧完成时返回null
+     */
+    public BufferedImage latest() {
+        if ((middle.get() & FRESH) != 0) {
+            int old = middle.getAndSet(readIndex);
+            readIndex = old & INDEX_MASK;
+        }
+        return slots[readIndex];
+    }
+}